@@ -0,0 +1,146 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.benchmarks;
+
+import static org.kaazing.netx.ws.benchmarks.Loopback.OPCODE_BINARY;
+import static org.kaazing.netx.ws.benchmarks.Loopback.OPCODE_TEXT;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.kaazing.netx.ws.MessageType;
+import org.kaazing.netx.ws.internal.WsURLConnectionImpl;
+import org.kaazing.netx.ws.internal.io.WsInputStream;
+import org.kaazing.netx.ws.internal.io.WsMessageReader;
+import org.kaazing.netx.ws.internal.io.WsReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures receiving one message per operation through {@code WsMessageReader}, {@code WsInputStream} and
+ * {@code WsReader}. Each operation consumes exactly one replayed server frame.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IncomingFrameBenchmark {
+
+    @State(Scope.Thread)
+    public static class BinaryConnection {
+        @Param({ "16", "1024", "65536", "1048576" })
+        public int messageSize;
+
+        WsURLConnectionImpl connection;
+        WsMessageReader messageReader;
+        WsInputStream input;
+        byte[] buffer;
+
+        @Setup
+        public void setUp() throws IOException {
+            byte[] frame = Loopback.serverFrame(OPCODE_BINARY, Loopback.binaryPayload(messageSize));
+            connection = Loopback.connect(messageSize, frame);
+            messageReader = connection.getMessageReader();
+            input = connection.getInputStream();
+            buffer = new byte[messageSize];
+        }
+
+        @TearDown
+        public void tearDown() {
+            Loopback.close(connection);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class TextConnection {
+        @Param({ "16", "1024", "65536", "1048576" })
+        public int messageSize;
+
+        WsURLConnectionImpl connection;
+        WsMessageReader messageReader;
+        WsReader reader;
+        char[] buffer;
+
+        @Setup
+        public void setUp() throws IOException {
+            byte[] payload = new String(Loopback.textPayload(messageSize)).getBytes("UTF-8");
+            byte[] frame = Loopback.serverFrame(OPCODE_TEXT, payload);
+            connection = Loopback.connect(messageSize, frame);
+            messageReader = connection.getMessageReader();
+            reader = connection.getReader();
+            buffer = new char[messageSize];
+        }
+
+        @TearDown
+        public void tearDown() {
+            Loopback.close(connection);
+        }
+    }
+
+    @Benchmark
+    public int messageReaderBinary(BinaryConnection state) throws IOException {
+        MessageType type = state.messageReader.next();
+        assert type == MessageType.BINARY;
+        return state.messageReader.readFully(state.buffer);
+    }
+
+    @Benchmark
+    public int messageReaderText(TextConnection state) throws IOException {
+        MessageType type = state.messageReader.next();
+        assert type == MessageType.TEXT;
+        return state.messageReader.readFully(state.buffer);
+    }
+
+    @Benchmark
+    public void inputStreamRead(BinaryConnection state, Blackhole blackhole) throws IOException {
+        byte[] buffer = state.buffer;
+        int offset = 0;
+        while (offset < buffer.length) {
+            int bytesRead = state.input.read(buffer, offset, buffer.length - offset);
+            if (bytesRead == -1) {
+                throw new IOException("Unexpected end of stream");
+            }
+            offset += bytesRead;
+        }
+        blackhole.consume(buffer);
+    }
+
+    @Benchmark
+    public void readerRead(TextConnection state, Blackhole blackhole) throws IOException {
+        char[] buffer = state.buffer;
+        int offset = 0;
+        while (offset < buffer.length) {
+            int charsRead = state.reader.read(buffer, offset, buffer.length - offset);
+            if (charsRead == -1) {
+                throw new IOException("Unexpected end of stream");
+            }
+            offset += charsRead;
+        }
+        blackhole.consume(buffer);
+    }
+}
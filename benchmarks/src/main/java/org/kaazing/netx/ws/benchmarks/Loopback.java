@@ -0,0 +1,120 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.benchmarks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kaazing.netx.URLConnectionHelper;
+import org.kaazing.netx.ws.internal.WebSocketExtensionFactory;
+import org.kaazing.netx.ws.internal.WebSocketInputStateMachine;
+import org.kaazing.netx.ws.internal.WebSocketOutputStateMachine;
+import org.kaazing.netx.ws.internal.WsURLConnectionImpl;
+
+final class Loopback {
+    static final int OPCODE_TEXT = 0x01;
+    static final int OPCODE_BINARY = 0x02;
+
+    private static final AtomicInteger CONNECTIONS = new AtomicInteger();
+    private static final URLConnectionHelper HELPER = URLConnectionHelper.newInstance();
+    private static final Random RANDOM = new SecureRandom();
+
+    private Loopback() {
+    }
+
+    /**
+     * Opens a connected {@link WsURLConnectionImpl} that reads the specified server frames over and over again.
+     *
+     * @param maxFramePayloadLength  maximum frame payload length for the connection
+     * @param serverFrames           encoded server-to-client frames to replay, may be empty for write-only benchmarks
+     * @return connected WsURLConnectionImpl
+     */
+    static WsURLConnectionImpl connect(int maxFramePayloadLength, byte[] serverFrames) throws IOException {
+        URI location = URI.create("ws://localhost/benchmark/" + CONNECTIONS.incrementAndGet());
+        URI httpLocation = URI.create("loopback://localhost/benchmark/" + CONNECTIONS.get());
+
+        LoopbackURLConnectionHelper.bind(httpLocation, new LoopbackSocket(serverFrames));
+        try {
+            WsURLConnectionImpl connection = new WsURLConnectionImpl(HELPER,
+                                                                     location,
+                                                                     httpLocation,
+                                                                     RANDOM,
+                                                                     WebSocketExtensionFactory.newInstance(),
+                                                                     new WebSocketInputStateMachine(),
+                                                                     new WebSocketOutputStateMachine());
+            connection.setMaxFramePayloadLength(maxFramePayloadLength);
+            connection.connect();
+            return connection;
+        }
+        finally {
+            LoopbackURLConnectionHelper.unbind(httpLocation);
+        }
+    }
+
+    /**
+     * Encodes an unmasked, final server-to-client frame.
+     */
+    static byte[] serverFrame(int opcode, byte[] payload) {
+        int length = payload.length;
+        int headerLength = length < 126 ? 2 : length <= 0xFFFF ? 4 : 10;
+        byte[] frame = new byte[headerLength + length];
+
+        frame[0] = (byte) (0x80 | opcode);
+        if (length < 126) {
+            frame[1] = (byte) length;
+        }
+        else if (length <= 0xFFFF) {
+            frame[1] = 126;
+            frame[2] = (byte) (length >> 8);
+            frame[3] = (byte) length;
+        }
+        else {
+            frame[1] = 127;
+            for (int i = 0; i < 8; i++) {
+                frame[9 - i] = (byte) ((long) length >> (8 * i));
+            }
+        }
+
+        System.arraycopy(payload, 0, frame, headerLength, length);
+        return frame;
+    }
+
+    static byte[] binaryPayload(int size) {
+        byte[] payload = new byte[size];
+        new Random(size).nextBytes(payload);
+        return payload;
+    }
+
+    static char[] textPayload(int size) {
+        char[] payload = new char[size];
+        for (int i = 0; i < size; i++) {
+            payload[i] = (char) ('a' + (i % 26));
+        }
+        return payload;
+    }
+
+    static void close(WsURLConnectionImpl connection) {
+        try {
+            connection.close();
+        }
+        catch (IOException e) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.benchmarks;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Stand-in for a connected TCP socket. The input side endlessly replays the same server-to-client frames, handing out at
+ * most one replay cycle per read as a socket would for one segment. The output side discards everything written to it.
+ */
+final class LoopbackSocket {
+
+    private final ReplayInputStream input;
+    private final DiscardOutputStream output;
+
+    LoopbackSocket(byte[] serverFrames) {
+        this.input = new ReplayInputStream(serverFrames);
+        this.output = new DiscardOutputStream();
+    }
+
+    InputStream getInputStream() {
+        return input;
+    }
+
+    OutputStream getOutputStream() {
+        return output;
+    }
+
+    long getBytesWritten() {
+        return output.count;
+    }
+
+    private static final class ReplayInputStream extends InputStream {
+        private final byte[] replay;
+
+        private int position;
+
+        ReplayInputStream(byte[] replay) {
+            this.replay = replay;
+        }
+
+        @Override
+        public int read() {
+            if (replay.length == 0) {
+                return -1;
+            }
+
+            int b = replay[position++] & 0xFF;
+            if (position == replay.length) {
+                position = 0;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int offset, int length) {
+            if (replay.length == 0) {
+                return -1;
+            }
+
+            int count = Math.min(length, replay.length - position);
+            System.arraycopy(replay, position, buf, offset, count);
+            position += count;
+            if (position == replay.length) {
+                position = 0;
+            }
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return replay.length - position;
+        }
+    }
+
+    private static final class DiscardOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] buf, int offset, int length) {
+            count += length;
+        }
+    }
+}
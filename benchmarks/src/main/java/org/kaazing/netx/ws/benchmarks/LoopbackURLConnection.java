@@ -0,0 +1,109 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.kaazing.netx.http.HttpURLConnection;
+import org.kaazing.netx.ws.internal.util.Base64Util;
+
+/**
+ * Completes the WebSocket opening handshake locally and then exposes the {@link LoopbackSocket} streams.
+ */
+final class LoopbackURLConnection extends HttpURLConnection {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private final LoopbackSocket socket;
+
+    private String websocketKey;
+
+    LoopbackURLConnection(URL url, LoopbackSocket socket) {
+        super(url);
+        this.socket = socket;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        connected = true;
+    }
+
+    @Override
+    public void disconnect() {
+        connected = false;
+    }
+
+    @Override
+    public boolean usingProxy() {
+        return false;
+    }
+
+    @Override
+    public void setRequestProperty(String key, String value) {
+        if ("Sec-WebSocket-Key".equalsIgnoreCase(key)) {
+            websocketKey = value;
+        }
+        super.setRequestProperty(key, value);
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+        connect();
+        return HTTP_SWITCHING_PROTOCOLS;
+    }
+
+    @Override
+    public String getHeaderField(String name) {
+        if ("Upgrade".equalsIgnoreCase(name)) {
+            return "websocket";
+        }
+        else if ("Connection".equalsIgnoreCase(name)) {
+            return "Upgrade";
+        }
+        else if ("Sec-WebSocket-Accept".equalsIgnoreCase(name)) {
+            return accept(websocketKey);
+        }
+        return null;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return socket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return socket.getOutputStream();
+    }
+
+    private static String accept(String websocketKey) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] hash = sha1.digest((websocketKey + WEBSOCKET_GUID).getBytes(UTF_8));
+            return Base64Util.encode(ByteBuffer.wrap(hash));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.benchmarks;
+
+import static java.util.Collections.singleton;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.kaazing.netx.URLConnectionHelperSpi;
+
+/**
+ * Registers the {@code loopback} scheme so that a {@code WsURLConnectionImpl} can be opened over a {@link LoopbackSocket}
+ * instead of a TCP connection.
+ */
+public final class LoopbackURLConnectionHelper extends URLConnectionHelperSpi {
+
+    private static final ConcurrentMap<URI, LoopbackSocket> SOCKETS = new ConcurrentHashMap<URI, LoopbackSocket>();
+
+    @Override
+    public Collection<String> getSupportedProtocols() {
+        return singleton("loopback");
+    }
+
+    @Override
+    public URLConnection openConnection(URI location) throws IOException {
+        LoopbackSocket socket = SOCKETS.get(location);
+        if (socket == null) {
+            throw new IOException("Connection refused: " + location);
+        }
+
+        URL url = new URL(null, location.toString(), newStreamHandler());
+        return new LoopbackURLConnection(url, socket);
+    }
+
+    @Override
+    public URLStreamHandler newStreamHandler() throws IOException {
+        return new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(URL location) throws IOException {
+                return LoopbackURLConnectionHelper.this.openConnection(URI.create(location.toString()));
+            }
+        };
+    }
+
+    static void bind(URI location, LoopbackSocket socket) {
+        SOCKETS.put(location, socket);
+    }
+
+    static void unbind(URI location) {
+        SOCKETS.remove(location);
+    }
+}
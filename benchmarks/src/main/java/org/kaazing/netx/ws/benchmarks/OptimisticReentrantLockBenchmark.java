@@ -0,0 +1,95 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.kaazing.netx.ws.LockWaitStrategy;
+import org.kaazing.netx.ws.internal.util.OptimisticReentrantLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares {@link OptimisticReentrantLock} using each {@link LockWaitStrategy} against {@link ReentrantLock}, both when the
+ * lock is only taken by one thread and when it is contended by several threads holding it for a configurable amount of work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptimisticReentrantLockBenchmark {
+
+    @Param({ "SPIN", "SPIN_YIELD_PARK", "REENTRANT_LOCK" })
+    public String lockType;
+
+    @Param({ "0", "100", "1000" })
+    public int holdTokens;
+
+    private Lock lock;
+
+    @Setup
+    public void setUp() {
+        if ("REENTRANT_LOCK".equals(lockType)) {
+            lock = new ReentrantLock();
+        }
+        else {
+            lock = new OptimisticReentrantLock(LockWaitStrategy.valueOf(lockType));
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void uncontended() {
+        lockAndHold();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void contended() {
+        lockAndHold();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void oversubscribed() {
+        lockAndHold();
+    }
+
+    private void lockAndHold() {
+        try {
+            lock.lock();
+            Blackhole.consumeCPU(holdTokens);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+}
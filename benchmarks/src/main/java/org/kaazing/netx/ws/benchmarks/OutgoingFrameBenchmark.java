@@ -0,0 +1,81 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.kaazing.netx.ws.internal.WsURLConnectionImpl;
+import org.kaazing.netx.ws.internal.io.WsOutputStream;
+import org.kaazing.netx.ws.internal.io.WsWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures sending a single-frame message, which runs {@code OutgoingSentinelExtension.encodeFrame} and
+ * {@code encodeMaskAndPayload} for every write.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutgoingFrameBenchmark {
+
+    @Param({ "16", "1024", "65536", "1048576" })
+    public int messageSize;
+
+    private WsURLConnectionImpl connection;
+    private WsOutputStream output;
+    private WsWriter writer;
+    private byte[] binaryPayload;
+    private char[] textPayload;
+
+    @Setup
+    public void setUp() throws IOException {
+        connection = Loopback.connect(messageSize, new byte[0]);
+        output = connection.getOutputStream();
+        writer = connection.getWriter();
+        binaryPayload = Loopback.binaryPayload(messageSize);
+        textPayload = Loopback.textPayload(messageSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Loopback.close(connection);
+    }
+
+    @Benchmark
+    public void writeBinary() throws IOException {
+        output.write(binaryPayload);
+    }
+
+    @Benchmark
+    public void writeText() throws IOException {
+        writer.write(textPayload);
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.kaazing.netx.ws.internal.util.ErrorHandler;
+import org.kaazing.netx.ws.internal.util.Utf8Util;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures UTF-8 validation of received text and UTF-8 encoding of sent text. The incremental validation walks the message
+ * in 4KB fragments as if it was received in CONTINUATION frames. Encoding a String counts the bytes and then encodes them
+ * into a byte[], as done when a text message is encoded straight into an outgoing frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Utf8UtilBenchmark {
+    private static final int FRAGMENT_LENGTH = 4096;
+    private static final String MIXED_TEXT = "ascii \u00e9\u00e8 \u20ac\u4e2d\u6587 ";
+
+    @Param({ "16", "1024", "65536", "1048576" })
+    public int messageSize;
+
+    @Param({ "ascii", "mixed" })
+    public String content;
+
+    private char[] chars;
+    private ByteBuffer encoded;
+    private ByteBuffer dest;
+    private String text;
+    private byte[] destBytes;
+    private ErrorHandler errorHandler;
+
+    @Setup
+    public void setUp() throws IOException {
+        if ("ascii".equals(content)) {
+            chars = Loopback.textPayload(messageSize);
+        }
+        else {
+            chars = new char[messageSize];
+            for (int i = 0; i < messageSize; i++) {
+                chars[i] = MIXED_TEXT.charAt(i % MIXED_TEXT.length());
+            }
+        }
+
+        encoded = ByteBuffer.wrap(new String(chars).getBytes("UTF-8"));
+        dest = ByteBuffer.allocate(Utf8Util.byteCountUTF8(chars, 0, chars.length));
+        text = new String(chars);
+        destBytes = new byte[dest.capacity()];
+        errorHandler = new ErrorHandler() {
+            @Override
+            public void handleError(String message) {
+                throw new IllegalStateException(message);
+            }
+        };
+    }
+
+    @Benchmark
+    public int validateUTF8() {
+        return Utf8Util.validateUTF8(encoded, 0, encoded.capacity(), errorHandler);
+    }
+
+    @Benchmark
+    public int validateUTF8Incremental() {
+        int state = Utf8Util.UTF8_ACCEPT;
+        int length = encoded.capacity();
+        for (int offset = 0; offset < length; offset += FRAGMENT_LENGTH) {
+            state = Utf8Util.validateUTF8(state, encoded, offset, Math.min(FRAGMENT_LENGTH, length - offset));
+        }
+        return state;
+    }
+
+    @Benchmark
+    public int charstoUTF8Bytes() {
+        return Utf8Util.charstoUTF8Bytes(chars, 0, chars.length, dest, 0);
+    }
+
+    @Benchmark
+    public int stringToUTF8Bytes() throws IOException {
+        int length = Utf8Util.byteCountUTF8(text, 0, text.length());
+        return length + Utf8Util.charstoUTF8Bytes(text, 0, text.length(), destBytes, 0);
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.benchmarks;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.kaazing.netx.ws.benchmarks.Loopback.OPCODE_BINARY;
+import static org.kaazing.netx.ws.benchmarks.Loopback.OPCODE_TEXT;
+
+import org.junit.Test;
+import org.kaazing.netx.ws.MessageReader;
+import org.kaazing.netx.ws.MessageType;
+import org.kaazing.netx.ws.internal.WsURLConnectionImpl;
+
+/**
+ * Runs the setup that the benchmarks share, so that a change to the opening handshake cannot break all of them unnoticed.
+ */
+public class LoopbackTest {
+
+    @Test
+    public void shouldConnectAndReadReplayedBinaryFrames() throws Exception {
+        byte[] payload = Loopback.binaryPayload(1024);
+        WsURLConnectionImpl connection = Loopback.connect(payload.length, Loopback.serverFrame(OPCODE_BINARY, payload));
+        try {
+            MessageReader messageReader = connection.getMessageReader();
+            for (int i = 0; i < 3; i++) {
+                assertSame(MessageType.BINARY, messageReader.next());
+
+                byte[] received = new byte[payload.length];
+                assertEquals(payload.length, messageReader.readFully(received));
+                assertArrayEquals(payload, received);
+            }
+        }
+        finally {
+            Loopback.close(connection);
+        }
+    }
+
+    @Test
+    public void shouldConnectAndReadReplayedTextFrames() throws Exception {
+        char[] payload = Loopback.textPayload(64);
+        byte[] frame = Loopback.serverFrame(OPCODE_TEXT, new String(payload).getBytes("UTF-8"));
+        WsURLConnectionImpl connection = Loopback.connect(payload.length, frame);
+        try {
+            MessageReader messageReader = connection.getMessageReader();
+            assertSame(MessageType.TEXT, messageReader.next());
+
+            char[] received = new char[payload.length];
+            assertEquals(payload.length, messageReader.readFully(received));
+            assertArrayEquals(payload, received);
+        }
+        finally {
+            Loopback.close(connection);
+        }
+    }
+
+    @Test
+    public void shouldConnectForWriteOnlyBenchmarks() throws Exception {
+        WsURLConnectionImpl connection = Loopback.connect(1024, new byte[0]);
+        try {
+            connection.getMessageWriter().writeFully(Loopback.binaryPayload(16));
+        }
+        finally {
+            Loopback.close(connection);
+        }
+    }
+}
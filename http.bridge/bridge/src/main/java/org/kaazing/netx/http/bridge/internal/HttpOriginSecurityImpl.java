@@ -22,10 +22,9 @@ import java.net.HttpURLConnection;
 import java.net.Socket;
 import java.net.URL;
 
-import javax.net.SocketFactory;
-import javax.net.ssl.SSLSocketFactory;
-
+import org.kaazing.netx.http.HttpTlsPolicy;
 import org.kaazing.netx.http.internal.HttpOriginSecuritySpi;
+import org.kaazing.netx.http.internal.HttpTlsContext;
 
 public final class HttpOriginSecurityImpl extends HttpOriginSecuritySpi {
 
@@ -49,6 +48,11 @@ public final class HttpOriginSecurityImpl extends HttpOriginSecuritySpi {
 
     @Override
     protected Socket createSocket0(URL url) throws IOException {
+        return createSocket0(url, 0);
+    }
+
+    @Override
+    protected Socket createSocket0(URL url, int connectTimeout) throws IOException {
         String protocol = url.getProtocol();
         String host = url.getHost();
         int port = url.getPort();
@@ -57,12 +61,11 @@ public final class HttpOriginSecurityImpl extends HttpOriginSecuritySpi {
         }
 
         if ("http".equalsIgnoreCase(protocol)) {
-            SocketFactory socketFactory = SocketFactory.getDefault();
-            return socketFactory.createSocket(host, port);
+            return connectSocket(host, port, connectTimeout);
         }
         else if ("https".equalsIgnoreCase(protocol)) {
-            SocketFactory socketFactory = SSLSocketFactory.getDefault();
-            return socketFactory.createSocket(host, port);
+            HttpTlsContext tls = HttpTlsContext.of(HttpTlsPolicy.getDefault());
+            return tls.createSocket(connectTlsSocket(host, port, connectTimeout), host, port);
         }
         else {
             throw new IllegalStateException(format("Unexpected protocol: %s", protocol));
@@ -0,0 +1,232 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.http;
+
+import static java.lang.String.format;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import org.kaazing.netx.http.internal.HttpTlsContext;
+
+/**
+ * {@link HttpTlsPolicy} specifies how the TLS connections of https and wss locations are made. All the connections made under
+ * a policy share one {@link SSLContext}, whose client session cache lets a connection to an origin that was connected to before
+ * resume the earlier session with an abbreviated handshake, using a session ticket or a session ID as supported by the JRE
+ * and the server. The policy also restricts the protocols and cipher suites that are enabled.
+ * <p>
+ * The policy that applies to new connections is {@link #getDefault()}, which can be replaced using
+ * {@link #setDefault(HttpTlsPolicy)}. A policy counts the full and the resumed handshakes of the connections made under it, and
+ * the time spent in each kind, to show how often reconnecting clients pay for a full handshake.
+ */
+public final class HttpTlsPolicy {
+    private static final String MSG_INVALID_SESSION_CACHE_SIZE = "Invalid session cache size: %d";
+    private static final String MSG_INVALID_SESSION_TIMEOUT = "Invalid session timeout: %d seconds";
+    private static final String MSG_EMPTY_PROTOCOLS = "No protocols enabled";
+    private static final String MSG_EMPTY_CIPHER_SUITES = "No cipher suites enabled";
+
+    private static final HttpTlsPolicy DEFAULTS = new HttpTlsPolicy(null, null, null, -1, -1);
+
+    private static volatile HttpTlsPolicy defaultPolicy = DEFAULTS;
+
+    private final SSLContext context;
+    private final String[] enabledProtocols;
+    private final String[] enabledCipherSuites;
+    private final int sessionCacheSize;
+    private final int sessionTimeout;
+
+    private HttpTlsPolicy(
+            SSLContext context,
+            String[] enabledProtocols,
+            String[] enabledCipherSuites,
+            int sessionCacheSize,
+            int sessionTimeout) {
+        this.context = context;
+        this.enabledProtocols = enabledProtocols;
+        this.enabledCipherSuites = enabledCipherSuites;
+        this.sessionCacheSize = sessionCacheSize;
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    /**
+     * Returns the policy with which connections use the default SSLContext of the JRE, with its protocols, cipher suites and
+     * session cache settings.
+     *
+     * @return HttpTlsPolicy with the settings of the JRE
+     */
+    public static HttpTlsPolicy defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Returns a policy with the specified settings. The session cache settings are applied to the client session context of the
+     * SSLContext when the first connection is made under the policy, so the context is modified. The default SSLContext of the
+     * JRE is never modified: with a null context and session cache settings, the connections use a TLS context of their own,
+     * which has the default trust managers and no key managers, so a client certificate requires a specified context.
+     *
+     * @param context              SSLContext of the connections, or null for the default SSLContext of the JRE
+     * @param enabledProtocols     protocols to enable, such as "TLSv1.2", or null for the defaults of the context
+     * @param enabledCipherSuites  cipher suites to enable, or null for the defaults of the context
+     * @param sessionCacheSize     maximum number of cached sessions, zero for no limit, or -1 to keep the setting of the context
+     * @param sessionTimeout       seconds after which a cached session is not resumed any more, zero for no limit, or -1 to
+     *                             keep the setting of the context
+     * @return HttpTlsPolicy with the specified settings
+     */
+    public static HttpTlsPolicy custom(
+            SSLContext context,
+            String[] enabledProtocols,
+            String[] enabledCipherSuites,
+            int sessionCacheSize,
+            int sessionTimeout) {
+        if (enabledProtocols != null && enabledProtocols.length == 0) {
+            throw new IllegalArgumentException(MSG_EMPTY_PROTOCOLS);
+        }
+
+        if (enabledCipherSuites != null && enabledCipherSuites.length == 0) {
+            throw new IllegalArgumentException(MSG_EMPTY_CIPHER_SUITES);
+        }
+
+        if (sessionCacheSize < -1) {
+            throw new IllegalArgumentException(format(MSG_INVALID_SESSION_CACHE_SIZE, sessionCacheSize));
+        }
+
+        if (sessionTimeout < -1) {
+            throw new IllegalArgumentException(format(MSG_INVALID_SESSION_TIMEOUT, sessionTimeout));
+        }
+
+        return new HttpTlsPolicy(context,
+                                 (enabledProtocols != null) ? enabledProtocols.clone() : null,
+                                 (enabledCipherSuites != null) ? enabledCipherSuites.clone() : null,
+                                 sessionCacheSize,
+                                 sessionTimeout);
+    }
+
+    /**
+     * Returns the policy under which new https and wss connections are made. The default policy is {@link #defaults()}.
+     *
+     * @return the default HttpTlsPolicy
+     */
+    public static HttpTlsPolicy getDefault() {
+        return defaultPolicy;
+    }
+
+    /**
+     * Sets the policy under which new https and wss connections are made. Connections that have already been made, including
+     * idle connections that are kept for reuse, are not affected.
+     *
+     * @param policy  HttpTlsPolicy of new connections
+     */
+    public static void setDefault(HttpTlsPolicy policy) {
+        if (policy == null) {
+            throw new NullPointerException("policy");
+        }
+
+        defaultPolicy = policy;
+    }
+
+    /**
+     * Returns the SSLContext of the connections, or null if none was specified.
+     *
+     * @return SSLContext
+     */
+    public SSLContext getSSLContext() {
+        return context;
+    }
+
+    /**
+     * Returns the protocols that are enabled, or null if the defaults of the context are enabled.
+     *
+     * @return enabled protocols
+     */
+    public String[] getEnabledProtocols() {
+        return (enabledProtocols != null) ? enabledProtocols.clone() : null;
+    }
+
+    /**
+     * Returns the cipher suites that are enabled, or null if the defaults of the context are enabled.
+     *
+     * @return enabled cipher suites
+     */
+    public String[] getEnabledCipherSuites() {
+        return (enabledCipherSuites != null) ? enabledCipherSuites.clone() : null;
+    }
+
+    /**
+     * Returns the maximum number of cached sessions, zero for no limit, or -1 if the setting of the context is kept.
+     *
+     * @return session cache size
+     */
+    public int getSessionCacheSize() {
+        return sessionCacheSize;
+    }
+
+    /**
+     * Returns the number of seconds after which a cached session is not resumed any more, zero for no limit, or -1 if the
+     * setting of the context is kept.
+     *
+     * @return session timeout in seconds
+     */
+    public int getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    /**
+     * Returns the number of full handshakes of the connections made under this policy.
+     *
+     * @return number of full handshakes
+     */
+    public long getFullHandshakeCount() {
+        return HttpTlsContext.of(this).getFullHandshakeCount();
+    }
+
+    /**
+     * Returns the number of handshakes of the connections made under this policy that resumed an earlier session.
+     *
+     * @return number of resumed handshakes
+     */
+    public long getResumedHandshakeCount() {
+        return HttpTlsContext.of(this).getResumedHandshakeCount();
+    }
+
+    /**
+     * Returns the time spent in the full handshakes of the connections made under this policy.
+     *
+     * @param unit   unit of the returned value
+     * @return time spent in full handshakes
+     */
+    public long getFullHandshakeTime(TimeUnit unit) {
+        return HttpTlsContext.of(this).getFullHandshakeTime(unit);
+    }
+
+    /**
+     * Returns the time spent in the handshakes of the connections made under this policy that resumed an earlier session.
+     *
+     * @param unit   unit of the returned value
+     * @return time spent in resumed handshakes
+     */
+    public long getResumedHandshakeTime(TimeUnit unit) {
+        return HttpTlsContext.of(this).getResumedHandshakeTime(unit);
+    }
+
+    @Override
+    public String toString() {
+        return format("HttpTlsPolicy[context=%s, protocols=%s, cipherSuites=%s, sessionCacheSize=%d, sessionTimeout=%d]",
+                context, Arrays.toString(enabledProtocols), Arrays.toString(enabledCipherSuites), sessionCacheSize,
+                sessionTimeout);
+    }
+}
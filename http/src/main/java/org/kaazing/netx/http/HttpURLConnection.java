@@ -35,6 +35,7 @@ public abstract class HttpURLConnection extends java.net.HttpURLConnection {
 
     private ChallengeHandler challengeHandler;
     private HttpRedirectPolicy redirectPolicy;
+    private HttpUpgradeRequestEncoder upgradeRequestEncoder;
 
     /**
      * Creates a new {@code HttpURLConnection}.
@@ -82,4 +83,35 @@ public abstract class HttpURLConnection extends java.net.HttpURLConnection {
     public ChallengeHandler getChallengeHandler() {
         return challengeHandler;
     }
+
+    /**
+     * Returns whether this connection writes the request head with the {@link HttpUpgradeRequestEncoder} once one is set.
+     * Connections that do not support it ignore the encoder, so the headers of the upgrade must be set as request properties
+     * instead.
+     *
+     * @return true if the HTTP upgrade request encoder is used
+     */
+    public boolean isUpgradeRequestEncoderSupported() {
+        return false;
+    }
+
+    /**
+     * Sets the encoder of the request head, which makes this connection an HTTP upgrade if it
+     * {@link #isUpgradeRequestEncoderSupported() supports} encoders. The request line and the headers are then written by the
+     * encoder instead of being formatted from the request method and properties.
+     *
+     * @param upgradeRequestEncoder  the new HTTP upgrade request encoder
+     */
+    public void setUpgradeRequestEncoder(HttpUpgradeRequestEncoder upgradeRequestEncoder) {
+        this.upgradeRequestEncoder = upgradeRequestEncoder;
+    }
+
+    /**
+     * Returns the current encoder of the request head.
+     *
+     * @return the current HTTP upgrade request encoder, or {@code null} if none has been set
+     */
+    public HttpUpgradeRequestEncoder getUpgradeRequestEncoder() {
+        return upgradeRequestEncoder;
+    }
 }
@@ -0,0 +1,39 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.http;
+
+import java.net.URL;
+
+/**
+ * Encodes the head of the requests that upgrade an {@link HttpURLConnection} to another protocol.
+ * <p>
+ * It lets the upgraded protocol keep the request line and its own headers pre-encoded, rather than setting them one at a
+ * time as request properties to be formatted again for each request.
+ */
+public interface HttpUpgradeRequestEncoder {
+
+    /**
+     * Encodes the request line and the headers of an upgrade request to the specified location. The location changes when a
+     * redirect is followed, so the head is encoded again for each request that is sent.
+     * <p>
+     * The request properties of the connection, such as the credentials of a challenge response, and the cookies are written
+     * after these headers.
+     *
+     * @param location  the location of the request
+     * @return the ASCII bytes of the request head, including the empty line that ends it
+     */
+    byte[] encodeRequest(URL location);
+}
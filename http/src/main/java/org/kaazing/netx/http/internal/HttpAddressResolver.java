@@ -0,0 +1,190 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.http.internal;
+
+import static java.lang.String.format;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of host name resolutions. The addresses of a host are kept for {@link #getTimeToLive(TimeUnit)} after they are looked
+ * up, and a failed lookup is remembered for {@link #getNegativeTimeToLive(TimeUnit)}, so that repeated connections to the same
+ * host, or to a host that does not resolve, do not wait on a name server each time.
+ * <p>
+ * A host whose entry has expired is looked up again by the first thread that needs it. Concurrent lookups of the same host may
+ * both reach the name server, in which case the last one to complete is cached.
+ */
+public class HttpAddressResolver {
+    public static final long DEFAULT_TTL_MILLIS = 30000L;
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = 10000L;
+
+    private static final String MSG_INVALID_TTL = "Invalid time to live: %d ms";
+    private static final String MSG_INVALID_NEGATIVE_TTL = "Invalid negative time to live: %d ms";
+    private static final String MSG_TO_STRING = "HttpAddressResolver[cached=%d, hits=%d, misses=%d, failures=%d]";
+
+    private static final HttpAddressResolver SHARED = new HttpAddressResolver(DEFAULT_TTL_MILLIS, DEFAULT_NEGATIVE_TTL_MILLIS);
+
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final ConcurrentMap<String, Resolution> resolutions;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong failures;
+
+    public HttpAddressResolver(long ttlMillis, long negativeTtlMillis) {
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException(format(MSG_INVALID_TTL, ttlMillis));
+        }
+
+        if (negativeTtlMillis < 0) {
+            throw new IllegalArgumentException(format(MSG_INVALID_NEGATIVE_TTL, negativeTtlMillis));
+        }
+
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+        this.resolutions = new ConcurrentHashMap<String, Resolution>();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.failures = new AtomicLong();
+    }
+
+    /**
+     * Returns the resolver that is shared by all the connections.
+     *
+     * @return shared HttpAddressResolver
+     */
+    public static HttpAddressResolver shared() {
+        return SHARED;
+    }
+
+    /**
+     * Resolves the specified host, from the cache if it holds an entry for the host that has not expired.
+     *
+     * @param host  host name or address literal
+     * @return the addresses of the host, in the order returned by the name service
+     * @throws UnknownHostException if the host cannot be resolved, now or when it was last looked up
+     * @throws SecurityException if a security manager does not allow connections to the host
+     */
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        String key = (host != null) ? host.toLowerCase(Locale.ENGLISH) : "";
+        long now = System.nanoTime();
+
+        Resolution resolution = resolutions.get(key);
+        if (resolution != null && now - resolution.resolvedAt < resolution.timeToLive) {
+            // The name service checks whether the host may be resolved, and the cache must not bypass that.
+            SecurityManager security = System.getSecurityManager();
+            if (security != null) {
+                security.checkConnect(host, -1);
+            }
+
+            hits.incrementAndGet();
+            return resolution.addresses();
+        }
+
+        misses.incrementAndGet();
+        try {
+            InetAddress[] addresses = lookup(host);
+            if (ttlNanos > 0) {
+                resolutions.put(key, new Resolution(addresses, null, now, ttlNanos));
+            }
+            return addresses.clone();
+        }
+        catch (UnknownHostException e) {
+            failures.incrementAndGet();
+            if (negativeTtlNanos > 0) {
+                resolutions.put(key, new Resolution(null, e, now, negativeTtlNanos));
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Drops the cached entry of the specified host, if any.
+     *
+     * @param host  host name or address literal
+     */
+    public void invalidate(String host) {
+        resolutions.remove((host != null) ? host.toLowerCase(Locale.ENGLISH) : "");
+    }
+
+    /**
+     * Drops all the cached entries.
+     */
+    public void clear() {
+        resolutions.clear();
+    }
+
+    public long getTimeToLive(TimeUnit unit) {
+        return unit.convert(ttlNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getNegativeTimeToLive(TimeUnit unit) {
+        return unit.convert(negativeTtlNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    @Override
+    public String toString() {
+        return format(MSG_TO_STRING, resolutions.size(), hits.get(), misses.get(), failures.get());
+    }
+
+    // Looks the host up with the name service, overridden by unit tests.
+    InetAddress[] lookup(String host) throws UnknownHostException {
+        return InetAddress.getAllByName(host);
+    }
+
+    private static final class Resolution {
+        private final InetAddress[] addresses;
+        private final UnknownHostException failure;
+        private final long resolvedAt;
+        private final long timeToLive;
+
+        Resolution(InetAddress[] addresses, UnknownHostException failure, long resolvedAt, long timeToLive) {
+            this.addresses = addresses;
+            this.failure = failure;
+            this.resolvedAt = resolvedAt;
+            this.timeToLive = timeToLive;
+        }
+
+        InetAddress[] addresses() throws UnknownHostException {
+            if (failure != null) {
+                // A new exception, so that the stack trace shows the caller rather than the original lookup.
+                UnknownHostException e = new UnknownHostException(failure.getMessage());
+                e.initCause(failure);
+                throw e;
+            }
+
+            return addresses.clone();
+        }
+    }
+}
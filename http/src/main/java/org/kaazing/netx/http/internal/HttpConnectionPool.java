@@ -0,0 +1,382 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.http.internal;
+
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool of idle persistent connections, keyed by origin. A connection whose HTTP/1.1 response has been read completely, and
+ * that the server did not ask to close, is released to the pool instead of being closed, so that the next request to the same
+ * origin can skip the TCP handshake, and the TLS handshake for https.
+ * <p>
+ * Up to {@link #getMaxConnectionsPerOrigin()} idle connections are kept per origin, and connections released beyond that are
+ * closed. The most recently released connection is lent first. A connection that stays idle for longer than
+ * {@link #getIdleTimeout(TimeUnit)} is closed by a daemon timer, which only runs while the pool holds idle connections. Each
+ * connection is validated before it is lent, and discarded if the peer has closed it or has sent unexpected bytes.
+ */
+final class HttpConnectionPool {
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ORIGIN = 5;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 5000L;
+
+    private static final String MSG_INVALID_MAX_CONNECTIONS = "Invalid maximum number of connections per origin: %d";
+    private static final String MSG_INVALID_IDLE_TIMEOUT = "Invalid idle timeout: %d ms";
+    private static final String MSG_TO_STRING =
+            "HttpConnectionPool[idle=%d, hits=%d, misses=%d, releases=%d, evictions=%d, discards=%d]";
+
+    // The longest a connection is waited on while being validated, when it is not backed by a channel that can be polled.
+    private static final int VALIDATION_TIMEOUT_MILLIS = 1;
+
+    private static final HttpConnectionPool SHARED =
+            new HttpConnectionPool(DEFAULT_MAX_CONNECTIONS_PER_ORIGIN, DEFAULT_IDLE_TIMEOUT_MILLIS);
+
+    private final int maxConnectionsPerOrigin;
+    private final long idleTimeoutMillis;
+    private final Map<String, Deque<IdleConnection>> idleConnections;
+    private final Lock lock;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong releases;
+    private final AtomicLong evictions;
+    private final AtomicLong discards;
+
+    private Timer evictionTimer;
+    private int idleCount;
+
+    public HttpConnectionPool(int maxConnectionsPerOrigin, long idleTimeoutMillis) {
+        if (maxConnectionsPerOrigin < 0) {
+            throw new IllegalArgumentException(format(MSG_INVALID_MAX_CONNECTIONS, maxConnectionsPerOrigin));
+        }
+
+        if (idleTimeoutMillis <= 0) {
+            throw new IllegalArgumentException(format(MSG_INVALID_IDLE_TIMEOUT, idleTimeoutMillis));
+        }
+
+        this.maxConnectionsPerOrigin = maxConnectionsPerOrigin;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.idleConnections = new HashMap<String, Deque<IdleConnection>>();
+        this.lock = new ReentrantLock();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.releases = new AtomicLong();
+        this.evictions = new AtomicLong();
+        this.discards = new AtomicLong();
+    }
+
+    /**
+     * Returns the pool that is shared by all the connections.
+     *
+     * @return shared HttpConnectionPool
+     */
+    public static HttpConnectionPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Lends an idle connection to the origin of the specified URL, after checking that it is still usable. Connections that
+     * fail the check are closed and the next one is tried.
+     *
+     * @param url  location of the request to be sent on the connection
+     * @return a connection to the origin of the URL, or null if there is no usable idle connection
+     */
+    public Socket acquire(URL url) {
+        String origin = origin(url);
+
+        for (;;) {
+            IdleConnection idle;
+            try {
+                lock.lock();
+
+                Deque<IdleConnection> connections = idleConnections.get(origin);
+                idle = (connections != null) ? connections.pollFirst() : null;
+                if (idle == null) {
+                    break;
+                }
+
+                idleCount--;
+                if (connections.isEmpty()) {
+                    idleConnections.remove(origin);
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+
+            if (System.nanoTime() - idle.releasedAt < TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis) &&
+                isUsable(idle.socket)) {
+                hits.incrementAndGet();
+                return idle.socket;
+            }
+
+            discards.incrementAndGet();
+            close(idle.socket);
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Returns a connection, whose last response has been read completely, to the pool. The connection is closed instead if the
+     * origin already has {@link #getMaxConnectionsPerOrigin()} idle connections.
+     *
+     * @param url     location of the last request sent on the connection
+     * @param socket  connection to be reused
+     */
+    public void release(URL url, Socket socket) {
+        if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+            discards.incrementAndGet();
+            close(socket);
+            return;
+        }
+
+        String origin = origin(url);
+
+        try {
+            lock.lock();
+
+            Deque<IdleConnection> connections = idleConnections.get(origin);
+            if (connections == null) {
+                connections = new ArrayDeque<IdleConnection>(maxConnectionsPerOrigin);
+                idleConnections.put(origin, connections);
+            }
+
+            if (connections.size() < maxConnectionsPerOrigin) {
+                connections.offerFirst(new IdleConnection(socket, System.nanoTime()));
+                idleCount++;
+                releases.incrementAndGet();
+                scheduleEviction();
+                return;
+            }
+
+            if (connections.isEmpty()) {
+                idleConnections.remove(origin);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+
+        discards.incrementAndGet();
+        close(socket);
+    }
+
+    /**
+     * Closes the connections that have been idle for longer than the idle timeout.
+     *
+     * @return number of connections that were closed
+     */
+    public int evictIdleConnections() {
+        Deque<Socket> expired = new ArrayDeque<Socket>();
+        long deadline = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+
+        try {
+            lock.lock();
+
+            for (Iterator<Deque<IdleConnection>> i = idleConnections.values().iterator(); i.hasNext();) {
+                Deque<IdleConnection> connections = i.next();
+
+                // Connections are released at the head, so the ones that have been idle for the longest are at the tail.
+                while (!connections.isEmpty() && connections.peekLast().releasedAt - deadline <= 0) {
+                    expired.add(connections.pollLast().socket);
+                    idleCount--;
+                }
+
+                if (connections.isEmpty()) {
+                    i.remove();
+                }
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+
+        for (Socket socket : expired) {
+            close(socket);
+        }
+
+        evictions.addAndGet(expired.size());
+        return expired.size();
+    }
+
+    public int getMaxConnectionsPerOrigin() {
+        return maxConnectionsPerOrigin;
+    }
+
+    public long getIdleTimeout(TimeUnit unit) {
+        return unit.convert(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public int getIdleCount() {
+        try {
+            lock.lock();
+            return idleCount;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of times an idle connection was lent
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of times there was no usable idle connection to lend, and a new one had to be established
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getReleaseCount() {
+        return releases.get();
+    }
+
+    /**
+     * @return number of idle connections that were closed by the idle timeout
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return number of connections that were closed because they failed validation or the pool had no room for them
+     */
+    public long getDiscardCount() {
+        return discards.get();
+    }
+
+    @Override
+    public String toString() {
+        return format(MSG_TO_STRING, getIdleCount(), getHitCount(), getMissCount(), getReleaseCount(), getEvictionCount(),
+                      getDiscardCount());
+    }
+
+    static String origin(URL url) {
+        int port = url.getPort();
+        if (port == -1) {
+            port = url.getDefaultPort();
+        }
+
+        return format("%s://%s:%d", url.getProtocol().toLowerCase(), url.getHost().toLowerCase(), port);
+    }
+
+    private void scheduleEviction() {
+        // Called with the lock held. The timer thread is only kept alive while there are idle connections to evict.
+        if (evictionTimer != null) {
+            return;
+        }
+
+        evictionTimer = new Timer("netx-http-pool-eviction", true);
+        evictionTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                evictIdleConnections();
+
+                try {
+                    lock.lock();
+
+                    if (idleCount == 0) {
+                        cancel();
+                        evictionTimer.cancel();
+                        evictionTimer = null;
+                    }
+                }
+                finally {
+                    lock.unlock();
+                }
+            }
+        }, idleTimeoutMillis, Math.max(1L, idleTimeoutMillis / 2));
+    }
+
+    private static boolean isUsable(Socket socket) {
+        if (socket.isClosed() || !socket.isConnected() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+            return false;
+        }
+
+        // An idle connection must not have anything to read. End of stream means that the server has closed it, and bytes
+        // that were not asked for mean that it can no longer be trusted to be in sync with the requests.
+        try {
+            SocketChannel channel = socket.getChannel();
+            if (channel != null) {
+                channel.configureBlocking(false);
+                try {
+                    return channel.read(ByteBuffer.allocate(1)) == 0;
+                }
+                finally {
+                    channel.configureBlocking(true);
+                }
+            }
+
+            int soTimeout = socket.getSoTimeout();
+            socket.setSoTimeout(VALIDATION_TIMEOUT_MILLIS);
+            try {
+                InputStream input = socket.getInputStream();
+                input.read();
+                return false;
+            }
+            catch (SocketTimeoutException e) {
+                return true;
+            }
+            finally {
+                socket.setSoTimeout(soTimeout);
+            }
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        }
+        catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private static final class IdleConnection {
+        private final Socket socket;
+        private final long releasedAt;
+
+        IdleConnection(Socket socket, long releasedAt) {
+            this.socket = socket;
+            this.releasedAt = releasedAt;
+        }
+    }
+}
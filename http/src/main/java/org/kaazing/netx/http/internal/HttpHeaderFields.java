@@ -15,27 +15,70 @@
  */
 package org.kaazing.netx.http.internal;
 
-import static java.util.Collections.unmodifiableMap;
+import static java.util.Collections.unmodifiableList;
 
-import java.util.Comparator;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
+/**
+ * Header fields in the order they were added, looked up by name ignoring case. The fields are kept in parallel arrays along
+ * with the case-folded hash of each name, and an open-addressing table maps the hash of each distinct name to the first field
+ * with that name. Names that match one of the {@link #COMMON_NAMES} are stored as the shared constant, so that they compare by
+ * reference against the constants used by the handshake.
+ * <p>
+ * The field with the null name, if any, holds the status line of a response.
+ */
 final class HttpHeaderFields  {
 
-    private final List<String> keys;
-    private final List<String> values;
-    private final Map<String, List<String>> valuesByKey;
+    static final String[] COMMON_NAMES = {
+        "Authorization",
+        "Connection",
+        "Content-Length",
+        "Content-Type",
+        "Cookie",
+        "Host",
+        "Location",
+        "Sec-WebSocket-Accept",
+        "Sec-WebSocket-Extensions",
+        "Sec-WebSocket-Key",
+        "Sec-WebSocket-Protocol",
+        "Sec-WebSocket-Version",
+        "Set-Cookie",
+        "Set-Cookie2",
+        "Transfer-Encoding",
+        "Upgrade",
+        "WWW-Authenticate"
+    };
+
+    private static final int[] COMMON_NAME_HASHES = new int[COMMON_NAMES.length];
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int EMPTY_SLOT = -1;
+
+    private String[] names;
+    private String[] values;
+    private int[] hashes;
+    private int size;
+
+    // Index of the first field with each distinct name, or EMPTY_SLOT. Kept at most half full.
+    private int[] slots;
+    private int distinctNames;
+
     private final Map<String, List<String>> valuesByKeyRO;
 
     public HttpHeaderFields() {
-        keys = new LinkedList<String>();
-        values = new LinkedList<String>();
-        valuesByKey = new TreeMap<String, List<String>>(CASE_INSENSITIVE_ORDER_WITH_NULLS);
-        valuesByKeyRO = unmodifiableMap(valuesByKey);
+        names = new String[INITIAL_CAPACITY];
+        values = new String[INITIAL_CAPACITY];
+        hashes = new int[INITIAL_CAPACITY];
+        slots = newSlots(INITIAL_CAPACITY << 1);
+        valuesByKeyRO = new HeaderFieldsMap();
     }
 
     public void addAll(Map<String, List<String>> headerFields) {
@@ -48,57 +91,52 @@ final class HttpHeaderFields  {
     }
 
     public void add(String key, String value) {
-        keys.add(key);
-        values.add(value);
-        List<String> keyValues = valuesByKey.get(key);
-        if (keyValues == null) {
-            keyValues = new LinkedList<String>();
-            valuesByKey.put(key, keyValues);
-        }
-        keyValues.add(value);
+        int hash = hash(key);
+        append(canonical(key, hash), value, hash);
     }
 
     public void set(String key, String value) {
-        for (Iterator<String> k$ = keys.iterator(), v$ = values.iterator(); k$.hasNext() && v$.hasNext();) {
-            String k = k$.next();
-            v$.next();
-            if (k.equals(key)) {
-                k$.remove();
-                v$.remove();
+        int hash = hash(key);
+
+        if (firstIndexOf(key, hash) != -1) {
+            // Remove every field with the same name, keeping the order of the others.
+            int length = 0;
+            for (int i = 0; i < size; i++) {
+                if (!matches(i, key, hash)) {
+                    names[length] = names[i];
+                    values[length] = values[i];
+                    hashes[length] = hashes[i];
+                    length++;
+                }
             }
+            Arrays.fill(names, length, size, null);
+            Arrays.fill(values, length, size, null);
+            size = length;
+            rebuildSlots(slots.length);
         }
-        keys.add(key);
-        values.add(value);
-        List<String> keyValues = valuesByKey.get(key);
-        if (keyValues == null) {
-            keyValues = new LinkedList<String>();
-        }
-        else {
-            valuesByKey.clear();
-        }
-        valuesByKey.put(key, keyValues);
-        keyValues.add(value);
+
+        append(canonical(key, hash), value, hash);
     }
 
     public String key(int index) {
-        if (index < 0 || index >= keys.size()) {
+        if (index < 0 || index >= size) {
             return null;
         }
 
-        return keys.get(index);
+        return names[index];
     }
 
     public String value(int index) {
-        if (index < 0 || index >= values.size()) {
+        if (index < 0 || index >= size) {
             return null;
         }
 
-        return values.get(index);
+        return values[index];
     }
 
     public String value(String key) {
-        List<String> keyValues = valuesByKey.get(key);
-        return (keyValues != null && !keyValues.isEmpty()) ? keyValues.get(0) : null;
+        int index = firstIndexOf(key, hash(key));
+        return (index != -1) ? values[index] : null;
     }
 
     public Map<String, List<String>> map() {
@@ -106,31 +144,220 @@ final class HttpHeaderFields  {
     }
 
     public void clear() {
-        keys.clear();
-        values.clear();
-        valuesByKey.clear();
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        Arrays.fill(slots, EMPTY_SLOT);
+        size = 0;
+        distinctNames = 0;
+    }
+
+    private void append(String key, String value, int hash) {
+        if (size == names.length) {
+            int capacity = names.length << 1;
+            names = Arrays.copyOf(names, capacity);
+            values = Arrays.copyOf(values, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+        }
+
+        int index = size++;
+        names[index] = key;
+        values[index] = value;
+        hashes[index] = hash;
+
+        int mask = slots.length - 1;
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            int first = slots[slot];
+            if (first == EMPTY_SLOT) {
+                slots[slot] = index;
+                if (++distinctNames << 1 > slots.length) {
+                    rebuildSlots(slots.length << 1);
+                }
+                return;
+            }
+
+            if (matches(first, key, hash)) {
+                return;
+            }
+        }
     }
 
-    private static final Comparator<String> CASE_INSENSITIVE_ORDER_WITH_NULLS = new CaseInsensitiveComparatorWithNulls();
+    private int firstIndexOf(String key, int hash) {
+        int mask = slots.length - 1;
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            int first = slots[slot];
+            if (first == EMPTY_SLOT) {
+                return -1;
+            }
+
+            if (matches(first, key, hash)) {
+                return first;
+            }
+        }
+    }
 
-    private static final class CaseInsensitiveComparatorWithNulls implements Comparator<String> {
+    private List<String> valuesOf(String key, int hash) {
+        int first = firstIndexOf(key, hash);
+        if (first == -1) {
+            return null;
+        }
+
+        List<String> keyValues = new ArrayList<String>(2);
+        for (int i = first; i < size; i++) {
+            if (matches(i, key, hash)) {
+                keyValues.add(values[i]);
+            }
+        }
+        return unmodifiableList(keyValues);
+    }
+
+    private boolean matches(int index, String key, int hash) {
+        String name = names[index];
+        return name == key || (hashes[index] == hash && name != null && name.equalsIgnoreCase(key));
+    }
+
+    private void rebuildSlots(int length) {
+        slots = newSlots(length);
+        distinctNames = 0;
+
+        int mask = length - 1;
+        for (int i = 0; i < size; i++) {
+            for (int slot = hashes[i] & mask;; slot = (slot + 1) & mask) {
+                int first = slots[slot];
+                if (first == EMPTY_SLOT) {
+                    slots[slot] = i;
+                    distinctNames++;
+                    break;
+                }
+
+                if (matches(first, names[i], hashes[i])) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private static int[] newSlots(int length) {
+        int[] slots = new int[length];
+        Arrays.fill(slots, EMPTY_SLOT);
+        return slots;
+    }
+
+    // Hash of the name folded to lower case, consistent with String.equalsIgnoreCase().
+    static int hash(String name) {
+        if (name == null) {
+            return 0;
+        }
+
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char ch = name.charAt(i);
+            if (ch >= 'A' && ch <= 'Z') {
+                ch += 'a' - 'A';
+            }
+            else if (ch >= 0x80) {
+                ch = Character.toLowerCase(Character.toUpperCase(ch));
+            }
+            hash = 31 * hash + ch;
+        }
+
+        // Spread the bits, as the table is indexed by the low bits of the hash.
+        return hash ^ (hash >>> 16);
+    }
+
+    private static String canonical(String name, int hash) {
+        if (name != null) {
+            for (int i = 0; i < COMMON_NAMES.length; i++) {
+                if (COMMON_NAME_HASHES[i] == hash && COMMON_NAMES[i].equals(name)) {
+                    return COMMON_NAMES[i];
+                }
+            }
+        }
+
+        return name;
+    }
+
+    private final class HeaderFieldsMap extends AbstractMap<String, List<String>> {
 
         @Override
-        public int compare(String o1, String o2) {
-            if (o1 == null && o2 == null) {
-                return 0;
+        public List<String> get(Object key) {
+            if (key != null && !(key instanceof String)) {
+                return null;
             }
 
-            if (o2 == null) {
-                return -1 - o1.length();
+            String name = (String) key;
+            return valuesOf(name, hash(name));
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            if (key != null && !(key instanceof String)) {
+                return false;
             }
 
-            if (o1 == null) {
-                return o2.length() + 1;
+            String name = (String) key;
+            return firstIndexOf(name, hash(name)) != -1;
+        }
+
+        @Override
+        public int size() {
+            return distinctNames;
+        }
+
+        @Override
+        public Set<Map.Entry<String, List<String>>> entrySet() {
+            return new AbstractSet<Map.Entry<String, List<String>>>() {
+
+                @Override
+                public Iterator<Map.Entry<String, List<String>>> iterator() {
+                    return new HeaderFieldsIterator();
+                }
+
+                @Override
+                public int size() {
+                    return distinctNames;
+                }
+            };
+        }
+    }
+
+    // Visits each distinct name once, in the order of the first field with that name.
+    private final class HeaderFieldsIterator implements Iterator<Map.Entry<String, List<String>>> {
+        private int index = advance(0);
+
+        @Override
+        public boolean hasNext() {
+            return index < size;
+        }
+
+        @Override
+        public Map.Entry<String, List<String>> next() {
+            if (index >= size) {
+                throw new NoSuchElementException();
             }
 
-            return String.CASE_INSENSITIVE_ORDER.compare(o1, o2);
+            String name = names[index];
+            List<String> keyValues = valuesOf(name, hashes[index]);
+            index = advance(index + 1);
+            return new AbstractMap.SimpleImmutableEntry<String, List<String>>(name, keyValues);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Unsupported operation");
+        }
+
+        private int advance(int from) {
+            int i = from;
+            while (i < size && firstIndexOf(names[i], hashes[i]) != i) {
+                i++;
+            }
+            return i;
         }
+    }
 
+    static {
+        for (int i = 0; i < COMMON_NAMES.length; i++) {
+            COMMON_NAME_HASHES[i] = hash(COMMON_NAMES[i]);
+        }
     }
 }
@@ -21,16 +21,22 @@ import static java.util.ServiceLoader.load;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
 import java.net.Socket;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.channels.SocketChannel;
 import java.util.Arrays;
+import java.util.List;
 
 import javax.net.SocketFactory;
-import javax.net.ssl.SSLSocketFactory;
 
 import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+import org.kaazing.netx.http.HttpTlsPolicy;
 
 public abstract class HttpOriginSecuritySpi {
 
@@ -69,8 +75,12 @@ public abstract class HttpOriginSecuritySpi {
     }
 
     public final Socket createSocket(URL url) throws IOException {
+        return createSocket(url, 0);
+    }
+
+    public final Socket createSocket(URL url, int connectTimeout) throws IOException {
         try {
-            return createSocket0(url);
+            return createSocket0(url, connectTimeout);
         }
         catch (SecurityException e) {
             try {
@@ -78,7 +88,7 @@ public abstract class HttpOriginSecuritySpi {
                 ClassLoader parent = HttpOriginSecuritySpi.class.getClassLoader();
                 URLClassLoader loader = URLClassLoader.newInstance(new URL[] { bridge }, parent);
                 for (HttpOriginSecuritySpi security : load(HttpOriginSecuritySpi.class, loader)) {
-                    return security.createSocket(url);
+                    return security.createSocket(url, connectTimeout);
                 }
                 String message = format("%s not found: %s", BRIDGE_RESOURCE_NAME, bridge);
                 e.initCause(new IllegalStateException(message).fillInStackTrace());
@@ -172,6 +182,90 @@ public abstract class HttpOriginSecuritySpi {
 
     protected abstract Socket createSocket0(URL url) throws IOException;
 
+    /**
+     * Creates a socket connected to the origin of the specified URL, waiting at most the connect timeout for the connection
+     * to be established. Implementations that do not override this method ignore the connect timeout.
+     *
+     * @param url  URL to connect to
+     * @param connectTimeout  milliseconds to wait for a connection to be established, with zero meaning no timeout
+     * @return connected socket
+     * @throws IOException if the connection cannot be established
+     */
+    protected Socket createSocket0(URL url, int connectTimeout) throws IOException {
+        return createSocket0(url);
+    }
+
+    /**
+     * Connects a plain socket to the specified host. The socket is backed by a {@link SocketChannel}, so that WebSocket frames
+     * can be written with gathering writes. A channel is not routed through a proxy though, so when the default
+     * {@link ProxySelector} picks a SOCKS proxy for the host, the socket is created by the default {@link SocketFactory}
+     * instead, as it was before channels were used.
+     *
+     * @param host  host name or address literal
+     * @param port  port to connect to
+     * @param connectTimeout  milliseconds to wait for a connection to be established, with zero meaning no timeout
+     * @return connected socket
+     * @throws IOException if the connection cannot be established
+     */
+    protected static Socket connectSocket(String host, int port, int connectTimeout) throws IOException {
+        if (isProxied(host, port)) {
+            return connectProxiedSocket(host, port, connectTimeout);
+        }
+
+        SocketChannel channel = HttpSocketConnector.shared().connect(host, port, connectTimeout);
+        return channel.socket();
+    }
+
+    /**
+     * Connects the plain socket that a TLS socket to the specified host is layered over. Unlike {@link #connectSocket(String,
+     * int, int)}, the socket is not backed by a channel, as TLS gains nothing from gathering writes, while the streams of a
+     * channel's socket adaptor serialize reads and writes before JDK 13, which would stall a full-duplex wss connection. The
+     * address is still picked by racing the addresses of the host, unless a SOCKS proxy applies.
+     *
+     * @param host  host name or address literal
+     * @param port  port to connect to
+     * @param connectTimeout  milliseconds to wait for a connection to be established, with zero meaning no timeout
+     * @return connected socket
+     * @throws IOException if the connection cannot be established
+     */
+    protected static Socket connectTlsSocket(String host, int port, int connectTimeout) throws IOException {
+        if (isProxied(host, port)) {
+            return connectProxiedSocket(host, port, connectTimeout);
+        }
+
+        return HttpSocketConnector.shared().connectSocket(host, port, connectTimeout);
+    }
+
+    private static Socket connectProxiedSocket(String host, int port, int connectTimeout) throws IOException {
+        Socket socket = SocketFactory.getDefault().createSocket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), connectTimeout);
+        }
+        catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    private static boolean isProxied(String host, int port) {
+        ProxySelector selector = ProxySelector.getDefault();
+        if (selector == null) {
+            return false;
+        }
+
+        try {
+            List<Proxy> proxies = selector.select(new URI("socket", null, host, port, null, null, null));
+            return proxies != null && !proxies.isEmpty() && proxies.get(0).type() != Proxy.Type.DIRECT;
+        }
+        catch (URISyntaxException e) {
+            return false;
+        }
+        catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
     private static final class DefaultOriginSecurity extends HttpOriginSecuritySpi {
 
         @Override
@@ -195,6 +289,11 @@ public abstract class HttpOriginSecuritySpi {
 
         @Override
         protected Socket createSocket0(URL url) throws IOException {
+            return createSocket0(url, 0);
+        }
+
+        @Override
+        protected Socket createSocket0(URL url, int connectTimeout) throws IOException {
             String protocol = url.getProtocol();
             String host = url.getHost();
             int port = url.getPort();
@@ -203,12 +302,11 @@ public abstract class HttpOriginSecuritySpi {
             }
 
             if ("http".equalsIgnoreCase(protocol)) {
-                SocketFactory socketFactory = SocketFactory.getDefault();
-                return socketFactory.createSocket(host, port);
+                return connectSocket(host, port, connectTimeout);
             }
             else if ("https".equalsIgnoreCase(protocol)) {
-                SocketFactory socketFactory = SSLSocketFactory.getDefault();
-                return socketFactory.createSocket(host, port);
+                HttpTlsContext tls = HttpTlsContext.of(HttpTlsPolicy.getDefault());
+                return tls.createSocket(connectTlsSocket(host, port, connectTimeout), host, port);
             }
             else {
                 throw new IllegalStateException(format("Unexpected protocol: %s", protocol));
@@ -0,0 +1,246 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.http.internal;
+
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads the status line and the header lines of an HTTP/1.1 response. The bytes are read from the underlying stream in bulk
+ * into a buffer that is reused by the thread, and lines are found by scanning the buffer, instead of reading the stream one
+ * byte at a time. Any bytes that arrive after the end of the head, such as the first WebSocket frames that a server sends
+ * right after the 101 response, are kept and served by the stream returned by {@link #remainder()} ahead of the underlying
+ * stream.
+ */
+final class HttpResponseHeadReader {
+    public static final int MAX_HEAD_LENGTH = 64 * 1024;
+
+    private static final int BUFFER_LENGTH = 4096;
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private static final String MSG_HEAD_TOO_LONG = "HTTP response head exceeds %d bytes";
+    private static final String MSG_INVALID_ASCII = "Invalid ASCII character: '%c'";
+
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>();
+
+    private final InputStream in;
+
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private int consumed;
+
+    public HttpResponseHeadReader(InputStream in) {
+        this.in = in;
+        this.buffer = acquireBuffer();
+    }
+
+    /**
+     * Reads the next line of the head, without the line terminator. Both CRLF and a bare LF end a line.
+     *
+     * @return the line, or null if the end of the stream is reached before any byte of the line
+     * @throws IOException if the line contains a byte that is not ASCII, the head is too long or the stream cannot be read
+     */
+    public String readLine() throws IOException {
+        if (buffer == null) {
+            throw new IllegalStateException("Remainder already taken");
+        }
+
+        int scanFrom = position;
+        for (;;) {
+            for (int i = scanFrom; i < limit; i++) {
+                byte b = buffer[i];
+                if (b == LF) {
+                    int end = (i > position && buffer[i - 1] == CR) ? i - 1 : i;
+                    String line = new String(buffer, position, end - position, US_ASCII);
+                    consumed += i + 1 - position;
+                    position = i + 1;
+                    return line;
+                }
+                else if ((b & 0x80) != 0) {
+                    throw new IOException(format(MSG_INVALID_ASCII, b & 0xff));
+                }
+            }
+            int scanned = limit - position;
+
+            if (fill() == -1) {
+                if (position == limit) {
+                    return null;
+                }
+
+                // The last line is not terminated.
+                String line = new String(buffer, position, limit - position, US_ASCII);
+                consumed += limit - position;
+                position = limit;
+                return line;
+            }
+
+            // Filling the buffer may have moved the line being read to the front.
+            scanFrom = position + scanned;
+        }
+    }
+
+    /**
+     * @return true if any byte has been read from the underlying stream
+     */
+    public boolean hasRead() {
+        return (consumed > 0) || (limit > 0);
+    }
+
+    /**
+     * Returns the stream from which the bytes following the head are read. The bytes that were read from the underlying stream
+     * along with the head are served first. The buffer is handed back to the thread, so no more lines can be read afterwards.
+     *
+     * @return stream positioned right after the head
+     */
+    public Remainder remainder() {
+        if (buffer == null) {
+            throw new IllegalStateException("Remainder already taken");
+        }
+
+        byte[] leftover = (position < limit) ? Arrays.copyOfRange(buffer, position, limit) : null;
+        releaseBuffer(buffer);
+        buffer = null;
+
+        return new Remainder(in, leftover);
+    }
+
+    private int fill() throws IOException {
+        if (consumed + limit - position >= MAX_HEAD_LENGTH) {
+            throw new IOException(format(MSG_HEAD_TOO_LONG, MAX_HEAD_LENGTH));
+        }
+
+        if (position > 0 && limit == buffer.length) {
+            // Move the bytes of the line being read to the front, to make room for the rest of it.
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.min(buffer.length << 1, MAX_HEAD_LENGTH));
+        }
+
+        int bytesRead = in.read(buffer, limit, buffer.length - limit);
+        if (bytesRead > 0) {
+            limit += bytesRead;
+        }
+        return bytesRead;
+    }
+
+    private static byte[] acquireBuffer() {
+        byte[] buffer = BUFFER.get();
+        if (buffer == null) {
+            return new byte[BUFFER_LENGTH];
+        }
+
+        BUFFER.set(null);
+        return buffer;
+    }
+
+    private static void releaseBuffer(byte[] buffer) {
+        // Buffers that grew for an unusually long head are left to the garbage collector.
+        if (buffer.length == BUFFER_LENGTH) {
+            BUFFER.set(buffer);
+        }
+    }
+
+    /**
+     * Stream of the bytes following the head of the response.
+     */
+    static final class Remainder extends InputStream {
+
+        private final InputStream in;
+
+        private byte[] leftover;
+        private int leftoverOffset;
+
+        Remainder(InputStream in, byte[] leftover) {
+            this.in = in;
+            this.leftover = leftover;
+        }
+
+        /**
+         * @return true if bytes that were read along with the head have not been consumed yet
+         */
+        boolean hasLeftover() {
+            return leftover != null;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (leftover == null) {
+                return in.read();
+            }
+
+            int b = leftover[leftoverOffset] & 0xff;
+            consumeLeftover(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (leftover == null) {
+                return in.read(b, off, len);
+            }
+
+            if ((off < 0) || (len < 0) || (off + len > b.length)) {
+                throw new IndexOutOfBoundsException();
+            }
+
+            int length = Math.min(len, leftover.length - leftoverOffset);
+            System.arraycopy(leftover, leftoverOffset, b, off, length);
+            consumeLeftover(length);
+            return length;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (leftover == null) {
+                return in.skip(n);
+            }
+
+            int length = (int) Math.max(0, Math.min(n, leftover.length - leftoverOffset));
+            consumeLeftover(length);
+            return length;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (leftover != null) ? leftover.length - leftoverOffset : in.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            leftover = null;
+            in.close();
+        }
+
+        private void consumeLeftover(int length) {
+            leftoverOffset += length;
+            if (leftoverOffset == leftover.length) {
+                leftover = null;
+            }
+        }
+    }
+}
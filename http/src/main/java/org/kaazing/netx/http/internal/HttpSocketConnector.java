@@ -0,0 +1,330 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.http.internal;
+
+import static java.lang.String.format;
+import static java.nio.channels.SelectionKey.OP_CONNECT;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.SocketFactory;
+
+/**
+ * Connects to a host that resolves to several addresses by racing connection attempts, in the manner of Happy Eyeballs
+ * (RFC 8305). The addresses are tried alternating between IPv6 and IPv4, starting with the family of the first address
+ * returned by the resolver. A new attempt is started every {@link #getAttemptDelay(TimeUnit)} while the earlier ones are
+ * still pending, or as soon as an attempt fails, and the first attempt to complete wins while the others are abandoned. So an
+ * address that does not answer delays the connection by the attempt delay, rather than by the connect timeout of the
+ * operating system.
+ * <p>
+ * The attempts are made with non-blocking channels watched by a selector that belongs to the calling thread for the duration
+ * of the call, so no threads are started. The returned channel is in blocking mode.
+ * <p>
+ * A connect timeout bounds the whole race, as it would bound {@link java.net.Socket#connect(java.net.SocketAddress, int)}.
+ * Since channels are connected directly, a SOCKS proxy or a custom {@link java.net.SocketImplFactory} does not apply to them.
+ */
+public final class HttpSocketConnector {
+    public static final long DEFAULT_ATTEMPT_DELAY_MILLIS = 250L;
+
+    private static final String MSG_INVALID_ATTEMPT_DELAY = "Invalid attempt delay: %d ms";
+    private static final String MSG_INVALID_CONNECT_TIMEOUT = "Invalid connect timeout: %d ms";
+    private static final String MSG_CONNECTION_FAILED = "Connection to %s:%d failed";
+    private static final String MSG_CONNECTION_TIMED_OUT = "Connection to %s:%d timed out after %d ms";
+
+    private static final HttpSocketConnector SHARED =
+            new HttpSocketConnector(HttpAddressResolver.shared(), DEFAULT_ATTEMPT_DELAY_MILLIS);
+
+    private final HttpAddressResolver resolver;
+    private final long attemptDelayMillis;
+
+    public HttpSocketConnector(HttpAddressResolver resolver, long attemptDelayMillis) {
+        if (attemptDelayMillis <= 0) {
+            throw new IllegalArgumentException(format(MSG_INVALID_ATTEMPT_DELAY, attemptDelayMillis));
+        }
+
+        this.resolver = resolver;
+        this.attemptDelayMillis = attemptDelayMillis;
+    }
+
+    /**
+     * Returns the connector that is shared by all the connections, which resolves hosts with
+     * {@link HttpAddressResolver#shared()}.
+     *
+     * @return shared HttpSocketConnector
+     */
+    public static HttpSocketConnector shared() {
+        return SHARED;
+    }
+
+    /**
+     * Resolves the specified host and connects to one of its addresses, without a connect timeout.
+     *
+     * @param host  host name or address literal
+     * @param port  port to connect to
+     * @return connected channel, in blocking mode
+     * @throws IOException if the host cannot be resolved or no connection can be established to any of its addresses
+     */
+    public SocketChannel connect(String host, int port) throws IOException {
+        return connect(host, port, 0);
+    }
+
+    /**
+     * Resolves the specified host and connects to one of its addresses.
+     *
+     * @param host  host name or address literal
+     * @param port  port to connect to
+     * @param connectTimeout  milliseconds to wait for a connection to be established, with zero meaning no timeout
+     * @return connected channel, in blocking mode
+     * @throws SocketTimeoutException if no connection is established before the connect timeout expires
+     * @throws IOException if the host cannot be resolved or no connection can be established to any of its addresses
+     */
+    public SocketChannel connect(String host, int port, int connectTimeout) throws IOException {
+        if (connectTimeout < 0) {
+            throw new IllegalArgumentException(format(MSG_INVALID_CONNECT_TIMEOUT, connectTimeout));
+        }
+
+        InetAddress[] addresses = resolver.resolve(host);
+        return connect(host, port, interleave(addresses), connectTimeout);
+    }
+
+    /**
+     * Resolves the specified host and connects a socket without a channel to one of its addresses. A TLS socket is layered
+     * over such a socket, as it cannot use gathering writes, and the streams of the socket adaptor of a channel serialize
+     * reads and writes before JDK 13. When the host has several addresses, the race picks the address, and the socket is then
+     * connected to it, so that a second connection is made to the address that answered first.
+     *
+     * @param host  host name or address literal
+     * @param port  port to connect to
+     * @param connectTimeout  milliseconds to wait for a connection to be established, with zero meaning no timeout
+     * @return connected socket, created by the default {@link SocketFactory}
+     * @throws SocketTimeoutException if no connection is established before the connect timeout expires
+     * @throws IOException if the host cannot be resolved or no connection can be established to any of its addresses
+     */
+    public Socket connectSocket(String host, int port, int connectTimeout) throws IOException {
+        if (connectTimeout < 0) {
+            throw new IllegalArgumentException(format(MSG_INVALID_CONNECT_TIMEOUT, connectTimeout));
+        }
+
+        InetAddress[] addresses = resolver.resolve(host);
+        return connectSocket(host, port, interleave(addresses), connectTimeout);
+    }
+
+    public long getAttemptDelay(TimeUnit unit) {
+        return unit.convert(attemptDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public HttpAddressResolver getResolver() {
+        return resolver;
+    }
+
+    // unit tests
+    SocketChannel connect(String host, int port, InetAddress[] addresses, int connectTimeout) throws IOException {
+        if (addresses.length == 1) {
+            SocketChannel channel = SocketChannel.open();
+            try {
+                channel.socket().connect(new InetSocketAddress(addresses[0], port), connectTimeout);
+            }
+            catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            return channel;
+        }
+
+        List<SocketChannel> attempts = new ArrayList<SocketChannel>(addresses.length);
+        Selector selector = Selector.open();
+        SocketChannel connected = null;
+        IOException failure = null;
+        try {
+            int pending = 0;
+            int next = 0;
+            long nextAttemptAt = System.nanoTime();
+            long deadline = nextAttemptAt + TimeUnit.MILLISECONDS.toNanos(connectTimeout);
+
+            while (connected == null) {
+                long now = System.nanoTime();
+                if (connectTimeout != 0 && now - deadline >= 0) {
+                    throw new SocketTimeoutException(format(MSG_CONNECTION_TIMED_OUT, host, port, connectTimeout));
+                }
+
+                if (next < addresses.length && (pending == 0 || now - nextAttemptAt >= 0)) {
+                    SocketChannel channel = SocketChannel.open();
+                    attempts.add(channel);
+                    try {
+                        channel.configureBlocking(false);
+                        if (channel.connect(new InetSocketAddress(addresses[next++], port))) {
+                            connected = channel;
+                            break;
+                        }
+                        channel.register(selector, OP_CONNECT);
+                        pending++;
+                        nextAttemptAt = now + TimeUnit.MILLISECONDS.toNanos(attemptDelayMillis);
+                    }
+                    catch (IOException e) {
+                        failure = (failure != null) ? failure : e;
+                        channel.close();
+                    }
+                    continue;
+                }
+
+                if (pending == 0) {
+                    break;
+                }
+
+                long timeout = 0;
+                if (next < addresses.length) {
+                    timeout = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(nextAttemptAt - now));
+                }
+                if (connectTimeout != 0) {
+                    long remaining = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(deadline - now));
+                    timeout = (timeout == 0) ? remaining : Math.min(timeout, remaining);
+                }
+                selector.select(timeout);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new ClosedByInterruptException();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    try {
+                        if (channel.finishConnect()) {
+                            connected = channel;
+                            break;
+                        }
+                    }
+                    catch (IOException e) {
+                        failure = (failure != null) ? failure : e;
+                        key.cancel();
+                        channel.close();
+                        pending--;
+
+                        // Do not wait for the attempt delay to try the next address.
+                        nextAttemptAt = now;
+                    }
+                }
+            }
+        }
+        finally {
+            for (SocketChannel channel : attempts) {
+                if (channel != connected) {
+                    channel.close();
+                }
+            }
+
+            // Closing the selector deregisters the connected channel, so that it can be switched back to blocking mode.
+            selector.close();
+        }
+
+        if (connected == null) {
+            ConnectException e = new ConnectException(format(MSG_CONNECTION_FAILED, host, port));
+            e.initCause(failure);
+            throw e;
+        }
+
+        connected.configureBlocking(true);
+        return connected;
+    }
+
+    // unit tests
+    Socket connectSocket(String host, int port, InetAddress[] addresses, int connectTimeout) throws IOException {
+        long start = System.nanoTime();
+
+        InetAddress address = addresses[0];
+        if (addresses.length > 1) {
+            SocketChannel channel = connect(host, port, addresses, connectTimeout);
+            try {
+                address = channel.socket().getInetAddress();
+            }
+            finally {
+                channel.close();
+            }
+        }
+
+        int timeout = connectTimeout;
+        if (connectTimeout != 0) {
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (elapsedMillis >= connectTimeout) {
+                throw new SocketTimeoutException(format(MSG_CONNECTION_TIMED_OUT, host, port, connectTimeout));
+            }
+            timeout = (int) (connectTimeout - elapsedMillis);
+        }
+
+        Socket socket = SocketFactory.getDefault().createSocket();
+        try {
+            socket.connect(new InetSocketAddress(address, port), timeout);
+        }
+        catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    /**
+     * Orders the addresses in the order they are raced, alternating between IPv6 and IPv4 and starting with the family of the
+     * first address.
+     *
+     * @param addresses  addresses in the order returned by the resolver
+     * @return interleaved addresses
+     */
+    public static InetAddress[] interleave(InetAddress[] addresses) {
+        if (addresses.length <= 1) {
+            return addresses;
+        }
+
+        List<InetAddress> preferred = new ArrayList<InetAddress>(addresses.length);
+        List<InetAddress> other = new ArrayList<InetAddress>(addresses.length);
+        boolean preferIPv6 = addresses[0] instanceof Inet6Address;
+        for (InetAddress address : addresses) {
+            if ((address instanceof Inet6Address) == preferIPv6) {
+                preferred.add(address);
+            }
+            else {
+                other.add(address);
+            }
+        }
+
+        InetAddress[] interleaved = new InetAddress[addresses.length];
+        int length = 0;
+        for (int i = 0; i < Math.max(preferred.size(), other.size()); i++) {
+            if (i < preferred.size()) {
+                interleaved[length++] = preferred.get(i);
+            }
+            if (i < other.size()) {
+                interleaved[length++] = other.get(i);
+            }
+        }
+        return interleaved;
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.http.internal;
+
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.kaazing.netx.http.HttpTlsPolicy;
+
+/**
+ * TLS layer of the connections made under an {@link HttpTlsPolicy}. The SSLContext of the policy is set up once, and its
+ * socket factory is used for all the connections, so that the client session cache of the context is shared by them. Each
+ * TLS socket is layered over a connected socket and created with the host and port of the origin, which is what the session
+ * cache is keyed by, so a later connection to the same origin offers the cached session for resumption.
+ * <p>
+ * On JREs that support endpoint identification, which was added in Java 7, the server certificate must match the host of the
+ * origin, as it does for HttpsURLConnection. Older JREs only check that the certificate is trusted.
+ * <p>
+ * The handshake is completed before the socket is returned, and is counted as resumed if the negotiated session was created
+ * before the handshake started.
+ */
+public final class HttpTlsContext {
+    private static final String MSG_CONTEXT_FAILED = "Failed to initialize TLS context: %s";
+    private static final String MSG_CONFIGURATION_FAILED = "Invalid TLS configuration: %s";
+    private static final String MSG_TO_STRING =
+            "HttpTlsContext[fullHandshakes=%d, resumedHandshakes=%d, fullHandshakeTime=%d ms, resumedHandshakeTime=%d ms]";
+
+    private static final String PROTOCOL_TLS = "TLS";
+    private static final String ENDPOINT_IDENTIFICATION_ALGORITHM = "HTTPS";
+    private static final Method SET_ENDPOINT_IDENTIFICATION_ALGORITHM = endpointIdentificationSetter();
+
+    private static final Map<HttpTlsPolicy, HttpTlsContext> CONTEXTS = new WeakHashMap<HttpTlsPolicy, HttpTlsContext>();
+
+    private final HttpTlsPolicy policy;
+    private final Lock lock;
+    private final AtomicLong fullHandshakes;
+    private final AtomicLong resumedHandshakes;
+    private final AtomicLong fullHandshakeNanos;
+    private final AtomicLong resumedHandshakeNanos;
+
+    private volatile SSLSocketFactory socketFactory;
+
+    private HttpTlsContext(HttpTlsPolicy policy) {
+        this.policy = policy;
+        this.lock = new ReentrantLock();
+        this.fullHandshakes = new AtomicLong();
+        this.resumedHandshakes = new AtomicLong();
+        this.fullHandshakeNanos = new AtomicLong();
+        this.resumedHandshakeNanos = new AtomicLong();
+    }
+
+    /**
+     * Returns the TLS layer of the specified policy, which lives as long as the policy.
+     *
+     * @param policy  HttpTlsPolicy
+     * @return HttpTlsContext of the policy
+     */
+    public static HttpTlsContext of(HttpTlsPolicy policy) {
+        synchronized (CONTEXTS) {
+            HttpTlsContext context = CONTEXTS.get(policy);
+            if (context == null) {
+                context = new HttpTlsContext(policy);
+                CONTEXTS.put(policy, context);
+            }
+            return context;
+        }
+    }
+
+    /**
+     * Layers a TLS socket over the specified connected socket and completes the handshake. The connected socket is closed if
+     * the handshake fails, and when the TLS socket is closed.
+     *
+     * @param socket  connected socket
+     * @param host    host of the origin, which the server certificate must match where endpoint identification is supported
+     * @param port    port of the origin
+     * @return TLS socket whose handshake is complete
+     * @throws IOException if the handshake fails or the policy cannot be applied
+     */
+    public SSLSocket createSocket(Socket socket, String host, int port) throws IOException {
+        SSLSocket sslSocket;
+        try {
+            sslSocket = (SSLSocket) socketFactory().createSocket(socket, host, port, true);
+        }
+        catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+
+        try {
+            String[] protocols = policy.getEnabledProtocols();
+            if (protocols != null) {
+                sslSocket.setEnabledProtocols(protocols);
+            }
+
+            String[] cipherSuites = policy.getEnabledCipherSuites();
+            if (cipherSuites != null) {
+                sslSocket.setEnabledCipherSuites(cipherSuites);
+            }
+
+            enableEndpointIdentification(sslSocket);
+
+            long startedAt = System.currentTimeMillis();
+            long start = System.nanoTime();
+            sslSocket.startHandshake();
+            long elapsed = System.nanoTime() - start;
+
+            handshakeCompleted(sslSocket.getSession().getCreationTime() < startedAt, elapsed);
+            return sslSocket;
+        }
+        catch (IllegalArgumentException e) {
+            // Thrown for protocols and cipher suites that the context does not support.
+            sslSocket.close();
+            throw (IOException) new IOException(format(MSG_CONFIGURATION_FAILED, e.getMessage())).initCause(e);
+        }
+        catch (IOException e) {
+            sslSocket.close();
+            throw e;
+        }
+    }
+
+    public long getFullHandshakeCount() {
+        return fullHandshakes.get();
+    }
+
+    public long getResumedHandshakeCount() {
+        return resumedHandshakes.get();
+    }
+
+    public long getFullHandshakeTime(TimeUnit unit) {
+        return unit.convert(fullHandshakeNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    public long getResumedHandshakeTime(TimeUnit unit) {
+        return unit.convert(resumedHandshakeNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return format(MSG_TO_STRING, fullHandshakes.get(), resumedHandshakes.get(),
+                getFullHandshakeTime(TimeUnit.MILLISECONDS), getResumedHandshakeTime(TimeUnit.MILLISECONDS));
+    }
+
+    // Package-private for unit tests, which cannot complete real handshakes without a server certificate.
+    void handshakeCompleted(boolean resumed, long elapsedNanos) {
+        (resumed ? resumedHandshakes : fullHandshakes).incrementAndGet();
+        (resumed ? resumedHandshakeNanos : fullHandshakeNanos).addAndGet(elapsedNanos);
+    }
+
+    private SSLSocketFactory socketFactory() throws IOException {
+        SSLSocketFactory factory = socketFactory;
+        if (factory != null) {
+            return factory;
+        }
+
+        try {
+            lock.lock();
+
+            if (socketFactory == null) {
+                SSLContext context = policy.getSSLContext();
+                boolean sessionSettings = policy.getSessionCacheSize() != -1 || policy.getSessionTimeout() != -1;
+                if (context == null && sessionSettings) {
+                    // The default context is shared by the whole JRE, so the session settings go to a context of their own.
+                    context = SSLContext.getInstance(PROTOCOL_TLS);
+                    context.init(null, null, null);
+                }
+                else if (context == null) {
+                    // Unlike a new context, the default one is set up with the key store of the javax.net.ssl properties.
+                    context = SSLContext.getDefault();
+                }
+
+                SSLSessionContext sessionContext = context.getClientSessionContext();
+                if (sessionContext != null) {
+                    if (policy.getSessionCacheSize() != -1) {
+                        sessionContext.setSessionCacheSize(policy.getSessionCacheSize());
+                    }
+                    if (policy.getSessionTimeout() != -1) {
+                        sessionContext.setSessionTimeout(policy.getSessionTimeout());
+                    }
+                }
+
+                socketFactory = context.getSocketFactory();
+            }
+
+            return socketFactory;
+        }
+        catch (GeneralSecurityException e) {
+            throw (IOException) new IOException(format(MSG_CONTEXT_FAILED, e.getMessage())).initCause(e);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private static void enableEndpointIdentification(SSLSocket sslSocket) throws IOException {
+        if (SET_ENDPOINT_IDENTIFICATION_ALGORITHM == null) {
+            return;
+        }
+
+        SSLParameters parameters = sslSocket.getSSLParameters();
+        try {
+            SET_ENDPOINT_IDENTIFICATION_ALGORITHM.invoke(parameters, ENDPOINT_IDENTIFICATION_ALGORITHM);
+        }
+        catch (IllegalAccessException e) {
+            throw (IOException) new IOException(format(MSG_CONFIGURATION_FAILED, e.getMessage())).initCause(e);
+        }
+        catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            throw (IOException) new IOException(format(MSG_CONFIGURATION_FAILED, cause.getMessage())).initCause(cause);
+        }
+        sslSocket.setSSLParameters(parameters);
+    }
+
+    // SSLParameters.setEndpointIdentificationAlgorithm(String) was added in Java 7, and is looked up so that Java 6 is supported.
+    private static Method endpointIdentificationSetter() {
+        try {
+            return SSLParameters.class.getMethod("setEndpointIdentificationAlgorithm", String.class);
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
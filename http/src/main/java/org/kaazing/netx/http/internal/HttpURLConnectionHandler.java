@@ -19,16 +19,17 @@ import static java.lang.Integer.parseInt;
 import static java.lang.String.format;
 import static java.net.HttpURLConnection.HTTP_MOVED_PERM;
 import static java.net.HttpURLConnection.HTTP_MOVED_TEMP;
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
+import static java.net.HttpURLConnection.HTTP_NO_CONTENT;
 import static java.net.HttpURLConnection.HTTP_SEE_OTHER;
 import static java.net.HttpURLConnection.HTTP_UNAUTHORIZED;
+import static java.util.Arrays.copyOf;
 import static java.util.Arrays.fill;
 import static org.kaazing.netx.http.HttpURLConnection.HTTP_SWITCHING_PROTOCOLS;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.net.Authenticator;
 import java.net.CookieHandler;
 import java.net.HttpURLConnection;
@@ -36,6 +37,9 @@ import java.net.PasswordAuthentication;
 import java.net.Socket;
 import java.net.URI;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.Charset;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -44,6 +48,8 @@ import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.kaazing.netx.http.HttpUpgradeRequestEncoder;
+
 abstract class HttpURLConnectionHandler {
 
     private static final Charset US_ASCII = Charset.forName("US-ASCII");
@@ -161,19 +167,33 @@ abstract class HttpURLConnectionHandler {
         private static final Pattern PATTERN_BASIC_CHALLENGE = Pattern.compile("Basic(?: realm=\"([^\"]+)\")?");
         private static final Pattern PATTERN_APPLICATION_CHALLENGE = Pattern.compile("Application ([a-zA-Z_]*)\\s?(.*)");
 
+        private static final String HEADER_CONNECTION = "Connection";
+        private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+        private static final String HEADER_TRANSFER_ENCODING = "Transfer-Encoding";
+
+        private static final int CRLF_LENGTH = 2;
+
+        // A response body longer than this is not worth reading through just to keep the connection.
+        private static final int MAX_DRAIN_LENGTH = 64 * 1024;
+
         private static enum State { INITIAL, HANDSHAKE_SENT, HANDSHAKE_RECEIVED }
 
         private final HttpOriginSecuritySpi security;
+        private final HttpConnectionPool pool;
 
         private State state;
         private Socket socket;
+        private URL socketURL;
+        private boolean reused;
         private InputStream input;
         private OutputStream output;
         private InputStream error;
+        private ResponseBodyInputStream responseBody;
 
         public Upgradeable(HttpURLConnectionImpl connection) {
             super(connection);
             security = HttpOriginSecuritySpi.newInstance();
+            pool = HttpConnectionPool.shared();
             state = State.INITIAL;
         }
 
@@ -184,67 +204,85 @@ abstract class HttpURLConnectionHandler {
                 // TODO: support Proxy (instance proxy, or system proxy)
 
                 URL url = connection.getURL();
-                String host = url.getHost();
-                int port = url.getPort();
-                if (port == -1) {
-                    port = url.getDefaultPort();
-                }
-
-                socket = security.createSocket(url);
-                output = new TcpOutputStream(socket);
-
-                String method = connection.getRequestMethod();
-                Map<String, List<String>> headers = connection.getCachedRequestProperties();
-
-                Writer writer = new OutputStreamWriter(output, US_ASCII);
-                writer.write(format("%s %s HTTP/1.1\r\n", method, url.getFile()));
-                writer.write(format("Host: %s:%s\r\n", host, port));
-                for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
-                    String headerName = entry.getKey();
-                    List<String> headerValues = entry.getValue();
-                    for (String headerValue: headerValues) {
-                        writer.write(format("%s: %s\r\n", headerName, headerValue));
+                Socket pooled = pool.acquire(url);
+                if (pooled != null) {
+                    try {
+                        sendRequest(url, pooled, true);
+                        break;
                     }
-                }
-
-                CookieHandler handler = CookieHandler.getDefault();
-                if (handler != null) {
-                    Map<String, List<String>> cookieHeaders = handler.get(URI.create(url.toString()), headers);
-                    for (Map.Entry<String, List<String>> entry : cookieHeaders.entrySet()) {
-                        String headerName = entry.getKey();
-                        List<String> headerValues = entry.getValue();
-                        for (String headerValue: headerValues) {
-                            writer.write(format("%s: %s\r\n", headerName, headerValue));
-                        }
+                    catch (IOException e) {
+                        // The server closed the idle connection just after it was validated, so a new one is used instead.
+                        closeQuietly(pooled);
                     }
                 }
 
-                writer.write("\r\n");
-                writer.flush();
-
-                state = State.HANDSHAKE_SENT;
+                sendRequest(url, security.createSocket(url, connection.getConnectTimeout()), false);
                 break;
             default:
                 break;
             }
         }
 
-        @Override
-        public void disconnect() {
-            try {
-                if (output != null) {
-                    output.close();
-                }
-                if (input != null) {
-                    input.close();
-                }
-                if (socket != null) {
-                    socket.close();
-                }
+        private void sendRequest(URL url, Socket socket, boolean reused) throws IOException {
+            String host = url.getHost();
+            int port = url.getPort();
+            if (port == -1) {
+                port = url.getDefaultPort();
             }
-            catch (IOException e) {
-                // ignore
+
+            this.socket = socket;
+            this.socketURL = url;
+            this.reused = reused;
+            this.responseBody = null;
+            this.output = newTcpOutputStream(socket);
+
+            String method = connection.getRequestMethod();
+            Map<String, List<String>> headers = connection.getCachedRequestProperties();
+            HttpUpgradeRequestEncoder encoder = connection.getUpgradeRequestEncoder();
+
+            // The encoded head ends with the empty line, which is written again after the request properties.
+            byte[] head = (encoder != null) ? encoder.encodeRequest(url) : null;
+
+            StringBuilder request = new StringBuilder();
+            if (head == null) {
+                request.append(method).append(' ').append(url.getFile()).append(" HTTP/1.1\r\n");
+                request.append("Host: ").append(host).append(':').append(port).append("\r\n");
             }
+            appendHeaders(request, headers);
+
+            CookieHandler handler = CookieHandler.getDefault();
+            if (handler != null) {
+                appendHeaders(request, handler.get(URI.create(url.toString()), headers));
+            }
+
+            request.append("\r\n");
+
+            byte[] requestBytes = request.toString().getBytes(US_ASCII);
+            if (head != null) {
+                int headLength = head.length - CRLF_LENGTH;
+                byte[] headerBytes = requestBytes;
+                requestBytes = copyOf(head, headLength + headerBytes.length);
+                System.arraycopy(headerBytes, 0, requestBytes, headLength, headerBytes.length);
+            }
+
+            output.write(requestBytes);
+            output.flush();
+
+            state = State.HANDSHAKE_SENT;
+        }
+
+        private static void appendHeaders(StringBuilder request, Map<String, List<String>> headers) {
+            for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                String headerName = entry.getKey();
+                for (String headerValue : entry.getValue()) {
+                    request.append(headerName).append(": ").append(headerValue).append("\r\n");
+                }
+            }
+        }
+
+        @Override
+        public void disconnect() {
+            recycle();
             state = State.INITIAL;
         }
 
@@ -255,12 +293,30 @@ abstract class HttpURLConnectionHandler {
 
             switch (state) {
             case HANDSHAKE_SENT:
-                input = new TcpInputStream(socket);
+                HttpResponseHeadReader reader = new HttpResponseHeadReader(newTcpInputStream(socket));
+
+                String start;
+                try {
+                    start = reader.readLine();
+                }
+                catch (IOException e) {
+                    if (!reused || reader.hasRead()) {
+                        throw e;
+                    }
+                    start = null;
+                }
 
-                @SuppressWarnings("resource")
-                LineReader reader = new LineReader(input);
+                if ((start == null) && reused) {
+                    // The server closed the idle connection as the request arrived, without a byte of response. So the
+                    // request has not been processed, and it is sent once more on a new connection.
+                    Socket stale = socket;
+                    socket = null;
+                    closeQuietly(stale);
+
+                    sendRequest(socketURL, security.createSocket(socketURL, connection.getConnectTimeout()), false);
+                    return getInputStream();
+                }
 
-                String start = reader.readLine();
                 connection.addHeaderField(null, start);
 
                 if ((start == null) || start.isEmpty()) {
@@ -276,8 +332,13 @@ abstract class HttpURLConnectionHandler {
 
                 Map<String, List<String>> cookies = null;
                 List<String> challenges = null;
+                long contentLength = -1;
+                boolean persistent = true;
 
-                for (String header = reader.readLine(); !header.isEmpty() && header != null; header = reader.readLine()) {
+                for (String header = reader.readLine(); header == null || !header.isEmpty(); header = reader.readLine()) {
+                    if (header == null) {
+                        throw new IllegalStateException("Bad HTTP/1.1 syntax");
+                    }
                     int colonAt = header.indexOf(':');
                     if (colonAt == -1) {
                         throw new IllegalStateException("Bad HTTP/1.1 syntax");
@@ -303,10 +364,37 @@ abstract class HttpURLConnectionHandler {
                         challenges.add(value);
                     }
                     else {
+                        if (HEADER_CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                            contentLength = parseContentLength(value);
+                        }
+                        else if (HEADER_CONNECTION.equalsIgnoreCase(name) && value.toLowerCase().contains("close")) {
+                            persistent = false;
+                        }
+                        else if (HEADER_TRANSFER_ENCODING.equalsIgnoreCase(name)) {
+                            // The body is not decoded here, so it's end cannot be found.
+                            persistent = false;
+                        }
                         connection.addHeaderField(name, value);
                     }
                 }
 
+                // Bytes that arrived along with the head, such as WebSocket frames, are read ahead of the socket.
+                HttpResponseHeadReader.Remainder remainder = reader.remainder();
+                input = remainder;
+
+                // A response that does not switch protocols leaves the connection in HTTP/1.1, and the connection can be
+                // reused for the next request to the same origin once the body has been read, if it's length is known.
+                if (responseCode != HTTP_SWITCHING_PROTOCOLS) {
+                    if (responseCode == HTTP_NO_CONTENT || responseCode == HTTP_NOT_MODIFIED) {
+                        contentLength = 0;
+                    }
+
+                    if (persistent && contentLength != -1) {
+                        responseBody = new ResponseBodyInputStream(remainder, contentLength);
+                        input = responseBody;
+                    }
+                }
+
                 if (cookies != null && !cookies.isEmpty()) {
                     CookieHandler handler = CookieHandler.getDefault();
                     if (handler != null) {
@@ -382,10 +470,16 @@ abstract class HttpURLConnectionHandler {
                         String authorization = new String(Base64.encode(credentials), US_ASCII);
                         connection.setRequestProperty("Authorization", format("Basic %s", authorization));
 
+                        // Release the connection, so that the next request can be sent on it, and let the next response
+                        // replace the header fields of this one.
+                        recycle();
+                        connection.clearHeaderFields();
+
                         // Trigger next request with "Authorization" header set.
                         getInputStream();
                     }
                     else if (PATTERN_APPLICATION_CHALLENGE.matcher(challenge).matches()) {
+                        recycle();
                         state = State.INITIAL;
 
                         // Deal with "Application *" authentication schemes and
@@ -397,6 +491,52 @@ abstract class HttpURLConnectionHandler {
             }
         }
 
+        private void recycle() {
+            Socket socket = this.socket;
+            if (socket == null) {
+                return;
+            }
+
+            this.socket = null;
+
+            if (responseBody != null && responseBody.drain()) {
+                pool.release(socketURL, socket);
+                return;
+            }
+
+            try {
+                if (output != null) {
+                    output.close();
+                }
+                if (input != null) {
+                    input.close();
+                }
+                socket.close();
+            }
+            catch (IOException e) {
+                // ignore
+            }
+        }
+
+        private static void closeQuietly(Socket socket) {
+            try {
+                socket.close();
+            }
+            catch (IOException e) {
+                // ignore
+            }
+        }
+
+        private static long parseContentLength(String value) {
+            try {
+                long contentLength = Long.parseLong(value);
+                return (contentLength >= 0) ? contentLength : -1;
+            }
+            catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
         private static PasswordAuthentication requestPasswordAuthentication(URL url, String realm, String scheme) {
             String host = url.getHost();
             int port = url.getPort();
@@ -404,9 +544,109 @@ abstract class HttpURLConnectionHandler {
 
             return Authenticator.requestPasswordAuthentication(host, null, port, protocol, realm, scheme);
         }
+
+        /**
+         * Body of a response that does not switch protocols, and whose length is known. Closing it releases the connection to
+         * the pool instead of shutting down the input of the socket.
+         */
+        private final class ResponseBodyInputStream extends InputStream {
+
+            private final HttpResponseHeadReader.Remainder input;
+
+            private long remaining;
+            private boolean closed;
+
+            public ResponseBodyInputStream(HttpResponseHeadReader.Remainder input, long contentLength) {
+                this.input = input;
+                this.remaining = contentLength;
+            }
+
+            @Override
+            public int read() throws IOException {
+                if (closed || remaining == 0) {
+                    return -1;
+                }
+
+                int b = input.read();
+                if (b != -1) {
+                    remaining--;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (closed || remaining == 0) {
+                    return -1;
+                }
+
+                int bytesRead = input.read(b, off, (int) Math.min(len, remaining));
+                if (bytesRead > 0) {
+                    remaining -= bytesRead;
+                }
+                return bytesRead;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return (closed) ? 0 : (int) Math.min(input.available(), remaining);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (this == responseBody) {
+                    recycle();
+                }
+                closed = true;
+            }
+
+            // Only the bytes that have already arrived are read, as a read blocks without a timeout on a channel and for as long
+            // as the read timeout otherwise. The connection is closed instead if the rest of the body is still on its way.
+            boolean drain() {
+                if (closed || remaining > MAX_DRAIN_LENGTH) {
+                    closed = true;
+                    return false;
+                }
+
+                try {
+                    byte[] buf = new byte[(int) Math.min(remaining, 8192)];
+                    while (remaining > 0) {
+                        int available = input.available();
+                        if (available <= 0) {
+                            return false;
+                        }
+
+                        int bytesRead = input.read(buf, 0, (int) Math.min(Math.min(buf.length, available), remaining));
+                        if (bytesRead == -1) {
+                            return false;
+                        }
+                        remaining -= bytesRead;
+                    }
+
+                    // Bytes beyond the body were not asked for, so the connection is out of step with the requests.
+                    return !input.hasLeftover();
+                }
+                catch (IOException e) {
+                    return false;
+                }
+                finally {
+                    closed = true;
+                }
+            }
+        }
     }
 
 
+    // The streams of a socket adaptor serialize reads and writes on the blocking lock of the channel before JDK 13, so a reader
+    // blocked on a quiet server would hold up every write. Reading and writing through the channel itself does not.
+    private static InputStream newTcpInputStream(Socket socket) throws IOException {
+        return (socket.getChannel() != null) ? new TcpChannelInputStream(socket) : new TcpInputStream(socket);
+    }
+
+    private static OutputStream newTcpOutputStream(Socket socket) throws IOException {
+        return (socket.getChannel() != null) ? new TcpChannelOutputStream(socket) : new TcpOutputStream(socket);
+    }
+
     private static final class TcpInputStream extends InputStream {
 
         private final Socket socket;
@@ -468,6 +708,55 @@ abstract class HttpURLConnectionHandler {
         }
     }
 
+    private static final class TcpChannelInputStream extends InputStream {
+
+        private final Socket socket;
+        private final SocketChannel channel;
+
+        private byte[] single;
+
+        public TcpChannelInputStream(Socket socket) {
+            this.socket = socket;
+            this.channel = socket.getChannel();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (single == null) {
+                single = new byte[1];
+            }
+
+            int bytesRead = read(single, 0, 1);
+            return (bytesRead == -1) ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            // A blocking channel waits for at least one byte.
+            return channel.read(ByteBuffer.wrap(b, off, len));
+        }
+
+        @Override
+        public int available() throws IOException {
+            // The socket adaptor reports the bytes waiting on the channel since JDK 13, and none before.
+            return socket.getInputStream().available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (socket.isOutputShutdown()) {
+                socket.close();
+            }
+            else {
+                socket.shutdownInput();
+            }
+        }
+    }
+
     private static final class TcpOutputStream extends OutputStream {
 
         private final Socket socket;
@@ -509,4 +798,76 @@ abstract class HttpURLConnectionHandler {
         }
 
     }
+
+    private static final class TcpChannelOutputStream extends OutputStream implements GatheringByteChannel {
+
+        private final Socket socket;
+        private final SocketChannel channel;
+
+        private byte[] single;
+
+        public TcpChannelOutputStream(Socket socket) {
+            this.socket = socket;
+            this.channel = socket.getChannel();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (single == null) {
+                single = new byte[1];
+            }
+
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b) throws IOException {
+            write(b, 0, b.length);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer src = ByteBuffer.wrap(b, off, len);
+            while (src.hasRemaining()) {
+                channel.write(src);
+            }
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return channel.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) throws IOException {
+            return channel.write(srcs);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return channel.write(srcs, offset, length);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // nothing is buffered
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (socket.isInputShutdown()) {
+                socket.close();
+            }
+            else {
+                socket.shutdownOutput();
+            }
+        }
+
+    }
 }
@@ -32,6 +32,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.kaazing.netx.http.HttpURLConnection;
+import org.kaazing.netx.http.HttpUpgradeRequestEncoder;
 import org.kaazing.netx.http.auth.ChallengeHandler;
 import org.kaazing.netx.http.auth.ChallengeRequest;
 import org.kaazing.netx.http.auth.ChallengeResponse;
@@ -179,6 +180,19 @@ final class HttpURLConnectionImpl extends HttpURLConnection {
         detectHttpUpgrade(key);
     }
 
+    @Override
+    public boolean isUpgradeRequestEncoderSupported() {
+        return true;
+    }
+
+    @Override
+    public void setUpgradeRequestEncoder(HttpUpgradeRequestEncoder upgradeRequestEncoder) {
+        super.setUpgradeRequestEncoder(upgradeRequestEncoder);
+        if (upgradeRequestEncoder != null) {
+            this.handler = new HttpURLConnectionHandler.Upgradeable(this);
+        }
+    }
+
     @Override
     public boolean usingProxy() {
         return false;
@@ -209,6 +223,10 @@ final class HttpURLConnectionImpl extends HttpURLConnection {
         this.headerFields.addAll(headerFields);
     }
 
+    void clearHeaderFields() {
+        this.headerFields.clear();
+    }
+
     void storeCookies(CookieHandler handler) throws IOException {
         URI locationURI = URI.create(url.toString());
         handler.put(locationURI, headerFields.map());
@@ -221,7 +239,7 @@ final class HttpURLConnectionImpl extends HttpURLConnection {
         this.headerFields.clear();
         this.handler = new HttpURLConnectionHandler.Default(this);
 
-        if (cachedRequestProperties.value(HEADER_UPGRADE) != null) {
+        if (cachedRequestProperties.value(HEADER_UPGRADE) != null || getUpgradeRequestEncoder() != null) {
             this.handler = new HttpURLConnectionHandler.Upgradeable(this);
         }
     }
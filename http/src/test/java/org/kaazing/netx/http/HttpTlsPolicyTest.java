@@ -0,0 +1,87 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import javax.net.ssl.SSLContext;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class HttpTlsPolicyTest {
+
+    @After
+    public void tearDown() throws Exception {
+        HttpTlsPolicy.setDefault(HttpTlsPolicy.defaults());
+    }
+
+    @Test
+    public void shouldUseSettingsOfTheJREByDefault() throws Exception {
+        HttpTlsPolicy policy = HttpTlsPolicy.getDefault();
+
+        assertSame(HttpTlsPolicy.defaults(), policy);
+        assertNull(policy.getSSLContext());
+        assertNull(policy.getEnabledProtocols());
+        assertNull(policy.getEnabledCipherSuites());
+        assertEquals(-1, policy.getSessionCacheSize());
+        assertEquals(-1, policy.getSessionTimeout());
+    }
+
+    @Test
+    public void shouldCopyEnabledProtocols() throws Exception {
+        SSLContext context = SSLContext.getInstance("TLS");
+        String[] protocols = new String[] { "TLSv1.2" };
+        HttpTlsPolicy policy = HttpTlsPolicy.custom(context, protocols, null, 100, 3600);
+        protocols[0] = "SSLv3";
+
+        assertSame(context, policy.getSSLContext());
+        assertArrayEquals(new String[] { "TLSv1.2" }, policy.getEnabledProtocols());
+        assertEquals(100, policy.getSessionCacheSize());
+        assertEquals(3600, policy.getSessionTimeout());
+
+        policy.getEnabledProtocols()[0] = "SSLv3";
+        assertArrayEquals(new String[] { "TLSv1.2" }, policy.getEnabledProtocols());
+    }
+
+    @Test
+    public void shouldSetDefault() throws Exception {
+        HttpTlsPolicy policy = HttpTlsPolicy.custom(null, null, null, 0, 0);
+        HttpTlsPolicy.setDefault(policy);
+
+        assertSame(policy, HttpTlsPolicy.getDefault());
+        assertEquals(0, policy.getFullHandshakeCount());
+        assertEquals(0, policy.getResumedHandshakeCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEmptyCipherSuites() throws Exception {
+        HttpTlsPolicy.custom(null, null, new String[0], -1, -1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidSessionTimeout() throws Exception {
+        HttpTlsPolicy.custom(null, null, null, -1, -2);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void shouldRejectNullDefault() throws Exception {
+        HttpTlsPolicy.setDefault(null);
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.http.internal;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import org.junit.Test;
+
+public class HttpAddressResolverTest {
+
+    @Test
+    public void shouldCacheAddressesUntilExpired() throws Exception {
+        CountingResolver resolver = new CountingResolver(100, 100);
+
+        InetAddress[] addresses = resolver.resolve("localhost");
+        assertEquals(1, resolver.lookups);
+        assertSame(InetAddress.getLoopbackAddress(), addresses[0]);
+
+        InetAddress[] cached = resolver.resolve("LOCALHOST");
+        assertEquals(1, resolver.lookups);
+        assertNotSame(addresses, cached);
+        assertSame(addresses[0], cached[0]);
+        assertEquals(1, resolver.getHitCount());
+        assertEquals(1, resolver.getMissCount());
+
+        Thread.sleep(150);
+
+        resolver.resolve("localhost");
+        assertEquals(2, resolver.lookups);
+        assertEquals(2, resolver.getMissCount());
+    }
+
+    @Test
+    public void shouldCacheFailuresUntilExpired() throws Exception {
+        CountingResolver resolver = new CountingResolver(100, 100);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                resolver.resolve("unknown.invalid");
+                fail();
+            }
+            catch (UnknownHostException e) {
+                assertEquals("unknown.invalid", e.getMessage());
+            }
+        }
+        assertEquals(1, resolver.lookups);
+        assertEquals(1, resolver.getFailureCount());
+
+        Thread.sleep(150);
+
+        try {
+            resolver.resolve("unknown.invalid");
+            fail();
+        }
+        catch (UnknownHostException e) {
+            assertEquals(2, resolver.lookups);
+        }
+    }
+
+    @Test
+    public void shouldNotCacheWhenTimeToLiveIsZero() throws Exception {
+        CountingResolver resolver = new CountingResolver(0, 0);
+
+        resolver.resolve("localhost");
+        resolver.resolve("localhost");
+
+        assertEquals(2, resolver.lookups);
+        assertEquals(0, resolver.getHitCount());
+    }
+
+    @Test
+    public void shouldLookUpAgainAfterInvalidate() throws Exception {
+        CountingResolver resolver = new CountingResolver(5000, 5000);
+
+        resolver.resolve("localhost");
+        resolver.invalidate("Localhost");
+        resolver.resolve("localhost");
+
+        assertEquals(2, resolver.lookups);
+        assertEquals(5000, resolver.getTimeToLive(MILLISECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNegativeTimeToLive() throws Exception {
+        new HttpAddressResolver(-1, 0);
+    }
+
+    private static final class CountingResolver extends HttpAddressResolver {
+        private int lookups;
+
+        CountingResolver(long ttlMillis, long negativeTtlMillis) {
+            super(ttlMillis, negativeTtlMillis);
+        }
+
+        @Override
+        InetAddress[] lookup(String host) throws UnknownHostException {
+            lookups++;
+            if (host.endsWith(".invalid")) {
+                throw new UnknownHostException(host);
+            }
+            return new InetAddress[] { InetAddress.getLoopbackAddress() };
+        }
+    }
+}
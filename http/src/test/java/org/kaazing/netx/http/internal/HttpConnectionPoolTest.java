@@ -0,0 +1,150 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.http.internal;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpConnectionPoolTest {
+
+    private ServerSocket server;
+    private List<Socket> accepted;
+    private URL url;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new ServerSocket(0);
+        accepted = new ArrayList<Socket>();
+        url = new URL("http", "localhost", server.getLocalPort(), "/path");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (Socket socket : accepted) {
+            socket.close();
+        }
+        server.close();
+    }
+
+    @Test
+    public void shouldMissWhenEmpty() throws Exception {
+        HttpConnectionPool pool = new HttpConnectionPool(2, 5000);
+
+        assertNull(pool.acquire(url));
+        assertEquals(0, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+    }
+
+    @Test
+    public void shouldReuseReleasedConnectionToSameOrigin() throws Exception {
+        HttpConnectionPool pool = new HttpConnectionPool(2, 5000);
+        Socket socket = connect();
+
+        pool.release(url, socket);
+        assertEquals(1, pool.getIdleCount());
+        assertNull(pool.acquire(new URL("http", "localhost", server.getLocalPort() + 1, "/path")));
+
+        assertSame(socket, pool.acquire(new URL("http", "LOCALHOST", server.getLocalPort(), "/other?query")));
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(1, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+    }
+
+    @Test
+    public void shouldCloseConnectionsBeyondMaximumPerOrigin() throws Exception {
+        HttpConnectionPool pool = new HttpConnectionPool(1, 5000);
+        Socket first = connect();
+        Socket second = connect();
+
+        pool.release(url, first);
+        pool.release(url, second);
+
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(1, pool.getDiscardCount());
+        assertTrue(second.isClosed());
+        assertSame(first, pool.acquire(url));
+    }
+
+    @Test
+    public void shouldDiscardConnectionClosedByPeer() throws Exception {
+        HttpConnectionPool pool = new HttpConnectionPool(2, 5000);
+        Socket socket = connect();
+
+        pool.release(url, socket);
+        accepted.get(0).close();
+
+        // wait for the FIN to arrive
+        Thread.sleep(100);
+
+        assertNull(pool.acquire(url));
+        assertTrue(socket.isClosed());
+        assertEquals(1, pool.getDiscardCount());
+        assertEquals(1, pool.getMissCount());
+    }
+
+    @Test
+    public void shouldDiscardConnectionWithUnexpectedBytes() throws Exception {
+        HttpConnectionPool pool = new HttpConnectionPool(2, 5000);
+        Socket socket = connect();
+
+        pool.release(url, socket);
+        accepted.get(0).getOutputStream().write("HTTP/1.1 200 OK\r\n".getBytes("US-ASCII"));
+        Thread.sleep(100);
+
+        assertNull(pool.acquire(url));
+        assertTrue(socket.isClosed());
+    }
+
+    @Test
+    public void shouldEvictIdleConnections() throws Exception {
+        HttpConnectionPool pool = new HttpConnectionPool(2, 50);
+        Socket socket = connect();
+
+        pool.release(url, socket);
+        assertEquals(50, pool.getIdleTimeout(MILLISECONDS));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getIdleCount() != 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(1, pool.getEvictionCount());
+        assertTrue(socket.isClosed());
+        assertNull(pool.acquire(url));
+    }
+
+    private Socket connect() throws Exception {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", server.getLocalPort()));
+        accepted.add(server.accept());
+        return channel.socket();
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.http.internal;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class HttpHeaderFieldsTest {
+
+    @Test
+    public void shouldLookUpNamesIgnoringCase() throws Exception {
+        HttpHeaderFields fields = new HttpHeaderFields();
+        fields.add(null, "HTTP/1.1 101 Switching Protocols");
+        fields.add("upgrade", "websocket");
+        fields.add("CONNECTION", "Upgrade");
+
+        assertEquals("websocket", fields.value("Upgrade"));
+        assertEquals("Upgrade", fields.value("connection"));
+        assertEquals("HTTP/1.1 101 Switching Protocols", fields.value((String) null));
+        assertNull(fields.value("Sec-WebSocket-Accept"));
+
+        assertEquals("upgrade", fields.key(1));
+        assertEquals("Upgrade", fields.value(2));
+        assertNull(fields.key(3));
+        assertNull(fields.value(-1));
+    }
+
+    @Test
+    public void shouldKeepInsertionOrderOfNamesAndValues() throws Exception {
+        HttpHeaderFields fields = new HttpHeaderFields();
+        fields.add("X-B", "1");
+        fields.add("X-A", "2");
+        fields.add("x-b", "3");
+
+        Map<String, List<String>> map = fields.map();
+        assertEquals(2, map.size());
+        assertEquals(asList("X-B", "X-A"), new ArrayList<String>(map.keySet()));
+        assertEquals(asList("1", "3"), map.get("X-B"));
+        assertEquals(asList("2"), map.get("x-a"));
+        assertTrue(map.containsKey("x-B"));
+        assertFalse(map.containsKey("X-C"));
+        assertNull(map.get("X-C"));
+    }
+
+    @Test
+    public void shouldReplaceAllValuesOnSet() throws Exception {
+        HttpHeaderFields fields = new HttpHeaderFields();
+        fields.add("Accept", "text/plain");
+        fields.add("Authorization", "Basic a");
+        fields.add("authorization", "Basic b");
+        fields.add("Host", "example.com");
+
+        fields.set("AUTHORIZATION", "Basic c");
+
+        assertEquals(asList("text/plain"), fields.map().get("Accept"));
+        assertEquals(asList("Basic c"), fields.map().get("Authorization"));
+        assertEquals(asList("example.com"), fields.map().get("Host"));
+        assertEquals("Host", fields.key(1));
+        assertEquals("AUTHORIZATION", fields.key(2));
+        assertNull(fields.key(3));
+    }
+
+    @Test
+    public void shouldGrowPastInitialCapacity() throws Exception {
+        HttpHeaderFields fields = new HttpHeaderFields();
+        for (int i = 0; i < 100; i++) {
+            fields.add("X-Header-" + i, Integer.toString(i));
+        }
+
+        assertEquals(100, fields.map().size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.toString(i), fields.value("x-header-" + i));
+            assertEquals("X-Header-" + i, fields.key(i));
+        }
+    }
+
+    @Test
+    public void shouldShareCommonNames() throws Exception {
+        HttpHeaderFields fields = new HttpHeaderFields();
+        fields.add(new String("Sec-WebSocket-Accept"), "s3pPLMBiTxaQ9kYGzzhZRbK+xOo=");
+        fields.add(new String("upgrade"), "websocket");
+
+        assertSame("Sec-WebSocket-Accept", fields.key(0));
+        assertEquals("upgrade", fields.key(1));
+    }
+
+    @Test
+    public void shouldClear() throws Exception {
+        HttpHeaderFields fields = new HttpHeaderFields();
+        fields.add("Upgrade", "websocket");
+        fields.clear();
+
+        assertNull(fields.value("Upgrade"));
+        assertTrue(fields.map().isEmpty());
+
+        fields.add("Upgrade", "h2c");
+        assertEquals("h2c", fields.value("upgrade"));
+    }
+
+    @Test
+    public void shouldHashConsistentlyWithEqualsIgnoreCase() throws Exception {
+        assertEquals(HttpHeaderFields.hash("Sec-WebSocket-Key"), HttpHeaderFields.hash("sec-websocket-key"));
+        assertEquals(HttpHeaderFields.hash("\u00c9tag"), HttpHeaderFields.hash("\u00e9TAG"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldNotModifyMap() throws Exception {
+        HttpHeaderFields fields = new HttpHeaderFields();
+        fields.add("Upgrade", "websocket");
+
+        fields.map().put("Connection", asList("Upgrade"));
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.http.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class HttpResponseHeadReaderTest {
+
+    @Test
+    public void shouldReadLinesAndKeepBytesAfterHead() throws Exception {
+        byte[] frame = new byte[] { (byte) 0x82, 0x03, 1, 2, 3 };
+        InputStream in = stream(concat(ascii("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\n\r\n"), frame), 1000);
+        HttpResponseHeadReader reader = new HttpResponseHeadReader(in);
+
+        assertEquals("HTTP/1.1 101 Switching Protocols", reader.readLine());
+        assertEquals("Upgrade: websocket", reader.readLine());
+        assertEquals("", reader.readLine());
+
+        HttpResponseHeadReader.Remainder remainder = reader.remainder();
+        assertTrue(remainder.hasLeftover());
+        assertEquals(frame.length, remainder.available());
+
+        byte[] buf = new byte[16];
+        assertEquals(0x82, remainder.read());
+        assertEquals(4, remainder.read(buf, 0, buf.length));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(frame, 1, frame.length), Arrays.copyOf(buf, 4)));
+        assertFalse(remainder.hasLeftover());
+        assertEquals(-1, remainder.read());
+    }
+
+    @Test
+    public void shouldReadLinesSplitAcrossReads() throws Exception {
+        InputStream in = stream(ascii("HTTP/1.1 200 OK\r\nContent-Length: 2\nX-Bare: lf\r\n\r\nok"), 3);
+        HttpResponseHeadReader reader = new HttpResponseHeadReader(in);
+
+        assertEquals("HTTP/1.1 200 OK", reader.readLine());
+        assertEquals("Content-Length: 2", reader.readLine());
+        assertEquals("X-Bare: lf", reader.readLine());
+        assertEquals("", reader.readLine());
+
+        InputStream remainder = reader.remainder();
+        assertEquals('o', remainder.read());
+        assertEquals('k', remainder.read());
+        assertEquals(-1, remainder.read());
+    }
+
+    @Test
+    public void shouldReadLineLongerThanBuffer() throws Exception {
+        char[] value = new char[10000];
+        Arrays.fill(value, 'x');
+        String header = "X-Long: " + new String(value);
+        HttpResponseHeadReader reader = new HttpResponseHeadReader(stream(ascii(header + "\r\n\r\n"), 1500));
+
+        assertEquals(header, reader.readLine());
+        assertEquals("", reader.readLine());
+        assertFalse(reader.remainder().hasLeftover());
+    }
+
+    @Test
+    public void shouldReturnNullAtEndOfStream() throws Exception {
+        HttpResponseHeadReader reader = new HttpResponseHeadReader(stream(ascii("HTTP/1.1 200 OK"), 100));
+
+        assertEquals("HTTP/1.1 200 OK", reader.readLine());
+        assertNull(reader.readLine());
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectNonAsciiBytes() throws Exception {
+        byte[] head = new byte[] { 'H', (byte) 0xc3, (byte) 0xa9, '\n' };
+        HttpResponseHeadReader reader = new HttpResponseHeadReader(stream(head, 100));
+
+        reader.readLine();
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectHeadLongerThanMaximum() throws Exception {
+        byte[] head = new byte[HttpResponseHeadReader.MAX_HEAD_LENGTH + 1];
+        Arrays.fill(head, (byte) 'x');
+        HttpResponseHeadReader reader = new HttpResponseHeadReader(stream(head, 8192));
+
+        reader.readLine();
+    }
+
+    private static byte[] ascii(String text) throws Exception {
+        return text.getBytes("US-ASCII");
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+
+    // Returns at most chunkLength bytes per read, like a socket does as segments arrive.
+    private static InputStream stream(byte[] bytes, final int chunkLength) {
+        return new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, chunkLength));
+            }
+        };
+    }
+}
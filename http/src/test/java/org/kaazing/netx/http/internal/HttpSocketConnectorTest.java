@@ -0,0 +1,131 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.http.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpSocketConnectorTest {
+
+    private ServerSocket server;
+    private InetAddress live;
+    private HttpSocketConnector connector;
+
+    @Before
+    public void setUp() throws Exception {
+        live = InetAddress.getByName("127.0.0.1");
+        server = new ServerSocket(0, 50, live);
+        connector = new HttpSocketConnector(new HttpAddressResolver(5000, 5000), 50);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void shouldConnectToLiveAddressAfterRefusedAddress() throws Exception {
+        int port = server.getLocalPort();
+        InetAddress refused = InetAddress.getByName("127.0.0.2");
+
+        SocketChannel channel = connector.connect("localhost", port, new InetAddress[] { refused, live }, 0);
+        try {
+            assertTrue(channel.isBlocking());
+            assertEquals(new InetSocketAddress(live, port), channel.socket().getRemoteSocketAddress());
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    @Test(expected = ConnectException.class)
+    public void shouldFailWhenAllAddressesRefuse() throws Exception {
+        int port = server.getLocalPort();
+        server.close();
+
+        connector.connect("localhost", port, new InetAddress[] { live, InetAddress.getByName("127.0.0.2") }, 0);
+    }
+
+    @Test
+    public void shouldConnectWithinConnectTimeout() throws Exception {
+        int port = server.getLocalPort();
+        InetAddress refused = InetAddress.getByName("127.0.0.2");
+
+        SocketChannel channel = connector.connect("localhost", port, new InetAddress[] { refused, live }, 5000);
+        try {
+            assertTrue(channel.isBlocking());
+            assertEquals(new InetSocketAddress(live, port), channel.socket().getRemoteSocketAddress());
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    public void shouldConnectSocketWithoutChannelToLiveAddress() throws Exception {
+        int port = server.getLocalPort();
+        InetAddress refused = InetAddress.getByName("127.0.0.2");
+
+        Socket socket = connector.connectSocket("localhost", port, new InetAddress[] { refused, live }, 5000);
+        try {
+            assertNull(socket.getChannel());
+            assertEquals(new InetSocketAddress(live, port), socket.getRemoteSocketAddress());
+        }
+        finally {
+            socket.close();
+        }
+    }
+
+    @Test(expected = ConnectException.class)
+    public void shouldFailSocketWhenAllAddressesRefuse() throws Exception {
+        int port = server.getLocalPort();
+        server.close();
+
+        connector.connectSocket("localhost", port, new InetAddress[] { live, InetAddress.getByName("127.0.0.2") }, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNegativeConnectTimeout() throws Exception {
+        connector.connect("localhost", server.getLocalPort(), -1);
+    }
+
+    @Test
+    public void shouldInterleaveAddressFamilies() throws Exception {
+        InetAddress v4a = InetAddress.getByName("192.0.2.1");
+        InetAddress v4b = InetAddress.getByName("192.0.2.2");
+        InetAddress v4c = InetAddress.getByName("192.0.2.3");
+        InetAddress v6a = InetAddress.getByName("2001:db8::1");
+        InetAddress v6b = InetAddress.getByName("2001:db8::2");
+
+        assertArrayEquals(new InetAddress[] { v6a, v4a, v6b, v4b, v4c },
+                          HttpSocketConnector.interleave(new InetAddress[] { v6a, v6b, v4a, v4b, v4c }));
+        assertArrayEquals(new InetAddress[] { v4a, v6a, v4b, v6b, v4c },
+                          HttpSocketConnector.interleave(new InetAddress[] { v4a, v4b, v4c, v6a, v6b }));
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.http.internal;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+
+import org.junit.Test;
+import org.kaazing.netx.http.HttpTlsPolicy;
+
+public class HttpTlsContextTest {
+
+    @Test
+    public void shouldShareContextOfPolicy() throws Exception {
+        HttpTlsPolicy policy = HttpTlsPolicy.custom(null, null, null, -1, -1);
+
+        assertSame(HttpTlsContext.of(policy), HttpTlsContext.of(policy));
+        assertNotSame(HttpTlsContext.of(policy), HttpTlsContext.of(HttpTlsPolicy.defaults()));
+    }
+
+    @Test
+    public void shouldCountFullAndResumedHandshakes() throws Exception {
+        HttpTlsPolicy policy = HttpTlsPolicy.custom(null, null, null, -1, -1);
+        HttpTlsContext context = HttpTlsContext.of(policy);
+
+        context.handshakeCompleted(false, MILLISECONDS.toNanos(40));
+        context.handshakeCompleted(true, MILLISECONDS.toNanos(5));
+        context.handshakeCompleted(true, MILLISECONDS.toNanos(3));
+
+        assertEquals(1, policy.getFullHandshakeCount());
+        assertEquals(2, policy.getResumedHandshakeCount());
+        assertEquals(40, policy.getFullHandshakeTime(MILLISECONDS));
+        assertEquals(MILLISECONDS.toNanos(8), policy.getResumedHandshakeTime(NANOSECONDS));
+    }
+
+    @Test
+    public void shouldCloseSocketWhenProtocolIsNotSupported() throws Exception {
+        HttpTlsPolicy policy = HttpTlsPolicy.custom(null, new String[] { "NoSuchProtocol" }, null, -1, -1);
+        ServerSocket server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        try {
+            Socket socket = new Socket(server.getInetAddress(), server.getLocalPort());
+            try {
+                HttpTlsContext.of(policy).createSocket(socket, "localhost", server.getLocalPort());
+                fail();
+            }
+            catch (IOException e) {
+                assertTrue(e.getCause() instanceof IllegalArgumentException);
+                assertTrue(socket.isClosed());
+            }
+            assertEquals(0, policy.getFullHandshakeCount());
+        }
+        finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void shouldNotModifyDefaultContextWithSessionSettings() throws Exception {
+        SSLSessionContext defaultSessions = SSLContext.getDefault().getClientSessionContext();
+        int cacheSize = defaultSessions.getSessionCacheSize();
+        int timeout = defaultSessions.getSessionTimeout();
+
+        HttpTlsPolicy policy = HttpTlsPolicy.custom(null, null, null, cacheSize + 7, timeout + 11);
+        ServerSocket server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        try {
+            // The server never answers, so the handshake times out once the socket factory has been set up.
+            Socket socket = new Socket(server.getInetAddress(), server.getLocalPort());
+            socket.setSoTimeout(200);
+            try {
+                HttpTlsContext.of(policy).createSocket(socket, "localhost", server.getLocalPort());
+                fail();
+            }
+            catch (SocketTimeoutException e) {
+                assertTrue(socket.isClosed());
+            }
+        }
+        finally {
+            server.close();
+        }
+
+        assertEquals(cacheSize, defaultSessions.getSessionCacheSize());
+        assertEquals(timeout, defaultSessions.getSessionTimeout());
+    }
+}
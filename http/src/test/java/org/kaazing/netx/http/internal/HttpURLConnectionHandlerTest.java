@@ -0,0 +1,196 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.http.internal;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpURLConnectionHandlerTest {
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private static final String SWITCHING_PROTOCOLS = "HTTP/1.1 101 Switching Protocols\r\n" +
+                                                      "Upgrade: websocket\r\n" +
+                                                      "Connection: Upgrade\r\n" +
+                                                      "\r\n";
+
+    private static final String FOUND = "HTTP/1.1 302 Found\r\n" +
+                                        "Location: /elsewhere\r\n" +
+                                        "Content-Length: 5\r\n" +
+                                        "\r\n";
+
+    private ServerSocket server;
+    private ExecutorService executor;
+    private URL url;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new ServerSocket(0, 4, InetAddress.getByName("127.0.0.1"));
+        executor = Executors.newCachedThreadPool();
+        url = new URL("http", "127.0.0.1", server.getLocalPort(), "/path");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        server.close();
+
+        // The pool is shared, so the connections of this test are not left for the next one.
+        Socket pooled;
+        while ((pooled = HttpConnectionPool.shared().acquire(url)) != null) {
+            pooled.close();
+        }
+    }
+
+    @Test
+    public void shouldRetryOnNewConnectionWhenReusedConnectionClosesWithoutResponse() throws Exception {
+        Socket idle = new Socket(url.getHost(), url.getPort());
+        final Socket stale = server.accept();
+        HttpConnectionPool.shared().release(url, idle);
+
+        Future<Void> serving = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                // The idle connection is closed as the request arrives, like a server whose keep-alive timeout expired.
+                readRequest(stale);
+                stale.close();
+
+                Socket fresh = server.accept();
+                readRequest(fresh);
+                write(fresh, SWITCHING_PROTOCOLS);
+                return null;
+            }
+        });
+
+        HttpURLConnectionHandler handler = newHandler();
+        handler.getInputStream();
+        serving.get(5, SECONDS);
+
+        HttpURLConnectionImpl connection = handler.connection;
+        assertEquals(101, connection.getResponseCode());
+        handler.disconnect();
+    }
+
+    @Test
+    public void shouldCloseInsteadOfWaitingForRestOfResponseBody() throws Exception {
+        Future<Socket> serving = executor.submit(new Callable<Socket>() {
+            @Override
+            public Socket call() throws Exception {
+                Socket accepted = server.accept();
+                readRequest(accepted);
+                write(accepted, FOUND + "ab");
+                return accepted;
+            }
+        });
+
+        final HttpURLConnectionHandler handler = newHandler();
+        handler.getInputStream();
+        Socket accepted = serving.get(5, SECONDS);
+
+        try {
+            // The rest of the body never arrives, so waiting for it would block the thread that disconnects.
+            executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    handler.disconnect();
+                    return null;
+                }
+            }).get(5, SECONDS);
+
+            assertNull(HttpConnectionPool.shared().acquire(url));
+            assertEquals(-1, accepted.getInputStream().read());
+        }
+        finally {
+            accepted.close();
+        }
+    }
+
+    @Test
+    public void shouldReleaseConnectionOnceResponseBodyHasArrived() throws Exception {
+        Future<Socket> serving = executor.submit(new Callable<Socket>() {
+            @Override
+            public Socket call() throws Exception {
+                Socket accepted = server.accept();
+                readRequest(accepted);
+                write(accepted, FOUND + "abcde");
+                return accepted;
+            }
+        });
+
+        HttpURLConnectionHandler handler = newHandler();
+        InputStream input = handler.getInputStream();
+        Socket accepted = serving.get(5, SECONDS);
+
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (input.available() < 5 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            handler.disconnect();
+
+            Socket pooled = HttpConnectionPool.shared().acquire(url);
+            assertNotNull(pooled);
+            assertEquals(accepted.getLocalPort(), pooled.getPort());
+            pooled.close();
+        }
+        finally {
+            accepted.close();
+        }
+    }
+
+    private HttpURLConnectionHandler newHandler() throws Exception {
+        HttpURLConnectionImpl connection = new HttpURLConnectionImpl(url);
+        connection.setRequestProperty("Upgrade", "websocket");
+        connection.setRequestProperty("Connection", "Upgrade");
+        return new HttpURLConnectionHandler.Upgradeable(connection);
+    }
+
+    private static void readRequest(Socket socket) throws Exception {
+        InputStream in = socket.getInputStream();
+        int matched = 0;
+        while (matched < 4) {
+            int b = in.read();
+            if (b == -1) {
+                throw new IllegalStateException("Request truncated");
+            }
+            matched = (b == ((matched % 2 == 0) ? '\r' : '\n')) ? matched + 1 : ((b == '\r') ? 1 : 0);
+        }
+    }
+
+    private static void write(Socket socket, String response) throws Exception {
+        OutputStream out = socket.getOutputStream();
+        out.write(response.getBytes(US_ASCII));
+        out.flush();
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws;
+
+/**
+ * {@link BufferPoolStatistics} is a live view of the counters of the buffer pool that is shared by all the WebSocket
+ * connections in the class loader. Connections borrow the buffers for the frames that are being read or written from this
+ * pool, and return them as soon as the frame has been consumed or sent. The statistics can be used to figure out whether the
+ * pool is large enough for the traffic -- a high {@link #getAllocationCount()} relative to {@link #getAcquireCount()}, or a
+ * high {@link #getDiscardCount()}, indicates that the buffers are not being reused.
+ * <p>
+ * The counters are updated independently, so the values returned by subsequent calls need not be consistent with each other.
+ * Character buffers are accounted for at two bytes per character.
+ *
+ * @see WebSocketFactory#getBufferPoolStatistics()
+ */
+public abstract class BufferPoolStatistics {
+
+    /**
+     * Returns the number of buffers that have been borrowed from the pool.
+     *
+     * @return number of buffers borrowed
+     */
+    public abstract long getAcquireCount();
+
+    /**
+     * Returns the number of buffers that had to be allocated because the pool did not hold an idle buffer of the size class.
+     *
+     * @return number of buffers allocated
+     */
+    public abstract long getAllocationCount();
+
+    /**
+     * Returns the number of buffers that have been returned to the pool.
+     *
+     * @return number of buffers returned
+     */
+    public abstract long getReleaseCount();
+
+    /**
+     * Returns the number of returned buffers that were left to the garbage collector, either because the pool already held
+     * as many idle buffers of the size class as it may retain or because the buffer was larger than the largest size class.
+     *
+     * @return number of buffers discarded
+     */
+    public abstract long getDiscardCount();
+
+    /**
+     * Returns the number of bytes in the buffers that are currently borrowed.
+     *
+     * @return bytes lent
+     */
+    public abstract long getLentBytes();
+
+    /**
+     * Returns the number of bytes in the idle buffers that are held by the pool.
+     *
+     * @return bytes idle
+     */
+    public abstract long getIdleBytes();
+
+    /**
+     * Returns the size, in bytes, of the smallest size class. Requests for smaller buffers are served from this class.
+     *
+     * @return smallest size class
+     */
+    public abstract int getMinSizeClass();
+
+    /**
+     * Returns the size, in bytes, of the largest size class. Larger buffers are allocated on demand and are not retained.
+     *
+     * @return largest size class
+     */
+    public abstract int getMaxSizeClass();
+
+    /**
+     * Returns the number of idle byte arrays held for the size class that serves the specified length.
+     *
+     * @param length  buffer length in bytes
+     * @return number of idle byte arrays, or 0 if the length is larger than the largest size class
+     */
+    public abstract int getIdleByteArrayCount(int length);
+
+    /**
+     * Returns the number of idle char arrays held for the size class that serves the specified length.
+     *
+     * @param length  buffer length in characters
+     * @return number of idle char arrays, or 0 if the length is larger than the largest size class
+     */
+    public abstract int getIdleCharArrayCount(int length);
+
+    @Override
+    public String toString() {
+        return String.format("acquired=%d allocated=%d released=%d discarded=%d lentBytes=%d idleBytes=%d",
+                getAcquireCount(), getAllocationCount(), getReleaseCount(), getDiscardCount(), getLentBytes(), getIdleBytes());
+    }
+}
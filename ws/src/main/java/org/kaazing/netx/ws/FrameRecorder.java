@@ -0,0 +1,89 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws;
+
+import java.io.IOException;
+
+import org.kaazing.netx.ws.internal.ext.recorder.RingFrameRecorder;
+
+/**
+ * {@link FrameRecorder} records the header of every frame that is received or sent by the connections it is set on, so
+ * that the sequence of frames leading up to a latency spike can be looked at without a packet capture. The frames are
+ * recorded as they are on the wire -- after the negotiated extensions for outgoing frames and before them for incoming
+ * frames. A recorder is set using {@link WsURLConnection#setFrameRecorder(FrameRecorder)},
+ * {@link WebSocket#setFrameRecorder(FrameRecorder)} or {@link WebSocketFactory#setDefaultFrameRecorder(FrameRecorder)},
+ * and may be shared by several connections.
+ * <p>
+ * {@link #record(int, boolean, int, int)} is invoked while a frame is being read or written, so it must neither block nor
+ * allocate. The recorder returned by {@link #ringBuffer(int)} keeps the most recent frames in a fixed size off-heap ring.
+ *
+ * {@code}
+ * FrameRecorder recorder = FrameRecorder.ringBuffer(4096);
+ * connection.setFrameRecorder(recorder);
+ * connection.connect();
+ * ...
+ * recorder.dump(System.err);
+ * {@code}
+ */
+public abstract class FrameRecorder {
+
+    /**
+     * Records the header of a frame.
+     *
+     * @param connectionId    identifies the connection, unique within the class loader
+     * @param outgoing        true if the frame is being sent, false if it has been received
+     * @param leadByte        leading byte of the frame, holding the FIN bit, the RSV bits and the opcode
+     * @param payloadLength   length of the payload of the frame
+     */
+    public abstract void record(int connectionId, boolean outgoing, int leadByte, int payloadLength);
+
+    /**
+     * Writes the recorded frames, oldest first, to the specified {@link Appendable} as human-readable text.
+     *
+     * @param out   destination of the trace
+     * @throws IOException if the trace cannot be written
+     */
+    public abstract void dump(Appendable out) throws IOException;
+
+    /**
+     * Returns the recorded frames, oldest first, as human-readable text.
+     *
+     * @return trace of the recorded frames
+     */
+    @Override
+    public String toString() {
+        StringBuilder trace = new StringBuilder();
+        try {
+            dump(trace);
+        }
+        catch (IOException e) {
+            // StringBuilder does not throw.
+        }
+        return trace.toString();
+    }
+
+    /**
+     * Returns a recorder that keeps the specified number of most recent frames in an off-heap ring buffer. Recording a
+     * frame neither allocates nor takes a lock. A frame that is overwritten while the ring is being dumped is left out of the
+     * trace.
+     *
+     * @param capacity   number of frames to keep, rounded up to a power of two
+     * @return FrameRecorder backed by a ring buffer
+     */
+    public static FrameRecorder ringBuffer(int capacity) {
+        return new RingFrameRecorder(capacity);
+    }
+}
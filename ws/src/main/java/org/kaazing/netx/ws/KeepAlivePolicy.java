@@ -0,0 +1,121 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link KeepAlivePolicy} specifies whether a connection sends PING frames while nothing is received from the server. A single
+ * timer thread serves all the connections. Once no frame has been received for the interval, a PING carrying the time at
+ * which it was sent is written. The matching PONG yields a round-trip time that is recorded in the
+ * {@link RoundTripTimeHistogram} of the connection. By default, no PING frames are sent.
+ * <p>
+ * If a timeout is specified and nothing is received within the timeout after a PING was sent, the connection is deemed dead
+ * and is closed without the CLOSE handshake. This detects peers that have silently gone away, such as behind a NAT that has
+ * dropped the mapping, within interval + timeout. Incoming frames are only seen while they are being read, so when the
+ * connection is read using blocking streams or readers, the application must keep reading for the timeout to be reliable.
+ */
+public final class KeepAlivePolicy {
+    private static final String MSG_INVALID_INTERVAL = "Interval must be positive: %d %s";
+    private static final String MSG_INVALID_TIMEOUT = "Timeout must not be negative: %d %s";
+
+    private static final KeepAlivePolicy NONE = new KeepAlivePolicy(0, 0);
+
+    private final long intervalMillis;
+    private final long timeoutMillis;
+
+    private KeepAlivePolicy(long intervalMillis, long timeoutMillis) {
+        this.intervalMillis = intervalMillis;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Returns the policy with which no PING frames are sent. This is the default.
+     *
+     * @return KeepAlivePolicy without keep-alive
+     */
+    public static KeepAlivePolicy none() {
+        return NONE;
+    }
+
+    /**
+     * Returns a policy that sends a PING once nothing has been received for the specified interval, and closes the connection
+     * if nothing is received within the specified timeout after that. The timer has a resolution of about 100 milliseconds.
+     *
+     * @param interval   time without incoming frames after which a PING is sent
+     * @param timeout    time after sending a PING within which a frame must be received, or 0 to never close the connection
+     * @param unit       unit of the interval and the timeout
+     * @return KeepAlivePolicy that sends PING frames
+     */
+    public static KeepAlivePolicy ping(long interval, long timeout, TimeUnit unit) {
+        if (unit == null) {
+            throw new NullPointerException("Null time unit passed in");
+        }
+
+        long intervalMillis = unit.toMillis(interval);
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException(format(MSG_INVALID_INTERVAL, interval, unit));
+        }
+
+        if (timeout < 0) {
+            throw new IllegalArgumentException(format(MSG_INVALID_TIMEOUT, timeout, unit));
+        }
+
+        return new KeepAlivePolicy(intervalMillis, unit.toMillis(timeout));
+    }
+
+    /**
+     * Returns the time without incoming frames after which a PING is sent, or 0 if no PING frames are sent.
+     *
+     * @param unit   unit of the returned value
+     * @return interval
+     */
+    public long getInterval(TimeUnit unit) {
+        return unit.convert(intervalMillis, MILLISECONDS);
+    }
+
+    /**
+     * Returns the time after sending a PING within which a frame must be received, or 0 if the connection is never closed for
+     * not responding.
+     *
+     * @param unit   unit of the returned value
+     * @return timeout
+     */
+    public long getTimeout(TimeUnit unit) {
+        return unit.convert(timeoutMillis, MILLISECONDS);
+    }
+
+    /**
+     * Returns true if PING frames are sent.
+     *
+     * @return true if this policy keeps the connection alive, otherwise false
+     */
+    public boolean isEnabled() {
+        return intervalMillis > 0;
+    }
+
+    @Override
+    public String toString() {
+        if (!isEnabled()) {
+            return "KeepAlivePolicy[none]";
+        }
+
+        return format("KeepAlivePolicy[interval=%dms, timeout=%dms]", intervalMillis, timeoutMillis);
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws;
+
+/**
+ * Strategy with which a thread waits for a lock of a connection that is held by another thread. The locks guard the read
+ * and the write paths, so a waiting thread may have to wait for as long as the owner is blocked on the socket.
+ */
+public enum LockWaitStrategy {
+    /**
+     * Keep retrying to acquire the lock without ever giving up the CPU. This offers the lowest hand-off latency, but a
+     * waiting thread burns a core for as long as the lock is held. Use it only when each thread has a dedicated core and the
+     * lock is not held across blocking I/O.
+     */
+    SPIN,
+
+    /**
+     * Retry a bounded number of times, then yield the CPU a bounded number of times and finally park till the lock is
+     * released. Uncontended and briefly contended locks are acquired as fast as with {@link #SPIN}. This is the default.
+     */
+    SPIN_YIELD_PARK
+}
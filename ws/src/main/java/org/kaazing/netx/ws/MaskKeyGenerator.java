@@ -0,0 +1,118 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws;
+
+import static java.lang.String.format;
+
+import org.kaazing.netx.ws.internal.util.PrefilledMaskKeyGenerator;
+import org.kaazing.netx.ws.internal.util.ThreadLocalMaskKeyGenerator;
+import org.kaazing.netx.ws.internal.util.XorShiftMaskKeyGenerator;
+
+/**
+ * {@link MaskKeyGenerator} supplies the 32-bit masking keys that are applied to the payload of every frame sent by a
+ * WebSocket client. Application developers can plug in their own generator by extending this class and setting it using
+ * {@link WebSocketFactory#setDefaultMaskKeyGenerator(MaskKeyGenerator)}, {@link WebSocket#setMaskKeyGenerator(MaskKeyGenerator)}
+ * or {@link WsURLConnection#setMaskKeyGenerator(MaskKeyGenerator)}.
+ * <p>
+ * Each connection invokes {@link #forConnection()} once to obtain the generator it uses, and then invokes
+ * {@link #nextMaskKey()} on that generator for every outgoing frame. Frames of a single connection are sent one at a time, so
+ * a generator that is returned for a single connection need not be thread-safe. A generator that is shared across
+ * connections must be. The built-in generators themselves are thread-safe, so they can also be used directly.
+ * <p>
+ * The following generators are built-in:
+ * <ul>
+ * <li>{@link #prefilled()} - the default; each connection draws keys from a batch that is filled from a shared
+ *     {@link java.security.SecureRandom} in a single call, so the shared lock is taken once per batch instead of once
+ *     per frame</li>
+ * <li>{@link #threadLocal()} - keys are drawn from a batch owned by the sending thread, which is filled from a
+ *     {@link java.security.SecureRandom} owned by the same thread</li>
+ * <li>{@link #xorShift()} - each connection runs its own xorshift stream seeded from {@link java.security.SecureRandom};
+ *     the cheapest option, but the keys are predictable to anyone who learns the state of the stream</li>
+ * </ul>
+ */
+public abstract class MaskKeyGenerator {
+    private static final String MSG_INVALID_BATCH_SIZE = "Batch size must be positive integer value: %d";
+
+    private static final int DEFAULT_BATCH_SIZE = 256;
+
+    /**
+     * Returns the masking key for the next outgoing frame. A masking key of zero leaves the payload unmasked, so generators
+     * should not return zero.
+     *
+     * @return the next masking key
+     */
+    public abstract int nextMaskKey();
+
+    /**
+     * Returns the generator to be used by a single new connection. The default implementation returns this generator, which
+     * must then be thread-safe.
+     *
+     * @return MaskKeyGenerator used by one connection
+     */
+    public MaskKeyGenerator forConnection() {
+        return this;
+    }
+
+    /**
+     * Returns the default generator, which gives each connection its own batch of keys filled from a shared
+     * {@link java.security.SecureRandom}.
+     *
+     * @return MaskKeyGenerator
+     */
+    public static MaskKeyGenerator prefilled() {
+        return BuiltIn.PREFILLED;
+    }
+
+    /**
+     * Returns a generator that gives each connection its own batch of keys filled from a shared
+     * {@link java.security.SecureRandom}.
+     *
+     * @param batchSize  number of keys obtained from the SecureRandom at a time
+     * @return MaskKeyGenerator
+     */
+    public static MaskKeyGenerator prefilled(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException(format(MSG_INVALID_BATCH_SIZE, batchSize));
+        }
+
+        return new PrefilledMaskKeyGenerator(batchSize);
+    }
+
+    /**
+     * Returns a generator that draws keys from a batch owned by the sending thread.
+     *
+     * @return MaskKeyGenerator
+     */
+    public static MaskKeyGenerator threadLocal() {
+        return BuiltIn.THREAD_LOCAL;
+    }
+
+    /**
+     * Returns a generator that gives each connection its own xorshift stream seeded from {@link java.security.SecureRandom}.
+     *
+     * @return MaskKeyGenerator
+     */
+    public static MaskKeyGenerator xorShift() {
+        return BuiltIn.XOR_SHIFT;
+    }
+
+    // the built-in generators extend this class, so they are created on first use rather than during its initialization
+    private static final class BuiltIn {
+        private static final MaskKeyGenerator PREFILLED = new PrefilledMaskKeyGenerator(DEFAULT_BATCH_SIZE);
+        private static final MaskKeyGenerator THREAD_LOCAL = new ThreadLocalMaskKeyGenerator(DEFAULT_BATCH_SIZE);
+        private static final MaskKeyGenerator XOR_SHIFT = new XorShiftMaskKeyGenerator();
+    }
+}
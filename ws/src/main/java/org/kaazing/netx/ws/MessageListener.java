@@ -0,0 +1,85 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link MessageListener} receives the messages of a {@link WebSocket} as they arrive, instead of the application pulling them
+ * using {@link WebSocket#getMessageReader()}, {@link WebSocket#getInputStream()} or {@link WebSocket#getReader()}. A listener is
+ * registered using {@link WebSocket#setMessageListener(MessageListener)} or
+ * {@link WebSocketFactory#setDefaultMessageListener(MessageListener)} before the {@link WebSocket} is connected.
+ * <p>
+ * A {@link WebSocket} with a listener does not need a reader thread when its location uses the ws scheme, no
+ * {@link org.kaazing.netx.http.auth.ChallengeHandler} is set and its redirect policy is
+ * {@link org.kaazing.netx.http.HttpRedirectPolicy#NEVER}. Its frames are then read by a small pool of shared selector
+ * threads, and the listener is invoked using the {@link Executor} specified with
+ * {@link WebSocket#setMessageListenerExecutor(Executor)}. Without an executor, the listener is invoked from the selector
+ * thread and must not block.
+ * <p>
+ * The selector threads only perform a plain upgrade. A wss location, or a {@link WebSocket} that may have to follow redirects
+ * or answer challenges, is connected with the usual blocking upgrade instead, and a dedicated thread reads its messages and
+ * invokes the listener, using the {@link Executor} if one was specified.
+ * <p>
+ * The messages of a {@link WebSocket} are delivered one at a time and in order. The payload is a read-only view that is only
+ * valid until the method returns. When the message fits in a single frame, the view is taken directly over the network buffer
+ * without copying the payload. The default implementations do nothing.
+ */
+public abstract class MessageListener {
+
+    /**
+     * Invoked when a binary message is received.
+     *
+     * @param webSocket  the WebSocket on which the message was received
+     * @param payload    read-only view of the message that is valid until this method returns
+     * @throws IOException if the message cannot be processed, in which case the WebSocket is closed
+     */
+    public void onBinary(WebSocket webSocket, ByteBuffer payload) throws IOException {
+    }
+
+    /**
+     * Invoked when a text message is received. The payload holds valid UTF-8 bytes.
+     *
+     * @param webSocket  the WebSocket on which the message was received
+     * @param payload    read-only view of the UTF-8 bytes of the message that is valid until this method returns
+     * @throws IOException if the message cannot be processed, in which case the WebSocket is closed
+     */
+    public void onText(WebSocket webSocket, ByteBuffer payload) throws IOException {
+    }
+
+    /**
+     * Invoked once the WebSocket has been closed.
+     *
+     * @param webSocket  the WebSocket that was closed
+     * @param code       the code received in the CLOSE frame, {@link WsURLConnection#WS_MISSING_STATUS_CODE} if it did not
+     *                   carry one or {@link WsURLConnection#WS_ABNORMAL_CLOSE} if no CLOSE frame was received
+     * @param reason     the reason received in the CLOSE frame, or null
+     */
+    public void onClose(WebSocket webSocket, int code, String reason) {
+    }
+
+    /**
+     * Invoked when the WebSocket fails after it has been connected. {@link #onClose(WebSocket, int, String)} is invoked
+     * afterwards.
+     *
+     * @param webSocket  the WebSocket that failed
+     * @param exception  the cause of the failure
+     */
+    public void onError(WebSocket webSocket, IOException exception) {
+    }
+}
@@ -18,6 +18,7 @@ package org.kaazing.netx.ws;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 
 /**
  * {@link MessageReader} is used to receive complete binary and text messages that may span over multiple WebSocket frames. Here
@@ -156,6 +157,21 @@ public abstract class MessageReader {
      */
     public abstract int readFully(byte[] buf) throws IOException;
 
+    /**
+     * Reads the binary message in it's entirety into the specified {@link ByteBuffer} starting at it's current position. Both
+     * heap and direct buffers are filled directly from the network buffer without an intermediate byte[]. This method has the
+     * same preconditions as {@link #readFully(byte[])}. On return, the position of the buffer is advanced by the number of
+     * bytes read.
+     * <p>
+     * @param buf  the buffer to receive the binary message
+     * @return number of bytes copied into the passed in buffer; -1 if the entire message has already been read
+     * @throws IOException if the operation is attempted by a thread that does not own the current message; if the operation is
+     *                     performed before invoking {@link #next()} to claim ownership of the current message; if the type of
+     *                     the message is not {@link MessageType#BINARY}; if the remaining space in the buffer is not large
+     *                     enough to hold the entire message
+     */
+    public abstract int readFully(ByteBuffer buf) throws IOException;
+
     /**
      * Reads the text message in the buffer in it's entirety. This method must be invoked after {@link #next()} method has been
      * successfully invoked by the thread to claim ownership of the message. This method is used when the {@link #streaming()}
@@ -174,6 +190,21 @@ public abstract class MessageReader {
      */
     public abstract int readFully(char[] buf) throws IOException;
 
+    /**
+     * Reads the current message in it's entirety, regardless of the number of WebSocket frames it spans across. This method
+     * must be invoked after {@link #next()} method has been successfully invoked by the thread to claim ownership of the message.
+     * The message is collected on the heap or in a temporary file as specified by the {@link MessageSpillPolicy} of the
+     * connection. Without a spill threshold, the message must not be longer than the maximum frame payload length. With a
+     * threshold, a longer message can be received without streaming it. The returned {@link ReceivedMessage} must be closed
+     * once it has been consumed.
+     * <p>
+     * @return the complete message; null if the connection is closed
+     * @throws IOException if the operation is attempted by a thread that does not own the current message; if the operation is
+     *                     performed before invoking {@link #next()} to claim ownership of the current message; if the message
+     *                     cannot be collected
+     */
+    public abstract ReceivedMessage readMessage() throws IOException;
+
     /**
      * Skips the current message. If the message fits in a single WebSocket frame, then this method skips the frame. However, if
      * the message spans across multiple WebSocket frames, then all the frames are skipped. Once the message is skipped, then
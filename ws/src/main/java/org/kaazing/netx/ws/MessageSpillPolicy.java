@@ -0,0 +1,118 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws;
+
+import static java.lang.String.format;
+
+import java.io.File;
+
+/**
+ * {@link MessageSpillPolicy} specifies where {@link MessageReader#readMessage()} collects the messages that it receives. By
+ * default, every message is collected on the heap. With a threshold, a message is collected on the heap only as long as it
+ * is not longer than the threshold. The payload of a longer message is written to a temporary file instead, so that the
+ * occasional very large message does not require the heap to be sized for it. The file is memory-mapped when the application
+ * asks for the {@link ReceivedMessage#getBuffer() buffer} of the message.
+ * <p>
+ * A message that is collected on the heap with {@link #none()} must not be longer than the maximum frame payload length of the
+ * connection. Otherwise, the connection is closed with the status code 1009 (message too big). Only a policy with a threshold
+ * lets {@link MessageReader#readMessage()} receive longer messages.
+ */
+public final class MessageSpillPolicy {
+    private static final String MSG_INVALID_THRESHOLD = "Threshold must not be negative: %d";
+
+    private static final MessageSpillPolicy NONE = new MessageSpillPolicy(-1, null);
+
+    private final long threshold;
+    private final File directory;
+
+    private MessageSpillPolicy(long threshold, File directory) {
+        this.threshold = threshold;
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the policy with which every message is collected on the heap. This is the default. A message that is longer than
+     * the maximum frame payload length of the connection is rejected, so the heap that a message takes is bounded.
+     *
+     * @return MessageSpillPolicy that never spills
+     */
+    public static MessageSpillPolicy none() {
+        return NONE;
+    }
+
+    /**
+     * Returns a policy that writes the messages longer than the specified threshold to temporary files in the default
+     * temporary-file directory.
+     *
+     * @param threshold   maximum number of bytes of a message that is collected on the heap
+     * @return MessageSpillPolicy that spills large messages
+     */
+    public static MessageSpillPolicy spillAbove(long threshold) {
+        return spillAbove(threshold, null);
+    }
+
+    /**
+     * Returns a policy that writes the messages longer than the specified threshold to temporary files in the specified
+     * directory.
+     *
+     * @param threshold   maximum number of bytes of a message that is collected on the heap
+     * @param directory   directory of the temporary files, or null for the default temporary-file directory
+     * @return MessageSpillPolicy that spills large messages
+     */
+    public static MessageSpillPolicy spillAbove(long threshold, File directory) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException(format(MSG_INVALID_THRESHOLD, threshold));
+        }
+
+        return new MessageSpillPolicy(threshold, directory);
+    }
+
+    /**
+     * Returns the directory of the temporary files, or null for the default temporary-file directory.
+     *
+     * @return directory of the temporary files
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the maximum number of bytes of a message that is collected on the heap, or -1 if messages are never spilled.
+     *
+     * @return spill threshold
+     */
+    public long getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Returns true if messages longer than the threshold are written to temporary files.
+     *
+     * @return true if this policy spills large messages, otherwise false
+     */
+    public boolean isEnabled() {
+        return threshold >= 0;
+    }
+
+    @Override
+    public String toString() {
+        if (!isEnabled()) {
+            return "MessageSpillPolicy[none]";
+        }
+
+        return format("MessageSpillPolicy[threshold=%d, directory=%s]", threshold, directory);
+    }
+}
@@ -18,6 +18,8 @@ package org.kaazing.netx.ws;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * {@link MessageWriter} is used to send binary and text messages that may span over multiple WebSocket frames. A reference to
@@ -52,7 +54,19 @@ import java.io.Writer;
  * }
  *
  * {@link MessageWriter} can also be used to send binary and text messages that fits in a single WebSocket frame using
- * {@link #writeFully(byte[])} and {@link #writeFully(char[])} methods respectively.
+ * {@link #writeFully(byte[])} and {@link #writeFully(char[])} methods respectively. A burst of such messages can be sent in
+ * a single network write by surrounding them with {@link #cork()} and {@link #uncork()}.
+ *
+ * {@code}
+ * messageWriter.cork();
+ * try {
+ *     for (byte[] update : updates) {
+ *         messageWriter.writeFully(update);
+ *     }
+ * }
+ * finally {
+ *     messageWriter.uncork();
+ * }
  *
  * {@code}
  */
@@ -100,6 +114,18 @@ public abstract class MessageWriter {
      */
     public abstract void writeFully(byte[] buffer) throws IOException;
 
+    /**
+     * Sends the remaining content of the specified buffer as a binary message in a single WebSocket frame. Both heap and direct
+     * buffers are copied directly into the outgoing frame without an intermediate byte[]. The number of remaining bytes must be
+     * less than or equal to {@link WsURLConnection#getMaxPayloadLength()} / {@link WebSocket#getMaxPayloadLength()}.
+     * Otherwise, an IOException is thrown. On return, the position of the buffer is advanced to it's limit.
+     *
+     * @param buffer binary message content
+     * @throws IOException if connection is closed or the buffer's remaining length is greater than the max payload length of
+     *                     the connection
+     */
+    public abstract void writeFully(ByteBuffer buffer) throws IOException;
+
     /**
      * Sends the content of the specified buffer as a text message in a single WebSocket frame. The content of specified
      * char array is transformed to a byte array using UTF-8 encoding. The number of bytes in the transformed byte array must be
@@ -111,4 +137,105 @@ public abstract class MessageWriter {
      *                     length of the connection
      */
     public abstract void writeFully(char[] buffer) throws IOException;
+
+    /**
+     * Sends the specified text as a text message in a single WebSocket frame. The text, such as a {@link String} or a
+     * {@link StringBuilder}, is encoded using UTF-8 straight into the outgoing frame without being copied to a char[] first.
+     * The number of encoded bytes must be less than or equal to {@link WsURLConnection#getMaxPayloadLength()} /
+     * {@link WebSocket#getMaxPayloadLength()}. Otherwise, an IOException is thrown.
+     *
+     * @param text text message content
+     * @throws IOException if connection is closed, the text contains an unpaired surrogate or the number of encoded bytes is
+     *                     greater than the max payload length of the connection
+     */
+    public abstract void writeFully(CharSequence text) throws IOException;
+
+    /**
+     * Sends the specified bytes, that are already encoded using UTF-8, as a text message in a single WebSocket frame. The
+     * bytes are validated but not encoded again, so an application that holds serialized text, such as JSON, can send it
+     * without converting it to chars. The length must be less than or equal to {@link WsURLConnection#getMaxPayloadLength()}
+     * / {@link WebSocket#getMaxPayloadLength()}. Otherwise, an IOException is thrown.
+     *
+     * @param utf8 text message content encoded using UTF-8
+     * @param offset offset of the first byte of the message in the specified buffer
+     * @param length number of bytes in the message
+     * @throws IOException if connection is closed, the bytes are not valid UTF-8 or the length is greater than the max
+     *                     payload length of the connection
+     */
+    public abstract void writeText(byte[] utf8, int offset, int length) throws IOException;
+
+    /**
+     * Sends the specified region of a file as a binary message. The region is split into WebSocket frames of at most
+     * {@link WsURLConnection#getMaxPayloadLength()} / {@link WebSocket#getMaxPayloadLength()} bytes, the first one being a
+     * BINARY frame and the rest CONTINUATION frames. Unless a negotiated extension or the frame recorder has to see the
+     * frames, the region is read a slice at a time straight into the buffer it is masked and written from. That avoids both a
+     * buffer as large as the frame and the intermediate copies made when a file is streamed through
+     * {@link #getOutputStream()}. The position of the channel is not changed. Like {@link #getOutputStream()}, the frames
+     * bypass the outbound queue of the connection.
+     *
+     * @param channel file to send the region of
+     * @param position position of the first byte of the region in the file
+     * @param count number of bytes in the region
+     * @throws IOException if connection is closed, the region extends past the end of the file or the file cannot be read
+     */
+    public abstract void transferFrom(FileChannel channel, long position, long count) throws IOException;
+
+    /**
+     * Sends the content of the specified buffer as a binary message in a single WebSocket frame, unless the outbound queue of
+     * the connection is above its high watermark or full. This method does not wait for room in the queue. Without an outbound
+     * queue, the message is sent as with {@link #writeFully(byte[])}. See {@link OutboundQueuePolicy}.
+     *
+     * @param buffer binary message content
+     * @return true if the message was sent or queued, false if the outbound queue has no room for it or the
+     *         {@link org.kaazing.netx.ws.nio.WebSocketReactor} driving the connection has too many bytes queued
+     * @throws IOException if connection is closed or the buffer's length is greater than the max payload length of
+     *                     the connection
+     */
+    public abstract boolean offer(byte[] buffer) throws IOException;
+
+    /**
+     * Sends the remaining content of the specified buffer as a binary message in a single WebSocket frame, unless the outbound
+     * queue of the connection is above its high watermark or full. This method does not wait for room in the queue. Without an
+     * outbound queue, the message is sent as with {@link #writeFully(ByteBuffer)}. The position of the buffer is only advanced
+     * to it's limit if the message is sent or queued.
+     *
+     * @param buffer binary message content
+     * @return true if the message was sent or queued, false if the outbound queue has no room for it or the
+     *         {@link org.kaazing.netx.ws.nio.WebSocketReactor} driving the connection has too many bytes queued
+     * @throws IOException if connection is closed or the buffer's remaining length is greater than the max payload length of
+     *                     the connection
+     */
+    public abstract boolean offer(ByteBuffer buffer) throws IOException;
+
+    /**
+     * Sends the content of the specified buffer as a text message in a single WebSocket frame, unless the outbound queue of
+     * the connection is above its high watermark or full. This method does not wait for room in the queue. Without an outbound
+     * queue, the message is sent as with {@link #writeFully(char[])}.
+     *
+     * @param buffer text message content
+     * @return true if the message was sent or queued, false if the outbound queue has no room for it or the
+     *         {@link org.kaazing.netx.ws.nio.WebSocketReactor} driving the connection has too many bytes queued
+     * @throws IOException if connection is closed or the transformed byte buffer's length is greater than the max payload
+     *                     length of the connection
+     */
+    public abstract boolean offer(char[] buffer) throws IOException;
+
+    /**
+     * Holds back the frames of the messages sent from now on, instead of writing each one to the network as it is sent. The
+     * frames are encoded back to back, including by the negotiated extensions, and written together once {@link #uncork()} is
+     * invoked. This lets a burst of small messages go out in a single write. The held back frames are also written when
+     * enough of them are pending, or when a PONG or CLOSE frame is sent. Invoking this method while already corked has no
+     * effect.
+     *
+     * @throws IOException if the connection is closed
+     */
+    public abstract void cork() throws IOException;
+
+    /**
+     * Writes the frames held back since {@link #cork()} was invoked to the network in a single write, and resumes writing each
+     * frame as it is sent. Invoking this method while not corked has no effect.
+     *
+     * @throws IOException if the connection is closed or the frames cannot be written
+     */
+    public abstract void uncork() throws IOException;
 }
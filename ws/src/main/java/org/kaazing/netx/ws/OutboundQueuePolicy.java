@@ -0,0 +1,154 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws;
+
+import static java.lang.String.format;
+
+import java.util.concurrent.Executor;
+
+/**
+ * {@link OutboundQueuePolicy} specifies whether the messages sent using {@link MessageWriter#writeFully(byte[])} and
+ * {@link MessageWriter#offer(byte[])} and their variants are written by the sending thread or handed over to an outbound
+ * queue of the connection. By default, the messages are not queued and the sending threads take turns to write to the
+ * network.
+ * <p>
+ * With a bounded queue, a sending thread frames the message in a buffer and publishes it to the queue without taking a lock.
+ * A single drainer then masks the queued frames, applies the negotiated extensions and writes them to the network together.
+ * The drainer is either the specified {@link Executor}, or the sending thread that finds no drain in progress. This lets many
+ * threads share a connection without contending for it.
+ * <p>
+ * The low and high watermarks bound the number of queued bytes. Once more than the high watermark is queued,
+ * {@link MessageWriter#offer(byte[])} fails and {@link MessageWriter#writeFully(byte[])} waits till the drainer has brought
+ * the queued bytes down to the low watermark.
+ */
+public final class OutboundQueuePolicy {
+    private static final String MSG_INVALID_CAPACITY = "Capacity must be positive integer value: %d";
+    private static final String MSG_INVALID_WATERMARKS = "Invalid watermarks: low = %d; high = %d";
+
+    private static final OutboundQueuePolicy NONE = new OutboundQueuePolicy(0, 0, 0, null);
+
+    private final int capacity;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final Executor drainExecutor;
+
+    private OutboundQueuePolicy(int capacity, int lowWatermark, int highWatermark, Executor drainExecutor) {
+        this.capacity = capacity;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.drainExecutor = drainExecutor;
+    }
+
+    /**
+     * Returns the policy with which messages are written by the sending thread without being queued. This is the default.
+     *
+     * @return OutboundQueuePolicy without a queue
+     */
+    public static OutboundQueuePolicy none() {
+        return NONE;
+    }
+
+    /**
+     * Returns a policy with a bounded queue that is drained by the sending thread that finds no drain in progress. That thread
+     * writes to the network on behalf of the others, so even {@link MessageWriter#offer(byte[])} may then wait for the network.
+     *
+     * @param capacity        maximum number of queued messages, rounded up to a power of two
+     * @param lowWatermark    number of queued bytes at or below which sending resumes after the high watermark was crossed
+     * @param highWatermark   number of queued bytes above which sending is refused or waits
+     * @return OutboundQueuePolicy with a bounded queue
+     */
+    public static OutboundQueuePolicy bounded(int capacity, int lowWatermark, int highWatermark) {
+        return bounded(capacity, lowWatermark, highWatermark, null);
+    }
+
+    /**
+     * Returns a policy with a bounded queue that is drained using the specified {@link Executor}. The sending threads then never
+     * write to the network themselves, and {@link MessageWriter#offer(byte[])} never waits. At most one drain of a connection
+     * is submitted to the executor at a time.
+     *
+     * @param capacity        maximum number of queued messages, rounded up to a power of two
+     * @param lowWatermark    number of queued bytes at or below which sending resumes after the high watermark was crossed
+     * @param highWatermark   number of queued bytes above which sending is refused or waits
+     * @param drainExecutor   Executor that drains the queue, or null to drain from the sending threads
+     * @return OutboundQueuePolicy with a bounded queue
+     */
+    public static OutboundQueuePolicy bounded(int capacity, int lowWatermark, int highWatermark, Executor drainExecutor) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException(format(MSG_INVALID_CAPACITY, capacity));
+        }
+
+        if (lowWatermark < 0 || lowWatermark > highWatermark || highWatermark == 0) {
+            throw new IllegalArgumentException(format(MSG_INVALID_WATERMARKS, lowWatermark, highWatermark));
+        }
+
+        return new OutboundQueuePolicy(capacity, lowWatermark, highWatermark, drainExecutor);
+    }
+
+    /**
+     * Returns the maximum number of queued messages, or zero if messages are not queued.
+     *
+     * @return queue capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the Executor that drains the queue, or null if the queue is drained by the sending threads.
+     *
+     * @return drain Executor
+     */
+    public Executor getDrainExecutor() {
+        return drainExecutor;
+    }
+
+    /**
+     * Returns the number of queued bytes above which sending is refused or waits.
+     *
+     * @return high watermark
+     */
+    public int getHighWatermark() {
+        return highWatermark;
+    }
+
+    /**
+     * Returns the number of queued bytes at or below which sending resumes after the high watermark was crossed.
+     *
+     * @return low watermark
+     */
+    public int getLowWatermark() {
+        return lowWatermark;
+    }
+
+    /**
+     * Returns true if messages are queued.
+     *
+     * @return true if this policy has an outbound queue, otherwise false
+     */
+    public boolean isQueued() {
+        return capacity > 0;
+    }
+
+    @Override
+    public String toString() {
+        if (!isQueued()) {
+            return "OutboundQueuePolicy[none]";
+        }
+
+        return format("OutboundQueuePolicy[capacity=%d, lowWatermark=%d, highWatermark=%d, drainExecutor=%s]",
+                capacity, lowWatermark, highWatermark, drainExecutor);
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link ReceivedMessage} holds a complete message that has been received using {@link MessageReader#readMessage()},
+ * regardless of the number of WebSocket frames it spanned. Depending on the {@link MessageSpillPolicy} of the connection and
+ * the length of the message, the payload is either held on the heap or in a temporary file. The payload of a text message is
+ * held as UTF-8 bytes that have already been validated.
+ * <p>
+ * The message must be closed once it has been consumed, so that the temporary file, if any, is deleted.
+ *
+ * {@code}
+ * ReceivedMessage message = messageReader.readMessage();
+ * try {
+ *     if (message.isSpilled()) {
+ *         message.getChannel().transferTo(0, message.getLength(), out);
+ *     }
+ *     else {
+ *         process(message.getBuffer());
+ *     }
+ * }
+ * finally {
+ *     message.close();
+ * }
+ * {@code}
+ */
+public abstract class ReceivedMessage implements Closeable {
+
+    /**
+     * Returns the type of the message, either {@link MessageType#BINARY} or {@link MessageType#TEXT}.
+     *
+     * @return MessageType of the message
+     */
+    public abstract MessageType getType();
+
+    /**
+     * Returns the number of bytes in the payload of the message.
+     *
+     * @return length of the message
+     */
+    public abstract long getLength();
+
+    /**
+     * Returns true if the payload was written to a temporary file because the message was longer than the threshold of the
+     * {@link MessageSpillPolicy}.
+     *
+     * @return true if the payload is held in a temporary file, otherwise false
+     */
+    public abstract boolean isSpilled();
+
+    /**
+     * Returns a read-only {@link ByteBuffer} of the payload, from position zero to the length of the message. The buffer of a
+     * spilled message is a {@link java.nio.MappedByteBuffer} of the temporary file, so its pages are only loaded as they are
+     * read. The mapping remains valid after the message is closed, till the buffer is garbage collected.
+     *
+     * @return ByteBuffer of the payload
+     * @throws IOException if the message is closed, or it is spilled and too long to be mapped into a single buffer
+     */
+    public abstract ByteBuffer getBuffer() throws IOException;
+
+    /**
+     * Returns the {@link FileChannel} of the temporary file of a spilled message, or null if the payload is held on the heap.
+     * The channel can be used to transfer a payload that is too long to be mapped into a single buffer.
+     *
+     * @return FileChannel of the payload, or null
+     * @throws IOException if the message is closed
+     */
+    public abstract FileChannel getChannel() throws IOException;
+
+    /**
+     * Releases the payload, deleting the temporary file of a spilled message.
+     *
+     * @throws IOException if the temporary file cannot be closed
+     */
+    @Override
+    public abstract void close() throws IOException;
+}
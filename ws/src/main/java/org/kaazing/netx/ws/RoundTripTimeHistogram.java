@@ -0,0 +1,88 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RoundTripTimeHistogram} is a live view of the round-trip times measured on a connection by matching the PONG frames
+ * from the server with the PING frames sent as specified by its {@link KeepAlivePolicy}. The times are counted in buckets whose
+ * bounds are powers of two microseconds, so percentiles are reported as the upper bound of the bucket they fall in, and are
+ * accurate to within a factor of two.
+ * <p>
+ * The counters are updated independently, so the values returned by subsequent calls need not be consistent with each other.
+ *
+ * @see WsURLConnection#getRoundTripTimeHistogram()
+ * @see WebSocket#getRoundTripTimeHistogram()
+ */
+public abstract class RoundTripTimeHistogram {
+
+    /**
+     * Returns the number of round-trip times that have been recorded.
+     *
+     * @return number of PONG frames matched with a PING frame
+     */
+    public abstract long getCount();
+
+    /**
+     * Returns the most recently recorded round-trip time, or 0 if none has been recorded.
+     *
+     * @param unit   unit of the returned value
+     * @return last round-trip time
+     */
+    public abstract long getLast(TimeUnit unit);
+
+    /**
+     * Returns the smallest recorded round-trip time, or 0 if none has been recorded.
+     *
+     * @param unit   unit of the returned value
+     * @return minimum round-trip time
+     */
+    public abstract long getMin(TimeUnit unit);
+
+    /**
+     * Returns the largest recorded round-trip time, or 0 if none has been recorded.
+     *
+     * @param unit   unit of the returned value
+     * @return maximum round-trip time
+     */
+    public abstract long getMax(TimeUnit unit);
+
+    /**
+     * Returns the mean of the recorded round-trip times, or 0 if none has been recorded.
+     *
+     * @param unit   unit of the returned value
+     * @return mean round-trip time
+     */
+    public abstract long getMean(TimeUnit unit);
+
+    /**
+     * Returns the round-trip time at or below which the specified percentage of the recorded times fall, rounded up to the
+     * upper bound of its bucket but not above {@link #getMax(TimeUnit)}. Returns 0 if none has been recorded.
+     *
+     * @param percentile   percentage between 0 and 100
+     * @param unit         unit of the returned value
+     * @return round-trip time at the percentile
+     */
+    public abstract long getPercentile(double percentile, TimeUnit unit);
+
+    @Override
+    public String toString() {
+        TimeUnit unit = TimeUnit.MICROSECONDS;
+        return String.format("count=%d min=%dus mean=%dus p50=%dus p99=%dus max=%dus",
+                getCount(), getMin(unit), getMean(unit), getPercentile(50, unit), getPercentile(99, unit), getMax(unit));
+    }
+}
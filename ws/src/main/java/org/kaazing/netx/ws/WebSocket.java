@@ -22,6 +22,7 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.Collection;
+import java.util.concurrent.Executor;
 
 import org.kaazing.netx.http.HttpRedirectPolicy;
 import org.kaazing.netx.http.auth.ChallengeHandler;
@@ -80,6 +81,11 @@ public abstract class WebSocket implements Closeable {
     /**
      * Connects with the server using an end-point. This is a blocking call. The thread invoking this method will be blocked
      * till a successful connection is established. If the request is not upgraded as per RFC-6455, then IOException is thrown.
+     * <p>
+     * If a {@link MessageListener} has been set, the incoming messages are pushed to the listener instead of being read
+     * using {@link #getMessageReader()}. A ws location is serviced by a shared non-blocking reactor if no
+     * {@link ChallengeHandler} is set and the redirect policy is {@link HttpRedirectPolicy#NEVER}. Otherwise, the upgrade is
+     * blocking and a dedicated thread delivers the messages to the listener. A failed connect can be retried.
      *
      * @throws IOException  if the connection cannot be established or the upgrade is not successful
      */
@@ -120,6 +126,14 @@ public abstract class WebSocket implements Closeable {
      */
     public abstract Collection<String> getEnabledProtocols();
 
+    /**
+     * Returns the {@link FrameRecorder} that records the frames received and sent on this connection, or null if the frames
+     * are not recorded. By default, the frames are not recorded.
+     *
+     * @return FrameRecorder, or null
+     */
+    public abstract FrameRecorder getFrameRecorder();
+
     /**
      * Returns an {@link InputStream} to stream <b>binary</b> data. {@link InputStream} is typically used when the incoming
      * data is only binary and the application does not care about the message boundaries. The read() methods on the
@@ -132,6 +146,30 @@ public abstract class WebSocket implements Closeable {
      */
     public abstract InputStream getInputStream() throws IOException;
 
+    /**
+     * Returns the {@link KeepAlivePolicy} that specifies whether PING frames are sent while nothing is received on this
+     * connection. The default policy is {@link KeepAlivePolicy#none()}.
+     *
+     * @return KeepAlivePolicy
+     */
+    public abstract KeepAlivePolicy getKeepAlivePolicy();
+
+    /**
+     * Returns the {@link LockWaitStrategy} with which the threads that read from or write to this connection wait for each
+     * other. The default strategy is {@link LockWaitStrategy#SPIN_YIELD_PARK}.
+     *
+     * @return LockWaitStrategy
+     */
+    public abstract LockWaitStrategy getLockWaitStrategy();
+
+    /**
+     * Returns the {@link MaskKeyGenerator} that supplies the masking keys for the frames sent on this connection. The default
+     * generator is {@link MaskKeyGenerator#prefilled()}.
+     *
+     * @return MaskKeyGenerator
+     */
+    public abstract MaskKeyGenerator getMaskKeyGenerator();
+
     /**
      * Returns the maximum message length that this connection will support. The default maximum message length is 8192 bytes.
      *
@@ -139,6 +177,22 @@ public abstract class WebSocket implements Closeable {
      */
     public abstract int getMaxFramePayloadLength();
 
+    /**
+     * Returns the {@link MessageListener} that receives the incoming messages, or null if the messages are read using
+     * {@link #getMessageReader()}, {@link #getInputStream()} or {@link #getReader()}.
+     *
+     * @return MessageListener or null
+     */
+    public abstract MessageListener getMessageListener();
+
+    /**
+     * Returns the {@link Executor} used to invoke the {@link MessageListener}, or null if the listener is invoked from the
+     * selector thread that reads the connection.
+     *
+     * @return Executor or null
+     */
+    public abstract Executor getMessageListenerExecutor();
+
     /**
      * Returns a {@link MessageReader} to receive messages. The {@link MessageReader} is used to when the incoming messages
      * are either binary or text. {@link MessageReader} has the APIs to received messages that fit in a single WebSocket frame
@@ -150,6 +204,14 @@ public abstract class WebSocket implements Closeable {
      */
     public abstract MessageReader getMessageReader() throws IOException;
 
+    /**
+     * Returns the {@link MessageSpillPolicy} that specifies where {@link MessageReader#readMessage()} collects the messages
+     * received on this connection. The default policy is {@link MessageSpillPolicy#none()}.
+     *
+     * @return MessageSpillPolicy
+     */
+    public abstract MessageSpillPolicy getMessageSpillPolicy();
+
     /**
      * Returns a {@link MessageWriter} to send messages that fit in a single WebSocket frame as well as messages that span
      * across multiple WebSocket frames.
@@ -159,6 +221,14 @@ public abstract class WebSocket implements Closeable {
      */
     public abstract MessageWriter getMessageWriter() throws IOException;
 
+    /**
+     * Returns the live {@link WebSocketMetrics} of this connection, such as the number of frames and bytes sent and received by
+     * opcode and the time spent masking payloads. Invoke {@link WebSocketMetrics#snapshot()} to get values that do not change.
+     *
+     * @return metrics of this connection
+     */
+    public abstract WebSocketMetrics getMetrics();
+
     /**
      * Gets names of all the enabled extensions that have been successfully negotiated between the client and the server during
      * the initial handshake.
@@ -179,6 +249,14 @@ public abstract class WebSocket implements Closeable {
      */
     public abstract String getNegotiatedProtocol() throws IOException;
 
+    /**
+     * Returns the {@link OutboundQueuePolicy} that specifies whether the messages sent using {@link MessageWriter} are queued.
+     * The default policy is {@link OutboundQueuePolicy#none()}.
+     *
+     * @return OutboundQueuePolicy
+     */
+    public abstract OutboundQueuePolicy getOutboundQueuePolicy();
+
     /**
      * Returns the {@link OutputStream} to send <b>binary</b> messages. The message is put on the wire only when the application
      * invokes {@link OutputStream#flush()} method.
@@ -208,6 +286,14 @@ public abstract class WebSocket implements Closeable {
      */
     public abstract HttpRedirectPolicy getRedirectPolicy();
 
+    /**
+     * Returns the {@link RoundTripTimeHistogram} of the round-trip times measured using the PING frames sent as specified by
+     * the {@link KeepAlivePolicy}. The histogram stays empty if no PING frames are sent.
+     *
+     * @return RoundTripTimeHistogram of this connection
+     */
+    public abstract RoundTripTimeHistogram getRoundTripTimeHistogram();
+
     /**
      * Returns the names of extensions that have been discovered for this connection. An empty Collection is returned if no
      * extensions were discovered for this connection.
@@ -252,6 +338,73 @@ public abstract class WebSocket implements Closeable {
      */
     public abstract void setEnabledProtocols(String... protocols);
 
+    /**
+     * Sets the {@link FrameRecorder} that records the header of every frame received and sent on this connection, or null to
+     * not record the frames. This method must be invoked before {@link #connect} is called.
+     * <p>
+     * If this method is invoked after a connection has been successfully established, an IllegalStateException is thrown.
+     * <p>
+     * @param recorder  the frame recorder, or null
+     */
+    public abstract void setFrameRecorder(FrameRecorder recorder);
+
+    /**
+     * Sets the {@link KeepAlivePolicy} that specifies whether PING frames are sent while nothing is received on this
+     * connection, and whether the connection is closed if the server stops responding. This method must be invoked before
+     * {@link #connect} is called.
+     * <p>
+     * If this method is invoked after a connection has been successfully established, an IllegalStateException is thrown.
+     * <p>
+     * @param policy  the keep-alive policy
+     */
+    public abstract void setKeepAlivePolicy(KeepAlivePolicy policy);
+
+    /**
+     * Sets the {@link LockWaitStrategy} with which the threads that read from or write to this connection wait for each
+     * other. This method must be invoked before {@link #connect} is called.
+     * <p>
+     * If this method is invoked after a connection has been successfully established, an IllegalStateException is thrown.
+     * <p>
+     * @param waitStrategy  the strategy for waiting on the locks of this connection
+     */
+    public abstract void setLockWaitStrategy(LockWaitStrategy waitStrategy);
+
+    /**
+     * Sets the {@link MaskKeyGenerator} that supplies the masking keys for the frames sent on this connection. This method
+     * must be invoked before {@link #connect} is called.
+     * <p>
+     * If this method is invoked after a connection has been successfully established, an IllegalStateException is thrown.
+     * <p>
+     * @param maskKeyGenerator  the generator of masking keys
+     */
+    public abstract void setMaskKeyGenerator(MaskKeyGenerator maskKeyGenerator);
+
+    /**
+     * Sets the {@link MessageListener} that receives the incoming messages. This method must be invoked before {@link #connect}
+     * is called. Once connected, the messages are delivered to the listener as they arrive, without a reader thread for this
+     * WebSocket, and {@link #getMessageReader()}, {@link #getInputStream()} and {@link #getReader()} cannot be used. Messages
+     * are still sent using {@link #getMessageWriter()}, {@link #getOutputStream()} and {@link #getWriter()}.
+     * <p>
+     * The reader thread is only avoided for a ws location, without a {@link ChallengeHandler} and with the
+     * {@link HttpRedirectPolicy#NEVER} redirect policy. Any other WebSocket gets a dedicated thread that reads its messages.
+     * <p>
+     * If this method is invoked after a connection has been successfully established, an IllegalStateException is thrown.
+     * <p>
+     * @param listener  the listener, or null to read the messages using {@link #getMessageReader()}
+     */
+    public abstract void setMessageListener(MessageListener listener);
+
+    /**
+     * Sets the {@link Executor} used to invoke the {@link MessageListener}. If it is null, the listener is invoked from the
+     * thread that reads the connection, which for the shared reactor is a selector thread, so the listener must not block.
+     * This method must be invoked before {@link #connect} is called.
+     * <p>
+     * If this method is invoked after a connection has been successfully established, an IllegalStateException is thrown.
+     * <p>
+     * @param executor  the executor, or null
+     */
+    public abstract void setMessageListenerExecutor(Executor executor);
+
     /**
      * Sets the maximum payload length for a single WebSocket frame that this connection can handle. This method must be invoked
      * before {@link #connect} is called. The maximum payload length can be
@@ -265,6 +418,27 @@ public abstract class WebSocket implements Closeable {
      */
     public abstract void setMaxFramePayloadLength(int maxFramePayloadLength);
 
+    /**
+     * Sets the {@link MessageSpillPolicy} that specifies whether {@link MessageReader#readMessage()} writes the messages that
+     * are longer than a threshold to temporary files instead of collecting them on the heap. This method must be invoked
+     * before {@link #connect} is called.
+     * <p>
+     * If this method is invoked after a connection has been successfully established, an IllegalStateException is thrown.
+     * <p>
+     * @param policy  the message spill policy
+     */
+    public abstract void setMessageSpillPolicy(MessageSpillPolicy policy);
+
+    /**
+     * Sets the {@link OutboundQueuePolicy} that specifies whether the messages sent using {@link MessageWriter} are queued.
+     * This method must be invoked before {@link #connect} is called.
+     * <p>
+     * If this method is invoked after a connection has been successfully established, an IllegalStateException is thrown.
+     * <p>
+     * @param policy  the outbound queue policy
+     */
+    public abstract void setOutboundQueuePolicy(OutboundQueuePolicy policy);
+
     /**
      * Sets {@link HttpRedirectPolicy} indicating the policy for following HTTP redirects (3xx).
      *
@@ -24,11 +24,14 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import org.kaazing.netx.http.HttpRedirectPolicy;
 import org.kaazing.netx.http.auth.ChallengeHandler;
 import org.kaazing.netx.ws.internal.WebSocketExtensionFactory;
 import org.kaazing.netx.ws.internal.WebSocketImpl;
+import org.kaazing.netx.ws.internal.metrics.AggregateMetrics;
+import org.kaazing.netx.ws.internal.util.BufferPool;
 
 /**
  * {@link WebSocketFactory} is an abstract class that can be used to create {@link WebSocket}s by specifying the end-point and
@@ -48,18 +51,33 @@ public final class WebSocketFactory {
     private final List<String> defaultEnabledExtensions;
     private final List<String> defaultEnabledExtensionsRO;
     private final WebSocketExtensionFactory extensionFactory;
+    private final AggregateMetrics metrics;
 
     private HttpRedirectPolicy defaultRedirectPolicy;
     private ChallengeHandler defaultChallengeHandler;
     private int defaultConnectTimeout; // milliseconds
     private int defaultMaxFramePayloadLength;
+    private FrameRecorder defaultFrameRecorder;
+    private KeepAlivePolicy defaultKeepAlivePolicy;
+    private LockWaitStrategy defaultLockWaitStrategy;
+    private MaskKeyGenerator defaultMaskKeyGenerator;
+    private MessageListener defaultMessageListener;
+    private Executor defaultMessageListenerExecutor;
+    private MessageSpillPolicy defaultMessageSpillPolicy;
+    private OutboundQueuePolicy defaultOutboundQueuePolicy;
 
     private WebSocketFactory(WebSocketExtensionFactory extensionFactory) {
         this.defaultEnabledExtensions = new ArrayList<String>();
         this.defaultEnabledExtensionsRO = unmodifiableList(defaultEnabledExtensions);
         this.extensionFactory = extensionFactory;
+        this.metrics = new AggregateMetrics();
         this.defaultRedirectPolicy = HttpRedirectPolicy.ORIGIN;
         this.defaultMaxFramePayloadLength = DEFAULT_MAX_FRAME_PAYLOAD_LENGTH;
+        this.defaultMaskKeyGenerator = MaskKeyGenerator.prefilled();
+        this.defaultLockWaitStrategy = LockWaitStrategy.SPIN_YIELD_PARK;
+        this.defaultOutboundQueuePolicy = OutboundQueuePolicy.none();
+        this.defaultKeepAlivePolicy = KeepAlivePolicy.none();
+        this.defaultMessageSpillPolicy = MessageSpillPolicy.none();
     }
 
     /**
@@ -149,11 +167,40 @@ public final class WebSocketFactory {
         ws.setEnabledProtocols(protocols);
         ws.setChallengeHandler(defaultChallengeHandler);
         ws.setConnectTimeout(defaultConnectTimeout);
+        ws.setFrameRecorder(defaultFrameRecorder);
+        ws.setKeepAlivePolicy(defaultKeepAlivePolicy);
+        ws.setLockWaitStrategy(defaultLockWaitStrategy);
+        ws.setMaskKeyGenerator(defaultMaskKeyGenerator);
+        ws.setMessageListener(defaultMessageListener);
+        ws.setMessageListenerExecutor(defaultMessageListenerExecutor);
+        ws.setMessageSpillPolicy(defaultMessageSpillPolicy);
+        ws.setOutboundQueuePolicy(defaultOutboundQueuePolicy);
+        ws.setMetricsParent(metrics);
         ws.addEnabledExtensions(defaultEnabledExtensions.toArray(new String[defaultEnabledExtensions.size()]));
 
         return ws;
     }
 
+    /**
+     * Returns the statistics of the buffer pool from which the {@link WebSocket}s borrow their frame buffers. The pool is
+     * shared by all the connections in the class loader, regardless of the factory that created them.
+     *
+     * @return live view of the buffer pool statistics
+     */
+    public BufferPoolStatistics getBufferPoolStatistics() {
+        return BufferPool.shared().statistics();
+    }
+
+    /**
+     * Returns the live {@link WebSocketMetrics} of all the {@link WebSocket}s created using this factory, added up. To monitor
+     * them using JMX, register the bean returned by {@link WebSocketMetrics#asMXBean()} with an MBeanServer.
+     *
+     * @return metrics of the WebSockets created using this factory
+     */
+    public WebSocketMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * Gets the default {@link ChallengeHandler} that is used during authentication both at the connect-time as well as at
      * subsequent revalidation-time that occurs at regular intervals.
@@ -186,6 +233,46 @@ public final class WebSocketFactory {
         return defaultEnabledExtensionsRO;
     }
 
+    /**
+     * Returns the default {@link FrameRecorder} that is inherited by all the {@link WebSocket}s created using this factory, or
+     * null if the frames are not recorded. By default, the frames are not recorded.
+     *
+     * @return the default FrameRecorder, or null
+     */
+    public FrameRecorder getDefaultFrameRecorder() {
+        return defaultFrameRecorder;
+    }
+
+    /**
+     * Returns the default {@link KeepAlivePolicy} that is inherited by all the {@link WebSocket}s created using this factory.
+     * The default policy is {@link KeepAlivePolicy#none()}.
+     *
+     * @return the default KeepAlivePolicy
+     */
+    public KeepAlivePolicy getDefaultKeepAlivePolicy() {
+        return defaultKeepAlivePolicy;
+    }
+
+    /**
+     * Returns the default {@link LockWaitStrategy} that is inherited by all the {@link WebSocket}s created using this factory.
+     * The default strategy is {@link LockWaitStrategy#SPIN_YIELD_PARK}.
+     *
+     * @return the default LockWaitStrategy
+     */
+    public LockWaitStrategy getDefaultLockWaitStrategy() {
+        return defaultLockWaitStrategy;
+    }
+
+    /**
+     * Returns the default {@link MaskKeyGenerator} that is inherited by all the {@link WebSocket}s created using this factory.
+     * The default mask key generator is {@link MaskKeyGenerator#prefilled()}.
+     *
+     * @return the default MaskKeyGenerator
+     */
+    public MaskKeyGenerator getDefaultMaskKeyGenerator() {
+        return defaultMaskKeyGenerator;
+    }
+
     /**
      * Returns the maximum frame payload length that this connection will support. The default maximum frame paylaod length
      * is 8192 bytes.
@@ -196,6 +283,46 @@ public final class WebSocketFactory {
         return defaultMaxFramePayloadLength;
     }
 
+    /**
+     * Returns the default {@link MessageListener} that is inherited by all the {@link WebSocket}s created using this factory.
+     * There is no default message listener unless one has been set.
+     *
+     * @return the default MessageListener, or null
+     */
+    public MessageListener getDefaultMessageListener() {
+        return defaultMessageListener;
+    }
+
+    /**
+     * Returns the default {@link Executor} that dispatches the messages to the {@link MessageListener} of all the
+     * {@link WebSocket}s created using this factory.
+     *
+     * @return the default Executor, or null if the listeners are invoked on the I/O thread
+     */
+    public Executor getDefaultMessageListenerExecutor() {
+        return defaultMessageListenerExecutor;
+    }
+
+    /**
+     * Returns the default {@link MessageSpillPolicy} that is inherited by all the {@link WebSocket}s created using this
+     * factory. The default policy is {@link MessageSpillPolicy#none()}.
+     *
+     * @return the default MessageSpillPolicy
+     */
+    public MessageSpillPolicy getDefaultMessageSpillPolicy() {
+        return defaultMessageSpillPolicy;
+    }
+
+    /**
+     * Returns the default {@link OutboundQueuePolicy} that is inherited by all the {@link WebSocket}s created using this
+     * factory. The default policy is {@link OutboundQueuePolicy#none()}.
+     *
+     * @return the default OutboundQueuePolicy
+     */
+    public OutboundQueuePolicy getDefaultOutboundQueuePolicy() {
+        return defaultOutboundQueuePolicy;
+    }
+
     /**
      * Returns the default {@link HttpRedirectPolicy} that was specified at on the factory. The default redirect policy
      * is {@link HttpRedirectPolicy.ORIGIN}.
@@ -239,6 +366,62 @@ public final class WebSocketFactory {
         this.defaultConnectTimeout = connectTimeout;
      }
 
+    /**
+     * Sets the default {@link FrameRecorder} that records the frames of all the {@link WebSocket}s created using this factory,
+     * or null to not record the frames. The frames of each connection are tagged with its own id in the trace.
+     *
+     * @param recorder   default FrameRecorder, or null
+     */
+    public void setDefaultFrameRecorder(FrameRecorder recorder) {
+        this.defaultFrameRecorder = recorder;
+    }
+
+    /**
+     * Sets the default {@link KeepAlivePolicy} that specifies whether the {@link WebSocket}s created using this factory send
+     * PING frames while nothing is received, and whether they are closed if the server stops responding. All the connections
+     * share a single timer thread. Choose {@link KeepAlivePolicy#ping(long, long, java.util.concurrent.TimeUnit)} to keep
+     * idle connections open through NATs and to detect the connections that have silently gone away.
+     *
+     * @param policy   default KeepAlivePolicy
+     */
+    public void setDefaultKeepAlivePolicy(KeepAlivePolicy policy) {
+        if (policy == null) {
+            throw new NullPointerException("Null keep-alive policy passed in");
+        }
+
+        this.defaultKeepAlivePolicy = policy;
+    }
+
+    /**
+     * Sets the default {@link LockWaitStrategy} with which the threads that read from or write to the {@link WebSocket}s
+     * created using this factory wait for each other. Choose {@link LockWaitStrategy#SPIN} only if the threads have
+     * dedicated cores.
+     *
+     * @param waitStrategy   default LockWaitStrategy
+     */
+    public void setDefaultLockWaitStrategy(LockWaitStrategy waitStrategy) {
+        if (waitStrategy == null) {
+            throw new NullPointerException("Null lock wait strategy passed in");
+        }
+
+        this.defaultLockWaitStrategy = waitStrategy;
+    }
+
+    /**
+     * Sets the default {@link MaskKeyGenerator} that supplies the masking keys for the frames sent by all the
+     * {@link WebSocket}s created using this factory. Choose {@link MaskKeyGenerator#threadLocal()} or
+     * {@link MaskKeyGenerator#xorShift()} to avoid drawing keys from a shared source when many threads send concurrently.
+     *
+     * @param maskKeyGenerator   default MaskKeyGenerator
+     */
+    public void setDefaultMaskKeyGenerator(MaskKeyGenerator maskKeyGenerator) {
+        if (maskKeyGenerator == null) {
+            throw new NullPointerException("Null mask key generator passed in");
+        }
+
+        this.defaultMaskKeyGenerator = maskKeyGenerator;
+    }
+
     /**
      * Sets the maximum frame payload length that is inherited by all the @{link WebSocket}s created using this factory.
      * The maximum frame payload length can be {@link WsURLConnection#MAX_FRAME_PAYLOAD_LENGTH_LIMIT}.
@@ -261,6 +444,61 @@ public final class WebSocketFactory {
         this.defaultMaxFramePayloadLength = maxFramePayloadLength;
     }
 
+    /**
+     * Sets the default {@link MessageListener} that receives the incoming messages of all the {@link WebSocket}s created using
+     * this factory. A null listener restores the default pull-based model of {@link WebSocket#getMessageReader()}.
+     * <p>
+     * The shared reactor only serves ws locations, without a {@link ChallengeHandler} and with the
+     * {@link HttpRedirectPolicy#NEVER} redirect policy. Note that the default redirect policy of the factory is
+     * {@link HttpRedirectPolicy#ORIGIN}. The other {@link WebSocket}s are upgraded with a blocking handshake and get a
+     * dedicated thread that delivers their messages, as described in {@link MessageListener}.
+     *
+     * @param listener   default MessageListener, or null
+     */
+    public void setDefaultMessageListener(MessageListener listener) {
+        this.defaultMessageListener = listener;
+    }
+
+    /**
+     * Sets the default {@link Executor} that dispatches the messages to the {@link MessageListener} of all the
+     * {@link WebSocket}s created using this factory. A null executor invokes the listeners directly on the I/O thread.
+     *
+     * @param executor   default Executor, or null
+     */
+    public void setDefaultMessageListenerExecutor(Executor executor) {
+        this.defaultMessageListenerExecutor = executor;
+    }
+
+    /**
+     * Sets the default {@link MessageSpillPolicy} that specifies whether the {@link WebSocket}s created using this factory
+     * write the messages read using {@link MessageReader#readMessage()} that are longer than a threshold to temporary files.
+     * Choose {@link MessageSpillPolicy#spillAbove(long)} when occasional messages are too large to be held on the heap.
+     *
+     * @param policy   default MessageSpillPolicy
+     */
+    public void setDefaultMessageSpillPolicy(MessageSpillPolicy policy) {
+        if (policy == null) {
+            throw new NullPointerException("Null message spill policy passed in");
+        }
+
+        this.defaultMessageSpillPolicy = policy;
+    }
+
+    /**
+     * Sets the default {@link OutboundQueuePolicy} that specifies whether the messages sent on the {@link WebSocket}s created
+     * using this factory are queued. Choose {@link OutboundQueuePolicy#bounded(int, int, int)} to let many threads send on
+     * the same WebSocket without contending for it.
+     *
+     * @param policy   default OutboundQueuePolicy
+     */
+    public void setDefaultOutboundQueuePolicy(OutboundQueuePolicy policy) {
+        if (policy == null) {
+            throw new NullPointerException("Null outbound queue policy passed in");
+        }
+
+        this.defaultOutboundQueuePolicy = policy;
+    }
+
     /**
      * Sets the default {@link HttpRedirectPolicy} that is to be inherited by all the {@link WebSocket}s created using this
      * factory instance.
@@ -0,0 +1,243 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link WebSocketMetrics} reports the traffic and the time spent on the frames of a connection, or of all the connections
+ * created using a {@link WebSocketFactory}. The metrics returned by {@link WsURLConnection#getMetrics()},
+ * {@link WebSocket#getMetrics()} and {@link WebSocketFactory#getMetrics()} are a live view, and {@link #snapshot()} copies
+ * the current values so that they can be compared with a later snapshot, such as to work out the rate of messages.
+ * <p>
+ * Frames and payload bytes are counted as they are on the wire, that is before the negotiated extensions decode an incoming
+ * frame and after they have encoded an outgoing frame. A message is counted once its final frame is received or sent, and a
+ * message is fragmented if it spans more than one frame.
+ * <p>
+ * The counters are updated without taking a lock, so the values of a live view need not be consistent with each other.
+ * The metrics can be exposed using JMX by registering the bean returned by {@link #asMXBean()}:
+ *
+ * {@code}
+ * MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+ * server.registerMBean(factory.getMetrics().asMXBean(), new ObjectName("org.kaazing.netx.ws:type=WebSocketFactory"));
+ *
+ * {@code}
+ */
+public abstract class WebSocketMetrics {
+
+    /**
+     * Type of a WebSocket frame, as given by its opcode.
+     */
+    public enum FrameType {
+        BINARY, CLOSE, CONTINUATION, PING, PONG, TEXT
+    }
+
+    /**
+     * Returns the number of frames of the specified type that have been received.
+     *
+     * @param type   frame type
+     * @return number of frames received
+     */
+    public abstract long getFramesReceived(FrameType type);
+
+    /**
+     * Returns the number of frames of the specified type that have been sent.
+     *
+     * @param type   frame type
+     * @return number of frames sent
+     */
+    public abstract long getFramesSent(FrameType type);
+
+    /**
+     * Returns the number of payload bytes in the frames of the specified type that have been received.
+     *
+     * @param type   frame type
+     * @return number of payload bytes received
+     */
+    public abstract long getPayloadBytesReceived(FrameType type);
+
+    /**
+     * Returns the number of payload bytes in the frames of the specified type that have been sent.
+     *
+     * @param type   frame type
+     * @return number of payload bytes sent
+     */
+    public abstract long getPayloadBytesSent(FrameType type);
+
+    /**
+     * Returns the number of text and binary messages that have been received.
+     *
+     * @return number of messages received
+     */
+    public abstract long getMessagesReceived();
+
+    /**
+     * Returns the number of text and binary messages that have been sent.
+     *
+     * @return number of messages sent
+     */
+    public abstract long getMessagesSent();
+
+    /**
+     * Returns the number of received messages that spanned more than one frame.
+     *
+     * @return number of fragmented messages received
+     */
+    public abstract long getFragmentedMessagesReceived();
+
+    /**
+     * Returns the number of sent messages that spanned more than one frame.
+     *
+     * @return number of fragmented messages sent
+     */
+    public abstract long getFragmentedMessagesSent();
+
+    /**
+     * Returns the time spent masking the payload of the outgoing frames.
+     *
+     * @param unit   unit of the returned value
+     * @return time spent masking
+     */
+    public abstract long getMaskingTime(TimeUnit unit);
+
+    /**
+     * Returns the time spent validating that the payload of the incoming text messages is UTF-8.
+     *
+     * @param unit   unit of the returned value
+     * @return time spent validating UTF-8
+     */
+    public abstract long getUtf8ValidationTime(TimeUnit unit);
+
+    /**
+     * Returns the number of times a thread sending a frame had to wait for another thread to finish writing.
+     *
+     * @return number of waits for the write lock
+     */
+    public abstract long getWriteLockWaitCount();
+
+    /**
+     * Returns the time spent by the threads sending frames waiting for other threads to finish writing.
+     *
+     * @param unit   unit of the returned value
+     * @return time spent waiting for the write lock
+     */
+    public abstract long getWriteLockWaitTime(TimeUnit unit);
+
+    /**
+     * Returns the value of {@link System#nanoTime()} at which the snapshot was taken, or the current value for a live view.
+     *
+     * @return time of the values
+     */
+    public abstract long getNanoTime();
+
+    /**
+     * Returns a copy of the current values that does not change any more.
+     *
+     * @return snapshot of the metrics
+     */
+    public abstract WebSocketMetrics snapshot();
+
+    /**
+     * Returns a bean that exposes these metrics, along with the statistics of the shared buffer pool, using JMX. The bean
+     * is not registered with any MBeanServer.
+     *
+     * @return MXBean of the metrics
+     */
+    public abstract WebSocketMetricsMXBean asMXBean();
+
+    /**
+     * Returns the total number of frames that have been received.
+     *
+     * @return number of frames received
+     */
+    public long getFramesReceived() {
+        long frames = 0;
+        for (FrameType type : FrameType.values()) {
+            frames += getFramesReceived(type);
+        }
+        return frames;
+    }
+
+    /**
+     * Returns the total number of frames that have been sent.
+     *
+     * @return number of frames sent
+     */
+    public long getFramesSent() {
+        long frames = 0;
+        for (FrameType type : FrameType.values()) {
+            frames += getFramesSent(type);
+        }
+        return frames;
+    }
+
+    /**
+     * Returns the total number of payload bytes that have been received.
+     *
+     * @return number of payload bytes received
+     */
+    public long getPayloadBytesReceived() {
+        long bytes = 0;
+        for (FrameType type : FrameType.values()) {
+            bytes += getPayloadBytesReceived(type);
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the total number of payload bytes that have been sent.
+     *
+     * @return number of payload bytes sent
+     */
+    public long getPayloadBytesSent() {
+        long bytes = 0;
+        for (FrameType type : FrameType.values()) {
+            bytes += getPayloadBytesSent(type);
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the number of messages received per second since the specified earlier snapshot was taken.
+     *
+     * @param earlier   snapshot taken earlier from the same connection or factory
+     * @return messages received per second
+     */
+    public double getMessagesReceivedPerSecond(WebSocketMetrics earlier) {
+        return perSecond(getMessagesReceived() - earlier.getMessagesReceived(), getNanoTime() - earlier.getNanoTime());
+    }
+
+    /**
+     * Returns the number of messages sent per second since the specified earlier snapshot was taken.
+     *
+     * @param earlier   snapshot taken earlier from the same connection or factory
+     * @return messages sent per second
+     */
+    public double getMessagesSentPerSecond(WebSocketMetrics earlier) {
+        return perSecond(getMessagesSent() - earlier.getMessagesSent(), getNanoTime() - earlier.getNanoTime());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("framesIn=%d framesOut=%d bytesIn=%d bytesOut=%d messagesIn=%d messagesOut=%d",
+                getFramesReceived(), getFramesSent(), getPayloadBytesReceived(), getPayloadBytesSent(),
+                getMessagesReceived(), getMessagesSent());
+    }
+
+    private static double perSecond(long count, long nanos) {
+        return (nanos <= 0) ? 0 : count * 1e9 / nanos;
+    }
+}
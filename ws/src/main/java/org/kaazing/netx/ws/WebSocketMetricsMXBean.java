@@ -0,0 +1,78 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws;
+
+/**
+ * {@link WebSocketMetricsMXBean} exposes the {@link WebSocketMetrics} of a connection or a factory using JMX. The rates are
+ * worked out over the time since the previous time they were read, or since the bean was created. The buffer pool attributes
+ * are those of the pool shared by all the connections, see {@link BufferPoolStatistics}.
+ *
+ * @see WebSocketMetrics#asMXBean()
+ */
+public interface WebSocketMetricsMXBean {
+
+    long getFramesReceived();
+
+    long getFramesSent();
+
+    long getPayloadBytesReceived();
+
+    long getPayloadBytesSent();
+
+    long getBinaryFramesReceived();
+
+    long getBinaryFramesSent();
+
+    long getTextFramesReceived();
+
+    long getTextFramesSent();
+
+    long getContinuationFramesReceived();
+
+    long getContinuationFramesSent();
+
+    long getControlFramesReceived();
+
+    long getControlFramesSent();
+
+    long getMessagesReceived();
+
+    long getMessagesSent();
+
+    double getMessagesReceivedPerSecond();
+
+    double getMessagesSentPerSecond();
+
+    long getFragmentedMessagesReceived();
+
+    long getFragmentedMessagesSent();
+
+    long getMaskingTimeMicros();
+
+    long getUtf8ValidationTimeMicros();
+
+    long getWriteLockWaitCount();
+
+    long getWriteLockWaitTimeMicros();
+
+    long getBufferPoolLentBytes();
+
+    long getBufferPoolIdleBytes();
+
+    long getBufferPoolAllocationCount();
+
+    long getBufferPoolDiscardCount();
+}
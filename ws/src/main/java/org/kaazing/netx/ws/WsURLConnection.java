@@ -201,6 +201,14 @@ public abstract class WsURLConnection extends URLConnection implements Closeable
      */
     public abstract Collection<String> getEnabledProtocols();
 
+    /**
+     * Returns the {@link FrameRecorder} that records the frames received and sent on this connection, or null if the frames
+     * are not recorded. By default, the frames are not recorded.
+     *
+     * @return FrameRecorder, or null
+     */
+    public abstract FrameRecorder getFrameRecorder();
+
     /**
      * Returns the {@link InputStream} to receive <b>binary</b> messages. The methods on {@link InputStream} will block till the
      * message arrives. The {@link InputStream} must be used to only receive <b>binary</b> messages.
@@ -212,6 +220,30 @@ public abstract class WsURLConnection extends URLConnection implements Closeable
     @Override
     public abstract InputStream getInputStream() throws IOException;
 
+    /**
+     * Returns the {@link KeepAlivePolicy} that specifies whether PING frames are sent while nothing is received on this
+     * connection. The default policy is {@link KeepAlivePolicy#none()}.
+     *
+     * @return KeepAlivePolicy
+     */
+    public abstract KeepAlivePolicy getKeepAlivePolicy();
+
+    /**
+     * Returns the {@link LockWaitStrategy} with which the threads that read from or write to this connection wait for each
+     * other. The default strategy is {@link LockWaitStrategy#SPIN_YIELD_PARK}.
+     *
+     * @return LockWaitStrategy
+     */
+    public abstract LockWaitStrategy getLockWaitStrategy();
+
+    /**
+     * Returns the {@link MaskKeyGenerator} that supplies the masking keys for the frames sent on this connection. The default
+     * generator is {@link MaskKeyGenerator#prefilled()}.
+     *
+     * @return MaskKeyGenerator
+     */
+    public abstract MaskKeyGenerator getMaskKeyGenerator();
+
     /**
      * Returns the maximum message length that this connection will support. The default maximum message length is 8192 bytes.
      *
@@ -230,6 +262,14 @@ public abstract class WsURLConnection extends URLConnection implements Closeable
      */
     public abstract MessageReader getMessageReader() throws IOException;
 
+    /**
+     * Returns the {@link MessageSpillPolicy} that specifies where {@link MessageReader#readMessage()} collects the messages
+     * received on this connection. The default policy is {@link MessageSpillPolicy#none()}.
+     *
+     * @return MessageSpillPolicy
+     */
+    public abstract MessageSpillPolicy getMessageSpillPolicy();
+
     /**
      * Returns a {@link MessageWriter} to send messages that fit in a single WebSocket frame as well as messages that span
      * across multiple WebSocket frames.
@@ -239,6 +279,14 @@ public abstract class WsURLConnection extends URLConnection implements Closeable
      */
     public abstract MessageWriter getMessageWriter() throws IOException;
 
+    /**
+     * Returns the live {@link WebSocketMetrics} of this connection, such as the number of frames and bytes sent and received by
+     * opcode and the time spent masking payloads. Invoke {@link WebSocketMetrics#snapshot()} to get values that do not change.
+     *
+     * @return metrics of this connection
+     */
+    public abstract WebSocketMetrics getMetrics();
+
     /**
      * Gets names of all the enabled extensions that have been successfully negotiated between the client and the server during
      * the initial handshake.
@@ -259,6 +307,14 @@ public abstract class WsURLConnection extends URLConnection implements Closeable
      */
     public abstract String getNegotiatedProtocol() throws IOException;
 
+    /**
+     * Returns the {@link OutboundQueuePolicy} that specifies whether the messages sent using {@link MessageWriter} are queued.
+     * The default policy is {@link OutboundQueuePolicy#none()}.
+     *
+     * @return OutboundQueuePolicy
+     */
+    public abstract OutboundQueuePolicy getOutboundQueuePolicy();
+
     /**
      * Returns the {@link OutputStream} to send <b>binary</b> messages. The message is put on the wire only when the application
      * invokes {@link OutputStream#flush()} method.
@@ -288,6 +344,14 @@ public abstract class WsURLConnection extends URLConnection implements Closeable
      */
     public abstract HttpRedirectPolicy getRedirectPolicy();
 
+    /**
+     * Returns the {@link RoundTripTimeHistogram} of the round-trip times measured using the PING frames sent as specified by
+     * the {@link KeepAlivePolicy}. The histogram stays empty if no PING frames are sent.
+     *
+     * @return RoundTripTimeHistogram of this connection
+     */
+    public abstract RoundTripTimeHistogram getRoundTripTimeHistogram();
+
     /**
      * Returns the names of extensions that have been discovered for this connection. An empty Collection is returned if no
      * extensions were discovered for this connection.
@@ -324,6 +388,47 @@ public abstract class WsURLConnection extends URLConnection implements Closeable
      */
     public abstract void setEnabledProtocols(String... protocols) throws IllegalStateException;
 
+    /**
+     * Sets the {@link FrameRecorder} that records the header of every frame received and sent on this connection, or null to
+     * not record the frames. This method must be invoked before {@link #connect} is called.
+     * <p>
+     * If this method is invoked after a connection has been successfully established, an IllegalStateException is thrown.
+     * <p>
+     * @param recorder  the frame recorder, or null
+     */
+    public abstract void setFrameRecorder(FrameRecorder recorder);
+
+    /**
+     * Sets the {@link KeepAlivePolicy} that specifies whether PING frames are sent while nothing is received on this
+     * connection, and whether the connection is closed if the server stops responding. This method must be invoked before
+     * {@link #connect} is called.
+     * <p>
+     * If this method is invoked after a connection has been successfully established, an IllegalStateException is thrown.
+     * <p>
+     * @param policy  the keep-alive policy
+     */
+    public abstract void setKeepAlivePolicy(KeepAlivePolicy policy);
+
+    /**
+     * Sets the {@link LockWaitStrategy} with which the threads that read from or write to this connection wait for each
+     * other. This method must be invoked before {@link #connect} is called.
+     * <p>
+     * If this method is invoked after a connection has been successfully established, an IllegalStateException is thrown.
+     * <p>
+     * @param waitStrategy  the strategy for waiting on the locks of this connection
+     */
+    public abstract void setLockWaitStrategy(LockWaitStrategy waitStrategy);
+
+    /**
+     * Sets the {@link MaskKeyGenerator} that supplies the masking keys for the frames sent on this connection. This method
+     * must be invoked before {@link #connect} is called.
+     * <p>
+     * If this method is invoked after a connection has been successfully established, an IllegalStateException is thrown.
+     * <p>
+     * @param maskKeyGenerator  the generator of masking keys
+     */
+    public abstract void setMaskKeyGenerator(MaskKeyGenerator maskKeyGenerator);
+
     /**
      * Sets the maximum message length that this connection can handle. This method must be invoked before {@link #connect}
      * is called. The maximum message length can be {@link MAX_MESSAGE_LENGTH_LIMIT}.
@@ -335,6 +440,27 @@ public abstract class WsURLConnection extends URLConnection implements Closeable
      */
     public abstract void setMaxFramePayloadLength(int maxMessageLength);
 
+    /**
+     * Sets the {@link MessageSpillPolicy} that specifies whether {@link MessageReader#readMessage()} writes the messages that
+     * are longer than a threshold to temporary files instead of collecting them on the heap. This method must be invoked
+     * before {@link #connect} is called.
+     * <p>
+     * If this method is invoked after a connection has been successfully established, an IllegalStateException is thrown.
+     * <p>
+     * @param policy  the message spill policy
+     */
+    public abstract void setMessageSpillPolicy(MessageSpillPolicy policy);
+
+    /**
+     * Sets the {@link OutboundQueuePolicy} that specifies whether the messages sent using {@link MessageWriter} are queued.
+     * This method must be invoked before {@link #connect} is called.
+     * <p>
+     * If this method is invoked after a connection has been successfully established, an IllegalStateException is thrown.
+     * <p>
+     * @param policy  the outbound queue policy
+     */
+    public abstract void setOutboundQueuePolicy(OutboundQueuePolicy policy);
+
     /**
      * Sets {@link HttpRedirectPolicy} indicating the policy for following HTTP redirects (3xx). This method must be invoked
      * before {@link #connect()} is called
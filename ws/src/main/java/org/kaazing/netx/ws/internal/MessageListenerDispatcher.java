@@ -0,0 +1,183 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.kaazing.netx.ws.MessageReader;
+import org.kaazing.netx.ws.MessageType;
+import org.kaazing.netx.ws.ReceivedMessage;
+import org.kaazing.netx.ws.nio.WebSocketHandler;
+
+/**
+ * Delivers the messages of a connection that was established with a blocking HTTP upgrade to a {@link WebSocketHandler}. It
+ * is used for the locations that the reactor cannot serve, such as wss, redirects and challenges. A dedicated thread reads
+ * the messages using the connection's {@link MessageReader}.
+ * <p>
+ * When an {@link Executor} is specified, each event is handed to it and the thread waits for the handler to return, so that
+ * the payload remains valid and the messages are handled one at a time and in order, as they are by the reactor.
+ */
+final class MessageListenerDispatcher implements Runnable {
+    private final WsURLConnectionImpl connection;
+    private final MessageReader messageReader;
+    private final WebSocketHandler handler;
+    private final Executor executor;
+
+    // Must be constructed once the connection has been established, so that the MessageReader takes hold of the transport
+    // before the application can close the connection.
+    MessageListenerDispatcher(WsURLConnectionImpl connection, WebSocketHandler handler, Executor executor) throws IOException {
+        this.connection = connection;
+        this.messageReader = connection.getMessageReader();
+        this.handler = handler;
+        this.executor = executor;
+    }
+
+    void start() {
+        Thread thread = new Thread(this, "netx-ws-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (messageReader.next() != MessageType.EOS) {
+                ReceivedMessage message = messageReader.readMessage();
+                if (message == null) {
+                    break;
+                }
+
+                try {
+                    dispatchMessage(message);
+                }
+                finally {
+                    message.close();
+                }
+            }
+        }
+        catch (IOException e) {
+            fail(e);
+        }
+        catch (RuntimeException e) {
+            fail(new IOException(e));
+        }
+
+        dispatchClose(connection.getCloseCodeReceived(), connection.getCloseReasonReceived());
+    }
+
+    private void fail(IOException exception) {
+        // Closing the WebSocket disconnects the transport without waiting for the server's CLOSE frame, which fails the read.
+        if (connection.getOutputState() == WebSocketState.CLOSED) {
+            return;
+        }
+
+        dispatchError(exception);
+        connection.abort();
+    }
+
+    private void dispatchMessage(final ReceivedMessage message) throws IOException {
+        Notification notification = new Notification() {
+            @Override
+            protected void notifyHandler() throws IOException {
+                handler.onMessage(connection, message.getType(), message.getBuffer());
+            }
+        };
+
+        dispatch(notification);
+
+        if (notification.failure != null) {
+            throw notification.failure;
+        }
+    }
+
+    private void dispatchError(final IOException exception) {
+        dispatch(new Notification() {
+            @Override
+            protected void notifyHandler() {
+                handler.onError(connection, exception);
+            }
+        });
+    }
+
+    private void dispatchClose(final int code, final String reason) {
+        dispatch(new Notification() {
+            @Override
+            protected void notifyHandler() {
+                handler.onClose(connection, code, reason);
+            }
+        });
+    }
+
+    private void dispatch(Notification notification) {
+        if (executor != null) {
+            try {
+                executor.execute(notification);
+                notification.await();
+                return;
+            }
+            catch (RejectedExecutionException e) {
+                // The executor has been shut down, so notify from this thread instead.
+            }
+        }
+
+        notification.run();
+    }
+
+    private abstract static class Notification implements Runnable {
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private IOException failure;
+
+        @Override
+        public final void run() {
+            try {
+                notifyHandler();
+            }
+            catch (IOException e) {
+                failure = e;
+            }
+            catch (RuntimeException e) {
+                failure = new IOException(e);
+            }
+            finally {
+                done.countDown();
+            }
+        }
+
+        protected abstract void notifyHandler() throws IOException;
+
+        final void await() {
+            boolean interrupted = false;
+
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+
+import org.kaazing.netx.ws.MessageListener;
+import org.kaazing.netx.ws.MessageType;
+import org.kaazing.netx.ws.WebSocket;
+import org.kaazing.netx.ws.WsURLConnection;
+import org.kaazing.netx.ws.nio.WebSocketHandler;
+
+final class MessageListenerHandler extends WebSocketHandler {
+    private static final String MSG_CONNECT_TIMEOUT = "Connection timed out";
+    private static final String MSG_CONNECT_INTERRUPTED = "Interrupted while connecting";
+    private static final String MSG_CONNECTION_FAILED = "Connection failed";
+
+    private final WebSocket webSocket;
+    private final WsURLConnectionImpl connection;
+    private final MessageListener listener;
+    private final CountDownLatch connected;
+
+    private volatile boolean open;
+    private volatile IOException failure;
+
+    MessageListenerHandler(WebSocket webSocket, WsURLConnectionImpl connection, MessageListener listener) {
+        this.webSocket = webSocket;
+        this.connection = connection;
+        this.listener = listener;
+        this.connected = new CountDownLatch(1);
+    }
+
+    // Blocks until the opening handshake completes or fails. A timeout of zero waits forever.
+    void awaitConnected(int timeout) throws IOException {
+        try {
+            if (timeout > 0) {
+                if (!connected.await(timeout, MILLISECONDS)) {
+                    // Closing the transport abandons the opening handshake. The reactor then reports the failure, once the
+                    // connection has been reset, so that it can be connected again.
+                    connection.getTcpOutputStream().close();
+                    connected.await();
+                    throw new SocketTimeoutException(MSG_CONNECT_TIMEOUT);
+                }
+            }
+            else {
+                connected.await();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(MSG_CONNECT_INTERRUPTED);
+        }
+
+        if (!open) {
+            throw (failure != null) ? failure : new IOException(MSG_CONNECTION_FAILED);
+        }
+    }
+
+    @Override
+    public void onOpen(WsURLConnection connection) {
+        open = true;
+        connected.countDown();
+    }
+
+    @Override
+    public void onMessage(WsURLConnection connection, MessageType type, ByteBuffer payload) throws IOException {
+        switch (type) {
+        case TEXT:
+            listener.onText(webSocket, payload);
+            break;
+        default:
+            listener.onBinary(webSocket, payload);
+            break;
+        }
+    }
+
+    @Override
+    public void onClose(WsURLConnection connection, int code, String reason) {
+        // A connection that never opened has already counted down from onError(), which precedes onClose().
+        if (open) {
+            listener.onClose(webSocket, code, reason);
+        }
+    }
+
+    @Override
+    public void onError(WsURLConnection connection, IOException exception) {
+        if (open) {
+            listener.onError(webSocket, exception);
+        }
+        else {
+            // Stored before counting down, so that awaitConnected() throws the cause.
+            failure = exception;
+            this.connection.resetTransport();
+            connected.countDown();
+        }
+    }
+}
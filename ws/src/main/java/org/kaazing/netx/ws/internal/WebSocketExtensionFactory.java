@@ -32,7 +32,7 @@ import org.kaazing.netx.ws.internal.ext.WebSocketExtensionSpi;
 
 
 public final class WebSocketExtensionFactory {
-    private static final Pattern PATTERN_EXTENSION_FORMAT = Pattern.compile("([a-zA-Z0-9]*)(;?(.*))");
+    private static final Pattern PATTERN_EXTENSION_FORMAT = Pattern.compile("\\s*([a-zA-Z0-9_\\-]*)\\s*(;?(.*))");
 
     private final Map<String, WebSocketExtensionFactorySpi> factoriesRO;
 
@@ -103,6 +103,32 @@ public final class WebSocketExtensionFactory {
         factory.validateExtension(extensionWithParams);
     }
 
+    /**
+     * Validates the extension in the specified response against the specified offer for the same extension. The format of
+     * both the strings is as shown below:
+     *
+     * {@code}
+     *      extension-name[;param1=value1;param2;param3=value3]
+     * {@code}
+     * @param offer     String representation of the extension in request header format
+     * @param response  String representation of the extension in response header format
+     */
+    public void validateResponse(String offer, String response) throws IOException {
+        Matcher extensionMatcher = PATTERN_EXTENSION_FORMAT.matcher(response);
+        if (!extensionMatcher.matches()) {
+            throw new IllegalStateException(format("Bad extension syntax: %s", response));
+        }
+
+        String extensionName = extensionMatcher.group(1);
+
+        WebSocketExtensionFactorySpi factory = factoriesRO.get(extensionName);
+        if (factory == null) {
+            throw new IllegalArgumentException("Unsupported extension: " + extensionName);
+        }
+
+        factory.validateResponse(offer, response);
+    }
+
     /**
      * Creates a new instance of WebSocketExtensionFactory. It uses the default {@link ClassLoader} to load
      * {@link WebSocketExtensionFactorySpi} objects that are registered using META-INF/services.
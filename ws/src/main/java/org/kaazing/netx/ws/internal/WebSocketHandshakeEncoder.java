@@ -0,0 +1,282 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal;
+
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Encodes the opening handshake request and validates the Sec-WebSocket-Accept header of the response.
+ * <p>
+ * The request line, the Host header and the headers that only depend on the location and on the enabled protocols and
+ * extensions are encoded once per combination of those, and kept as a template that ends with the Sec-WebSocket-Key header
+ * name. Encoding a request then copies the template and appends the key, so that reconnecting many clients to the same
+ * location does not format the same headers again for each of them.
+ * <p>
+ * The accept is validated with a SHA-1 digest and scratch buffers that are reused by the thread, and compared against the
+ * header one character at a time, without allocating a String.
+ */
+public final class WebSocketHandshakeEncoder {
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final byte[] WEBSOCKET_GUID_BYTES = WEBSOCKET_GUID.getBytes(US_ASCII);
+    private static final byte[] CRLF_CRLF = "\r\n\r\n".getBytes(US_ASCII);
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private static final int SHA1_LENGTH = 20;
+    private static final int ACCEPT_LENGTH = 28;
+
+    // Templates are dropped all at once when this many have been cached, which only happens with many distinct locations.
+    private static final int MAX_TEMPLATES = 256;
+
+    private static final ConcurrentMap<TemplateKey, byte[]> TEMPLATES = new ConcurrentHashMap<TemplateKey, byte[]>();
+
+    private static final ThreadLocal<AcceptDigest> ACCEPT_DIGESTS = new ThreadLocal<AcceptDigest>() {
+        @Override
+        protected AcceptDigest initialValue() {
+            return new AcceptDigest();
+        }
+    };
+
+    private WebSocketHandshakeEncoder() {
+    }
+
+    /**
+     * Encodes the opening handshake request for the specified location.
+     *
+     * @param location      HTTP location of the WebSocket
+     * @param protocols     enabled protocols, in order of preference
+     * @param extensions    enabled extensions, in order of preference
+     * @param websocketKey  value of the Sec-WebSocket-Key header
+     * @return ASCII bytes of the request head, including the empty line that ends it
+     */
+    public static byte[] encodeRequest(
+            URI location,
+            Collection<String> protocols,
+            Collection<String> extensions,
+            String websocketKey) {
+        byte[] template = template(location, protocols, extensions);
+        int keyLength = websocketKey.length();
+
+        byte[] request = Arrays.copyOf(template, template.length + keyLength + CRLF_CRLF.length);
+        for (int i = 0; i < keyLength; i++) {
+            request[template.length + i] = (byte) websocketKey.charAt(i);
+        }
+        System.arraycopy(CRLF_CRLF, 0, request, template.length + keyLength, CRLF_CRLF.length);
+        return request;
+    }
+
+    /**
+     * Checks that the specified accept is the Base64 encoded SHA-1 digest of the key followed by the WebSocket GUID.
+     *
+     * @param websocketKey  value of the Sec-WebSocket-Key request header
+     * @param accept        value of the Sec-WebSocket-Accept response header, possibly null
+     * @return true if the accept matches the key
+     */
+    public static boolean validateAccept(String websocketKey, String accept) {
+        if (accept == null || accept.length() != ACCEPT_LENGTH) {
+            return false;
+        }
+
+        AcceptDigest digest = ACCEPT_DIGESTS.get();
+        return digest.matches(websocketKey, accept);
+    }
+
+    private static byte[] template(URI location, Collection<String> protocols, Collection<String> extensions) {
+        byte[] template = TEMPLATES.get(new TemplateKey(location, protocols, extensions));
+        if (template != null) {
+            return template;
+        }
+
+        template = newTemplate(location, protocols, extensions);
+
+        if (TEMPLATES.size() >= MAX_TEMPLATES) {
+            TEMPLATES.clear();
+        }
+        TEMPLATES.put(new TemplateKey(location, new ArrayList<String>(protocols), new ArrayList<String>(extensions)), template);
+        return template;
+    }
+
+    private static byte[] newTemplate(URI location, Collection<String> protocols, Collection<String> extensions) {
+        String path = location.getRawPath();
+        String query = location.getRawQuery();
+
+        StringBuilder request = new StringBuilder();
+        request.append("GET ").append((path == null || path.length() == 0) ? "/" : path);
+        if (query != null) {
+            request.append('?').append(query);
+        }
+        request.append(" HTTP/1.1\r\n");
+
+        request.append("Host: ").append(location.getHost());
+        if (location.getPort() != -1) {
+            request.append(':').append(location.getPort());
+        }
+        request.append("\r\n");
+
+        request.append("Upgrade: websocket\r\n");
+        request.append("Connection: Upgrade\r\n");
+        request.append("Sec-WebSocket-Version: 13\r\n");
+
+        if (!extensions.isEmpty()) {
+            appendList(request.append("Sec-WebSocket-Extensions: "), extensions).append("\r\n");
+        }
+
+        if (!protocols.isEmpty()) {
+            appendList(request.append("Sec-WebSocket-Protocol: "), protocols).append("\r\n");
+        }
+
+        // The key differs for every request, so it goes last.
+        request.append("Sec-WebSocket-Key: ");
+
+        return request.toString().getBytes(US_ASCII);
+    }
+
+    private static StringBuilder appendList(StringBuilder sb, Collection<String> values) {
+        boolean first = true;
+        for (String value : values) {
+            if (!first) {
+                sb.append(", ");
+            }
+            sb.append(value);
+            first = false;
+        }
+        return sb;
+    }
+
+    private static final class TemplateKey {
+        private final URI location;
+        private final Collection<String> protocols;
+        private final Collection<String> extensions;
+        private final int hashCode;
+
+        TemplateKey(URI location, Collection<String> protocols, Collection<String> extensions) {
+            this.location = location;
+            this.protocols = protocols;
+            this.extensions = extensions;
+            this.hashCode = 31 * (31 * location.hashCode() + hashInOrder(protocols)) + hashInOrder(extensions);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TemplateKey)) {
+                return false;
+            }
+
+            TemplateKey that = (TemplateKey) obj;
+            return this.hashCode == that.hashCode &&
+                   this.location.equals(that.location) &&
+                   equalsInOrder(this.protocols, that.protocols) &&
+                   equalsInOrder(this.extensions, that.extensions);
+        }
+
+        private static int hashInOrder(Collection<String> values) {
+            int hash = 1;
+            for (String value : values) {
+                hash = 31 * hash + value.hashCode();
+            }
+            return hash;
+        }
+
+        private static boolean equalsInOrder(Collection<String> values1, Collection<String> values2) {
+            if (values1.size() != values2.size()) {
+                return false;
+            }
+
+            Iterator<String> i1 = values1.iterator();
+            Iterator<String> i2 = values2.iterator();
+            while (i1.hasNext()) {
+                if (!i1.next().equals(i2.next())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class AcceptDigest {
+        private final MessageDigest sha1;
+        private final byte[] hash;
+        private byte[] input;
+
+        AcceptDigest() {
+            try {
+                this.sha1 = MessageDigest.getInstance("SHA-1");
+            }
+            catch (NoSuchAlgorithmException e) {
+                // Every Java platform is required to support SHA-1.
+                throw new IllegalStateException(e);
+            }
+            this.hash = new byte[SHA1_LENGTH];
+            this.input = new byte[24 + WEBSOCKET_GUID_BYTES.length];
+        }
+
+        boolean matches(String websocketKey, String accept) {
+            int keyLength = websocketKey.length();
+            int inputLength = keyLength + WEBSOCKET_GUID_BYTES.length;
+            if (input.length < inputLength) {
+                input = new byte[inputLength];
+            }
+
+            for (int i = 0; i < keyLength; i++) {
+                input[i] = (byte) websocketKey.charAt(i);
+            }
+            System.arraycopy(WEBSOCKET_GUID_BYTES, 0, input, keyLength, WEBSOCKET_GUID_BYTES.length);
+
+            try {
+                sha1.update(input, 0, inputLength);
+                sha1.digest(hash, 0, SHA1_LENGTH);
+            }
+            catch (Exception e) {
+                sha1.reset();
+                return false;
+            }
+
+            // 20 bytes encode to 6 groups of 4 characters, followed by 3 characters and one padding character.
+            int offset = 0;
+            int position = 0;
+            for (; offset + 3 <= SHA1_LENGTH; offset += 3) {
+                int bits = ((hash[offset] & 0xff) << 16) | ((hash[offset + 1] & 0xff) << 8) | (hash[offset + 2] & 0xff);
+                if (accept.charAt(position++) != BASE64[(bits >> 18) & 0x3f] ||
+                    accept.charAt(position++) != BASE64[(bits >> 12) & 0x3f] ||
+                    accept.charAt(position++) != BASE64[(bits >> 6) & 0x3f] ||
+                    accept.charAt(position++) != BASE64[bits & 0x3f]) {
+                    return false;
+                }
+            }
+
+            int bits = ((hash[offset] & 0xff) << 16) | ((hash[offset + 1] & 0xff) << 8);
+            return accept.charAt(position++) == BASE64[(bits >> 18) & 0x3f] &&
+                   accept.charAt(position++) == BASE64[(bits >> 12) & 0x3f] &&
+                   accept.charAt(position++) == BASE64[(bits >> 6) & 0x3f] &&
+                   accept.charAt(position) == '=';
+        }
+    }
+}
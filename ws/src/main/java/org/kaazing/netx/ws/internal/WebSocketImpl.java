@@ -25,18 +25,43 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Collection;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.kaazing.netx.URLConnectionHelper;
 import org.kaazing.netx.http.HttpRedirectPolicy;
 import org.kaazing.netx.http.auth.ChallengeHandler;
+import org.kaazing.netx.ws.FrameRecorder;
+import org.kaazing.netx.ws.KeepAlivePolicy;
+import org.kaazing.netx.ws.LockWaitStrategy;
+import org.kaazing.netx.ws.MaskKeyGenerator;
+import org.kaazing.netx.ws.MessageListener;
 import org.kaazing.netx.ws.MessageReader;
+import org.kaazing.netx.ws.MessageSpillPolicy;
 import org.kaazing.netx.ws.MessageWriter;
+import org.kaazing.netx.ws.OutboundQueuePolicy;
+import org.kaazing.netx.ws.RoundTripTimeHistogram;
 import org.kaazing.netx.ws.WebSocket;
+import org.kaazing.netx.ws.WebSocketMetrics;
+import org.kaazing.netx.ws.internal.metrics.AggregateMetrics;
+import org.kaazing.netx.ws.nio.WebSocketReactor;
 
 public class WebSocketImpl extends WebSocket {
+    private static final String MSG_ALREADY_CONNECTED = "Already connected";
+    private static final String MSG_DELIVERED_TO_LISTENER = "Incoming messages are delivered to the MessageListener";
+
+    // Shared by all the WebSockets that deliver their messages to a MessageListener.
+    private static WebSocketReactor reactor;
+
     private final WsURLConnectionImpl connection;
+    private final AtomicBoolean listening;
+
+    private volatile MessageListener listener;
+    private volatile Executor listenerExecutor;
 
     public WebSocketImpl(URI location, WebSocketExtensionFactory extensionFactory) throws URISyntaxException {
+        this.listening = new AtomicBoolean();
+
         try {
             URLConnectionHelper helper = URLConnectionHelper.newInstance();
             URL locationURL = helper.toURL(location);
@@ -75,7 +100,36 @@ public class WebSocketImpl extends WebSocket {
 
     @Override
     public void connect() throws IOException {
-        connection.connect();
+        if (listener == null) {
+            connection.connect();
+            return;
+        }
+
+        if (!listening.compareAndSet(false, true)) {
+            throw new IOException(MSG_ALREADY_CONNECTED);
+        }
+
+        MessageListenerHandler handler = new MessageListenerHandler(this, connection, listener);
+
+        try {
+            if (isReactorSupported()) {
+                getReactor().connect(connection, handler, listenerExecutor);
+                handler.awaitConnected(connection.getConnectTimeout());
+            }
+            else {
+                connection.connect();
+                handler.onOpen(connection);
+                new MessageListenerDispatcher(connection, handler, listenerExecutor).start();
+            }
+        }
+        catch (IOException e) {
+            listening.set(false);
+            throw e;
+        }
+        catch (RuntimeException e) {
+            listening.set(false);
+            throw e;
+        }
     }
 
     @Override
@@ -98,6 +152,11 @@ public class WebSocketImpl extends WebSocket {
         return connection.getEnabledProtocols();
     }
 
+    @Override
+    public FrameRecorder getFrameRecorder() {
+        return connection.getFrameRecorder();
+    }
+
     @Override
     public HttpRedirectPolicy getRedirectPolicy() {
         return connection.getRedirectPolicy();
@@ -105,44 +164,96 @@ public class WebSocketImpl extends WebSocket {
 
     @Override
     public InputStream getInputStream() throws IOException {
+        ensureNotListening();
         return connection.getInputStream();
     }
 
+    @Override
+    public KeepAlivePolicy getKeepAlivePolicy() {
+        return connection.getKeepAlivePolicy();
+    }
+
+    @Override
+    public LockWaitStrategy getLockWaitStrategy() {
+        return connection.getLockWaitStrategy();
+    }
+
+    @Override
+    public MaskKeyGenerator getMaskKeyGenerator() {
+        return connection.getMaskKeyGenerator();
+    }
+
     @Override
     public int getMaxFramePayloadLength() {
         return connection.getMaxFramePayloadLength();
     }
 
+    @Override
+    public MessageListener getMessageListener() {
+        return listener;
+    }
+
+    @Override
+    public Executor getMessageListenerExecutor() {
+        return listenerExecutor;
+    }
+
     @Override
     public MessageReader getMessageReader() throws IOException {
+        ensureNotListening();
         return connection.getMessageReader();
     }
 
+    @Override
+    public MessageSpillPolicy getMessageSpillPolicy() {
+        return connection.getMessageSpillPolicy();
+    }
+
     @Override
     public MessageWriter getMessageWriter() throws IOException {
+        ensureListening();
         return connection.getMessageWriter();
     }
 
+    @Override
+    public WebSocketMetrics getMetrics() {
+        return connection.getMetrics();
+    }
+
     @Override
     public Collection<String> getNegotiatedExtensions() throws IOException {
+        ensureListening();
         return connection.getNegotiatedExtensions();
     }
 
     @Override
     public String getNegotiatedProtocol() throws IOException {
+        ensureListening();
         return connection.getNegotiatedProtocol();
     }
 
+    @Override
+    public OutboundQueuePolicy getOutboundQueuePolicy() {
+        return connection.getOutboundQueuePolicy();
+    }
+
     @Override
     public OutputStream getOutputStream() throws IOException {
+        ensureListening();
         return connection.getOutputStream();
     }
 
     @Override
     public Reader getReader() throws IOException {
+        ensureNotListening();
         return connection.getReader();
     }
 
+    @Override
+    public RoundTripTimeHistogram getRoundTripTimeHistogram() {
+        return connection.getRoundTripTimeHistogram();
+    }
+
     @Override
     public Collection<String> getSupportedExtensions() {
         return connection.getSupportedExtensions();
@@ -150,6 +261,7 @@ public class WebSocketImpl extends WebSocket {
 
     @Override
     public Writer getWriter() throws IOException {
+        ensureListening();
         return connection.getWriter();
     }
 
@@ -168,13 +280,94 @@ public class WebSocketImpl extends WebSocket {
         connection.setEnabledProtocols(protocols);
     }
 
+    @Override
+    public void setFrameRecorder(FrameRecorder recorder) {
+        connection.setFrameRecorder(recorder);
+    }
+
+    public void setMetricsParent(AggregateMetrics parent) {
+        connection.setMetricsParent(parent);
+    }
+
+    @Override
+    public void setOutboundQueuePolicy(OutboundQueuePolicy policy) {
+        connection.setOutboundQueuePolicy(policy);
+    }
+
     @Override
     public void setRedirectPolicy(HttpRedirectPolicy policy) {
         connection.setRedirectPolicy(policy);
     }
 
+    @Override
+    public void setKeepAlivePolicy(KeepAlivePolicy policy) {
+        connection.setKeepAlivePolicy(policy);
+    }
+
+    @Override
+    public void setLockWaitStrategy(LockWaitStrategy waitStrategy) {
+        connection.setLockWaitStrategy(waitStrategy);
+    }
+
+    @Override
+    public void setMaskKeyGenerator(MaskKeyGenerator maskKeyGenerator) {
+        connection.setMaskKeyGenerator(maskKeyGenerator);
+    }
+
     @Override
     public void setMaxFramePayloadLength(int maxPayloadLength) {
         connection.setMaxFramePayloadLength(maxPayloadLength);
     }
+
+    @Override
+    public void setMessageSpillPolicy(MessageSpillPolicy policy) {
+        connection.setMessageSpillPolicy(policy);
+    }
+
+    @Override
+    public void setMessageListener(MessageListener listener) {
+        ensureReconfigurable();
+        this.listener = listener;
+    }
+
+    @Override
+    public void setMessageListenerExecutor(Executor executor) {
+        ensureReconfigurable();
+        this.listenerExecutor = executor;
+    }
+
+    private void ensureReconfigurable() {
+        if (listening.get() || (connection.getInputState() != WebSocketState.START)) {
+            throw new IllegalStateException(MSG_ALREADY_CONNECTED);
+        }
+    }
+
+    // Without this, sending before connect() would connect using a blocking HTTP upgrade instead of the reactor.
+    private void ensureListening() throws IOException {
+        if ((listener != null) && !listening.get()) {
+            connect();
+        }
+    }
+
+    // The dispatcher of a blocking connection owns its MessageReader, so the application must not read concurrently.
+    private void ensureNotListening() throws IOException {
+        if (listening.get()) {
+            throw new IOException(MSG_DELIVERED_TO_LISTENER);
+        }
+    }
+
+    // The reactor only performs a plain ws upgrade. It does not support TLS, nor does it follow redirects or answer challenges.
+    private boolean isReactorSupported() {
+        return "http".equalsIgnoreCase(connection.getHttpLocation().getScheme()) &&
+               (connection.getChallengeHandler() == null) &&
+               (connection.getRedirectPolicy() == HttpRedirectPolicy.NEVER);
+    }
+
+    private static synchronized WebSocketReactor getReactor() throws IOException {
+        if (reactor == null) {
+            reactor = WebSocketReactor.newInstance();
+        }
+
+        return reactor;
+    }
 }
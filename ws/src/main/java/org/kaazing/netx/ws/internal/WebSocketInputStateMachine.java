@@ -81,6 +81,13 @@ public final class WebSocketInputStateMachine {
 
             switch (state) {
             case OPEN:
+                connection.getMetrics().frameReceived(opcode, frame.payloadLength(), frame.fin());
+
+                WebSocketKeepAlive keepAlive = connection.getKeepAlive();
+                if (keepAlive != null) {
+                    keepAlive.onFrameReceived();
+                }
+
                 switch (opcode) {
                 case BINARY:
                     transition(connection, RECEIVE_BINARY_FRAME);
@@ -100,6 +107,9 @@ public final class WebSocketInputStateMachine {
                     break;
                 case PONG:
                     transition(connection, RECEIVE_PONG_FRAME);
+                    if (keepAlive != null) {
+                        keepAlive.onPongReceived(frame);
+                    }
                     context.onPongReceived(frame);
                     break;
                 case TEXT:
@@ -0,0 +1,230 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.kaazing.netx.ws.internal.WebSocketState.CLOSED;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.kaazing.netx.ws.KeepAlivePolicy;
+import org.kaazing.netx.ws.internal.ext.flyweight.Frame;
+import org.kaazing.netx.ws.internal.util.HashedWheelTimer;
+import org.kaazing.netx.ws.internal.util.HashedWheelTimer.Timeout;
+import org.kaazing.netx.ws.internal.util.RoundTripTimeRecorder;
+
+/**
+ * Sends a PING on a connection once nothing has been received for the interval of its {@link KeepAlivePolicy}, and aborts
+ * the connection if nothing is received within the timeout after that. The checks run on the shared
+ * {@link HashedWheelTimer}, so a connection costs a pending timeout rather than a thread. The timer thread must not block, so
+ * the PING is written by a small shared pool of threads, whose size does not grow with the number of connections. A PING is
+ * skipped, rather than waiting, if another thread holds the write lock of the connection, which may be stuck writing to a
+ * peer that stopped reading. The timeout is counted from when the PING was due, whether or not it was written, so that such a
+ * connection is aborted within the interval and the timeout, like one whose PING went unanswered.
+ * <p>
+ * The transport is closed by a pool of its own, so that aborting a dead connection never waits behind PING tasks.
+ * <p>
+ * The payload of a PING is the System.nanoTime() at which it was sent. The input state machine hands the PONG frames to
+ * {@link #onPongReceived(Frame)}, which records the round-trip time if the PONG echoes the last PING.
+ */
+final class WebSocketKeepAlive implements Runnable {
+    private static final int PING_PAYLOAD_LENGTH = 8;
+
+    private static final int PING_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final ThreadPoolExecutor PING_EXECUTOR = newExecutor("netx-ws-keepalive");
+    private static final ThreadPoolExecutor ABORT_EXECUTOR = newExecutor("netx-ws-keepalive-abort");
+
+    private final WsURLConnectionImpl connection;
+    private final RoundTripTimeRecorder roundTripTimes;
+    private final HashedWheelTimer timer;
+    private final long intervalNanos;
+    private final long timeoutNanos;
+    private final byte[] pingPayload;
+    private final AtomicBoolean pinging;
+    private final Runnable pingTask;
+    private final Runnable abortTask;
+
+    private volatile long lastReceivedNanos;
+    private volatile long pingSentNanos;
+    private volatile boolean pingSent;
+    private volatile long matchedPingNanos;
+    private volatile Timeout timeout;
+    private volatile boolean stopped;
+
+    WebSocketKeepAlive(WsURLConnectionImpl connection, KeepAlivePolicy policy, RoundTripTimeRecorder roundTripTimes) {
+        this.connection = connection;
+        this.roundTripTimes = roundTripTimes;
+        this.timer = HashedWheelTimer.shared();
+        this.intervalNanos = policy.getInterval(NANOSECONDS);
+        this.timeoutNanos = policy.getTimeout(NANOSECONDS);
+        this.pingPayload = new byte[PING_PAYLOAD_LENGTH];
+        this.pinging = new AtomicBoolean();
+        this.pingTask = new Runnable() {
+            @Override
+            public void run() {
+                ping();
+            }
+        };
+        this.abortTask = new Runnable() {
+            @Override
+            public void run() {
+                WebSocketKeepAlive.this.connection.abort();
+            }
+        };
+    }
+
+    public void start() {
+        lastReceivedNanos = System.nanoTime();
+        schedule(intervalNanos);
+    }
+
+    public void stop() {
+        stopped = true;
+
+        Timeout pending = timeout;
+        if (pending != null) {
+            pending.cancel();
+        }
+    }
+
+    // Invoked for every incoming frame while holding the read lock of the connection.
+    public void onFrameReceived() {
+        lastReceivedNanos = System.nanoTime();
+    }
+
+    // Invoked for every incoming PONG frame while holding the read lock of the connection.
+    public void onPongReceived(Frame frame) {
+        if (frame.payloadLength() != PING_PAYLOAD_LENGTH || !pingSent) {
+            // Not an answer to a PING sent by us. It may be unsolicited, or answer a PING sent by an extension.
+            return;
+        }
+
+        ByteBuffer buffer = frame.buffer();
+        int offset = frame.payloadOffset();
+        long sentNanos = 0;
+        for (int i = 0; i < PING_PAYLOAD_LENGTH; i++) {
+            sentNanos = (sentNanos << 8) | (buffer.get(offset + i) & 0xFF);
+        }
+
+        if (sentNanos == pingSentNanos && sentNanos != matchedPingNanos) {
+            matchedPingNanos = sentNanos;
+            roundTripTimes.record(System.nanoTime() - sentNanos);
+        }
+    }
+
+    @Override
+    public void run() {
+        if (stopped || connection.getInputState() == CLOSED || connection.getOutputState() == CLOSED) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        long quietSinceNanos = lastReceivedNanos;
+
+        if (pingSent && quietSinceNanos - pingSentNanos < 0) {
+            // Nothing has been received since the last PING was sent.
+            long sentNanos = pingSentNanos;
+            if (timeoutNanos > 0) {
+                long waitedNanos = now - sentNanos;
+                if (waitedNanos >= timeoutNanos) {
+                    stopped = true;
+                    execute(ABORT_EXECUTOR, abortTask);
+                }
+                else {
+                    schedule(timeoutNanos - waitedNanos);
+                }
+                return;
+            }
+
+            quietSinceNanos = sentNanos;
+        }
+
+        long idleNanos = now - quietSinceNanos;
+        if (idleNanos < intervalNanos) {
+            schedule(intervalNanos - idleNanos);
+            return;
+        }
+
+        if (pinging.compareAndSet(false, true)) {
+            pingSentNanos = now;
+            pingSent = true;
+            execute(PING_EXECUTOR, pingTask);
+        }
+
+        // Check again once the interval has passed, or the timeout has if it is shorter, whether or not the PONG comes back.
+        schedule((timeoutNanos > 0) ? Math.min(intervalNanos, timeoutNanos) : intervalNanos);
+    }
+
+    private void ping() {
+        try {
+            long sentNanos = pingSentNanos;
+            for (int i = PING_PAYLOAD_LENGTH - 1; i >= 0; i--) {
+                pingPayload[i] = (byte) sentNanos;
+                sentNanos >>>= 8;
+            }
+
+            // If another thread is writing, or stuck writing to a peer that is gone, the PING is skipped. The timeout still runs
+            // from when the PING was due, as nothing can be received in answer before that write completes anyway.
+            connection.trySendPing(pingPayload, 0, PING_PAYLOAD_LENGTH);
+        }
+        catch (IOException e) {
+            // The connection is closing. The timer notices that on its next run.
+        }
+        finally {
+            pinging.set(false);
+        }
+    }
+
+    private void schedule(long delayNanos) {
+        timeout = timer.schedule(this, delayNanos, NANOSECONDS);
+
+        if (stopped) {
+            timeout.cancel();
+        }
+    }
+
+    private static ThreadPoolExecutor newExecutor(final String threadName) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(PING_THREADS, PING_THREADS, 60L, SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, threadName);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        // The threads exit once idle, as they do in a cached pool.
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static void execute(ThreadPoolExecutor executor, Runnable task) {
+        try {
+            executor.execute(task);
+        }
+        catch (RejectedExecutionException e) {
+            // ignore
+        }
+    }
+}
@@ -23,10 +23,14 @@ import static org.kaazing.netx.ws.internal.WebSocketTransition.ERROR;
 import static org.kaazing.netx.ws.internal.WebSocketTransition.SEND_BINARY_FRAME;
 import static org.kaazing.netx.ws.internal.WebSocketTransition.SEND_CLOSE_FRAME;
 import static org.kaazing.netx.ws.internal.WebSocketTransition.SEND_CONTINUATION_FRAME;
+import static org.kaazing.netx.ws.internal.WebSocketTransition.SEND_PING_FRAME;
 import static org.kaazing.netx.ws.internal.WebSocketTransition.SEND_PONG_FRAME;
 import static org.kaazing.netx.ws.internal.WebSocketTransition.SEND_TEXT_FRAME;
+import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.BINARY;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.Lock;
 
 import org.kaazing.netx.ws.internal.ext.flyweight.Frame;
 import org.kaazing.netx.ws.internal.ext.flyweight.Opcode;
@@ -47,6 +51,7 @@ public final class WebSocketOutputStateMachine {
             stateMachine[state.ordinal()][ERROR.ordinal()] = CLOSED;
         }
 
+        stateMachine[OPEN.ordinal()][SEND_PING_FRAME.ordinal()] = OPEN;
         stateMachine[OPEN.ordinal()][SEND_PONG_FRAME.ordinal()] = OPEN;
         stateMachine[OPEN.ordinal()][SEND_CLOSE_FRAME.ordinal()] = CLOSED;
         stateMachine[OPEN.ordinal()][SEND_BINARY_FRAME.ordinal()] = OPEN;
@@ -64,50 +69,114 @@ public final class WebSocketOutputStateMachine {
     }
 
     public void processFrame(final WsURLConnectionImpl connection, final Frame frame) throws IOException {
+        Lock writeLock = connection.getWriteLock();
+
         try {
-            connection.getWriteLock().lock();
+            lockForWrite(connection, writeLock);
+            processFrameLocked(connection, frame);
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Returns false, without sending the frame, if another thread holds the write lock, as it may be stuck writing to a peer
+    // that stopped reading.
+    public boolean tryProcessFrame(final WsURLConnectionImpl connection, final Frame frame) throws IOException {
+        Lock writeLock = connection.getWriteLock();
+
+        if (!writeLock.tryLock()) {
+            return false;
+        }
+
+        try {
+            processFrameLocked(connection, frame);
+            return true;
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Sends a BINARY or CONTINUATION frame whose payload is read from the file by the outgoing sentinel, without a buffer for
+    // the frame. Only used when no extension needs to see the frame.
+    public void transferFrame(WsURLConnectionImpl connection, Opcode opcode, boolean fin, FileChannel file, long position,
+                              int length) throws IOException {
+        Lock writeLock = connection.getWriteLock();
+
+        try {
+            lockForWrite(connection, writeLock);
 
             DefaultWebSocketContext context = connection.getOutgoingContext();
             WebSocketState state = connection.getOutputState();
-            Opcode opcode = frame.opcode();
 
             context.reset();
 
-            switch (state) {
-            case OPEN:
-                switch (opcode) {
-                case BINARY:
-                    transition(connection, SEND_BINARY_FRAME);
-                    context.onBinarySent(frame);
-                    break;
-                case CLOSE:
-                    context.onCloseSent(frame);
-                    transition(connection, SEND_CLOSE_FRAME);
-                    break;
-                case CONTINUATION:
-                    transition(connection, SEND_CONTINUATION_FRAME);
-                    context.onContinuationSent(frame);
-                    break;
-                case PONG:
-                    transition(connection, SEND_PONG_FRAME);
-                    context.onPongSent(frame);
-                    break;
-                case TEXT:
-                    transition(connection, SEND_TEXT_FRAME);
-                    context.onTextSent(frame);
-                    break;
-                default:
-                    break;
-                }
-                break;
-            default:
+            if (state == OPEN) {
+                transition(connection, (opcode == BINARY) ? SEND_BINARY_FRAME : SEND_CONTINUATION_FRAME);
+                connection.getOutgoingSentinel().transferFrame(connection, opcode, fin, file, position, length);
+            }
+            else {
                 transition(connection, ERROR);
                 context.onError(format("Invalid state %s to be sending a %s frame", state, opcode));
-                break;
             }
         }
         finally {
-            connection.getWriteLock().unlock();
+            writeLock.unlock();
+        }
+    }
+
+    private static void processFrameLocked(WsURLConnectionImpl connection, Frame frame) throws IOException {
+        DefaultWebSocketContext context = connection.getOutgoingContext();
+        WebSocketState state = connection.getOutputState();
+        Opcode opcode = frame.opcode();
+
+        context.reset();
+
+        switch (state) {
+        case OPEN:
+            switch (opcode) {
+            case BINARY:
+                transition(connection, SEND_BINARY_FRAME);
+                context.onBinarySent(frame);
+                break;
+            case CLOSE:
+                context.onCloseSent(frame);
+                transition(connection, SEND_CLOSE_FRAME);
+                break;
+            case CONTINUATION:
+                transition(connection, SEND_CONTINUATION_FRAME);
+                context.onContinuationSent(frame);
+                break;
+            case PING:
+                transition(connection, SEND_PING_FRAME);
+                context.onPingSent(frame);
+                break;
+            case PONG:
+                transition(connection, SEND_PONG_FRAME);
+                context.onPongSent(frame);
+                break;
+            case TEXT:
+                transition(connection, SEND_TEXT_FRAME);
+                context.onTextSent(frame);
+                break;
+            default:
+                break;
+            }
+            break;
+        default:
+            transition(connection, ERROR);
+            context.onError(format("Invalid state %s to be sending a %s frame", state, opcode));
+            break;
+        }
+    }
+
+    private static void lockForWrite(WsURLConnectionImpl connection, Lock writeLock) {
+        if (!writeLock.tryLock()) {
+            // Only a thread that has to wait for another one to finish writing pays for timing the wait.
+            long waitStart = System.nanoTime();
+            writeLock.lock();
+            connection.getMetrics().writeLockWaited(System.nanoTime() - waitStart);
         }
     }
 
@@ -22,6 +22,7 @@ public enum WebSocketTransition {
     RECEIVE_CLOSE_FRAME,
     SEND_CLOSE_FRAME,
     RECEIVE_PING_FRAME,
+    SEND_PING_FRAME,
     RECEIVE_PONG_FRAME,
     SEND_PONG_FRAME,
     RECEIVE_BINARY_FRAME,
@@ -30,15 +30,17 @@ import java.io.OutputStream;
 import java.net.URI;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.charset.Charset;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.locks.Lock;
 import java.util.regex.Matcher;
@@ -47,25 +49,38 @@ import java.util.regex.Pattern;
 import org.kaazing.netx.URLConnectionHelper;
 import org.kaazing.netx.http.HttpRedirectPolicy;
 import org.kaazing.netx.http.HttpURLConnection;
+import org.kaazing.netx.http.HttpUpgradeRequestEncoder;
 import org.kaazing.netx.http.auth.ChallengeHandler;
+import org.kaazing.netx.ws.FrameRecorder;
+import org.kaazing.netx.ws.KeepAlivePolicy;
+import org.kaazing.netx.ws.LockWaitStrategy;
+import org.kaazing.netx.ws.MaskKeyGenerator;
+import org.kaazing.netx.ws.MessageSpillPolicy;
+import org.kaazing.netx.ws.OutboundQueuePolicy;
+import org.kaazing.netx.ws.RoundTripTimeHistogram;
 import org.kaazing.netx.ws.WsURLConnection;
 import org.kaazing.netx.ws.internal.ext.WebSocketExtensionSpi;
 import org.kaazing.netx.ws.internal.ext.flyweight.Flyweight;
 import org.kaazing.netx.ws.internal.ext.flyweight.Frame;
 import org.kaazing.netx.ws.internal.ext.flyweight.Opcode;
+import org.kaazing.netx.ws.internal.ext.recorder.FrameRecorderExtension;
 import org.kaazing.netx.ws.internal.io.IncomingSentinelExtension;
 import org.kaazing.netx.ws.internal.io.OutgoingSentinelExtension;
 import org.kaazing.netx.ws.internal.io.WsInputStream;
 import org.kaazing.netx.ws.internal.io.WsMessageReader;
 import org.kaazing.netx.ws.internal.io.WsMessageWriter;
+import org.kaazing.netx.ws.internal.io.WsOutboundQueue;
 import org.kaazing.netx.ws.internal.io.WsOutputStream;
 import org.kaazing.netx.ws.internal.io.WsReader;
 import org.kaazing.netx.ws.internal.io.WsWriter;
+import org.kaazing.netx.ws.internal.metrics.AggregateMetrics;
+import org.kaazing.netx.ws.internal.metrics.ConnectionMetrics;
 import org.kaazing.netx.ws.internal.util.Base64Util;
 import org.kaazing.netx.ws.internal.util.OptimisticReentrantLock;
+import org.kaazing.netx.ws.internal.util.RoundTripTimeRecorder;
 
 public final class WsURLConnectionImpl extends WsURLConnection {
-    private static final Pattern PATTERN_EXTENSION_FORMAT = Pattern.compile("([a-zA-Z0-9]*)(;?(.*))");
+    private static final Pattern PATTERN_EXTENSION_FORMAT = Pattern.compile("\\s*([a-zA-Z0-9_\\-]*)\\s*(;?(.*))");
     private static final Pattern PATTERN_COMMA_SEPARATED_FORMAT = Pattern.compile(",");
     private static final Pattern PATTERN_SEMI_COLON_SEPARATED_FORMAT = Pattern.compile(";");
 
@@ -81,6 +96,9 @@ public final class WsURLConnectionImpl extends WsURLConnection {
     private static final String MSG_INVALID_CLOSE_CODE = "CLOSE code must be equal to 1000 or within the range 3000-4999";
     private static final String MSG_ALREADY_CONNECTED = "Already connected";
     private static final String MSG_WEBSOCKET_BIDIRECTIONAL = "WebSocket is bidirectional";
+    private static final String MSG_HANDSHAKE_IN_PROGRESS = "Opening handshake is in progress on the transport";
+    private static final String MSG_CONNECTION_FAILED = "Connection failed";
+    private static final String MSG_TRANSPORT_NOT_WRITABLE = "Message refused, as too many bytes are queued on the transport";
 
     private static final Charset UTF_8 = Charset.forName("UTF-8");
 
@@ -92,11 +110,11 @@ public final class WsURLConnectionImpl extends WsURLConnection {
     private static final String HEADER_SEC_WEBSOCKET_VERSION = "Sec-WebSocket-Version";
     private static final String HEADER_UPGRADE = "Upgrade";
 
-    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
     private static final int MAX_COMMAND_FRAME_PAYLOAD = 125;
     private static final int DEFAULT_MAX_PAYLOAD_LENGTH = 8192;
 
     private final Random random;
+    private final URI httpLocation;
     private final HttpURLConnection connection;
     private final Collection<String> enabledProtocols;
     private final Collection<String> enabledProtocolsRO;
@@ -109,9 +127,10 @@ public final class WsURLConnectionImpl extends WsURLConnection {
     private final WebSocketInputStateMachine inputStateMachine;
     private final WebSocketOutputStateMachine outputStateMachine;
     private final WebSocketExtensionFactory extensionFactory;
-    private final Lock readLock;
-    private final Lock stateLock;
-    private final Lock writeLock;
+    private final OptimisticReentrantLock readLock;
+    private final OptimisticReentrantLock stateLock;
+    private final OptimisticReentrantLock writeLock;
+    private final RoundTripTimeRecorder roundTripTimes;
 
     private volatile String negotiatedProtocol;
     private volatile WsInputStream inputStream;
@@ -123,11 +142,30 @@ public final class WsURLConnectionImpl extends WsURLConnection {
 
     private volatile WebSocketState inputState;
     private volatile WebSocketState outputState;
+    private volatile int closeCodeReceived = WS_ABNORMAL_CLOSE;
+    private volatile String closeReasonReceived;
     private volatile DefaultWebSocketContext incomingContext;
     private volatile DefaultWebSocketContext outgoingContext;
+    private OutgoingSentinelExtension outgoingSentinel;
+    private boolean corked;
+    private volatile InputStream transportInput;
+    private volatile OutputStream transportOutput;
+    private volatile boolean transportWritable = true;
 
     private int maxFramePayloadLength;
     private int maxFrameLength;
+    private int reservedBits;
+    private MaskKeyGenerator maskKeyGenerator;
+    private MaskKeyGenerator connectionMaskKeyGenerator;
+    private LockWaitStrategy lockWaitStrategy;
+    private OutboundQueuePolicy outboundQueuePolicy;
+    private volatile WsOutboundQueue outboundQueue;
+    private KeepAlivePolicy keepAlivePolicy;
+    private MessageSpillPolicy messageSpillPolicy;
+    private volatile WebSocketKeepAlive keepAlive;
+    private volatile ConnectionMetrics metrics;
+    private FrameRecorder frameRecorder;
+    private FrameRecorderExtension frameRecorderExtension;
 
     public WsURLConnectionImpl(
             URLConnectionHelper helper,
@@ -141,6 +179,7 @@ public final class WsURLConnectionImpl extends WsURLConnection {
         super(location);
 
         this.random = random;
+        this.httpLocation = httpLocation;
         this.inputState = WebSocketState.START;
         this.outputState = WebSocketState.START;
         this.extensionFactory = extensionFactory;
@@ -154,11 +193,19 @@ public final class WsURLConnectionImpl extends WsURLConnection {
         this.commandFramePayload = new byte[MAX_COMMAND_FRAME_PAYLOAD];
         this.inputStateMachine = inputStateMachine;
         this.outputStateMachine = outputStateMachine;
-        this.readLock = new OptimisticReentrantLock();
-        this.stateLock = new OptimisticReentrantLock();
-        this.writeLock = new OptimisticReentrantLock();
+        this.lockWaitStrategy = LockWaitStrategy.SPIN_YIELD_PARK;
+        this.outboundQueuePolicy = OutboundQueuePolicy.none();
+        this.keepAlivePolicy = KeepAlivePolicy.none();
+        this.messageSpillPolicy = MessageSpillPolicy.none();
+        this.roundTripTimes = new RoundTripTimeRecorder();
+        this.metrics = new ConnectionMetrics(null);
+        this.readLock = new OptimisticReentrantLock(lockWaitStrategy);
+        this.stateLock = new OptimisticReentrantLock(lockWaitStrategy);
+        this.writeLock = new OptimisticReentrantLock(lockWaitStrategy);
         this.maxFramePayloadLength = DEFAULT_MAX_PAYLOAD_LENGTH;
         this.maxFrameLength = getFrameLength(false, maxFramePayloadLength);
+        this.maskKeyGenerator = MaskKeyGenerator.prefilled();
+        this.connectionMaskKeyGenerator = maskKeyGenerator.forConnection();
         this.connection = openHttpConnection(helper, httpLocation);
     }
 
@@ -295,6 +342,26 @@ public final class WsURLConnectionImpl extends WsURLConnection {
         return enabledProtocolsRO;
     }
 
+    @Override
+    public FrameRecorder getFrameRecorder() {
+        return frameRecorder;
+    }
+
+    @Override
+    public KeepAlivePolicy getKeepAlivePolicy() {
+        return keepAlivePolicy;
+    }
+
+    @Override
+    public LockWaitStrategy getLockWaitStrategy() {
+        return lockWaitStrategy;
+    }
+
+    @Override
+    public MaskKeyGenerator getMaskKeyGenerator() {
+        return maskKeyGenerator;
+    }
+
     @Override
     public int getMaxFramePayloadLength() {
         return maxFramePayloadLength;
@@ -349,6 +416,11 @@ public final class WsURLConnectionImpl extends WsURLConnection {
         }
     }
 
+    @Override
+    public MessageSpillPolicy getMessageSpillPolicy() {
+        return messageSpillPolicy;
+    }
+
     @Override
     public WsMessageWriter getMessageWriter() throws IOException {
         if (messageWriter != null) {
@@ -363,6 +435,10 @@ public final class WsURLConnectionImpl extends WsURLConnection {
                 return messageWriter;
             }
 
+            if (outboundQueuePolicy.isQueued()) {
+                outboundQueue = new WsOutboundQueue(this, outboundQueuePolicy);
+            }
+
             messageWriter = new WsMessageWriter(this);
             return messageWriter;
         }
@@ -371,6 +447,11 @@ public final class WsURLConnectionImpl extends WsURLConnection {
         }
     }
 
+    @Override
+    public ConnectionMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public Collection<String> getNegotiatedExtensions() throws IOException {
         try {
@@ -395,6 +476,16 @@ public final class WsURLConnectionImpl extends WsURLConnection {
         }
     }
 
+    @Override
+    public OutboundQueuePolicy getOutboundQueuePolicy() {
+        return outboundQueuePolicy;
+    }
+
+    // Null unless the outbound queue policy queues messages and the message writer has been created.
+    public WsOutboundQueue getOutboundQueue() {
+        return outboundQueue;
+    }
+
     @Override
     public WsOutputStream getOutputStream() throws IOException {
         if (outputStream != null) {
@@ -439,6 +530,11 @@ public final class WsURLConnectionImpl extends WsURLConnection {
         }
     }
 
+    @Override
+    public RoundTripTimeHistogram getRoundTripTimeHistogram() {
+        return roundTripTimes;
+    }
+
     @Override
     public Collection<String> getSupportedExtensions() {
         return extensionFactory.getExtensionNames();
@@ -495,6 +591,49 @@ public final class WsURLConnectionImpl extends WsURLConnection {
         }
     }
 
+    @Override
+    public void setFrameRecorder(FrameRecorder recorder) {
+        ensureReconfigurable();
+        this.frameRecorder = recorder;
+    }
+
+    @Override
+    public void setKeepAlivePolicy(KeepAlivePolicy policy) {
+        ensureReconfigurable();
+
+        if (policy == null) {
+            throw new NullPointerException("Null keep-alive policy passed in");
+        }
+
+        this.keepAlivePolicy = policy;
+    }
+
+    @Override
+    public void setLockWaitStrategy(LockWaitStrategy waitStrategy) {
+        ensureReconfigurable();
+
+        if (waitStrategy == null) {
+            throw new NullPointerException("Null lock wait strategy passed in");
+        }
+
+        this.lockWaitStrategy = waitStrategy;
+        this.readLock.setWaitStrategy(waitStrategy);
+        this.stateLock.setWaitStrategy(waitStrategy);
+        this.writeLock.setWaitStrategy(waitStrategy);
+    }
+
+    @Override
+    public void setMaskKeyGenerator(MaskKeyGenerator maskKeyGenerator) {
+        ensureReconfigurable();
+
+        if (maskKeyGenerator == null) {
+            throw new NullPointerException("Null mask key generator passed in");
+        }
+
+        this.maskKeyGenerator = maskKeyGenerator;
+        this.connectionMaskKeyGenerator = maskKeyGenerator.forConnection();
+    }
+
     @Override
     public void setMaxFramePayloadLength(int maxPayloadLength) {
         ensureReconfigurable();
@@ -511,6 +650,34 @@ public final class WsURLConnectionImpl extends WsURLConnection {
         this.maxFrameLength = getFrameLength(false, maxFramePayloadLength);
     }
 
+    @Override
+    public void setMessageSpillPolicy(MessageSpillPolicy policy) {
+        ensureReconfigurable();
+
+        if (policy == null) {
+            throw new NullPointerException("Null message spill policy passed in");
+        }
+
+        this.messageSpillPolicy = policy;
+    }
+
+    // Adds the metrics of this connection to the metrics of the factory that created it.
+    public void setMetricsParent(AggregateMetrics parent) {
+        ensureReconfigurable();
+        this.metrics = new ConnectionMetrics(parent);
+    }
+
+    @Override
+    public void setOutboundQueuePolicy(OutboundQueuePolicy policy) {
+        ensureReconfigurable();
+
+        if (policy == null) {
+            throw new NullPointerException("Null outbound queue policy passed in");
+        }
+
+        this.outboundQueuePolicy = policy;
+    }
+
     @Override
     public void setRedirectPolicy(HttpRedirectPolicy redirectPolicy) {
         ensureReconfigurable();
@@ -603,6 +770,10 @@ public final class WsURLConnectionImpl extends WsURLConnection {
             stateLock.lock();
 
             List<WebSocketExtensionSpi> extensions = new ArrayList<WebSocketExtensionSpi>(this.negotiatedExtensionSpis);
+            if (frameRecorder != null) {
+                // Incoming frames are recorded before the negotiated extensions transform them.
+                extensions.add(0, getFrameRecorderExtension());
+            }
             extensions.add(new IncomingSentinelExtension());
             incomingContext = new DefaultWebSocketContext(this, unmodifiableList(extensions));
             return incomingContext;
@@ -622,7 +793,12 @@ public final class WsURLConnectionImpl extends WsURLConnection {
 
             List<WebSocketExtensionSpi> extensions = new ArrayList<WebSocketExtensionSpi>(this.negotiatedExtensionSpis);
             Collections.reverse(extensions);
-            extensions.add(new OutgoingSentinelExtension(this));
+            if (frameRecorder != null) {
+                // Outgoing frames are recorded after the negotiated extensions have transformed them.
+                extensions.add(getFrameRecorderExtension());
+            }
+            outgoingSentinel = new OutgoingSentinelExtension(this);
+            extensions.add(outgoingSentinel);
             outgoingContext = new DefaultWebSocketContext(this, unmodifiableList(extensions));
             return outgoingContext;
         }
@@ -631,6 +807,15 @@ public final class WsURLConnectionImpl extends WsURLConnection {
         }
     }
 
+    // Shared by both the directions so that their frames are recorded under the same connection id.
+    private FrameRecorderExtension getFrameRecorderExtension() {
+        if (frameRecorderExtension == null) {
+            frameRecorderExtension = new FrameRecorderExtension(frameRecorder);
+        }
+
+        return frameRecorderExtension;
+    }
+
     public int getFrameLength(boolean masked, int messageLength) {
         int frameLength = 1; // opcode
 
@@ -650,10 +835,23 @@ public final class WsURLConnectionImpl extends WsURLConnection {
         return frameLength;
     }
 
+    public URI getHttpLocation() {
+        return httpLocation;
+    }
+
     public int getMaxFrameLength() {
         return maxFrameLength;
     }
 
+    // Reserved bits of the data frames that have a meaning defined by the negotiated extensions.
+    public int getReservedBits() {
+        return reservedBits;
+    }
+
+    public int nextMaskKey() {
+        return connectionMaskKeyGenerator.nextMaskKey();
+    }
+
     public Random getRandom() {
         return random;
     }
@@ -667,11 +865,107 @@ public final class WsURLConnectionImpl extends WsURLConnection {
     }
 
     public InputStream getTcpInputStream() throws IOException {
-        return connection.getInputStream();
+        InputStream in = transportInput;
+        return (in != null) ? in : connection.getInputStream();
     }
 
     public OutputStream getTcpOutputStream() throws IOException {
-        return connection.getOutputStream();
+        OutputStream out = transportOutput;
+        return (out != null) ? out : connection.getOutputStream();
+    }
+
+    public GatheringByteChannel getTcpChannel() throws IOException {
+        OutputStream out = getTcpOutputStream();
+        return (out instanceof GatheringByteChannel) ? (GatheringByteChannel) out : null;
+    }
+
+    public String newWebSocketKey() {
+        return base64Encode(randomBytes(16));
+    }
+
+    public Map<String, String> getHandshakeRequestHeaders(String websocketKey) {
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        headers.put(HEADER_UPGRADE, "websocket");
+        headers.put(HEADER_CONNECTION, "Upgrade");
+        headers.put(HEADER_SEC_WEBSOCKET_KEY, websocketKey);
+        headers.put(HEADER_SEC_WEBSOCKET_VERSION, "13");
+
+        if (!enabledExtensions.isEmpty()) {
+            headers.put(HEADER_SEC_WEBSOCKET_EXTENSIONS, formatAsRequestHeader(enabledExtensions));
+        }
+
+        if (!enabledProtocols.isEmpty()) {
+            headers.put(HEADER_SEC_WEBSOCKET_PROTOCOL, formatAsRequestHeader(enabledProtocols));
+        }
+
+        return headers;
+    }
+
+    // Encodes the whole request head, for the HTTP connection and for owners of the transport that write the opening
+    // handshake themselves.
+    public byte[] encodeHandshakeRequest(String websocketKey) {
+        return WebSocketHandshakeEncoder.encodeRequest(getHttpLocation(), enabledProtocols, enabledExtensions, websocketKey);
+    }
+
+    // The transport carries the opening handshake and the frames instead of the HTTP connection. Once it is set, the
+    // handshake is driven by the owner of the transport, which reports the response using upgrade().
+    public void setTransport(InputStream in, OutputStream out) {
+        try {
+            stateLock.lock();
+            ensureReconfigurable();
+            this.transportInput = in;
+            this.transportOutput = out;
+        }
+        finally {
+            stateLock.unlock();
+        }
+    }
+
+    // Set by the owner of the transport, which refuses new messages while too many bytes are queued on it.
+    public void setTransportWritable(boolean writable) {
+        this.transportWritable = writable;
+    }
+
+    public boolean isTransportWritable() {
+        return transportWritable;
+    }
+
+    // Lets the owner of the transport connect again once the opening handshake has failed.
+    public void resetTransport() {
+        try {
+            stateLock.lock();
+            this.transportInput = null;
+            this.transportOutput = null;
+            this.transportWritable = true;
+            this.inputState = WebSocketState.START;
+            this.outputState = WebSocketState.START;
+        }
+        finally {
+            stateLock.unlock();
+        }
+    }
+
+    // The header names of the specified response headers must be looked up case-insensitively.
+    public void upgrade(String websocketKey, int responseCode, Map<String, String> headers) throws IOException {
+        try {
+            stateLock.lock();
+            switch (inputState) {
+            case START:
+                completeHandshake(websocketKey,
+                                  responseCode,
+                                  headers.get(HEADER_UPGRADE),
+                                  headers.get(HEADER_CONNECTION),
+                                  headers.get(HEADER_SEC_WEBSOCKET_ACCEPT),
+                                  headers.get(HEADER_SEC_WEBSOCKET_PROTOCOL),
+                                  headers.get(HEADER_SEC_WEBSOCKET_EXTENSIONS));
+                break;
+            default:
+                throw new IOException(MSG_ALREADY_CONNECTED);
+            }
+        }
+        finally {
+            stateLock.unlock();
+        }
     }
 
     public WebSocketState getInputState() {
@@ -690,12 +984,8 @@ public final class WsURLConnectionImpl extends WsURLConnection {
         int leadByte = Flyweight.uint8Get(frameRO.buffer(), frameRO.offset());
         int flags = frameRO.flags();
 
-        switch (flags) {
-        case 0:
-            break;
-        default:
-          doFail(WS_PROTOCOL_ERROR, format(MSG_RESERVED_BITS_SET, flags));
-          break;
+        if ((flags & ~reservedBits) != 0) {
+            doFail(WS_PROTOCOL_ERROR, format(MSG_RESERVED_BITS_SET, flags));
         }
 
         try {
@@ -708,6 +998,11 @@ public final class WsURLConnectionImpl extends WsURLConnection {
                     doFail(WS_PROTOCOL_ERROR, format(MSG_FRAGMENTED_CONTROL_FRAME, leadByte));
                 }
 
+                if (flags != 0) {
+                    // Extensions define the reserved bits only for data frames.
+                    doFail(WS_PROTOCOL_ERROR, format(MSG_RESERVED_BITS_SET, flags));
+                }
+
                 if (frameRO.payloadLength() > MAX_COMMAND_FRAME_PAYLOAD) {
                     doFail(WS_PROTOCOL_ERROR, format(MSG_PAYLOAD_LENGTH_EXCEEDED, opcode));
                 }
@@ -731,14 +1026,90 @@ public final class WsURLConnectionImpl extends WsURLConnection {
     }
 
     public void processOutgoingFrame(final Frame frameRO) throws IOException {
+        Opcode opcode = frameRO.opcode();
+        if (!transportWritable && ((opcode == Opcode.BINARY) || (opcode == Opcode.TEXT))) {
+            // Only a new message is refused, as the frames of a message in progress and the control frames must go out.
+            throw new IOException(MSG_TRANSPORT_NOT_WRITABLE);
+        }
+
+        WsOutboundQueue queue = outboundQueue;
+        if (queue != null) {
+            // The messages that the sending thread has queued go out ahead of the frame.
+            queue.flush();
+        }
+
         outputStateMachine.processFrame(this, frameRO);
     }
 
-    public void sendCloseIfNecessary(Frame closeFrame) throws IOException {
-        if (outputState == CLOSED) {
-            return;
+    // Writes a frame that the outbound queue accepted earlier, so it is not refused while the transport is not writable.
+    public void processQueuedOutgoingFrame(final Frame frameRO) throws IOException {
+        outputStateMachine.processFrame(this, frameRO);
+    }
+
+    // Returns false, without sending the control frame, if another thread is writing. The messages queued by the sending thread
+    // are left for it to flush, as they can only be written while holding the write lock.
+    public boolean tryProcessOutgoingFrame(final Frame frameRO) throws IOException {
+        return outputStateMachine.tryProcessFrame(this, frameRO);
+    }
+
+    // Sends a data frame whose payload is read from the file while it is being masked, rather than from a frame buffer. Returns
+    // false, without sending anything, if a negotiated extension or the frame recorder has to see the frame.
+    public boolean transferOutgoingFrame(Opcode opcode, boolean fin, FileChannel file, long position, int length)
+            throws IOException {
+        if (!negotiatedExtensionSpis.isEmpty() || (frameRecorder != null)) {
+            return false;
+        }
+
+        if (!transportWritable && (opcode == Opcode.BINARY)) {
+            throw new IOException(MSG_TRANSPORT_NOT_WRITABLE);
         }
 
+        WsOutboundQueue queue = outboundQueue;
+        if (queue != null) {
+            // The messages that the sending thread has queued go out ahead of the frame.
+            queue.flush();
+        }
+
+        outputStateMachine.transferFrame(this, opcode, fin, file, position, length);
+        return true;
+    }
+
+    // Created along with the outgoing context.
+    public OutgoingSentinelExtension getOutgoingSentinel() {
+        return outgoingSentinel;
+    }
+
+    // Until uncork() is invoked, the encoded frames are collected and written to the transport together.
+    public void cork() {
+        try {
+            writeLock.lock();
+            corked = true;
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void uncork() throws IOException {
+        try {
+            writeLock.lock();
+            corked = false;
+
+            if (outgoingSentinel != null) {
+                outgoingSentinel.writeBatch(this);
+            }
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Must be invoked while holding the write lock.
+    public boolean isCorked() {
+        return corked;
+    }
+
+    public void sendCloseIfNecessary(Frame closeFrame) throws IOException {
         int closePayloadLength = closeFrame.payloadLength();
         int code = 0;
         int reasonOffset = 0;
@@ -753,6 +1124,14 @@ public final class WsURLConnectionImpl extends WsURLConnection {
             }
         }
 
+        // Recorded even when the CLOSE frame answers our own, so that a MessageListener can be told how the connection closed.
+        closeCodeReceived = (closePayloadLength >= 2) ? code : WS_MISSING_STATUS_CODE;
+        closeReasonReceived = (reasonLength > 0) ? decodeCloseReason(closeFrame.buffer(), reasonOffset, reasonLength) : null;
+
+        if (outputState == CLOSED) {
+            return;
+        }
+
         // Using System.arraycopy() to copy the contents from transformed.buffer().array() causes
         // java.nio.ReadOnlyBufferException as we will be getting RO flyweight.
         for (int i = 0; i < reasonLength; i++) {
@@ -762,6 +1141,16 @@ public final class WsURLConnectionImpl extends WsURLConnection {
         sendClose(code, commandFramePayload, 0, reasonLength);
     }
 
+    // WS_ABNORMAL_CLOSE until a CLOSE frame has been received.
+    public int getCloseCodeReceived() {
+        return closeCodeReceived;
+    }
+
+    // Null until a CLOSE frame carrying a reason has been received.
+    public String getCloseReasonReceived() {
+        return closeReasonReceived;
+    }
+
     public void sendPong(Frame frame) throws IOException {
         long payloadLength = frame.payloadLength();
         int  payloadOffset = frame.payloadOffset();
@@ -773,6 +1162,45 @@ public final class WsURLConnectionImpl extends WsURLConnection {
         getOutputStream().writePong(commandFramePayload, 0, (int) payloadLength);
     }
 
+    // Skips the PING, and returns false, rather than waiting for a frame that is being written by another thread.
+    public boolean trySendPing(byte[] payload, int offset, int length) throws IOException {
+        return getOutputStream().tryWritePing(payload, offset, length);
+    }
+
+    // Abandons the connection without the CLOSE handshake, as the server is not responding. Closing the transport unblocks
+    // the threads that are reading from or writing to it.
+    public void abort() {
+        inputState = CLOSED;
+        outputState = CLOSED;
+        releaseExtensions();
+
+        try {
+            getTcpInputStream().close();
+        }
+        catch (IOException e) {
+            // ignore
+        }
+
+        try {
+            getTcpOutputStream().close();
+        }
+        catch (IOException e) {
+            // ignore
+        }
+    }
+
+    // Lets the negotiated extensions release their resources once the connection is gone, even without a CLOSE frame.
+    public void releaseExtensions() {
+        for (WebSocketExtensionSpi extension : negotiatedExtensionSpis) {
+            extension.onDisconnected();
+        }
+    }
+
+    // Null unless the keep-alive policy is enabled and the connection has been established.
+    WebSocketKeepAlive getKeepAlive() {
+        return keepAlive;
+    }
+
     public void setInputState(WebSocketState state) {
         this.inputState = state;
     }
@@ -804,40 +1232,77 @@ public final class WsURLConnectionImpl extends WsURLConnection {
     }
 
     private void doConnect() throws IOException {
-        String websocketKey = base64Encode(randomBytes(16));
+        if (transportOutput != null) {
+            throw new IOException(MSG_HANDSHAKE_IN_PROGRESS);
+        }
 
-        connection.setRequestMethod("GET");
-        connection.setRequestProperty(HEADER_UPGRADE, "websocket");
-        connection.setRequestProperty(HEADER_CONNECTION, "Upgrade");
-        connection.setRequestProperty(HEADER_SEC_WEBSOCKET_KEY, websocketKey);
-        connection.setRequestProperty(HEADER_SEC_WEBSOCKET_VERSION, "13");
+        final String websocketKey = newWebSocketKey();
 
-        if (!enabledExtensions.isEmpty()) {
-            String formattedExtensions = formatAsRequestHeader(enabledExtensions);
-            connection.setRequestProperty(HEADER_SEC_WEBSOCKET_EXTENSIONS, formattedExtensions);
+        connection.setRequestMethod("GET");
+        if (connection.isUpgradeRequestEncoderSupported()) {
+            connection.setUpgradeRequestEncoder(new HttpUpgradeRequestEncoder() {
+                @Override
+                public byte[] encodeRequest(URL location) {
+                    // A redirect changes the location, so the request is encoded for the one that the connection is sent to.
+                    return WebSocketHandshakeEncoder.encodeRequest(URI.create(location.toString()), enabledProtocols,
+                                                                   enabledExtensions, websocketKey);
+                }
+            });
         }
-
-        if (!enabledProtocols.isEmpty()) {
-            String formattedProtocols = formatAsRequestHeader(enabledProtocols);
-            connection.setRequestProperty(HEADER_SEC_WEBSOCKET_PROTOCOL, formattedProtocols);
+        else {
+            // Other HTTP connections only know the headers that are set as request properties.
+            for (Map.Entry<String, String> header : getHandshakeRequestHeaders(websocketKey).entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
         }
 
-        if (HTTP_SWITCHING_PROTOCOLS != connection.getResponseCode() ||
-            !"websocket".equalsIgnoreCase(connection.getHeaderField(HEADER_UPGRADE)) ||
-            !"Upgrade".equalsIgnoreCase(connection.getHeaderField(HEADER_CONNECTION)) ||
-            !validateAccept(websocketKey, connection.getHeaderField(HEADER_SEC_WEBSOCKET_ACCEPT))) {
+        completeHandshake(websocketKey,
+                          connection.getResponseCode(),
+                          connection.getHeaderField(HEADER_UPGRADE),
+                          connection.getHeaderField(HEADER_CONNECTION),
+                          connection.getHeaderField(HEADER_SEC_WEBSOCKET_ACCEPT),
+                          connection.getHeaderField(HEADER_SEC_WEBSOCKET_PROTOCOL),
+                          connection.getHeaderField(HEADER_SEC_WEBSOCKET_EXTENSIONS));
+    }
+
+    private void completeHandshake(
+            String websocketKey,
+            int responseCode,
+            String upgrade,
+            String connectionHeader,
+            String accept,
+            String protocol,
+            String extensions) throws IOException {
+        if (HTTP_SWITCHING_PROTOCOLS != responseCode ||
+            !"websocket".equalsIgnoreCase(upgrade) ||
+            !"Upgrade".equalsIgnoreCase(connectionHeader) ||
+            !WebSocketHandshakeEncoder.validateAccept(websocketKey, accept)) {
 
-            throw new IOException("Connection failed");
+            throw new IOException(MSG_CONNECTION_FAILED);
         }
 
-        negotiateProtocol(enabledProtocols, connection.getHeaderField(HEADER_SEC_WEBSOCKET_PROTOCOL));
-        negotiateExtensions(enabledExtensions, connection.getHeaderField(HEADER_SEC_WEBSOCKET_EXTENSIONS));
+        negotiateProtocol(enabledProtocols, protocol);
+        negotiateExtensions(enabledExtensions, extensions);
 
         inputState = OPEN;
         outputState = OPEN;
+
+        if (keepAlivePolicy.isEnabled()) {
+            keepAlive = new WebSocketKeepAlive(this, keepAlivePolicy, roundTripTimes);
+            keepAlive.start();
+        }
     }
 
     private void disconnect() {
+        if (keepAlive != null) {
+            keepAlive.stop();
+        }
+
+        // The owner of a transport keeps reading till the server's CLOSE frame arrives, and releases them once it has closed.
+        if (transportOutput == null) {
+            releaseExtensions();
+        }
+
         try {
             if (outputStream != null) {
                 outputStream.close();
@@ -873,8 +1338,12 @@ public final class WsURLConnectionImpl extends WsURLConnection {
     }
 
     private void sendClose(int code, byte[] reason, int offset, int length) throws IOException {
-        getOutputStream().writeClose(code, reason, offset, length);
-        disconnect();
+        try {
+            getOutputStream().writeClose(code, reason, offset, length);
+        }
+        finally {
+            disconnect();
+        }
     }
 
     private void negotiateProtocol(
@@ -891,6 +1360,7 @@ public final class WsURLConnectionImpl extends WsURLConnection {
             String formattedExtensions) throws IOException {
         negotiatedExtensions.clear();
         negotiatedExtensionSpis.clear();
+        reservedBits = 0;
 
         if ((formattedExtensions == null) || (formattedExtensions.trim().length() == 0)) {
             return;
@@ -913,10 +1383,14 @@ public final class WsURLConnectionImpl extends WsURLConnection {
 
             negotiatedExtensions.add(extnName);
 
+            // Unlike an extension that cannot be activated, parameters that were never offered fail the handshake.
+            extensionFactory.validateResponse(findOffer(enabledExtensions, extnName), extension);
+
             try {
                 WebSocketExtensionSpi extensionSpi = extensionFactory.createExtension(extension);
                 if (extensionSpi != null) {
                     negotiatedExtensionSpis.add(extensionSpi);
+                    reservedBits |= extensionSpi.getReservedBits();
                 }
             }
             catch (IOException ex) {
@@ -933,6 +1407,12 @@ public final class WsURLConnectionImpl extends WsURLConnection {
         return Base64Util.encode(ByteBuffer.wrap(bytes));
     }
 
+    private static String decodeCloseReason(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer reason = buffer.duplicate();
+        reason.limit(offset + length).position(offset);
+        return UTF_8.decode(reason).toString();
+    }
+
     private static String formatAsRequestHeader(Collection<String> values) {
         assert values != null;
 
@@ -965,23 +1445,20 @@ public final class WsURLConnectionImpl extends WsURLConnection {
         return names;
     }
 
+    private static String findOffer(List<String> enabledExtensions, String extensionName) {
+        for (String extension : enabledExtensions) {
+            String[] tokens = PATTERN_SEMI_COLON_SEPARATED_FORMAT.split(extension);
+            if (extensionName.equals(tokens[0].trim())) {
+                return extension;
+            }
+        }
+
+        return extensionName;
+    }
+
     private static HttpURLConnection openHttpConnection(URLConnectionHelper helper, URI httpLocation) throws IOException {
         HttpURLConnection connection = (HttpURLConnection) helper.openConnection(httpLocation);
         connection.setDoOutput(true);
         return connection;
     }
-
-    private static boolean validateAccept(String websocketKey, String websocketHash) {
-        try {
-            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
-            String input = websocketKey + WEBSOCKET_GUID;
-            byte[] hash = sha1.digest(input.getBytes());
-
-            String computedHash = Base64Util.encode(ByteBuffer.wrap(hash));
-            return computedHash.equals(websocketHash);
-        }
-        catch (NoSuchAlgorithmException e) {
-            return false;
-        }
-    }
 }
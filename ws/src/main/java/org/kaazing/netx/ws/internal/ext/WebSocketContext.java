@@ -36,6 +36,16 @@ public abstract class WebSocketContext {
 
     public abstract WebSocketExtensionSpi nextExtension();
 
+    /**
+     * Returns the maximum payload length of a frame on the connection. Extensions that expand the payload, such as by
+     * decompressing it, must not produce frames with a larger payload.
+     *
+     * @return maximum frame payload length
+     */
+    public int getMaxFramePayloadLength() {
+        return connection.getMaxFramePayloadLength();
+    }
+
     public String getErrorMessage() {
         return errorMessage;
     }
@@ -135,6 +145,16 @@ public abstract class WebSocketContext {
         nextExtension().onContinuationSent.accept(this, frame);
     }
 
+    /**
+     * Exercises the <code>onPingSent</code> hook of a negotiated extension.
+     *
+     * @param frame outgoing PING frame
+     * @throws IOException
+     */
+    public void onPingSent(Frame frame) throws IOException {
+        nextExtension().onPingSent.accept(this, frame);
+    }
+
     /**
      * Exercises the <code>onPongSent</code> hook of a negotiated extension.
      *
@@ -185,6 +205,16 @@ public abstract class WebSocketContext {
         connection.processOutgoingFrame(dataFrame);
     }
 
+    /**
+     * Writes out a PING frame on the wire.
+     *
+     * @param frame outgoing PING frame
+     * @throws IOException
+     */
+    public void doSendPing(Frame pingFrame) throws IOException {
+        connection.processOutgoingFrame(pingFrame);
+    }
+
     /**
      * Writes out a PONG frame on the wire.
      *
@@ -66,4 +66,16 @@ public abstract class WebSocketExtensionFactorySpi {
      * @throw IOException if the specified string contains invalid extension name, parameter name or parameter value
      */
     public abstract void validateExtension(String extensionWithParams) throws IOException;
+
+    /**
+     * Validates the extension that the server negotiated against the offer that was sent for it. This method is called before
+     * {@link #createExtension(String)}. If it throws IOException, the opening handshake fails, as the server accepted the
+     * extension with parameters that the client did not offer. The default implementation accepts any response.
+     *
+     * @param offer     String representation of the extension in request header format
+     * @param response  String representation of the extension in response header format
+     * @throw IOException if the response is not a valid answer to the offer
+     */
+    public void validateResponse(String offer, String response) throws IOException {
+    }
 }
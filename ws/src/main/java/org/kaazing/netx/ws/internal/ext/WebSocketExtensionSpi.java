@@ -38,6 +38,25 @@ import org.kaazing.netx.ws.internal.ext.function.WebSocketFrameConsumer;
  */
 public abstract class WebSocketExtensionSpi {
 
+    /**
+     * Returns the reserved bits in the leading byte of a data frame that this extension defines a meaning for. The bits are
+     * specified in the same form as {@link Frame#flags()} -- RSV1 is 0x04, RSV2 is 0x02 and RSV3 is 0x01. Frames received
+     * with a reserved bit that is not used by any of the negotiated extensions fail the connection.
+     *
+     * @return the reserved bits used by this extension, or 0 if none
+     */
+    public int getReservedBits() {
+        return 0;
+    }
+
+    /**
+     * Invoked once the connection has been disconnected, whether or not the CLOSE handshake completed, so that the extension
+     * can release the resources that it holds. It may be invoked more than once, and while another thread is still sending or
+     * receiving a frame. The default implementation does nothing.
+     */
+    public void onDisconnected() {
+    }
+
     /**
      * onInitialized hook is exercised when an extension is successfully negotiated.
      */
@@ -137,6 +156,17 @@ public abstract class WebSocketExtensionSpi {
         }
     };
 
+    /**
+     * onPingSent hook is exercised when sending a PING frame.
+     */
+    public WebSocketFrameConsumer onPingSent = new WebSocketFrameConsumer() {
+
+        @Override
+        public void accept(WebSocketContext context, Frame frame) throws IOException {
+            context.onPingSent(frame);
+        }
+    };
+
     /**
      * onPongReceived hook is exercised when a PONG frame is received.
      */
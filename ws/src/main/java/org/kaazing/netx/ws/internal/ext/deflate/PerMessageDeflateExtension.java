@@ -0,0 +1,378 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.ext.deflate;
+
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+import org.kaazing.netx.ws.internal.ext.WebSocketContext;
+import org.kaazing.netx.ws.internal.ext.WebSocketExtensionSpi;
+import org.kaazing.netx.ws.internal.ext.flyweight.Frame;
+import org.kaazing.netx.ws.internal.ext.flyweight.FrameRW;
+import org.kaazing.netx.ws.internal.ext.function.WebSocketFrameConsumer;
+
+/**
+ * Compresses and decompresses the messages of a connection that negotiated <code>permessage-deflate</code>. Flushing a
+ * message relies on Deflater.SYNC_FLUSH, which requires Java 7. {@link PerMessageDeflateExtensionFactory} does not offer the
+ * extension on older runtimes.
+ */
+final class PerMessageDeflateExtension extends WebSocketExtensionSpi {
+    private static final String MSG_RSV1_ON_CONTINUATION = "Protocol Violation: RSV1 set on a CONTINUATION frame";
+    private static final String MSG_INFLATED_PAYLOAD_TOO_BIG = "Decompressed payload length exceeds the maximum allowed %d";
+    private static final String MSG_INVALID_COMPRESSED_PAYLOAD = "Invalid compressed payload: %s";
+    private static final String MSG_DISCONNECTED = "Connection disconnected";
+
+    private static final int RSV1 = 0x04;
+    private static final int MAX_WINDOW_BITS = 15;
+    private static final int MAX_HEADER_LENGTH = 10;
+    private static final int INITIAL_BUFFER_LENGTH = 1024;
+
+    // Every compressed message ends with an empty stored block that is removed before the message is sent(RFC 7692 7.2.1)
+    // and appended again before the message is decompressed(RFC 7692 7.2.2).
+    private static final byte[] EMPTY_BLOCK_TAIL = new byte[] { 0x00, 0x00, (byte) 0xFF, (byte) 0xFF };
+
+    private final ZlibPool pool;
+    private final int clientMaxWindowBits;
+    private final boolean clientNoContextTakeover;
+    private final boolean serverNoContextTakeover;
+    private final FrameRW outgoingFrame;
+    private final FrameRW incomingFrame;
+    private final byte[] overflowProbe;
+
+    // Frames are sent and received by different threads. So, the buffers are not shared between the two directions.
+    private byte[] deflateInput;
+    private byte[] deflateOutput;
+    private byte[] inflateInput;
+    private byte[] inflateOutput;
+
+    // Guarded by this, as the connection can be disconnected by another thread while a message is in progress.
+    private Deflater deflater;
+    private Inflater inflater;
+    private boolean disconnected;
+
+    private boolean compressing;
+    private boolean decompressing;
+
+    PerMessageDeflateExtension(
+            ZlibPool pool,
+            int clientMaxWindowBits,
+            boolean clientNoContextTakeover,
+            boolean serverNoContextTakeover) {
+        this.pool = pool;
+        this.clientMaxWindowBits = clientMaxWindowBits;
+        this.clientNoContextTakeover = clientNoContextTakeover;
+        this.serverNoContextTakeover = serverNoContextTakeover;
+        this.outgoingFrame = new FrameRW().wrap(ByteBuffer.allocate(INITIAL_BUFFER_LENGTH + MAX_HEADER_LENGTH), 0);
+        this.incomingFrame = new FrameRW().wrap(ByteBuffer.allocate(INITIAL_BUFFER_LENGTH + MAX_HEADER_LENGTH), 0);
+        this.overflowProbe = new byte[1];
+        this.deflateInput = new byte[INITIAL_BUFFER_LENGTH];
+        this.deflateOutput = new byte[INITIAL_BUFFER_LENGTH];
+        this.inflateInput = new byte[INITIAL_BUFFER_LENGTH];
+        this.inflateOutput = new byte[0];
+
+        super.onBinaryReceived = new WebSocketFrameConsumer() {
+            @Override
+            public void accept(WebSocketContext context, Frame frame) throws IOException {
+                decompressing = (frame.flags() & RSV1) != 0;
+                context.onBinaryReceived(decompressing ? inflate(context, frame) : frame);
+            }
+        };
+
+        super.onTextReceived = new WebSocketFrameConsumer() {
+            @Override
+            public void accept(WebSocketContext context, Frame frame) throws IOException {
+                decompressing = (frame.flags() & RSV1) != 0;
+                context.onTextReceived(decompressing ? inflate(context, frame) : frame);
+            }
+        };
+
+        super.onContinuationReceived = new WebSocketFrameConsumer() {
+            @Override
+            public void accept(WebSocketContext context, Frame frame) throws IOException {
+                if ((frame.flags() & RSV1) != 0) {
+                    throw new IOException(MSG_RSV1_ON_CONTINUATION);
+                }
+
+                context.onContinuationReceived(decompressing ? inflate(context, frame) : frame);
+            }
+        };
+
+        super.onCloseReceived = new WebSocketFrameConsumer() {
+            @Override
+            public void accept(WebSocketContext context, Frame frame) throws IOException {
+                releaseInflater();
+                context.onCloseReceived(frame);
+            }
+        };
+
+        super.onBinarySent = new WebSocketFrameConsumer() {
+            @Override
+            public void accept(WebSocketContext context, Frame frame) throws IOException {
+                compressing = isCompressible(frame);
+                context.onBinarySent(compressing ? deflate(frame, true) : frame);
+            }
+        };
+
+        super.onTextSent = new WebSocketFrameConsumer() {
+            @Override
+            public void accept(WebSocketContext context, Frame frame) throws IOException {
+                compressing = isCompressible(frame);
+                context.onTextSent(compressing ? deflate(frame, true) : frame);
+            }
+        };
+
+        super.onContinuationSent = new WebSocketFrameConsumer() {
+            @Override
+            public void accept(WebSocketContext context, Frame frame) throws IOException {
+                context.onContinuationSent(compressing ? deflate(frame, false) : frame);
+            }
+        };
+
+        super.onCloseSent = new WebSocketFrameConsumer() {
+            @Override
+            public void accept(WebSocketContext context, Frame frame) throws IOException {
+                releaseDeflater();
+                context.onCloseSent(frame);
+            }
+        };
+    }
+
+    @Override
+    public int getReservedBits() {
+        return RSV1;
+    }
+
+    @Override
+    public void onDisconnected() {
+        Deflater deflater;
+        Inflater inflater;
+
+        synchronized (this) {
+            disconnected = true;
+            deflater = this.deflater;
+            inflater = this.inflater;
+            this.deflater = null;
+            this.inflater = null;
+        }
+
+        // Ended instead of being returned to the pool, as a thread could still be using them. Deflater and Inflater make
+        // end() wait for such a thread, and fail its next call with a NullPointerException, which deflate() and inflate()
+        // translate.
+        if (deflater != null) {
+            deflater.end();
+        }
+
+        if (inflater != null) {
+            inflater.end();
+        }
+    }
+
+    private boolean isCompressible(Frame frame) {
+        if (clientMaxWindowBits == MAX_WINDOW_BITS) {
+            return true;
+        }
+
+        // Deflater always uses a 32K window. It can still honor a smaller window negotiated by the server for a message that
+        // fits in a single frame and is compressed from a fresh state, as no back-reference can then reach further than the
+        // length of the message. Other messages are sent uncompressed, which RFC 7692 permits.
+        return frame.fin() && (frame.payloadLength() <= (1 << clientMaxWindowBits));
+    }
+
+    @IgnoreJRERequirement
+    private Frame deflate(Frame frame, boolean initialFrame) throws IOException {
+        int payloadLength = frame.payloadLength();
+
+        deflateInput = copyPayload(frame, deflateInput, payloadLength);
+
+        Deflater deflater = acquireDeflater();
+        int length = 0;
+
+        try {
+            deflater.setInput(deflateInput, 0, payloadLength);
+
+            // SYNC_FLUSH has completed only when the deflater stops short of filling the output buffer.
+            do {
+                if (length == deflateOutput.length) {
+                    deflateOutput = Arrays.copyOf(deflateOutput, length * 2);
+                }
+
+                length += deflater.deflate(deflateOutput, length, deflateOutput.length - length, Deflater.SYNC_FLUSH);
+            } while (length == deflateOutput.length);
+        }
+        catch (NullPointerException ex) {
+            throw disconnectedException(ex);
+        }
+
+        if (frame.fin()) {
+            if (endsWithEmptyBlock(deflateOutput, length)) {
+                length -= EMPTY_BLOCK_TAIL.length;
+            }
+
+            if (clientNoContextTakeover || (clientMaxWindowBits != MAX_WINDOW_BITS)) {
+                releaseDeflater();
+            }
+        }
+
+        return encodeFrame(outgoingFrame, frame, initialFrame ? RSV1 : 0, deflateOutput, length);
+    }
+
+    private Frame inflate(WebSocketContext context, Frame frame) throws IOException {
+        int payloadLength = frame.payloadLength();
+        int inputLength = frame.fin() ? payloadLength + EMPTY_BLOCK_TAIL.length : payloadLength;
+
+        inflateInput = copyPayload(frame, inflateInput, inputLength);
+        if (frame.fin()) {
+            System.arraycopy(EMPTY_BLOCK_TAIL, 0, inflateInput, payloadLength, EMPTY_BLOCK_TAIL.length);
+        }
+
+        Inflater inflater = acquireInflater();
+        int maxPayloadLength = context.getMaxFramePayloadLength();
+        int length = 0;
+
+        try {
+            inflater.setInput(inflateInput, 0, inputLength);
+
+            while (true) {
+                if (length == inflateOutput.length) {
+                    if (length >= maxPayloadLength) {
+                        if (inflater.inflate(overflowProbe) != 0) {
+                            throw new IOException(format(MSG_INFLATED_PAYLOAD_TOO_BIG, maxPayloadLength));
+                        }
+                        break;
+                    }
+
+                    int newLength = Math.max(length * 2, INITIAL_BUFFER_LENGTH);
+                    inflateOutput = Arrays.copyOf(inflateOutput, Math.min(newLength, maxPayloadLength));
+                }
+
+                int bytesInflated = inflater.inflate(inflateOutput, length, inflateOutput.length - length);
+                length += bytesInflated;
+
+                if ((bytesInflated == 0) && (length < inflateOutput.length)) {
+                    // Either all the input has been consumed or the inflater cannot make any further progress.
+                    break;
+                }
+            }
+        }
+        catch (DataFormatException ex) {
+            throw new IOException(format(MSG_INVALID_COMPRESSED_PAYLOAD, ex.getMessage()));
+        }
+        catch (NullPointerException ex) {
+            throw disconnectedException(ex);
+        }
+
+        if (frame.fin() && serverNoContextTakeover) {
+            releaseInflater();
+        }
+
+        return encodeFrame(incomingFrame, frame, 0, inflateOutput, length);
+    }
+
+    private synchronized Deflater acquireDeflater() throws IOException {
+        if (disconnected) {
+            throw new IOException(MSG_DISCONNECTED);
+        }
+
+        if (deflater == null) {
+            deflater = pool.acquireDeflater();
+        }
+
+        return deflater;
+    }
+
+    private synchronized Inflater acquireInflater() throws IOException {
+        if (disconnected) {
+            throw new IOException(MSG_DISCONNECTED);
+        }
+
+        if (inflater == null) {
+            inflater = pool.acquireInflater();
+        }
+
+        return inflater;
+    }
+
+    // A Deflater or Inflater that onDisconnected() has ended fails with a NullPointerException, which is reported as the
+    // disconnection it stems from rather than escaping as a RuntimeException.
+    private synchronized IOException disconnectedException(NullPointerException ex) {
+        if (!disconnected) {
+            throw ex;
+        }
+
+        return new IOException(MSG_DISCONNECTED, ex);
+    }
+
+    private synchronized void releaseDeflater() {
+        if (deflater != null) {
+            pool.releaseDeflater(deflater);
+            deflater = null;
+        }
+    }
+
+    private synchronized void releaseInflater() {
+        if (inflater != null) {
+            pool.releaseInflater(inflater);
+            inflater = null;
+        }
+    }
+
+    private static Frame encodeFrame(FrameRW frameRW, Frame frame, int flags, byte[] payload, int payloadLength) {
+        ByteBuffer buffer = frameRW.buffer();
+        if (buffer.capacity() < payloadLength + MAX_HEADER_LENGTH) {
+            buffer = ByteBuffer.allocate(payloadLength + MAX_HEADER_LENGTH);
+            frameRW.wrap(buffer, 0);
+        }
+
+        frameRW.fin(frame.fin());
+        frameRW.flags(flags);
+        frameRW.opcode(frame.opcode());
+        frameRW.payloadPut(payload, 0, payloadLength);
+        return frameRW;
+    }
+
+    private static byte[] copyPayload(Frame frame, byte[] dest, int capacity) {
+        if (dest.length < capacity) {
+            dest = new byte[Math.max(capacity, dest.length * 2)];
+        }
+
+        // The frame could be wrapping a read-only buffer whose array is not accessible.
+        ByteBuffer payload = frame.buffer().duplicate();
+        payload.position(frame.payloadOffset());
+        payload.get(dest, 0, frame.payloadLength());
+        return dest;
+    }
+
+    private static boolean endsWithEmptyBlock(byte[] buf, int length) {
+        if (length < EMPTY_BLOCK_TAIL.length) {
+            return false;
+        }
+
+        for (int i = 0; i < EMPTY_BLOCK_TAIL.length; i++) {
+            if (buf[length - EMPTY_BLOCK_TAIL.length + i] != EMPTY_BLOCK_TAIL[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
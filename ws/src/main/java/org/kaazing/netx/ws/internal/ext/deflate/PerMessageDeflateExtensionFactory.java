@@ -0,0 +1,226 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.ext.deflate;
+
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+
+import org.kaazing.netx.ws.internal.ext.WebSocketExtensionFactorySpi;
+import org.kaazing.netx.ws.internal.ext.WebSocketExtensionSpi;
+
+/**
+ * {@link WebSocketExtensionFactorySpi} for the RFC 7692 <code>permessage-deflate</code> extension. The extension is enabled
+ * with any of the following parameters:
+ *
+ * {@code}
+ *      permessage-deflate[; client_max_window_bits[=bits]][; server_max_window_bits=bits]
+ *                        [; client_no_context_takeover][; server_no_context_takeover]
+ * {@code}
+ *
+ * Requesting both the <code>*_no_context_takeover</code> parameters allows the compression state to be returned to a
+ * shared pool between messages instead of being held by every connection.
+ * <p>
+ * The parameters of the server's response are checked against the offer as per RFC 7692 section 7.1, and a response that the
+ * offer does not allow fails the opening handshake. The extension requires Java 7, and is not offered on older runtimes.
+ */
+public final class PerMessageDeflateExtensionFactory extends WebSocketExtensionFactorySpi {
+    static final String EXTENSION_NAME = "permessage-deflate";
+
+    private static final String PARAM_CLIENT_MAX_WINDOW_BITS = "client_max_window_bits";
+    private static final String PARAM_SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+    private static final String PARAM_CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+    private static final String PARAM_SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+
+    private static final String MSG_INVALID_EXTENSION_NAME = "Invalid extension name: '%s'";
+    private static final String MSG_UNKNOWN_PARAMETER = "Unknown %s parameter: '%s'";
+    private static final String MSG_DUPLICATE_PARAMETER = "Duplicate %s parameter: '%s'";
+    private static final String MSG_UNEXPECTED_VALUE = "Unexpected value for %s parameter: '%s'";
+    private static final String MSG_INVALID_WINDOW_BITS = "Invalid value for %s parameter: '%s'";
+    private static final String MSG_PARAMETER_NOT_OFFERED = "Unexpected %s parameter in response: '%s'";
+    private static final String MSG_PARAMETER_MISSING = "Missing %s parameter in response: '%s'";
+    private static final String MSG_WINDOW_BITS_EXCEEDS_OFFER = "Value of %s parameter exceeds the offer: '%s'";
+    private static final String MSG_UNSUPPORTED_JRE = "%s requires Deflater.SYNC_FLUSH, which is not supported by this JRE";
+
+    private static final Pattern PATTERN_SEMI_COLON_SEPARATED_FORMAT = Pattern.compile(";");
+
+    private static final int MIN_WINDOW_BITS = 8;
+    private static final int MAX_WINDOW_BITS = 15;
+
+    private static final ZlibPool POOL = new ZlibPool(Runtime.getRuntime().availableProcessors() * 2,
+                                                      Deflater.DEFAULT_COMPRESSION);
+
+    private static final boolean SYNC_FLUSH_SUPPORTED = isSyncFlushSupported();
+
+    @Override
+    public String getExtensionName() {
+        return EXTENSION_NAME;
+    }
+
+    @Override
+    public WebSocketExtensionSpi createExtension(String extensionWithParams) throws IOException {
+        ensureSyncFlushSupported();
+
+        Parameters params = parse(extensionWithParams, true);
+        return new PerMessageDeflateExtension(POOL,
+                                              params.clientMaxWindowBits,
+                                              params.clientNoContextTakeover,
+                                              params.serverNoContextTakeover);
+    }
+
+    @Override
+    public void validateExtension(String extensionWithParams) throws IOException {
+        ensureSyncFlushSupported();
+        parse(extensionWithParams, false);
+    }
+
+    @Override
+    public void validateResponse(String offer, String response) throws IOException {
+        Parameters offered = parse(offer, false);
+        Parameters accepted = parse(response, true);
+
+        // The server cannot ask for a smaller client window unless the client offered to honor one(RFC 7692 7.1.2.2).
+        if (accepted.clientMaxWindowBitsPresent) {
+            if (!offered.clientMaxWindowBitsPresent) {
+                throw new IOException(format(MSG_PARAMETER_NOT_OFFERED, PARAM_CLIENT_MAX_WINDOW_BITS, response));
+            }
+
+            if (accepted.clientMaxWindowBits > offered.clientMaxWindowBits) {
+                throw new IOException(format(MSG_WINDOW_BITS_EXCEEDS_OFFER, PARAM_CLIENT_MAX_WINDOW_BITS, response));
+            }
+        }
+
+        // A limit on the server window that was offered must be accepted with the same or a smaller value(RFC 7692 7.1.2.1).
+        if (offered.serverMaxWindowBits != 0) {
+            if (accepted.serverMaxWindowBits == 0) {
+                throw new IOException(format(MSG_PARAMETER_MISSING, PARAM_SERVER_MAX_WINDOW_BITS, response));
+            }
+
+            if (accepted.serverMaxWindowBits > offered.serverMaxWindowBits) {
+                throw new IOException(format(MSG_WINDOW_BITS_EXCEEDS_OFFER, PARAM_SERVER_MAX_WINDOW_BITS, response));
+            }
+        }
+    }
+
+    private static Parameters parse(String extensionWithParams, boolean response) throws IOException {
+        String[] tokens = PATTERN_SEMI_COLON_SEPARATED_FORMAT.split(extensionWithParams);
+
+        String extensionName = tokens[0].trim();
+        if (!EXTENSION_NAME.equals(extensionName)) {
+            throw new IOException(format(MSG_INVALID_EXTENSION_NAME, extensionName));
+        }
+
+        Parameters params = new Parameters();
+        Set<String> names = new HashSet<String>();
+
+        for (int i = 1; i < tokens.length; i++) {
+            String token = tokens[i].trim();
+            String name = token;
+            String value = null;
+
+            int index = token.indexOf('=');
+            if (index != -1) {
+                name = token.substring(0, index).trim();
+                value = unquote(token.substring(index + 1).trim());
+            }
+
+            if (!names.add(name)) {
+                throw new IOException(format(MSG_DUPLICATE_PARAMETER, EXTENSION_NAME, name));
+            }
+
+            if (PARAM_CLIENT_MAX_WINDOW_BITS.equals(name)) {
+                // The value is optional in the offer, but the server must specify it in the response.
+                params.clientMaxWindowBitsPresent = true;
+                if ((value != null) || response) {
+                    params.clientMaxWindowBits = parseWindowBits(name, value);
+                }
+            }
+            else if (PARAM_SERVER_MAX_WINDOW_BITS.equals(name)) {
+                // Inflater accepts streams compressed with any window size, so the value is only checked against the offer.
+                params.serverMaxWindowBits = parseWindowBits(name, value);
+            }
+            else if (PARAM_CLIENT_NO_CONTEXT_TAKEOVER.equals(name)) {
+                ensureNoValue(name, value);
+                params.clientNoContextTakeover = true;
+            }
+            else if (PARAM_SERVER_NO_CONTEXT_TAKEOVER.equals(name)) {
+                ensureNoValue(name, value);
+                params.serverNoContextTakeover = true;
+            }
+            else {
+                throw new IOException(format(MSG_UNKNOWN_PARAMETER, EXTENSION_NAME, name));
+            }
+        }
+
+        return params;
+    }
+
+    private static int parseWindowBits(String name, String value) throws IOException {
+        try {
+            int bits = Integer.parseInt(value);
+            if ((bits < MIN_WINDOW_BITS) || (bits > MAX_WINDOW_BITS)) {
+                throw new IOException(format(MSG_INVALID_WINDOW_BITS, name, value));
+            }
+
+            return bits;
+        }
+        catch (NumberFormatException ex) {
+            throw new IOException(format(MSG_INVALID_WINDOW_BITS, name, value));
+        }
+    }
+
+    private static void ensureNoValue(String name, String value) throws IOException {
+        if (value != null) {
+            throw new IOException(format(MSG_UNEXPECTED_VALUE, name, value));
+        }
+    }
+
+    private static String unquote(String value) {
+        if ((value.length() >= 2) && (value.charAt(0) == '"') && (value.charAt(value.length() - 1) == '"')) {
+            return value.substring(1, value.length() - 1);
+        }
+
+        return value;
+    }
+
+    private static void ensureSyncFlushSupported() throws IOException {
+        if (!SYNC_FLUSH_SUPPORTED) {
+            throw new IOException(format(MSG_UNSUPPORTED_JRE, EXTENSION_NAME));
+        }
+    }
+
+    private static boolean isSyncFlushSupported() {
+        try {
+            Deflater.class.getMethod("deflate", byte[].class, int.class, int.class, int.class);
+            return true;
+        }
+        catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
+    private static final class Parameters {
+        private boolean clientMaxWindowBitsPresent;
+        private int clientMaxWindowBits = MAX_WINDOW_BITS;
+        private int serverMaxWindowBits;
+        private boolean clientNoContextTakeover;
+        private boolean serverNoContextTakeover;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.ext.deflate;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Bounded pool of raw(no zlib header) {@link Deflater}s and {@link Inflater}s. Each instance holds on to native zlib state
+ * of up to a few hundred KB, so connections borrow them only while a message is being compressed or decompressed unless
+ * the negotiated parameters require the context to be carried over to the next message.
+ * <p>
+ * Instances are reset before they are returned to the pool. When the pool is full, the returned instance is ended instead.
+ */
+final class ZlibPool {
+    private final int compressionLevel;
+    private final BlockingQueue<Deflater> deflaters;
+    private final BlockingQueue<Inflater> inflaters;
+
+    ZlibPool(int capacity, int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+        this.deflaters = new ArrayBlockingQueue<Deflater>(capacity);
+        this.inflaters = new ArrayBlockingQueue<Inflater>(capacity);
+    }
+
+    Deflater acquireDeflater() {
+        Deflater deflater = deflaters.poll();
+        return (deflater != null) ? deflater : new Deflater(compressionLevel, true);
+    }
+
+    void releaseDeflater(Deflater deflater) {
+        deflater.reset();
+        if (!deflaters.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    Inflater acquireInflater() {
+        Inflater inflater = inflaters.poll();
+        return (inflater != null) ? inflater : new Inflater(true);
+    }
+
+    void releaseInflater(Inflater inflater) {
+        inflater.reset();
+        if (!inflaters.offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+    int idleDeflaters() {
+        return deflaters.size();
+    }
+
+    int idleInflaters() {
+        return inflaters.size();
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.ext.flyweight;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Applies the RFC 6455 client-to-server masking key to frame payloads.
+ *
+ * The mask is passed as a big-endian int, so the most significant byte is applied to the first byte being masked. When
+ * masking starts in the middle of a payload, the caller rotates the mask with
+ * {@code Integer.rotateLeft(mask, 8 * (payloadIndex & 0x03))} so that it lines up with the first byte being masked.
+ *
+ * The implementation returned by {@link #getInstance()} masks 64 bits at a time through {@link ByteBuffer#getLong(int)} and
+ * {@link ByteBuffer#putLong(int, long)}, which current runtimes compile down to single wide loads and stores.
+ */
+public abstract class FrameMasker {
+    private static final FrameMasker INSTANCE = new LongFrameMasker();
+
+    /**
+     * Returns the shared masker.
+     *
+     * @return FrameMasker
+     */
+    public static FrameMasker getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Masks {@code length} bytes of {@code src} starting at {@code srcOffset} into {@code dest} starting at
+     * {@code destOffset}. Neither buffer's position or limit is changed.
+     *
+     * @param src         the unmasked payload
+     * @param srcOffset   index of the first byte to be masked
+     * @param dest        the buffer receiving the masked payload
+     * @param destOffset  index of the first masked byte in dest
+     * @param length      number of bytes to mask
+     * @param mask        masking key lined up with src[srcOffset]
+     */
+    public abstract void mask(ByteBuffer src, int srcOffset, ByteBuffer dest, int destOffset, int length, int mask);
+
+    /**
+     * Masks {@code length} bytes of {@code buf} starting at {@code offset} in place.
+     *
+     * @param buf     the payload
+     * @param offset  index of the first byte to be masked
+     * @param length  number of bytes to mask
+     * @param mask    masking key lined up with buf[offset]
+     */
+    public abstract void mask(byte[] buf, int offset, int length, int mask);
+
+    static long wideMask(int mask) {
+        long unsigned = mask & 0xFFFFFFFFL;
+        return (unsigned << 32) | unsigned;
+    }
+
+    static byte maskByte(int mask, int index) {
+        return (byte) (mask >> (8 * (3 - (index & 0x03))));
+    }
+}
@@ -21,9 +21,11 @@ import java.nio.ByteBuffer;
 
 public class FrameRW extends Frame {
     private static final String MSG_INDEX_OUT_OF_BOUNDS = "offset = %d; (offset + length) = %d; buffer length = %d";
+    private static final String MSG_INVALID_PAYLOAD_LENGTH = "Invalid payload length: %d";
     public static final byte[] EMPTY_MASK = new byte[] {0x00, 0x00, 0x00, 0x00};
 
     private static final byte FIN_MASK = (byte) 0x80;
+    private static final byte FLAGS_MASK = 0x70;
     private static final byte OP_CODE_MASK = 0x0F;
     private static final byte LENGTH_BYTE_1_MASK = 0x7F;
 
@@ -43,7 +45,7 @@ public class FrameRW extends Frame {
         checkBuffer(buffer());
 
         byte leadByte = (byte) uint8Get(buffer(), offset());
-        return (leadByte & 0x70) >> 4;
+        return (leadByte & FLAGS_MASK) >> 4;
     }
 
     @Override
@@ -109,6 +111,23 @@ public class FrameRW extends Frame {
         return this;
     }
 
+    /**
+     * Wraps the specified buffer to build a new frame at the specified offset. The buffer may hold the bytes of an earlier
+     * frame, as a pooled buffer does. So, the lead byte is rewritten with just the FIN bit and the opcode, and the reserved
+     * flags are cleared.
+     *
+     * @param buffer   buffer to build the frame in
+     * @param offset   offset of the frame in the buffer
+     * @param opcode   OpCode
+     * @param fin      true if this is the final frame, otherwise false
+     * @return this flyweight
+     */
+    public FrameRW wrapNew(ByteBuffer buffer, int offset, Opcode opcode, boolean fin) {
+        wrap(buffer, offset);
+        buffer.put(offset, (byte) ((fin ? FIN_MASK : 0x00) | Opcode.toInt(opcode)));
+        return this;
+    }
+
     // Mutators
 
     /**
@@ -120,7 +139,22 @@ public class FrameRW extends Frame {
         checkBuffer(buffer());
 
         byte leadByte = (byte) Flyweight.uint8Get(buffer(), offset());
-        leadByte = (byte) (leadByte | (fin ? 0x80 : 0x00));
+        leadByte = (byte) (fin ? (leadByte | FIN_MASK) : (leadByte & ~FIN_MASK));
+        buffer().put(offset(), leadByte);
+    }
+
+    /**
+     * Sets the reserved flags(RSV1, RSV2 and RSV3) in the higher nibble of the lead byte of the frame. The flags are
+     * specified in the same form as returned by {@link #flags()} -- RSV1 is 0x04, RSV2 is 0x02 and RSV3 is 0x01.
+     *
+     * @param flags   reserved flags
+     */
+    public void flags(int flags) {
+        checkBuffer(buffer());
+
+        byte leadByte = (byte) Flyweight.uint8Get(buffer(), offset());
+        leadByte = (byte) (leadByte & ~FLAGS_MASK); // Clear the current flags before setting the new ones.
+        leadByte |= (flags << 4) & FLAGS_MASK;
         buffer().put(offset(), leadByte);
     }
 
@@ -138,6 +172,21 @@ public class FrameRW extends Frame {
         buffer().put(offset(), leadByte);
     }
 
+    /**
+     * Sets the payload length in the header of the frame without putting the payload. The payload is then written in place
+     * starting at {@link #payloadOffset()}, for instance by encoding text straight into the buffer.
+     *
+     * @param length   number of bytes in the payload
+     */
+    public void payloadLength(int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException(format(MSG_INVALID_PAYLOAD_LENGTH, length));
+        }
+
+        checkBuffer(buffer());
+        payloadLength(length, false);
+    }
+
     /**
      * Puts the specified payload into the buffer without any masking.
      *
@@ -185,12 +234,16 @@ public class FrameRW extends Frame {
         checkBuffer(buffer());
         payloadLength(length, false);
 
-        int dataOffset = payloadOffset();
-
-        // Not using System.arraycopy() as the passed in ByteBuffer could be read-only and using buf.array() to get to the
-        // byte[] will result in an exception.
-        for (int i = 0; i < length; i++) {
-            buffer().put(dataOffset++, buf.get(offset++));
+        if (buf != null) {
+            // Not using System.arraycopy() as the passed in ByteBuffer could be read-only or direct and using buf.array() to
+            // get to the byte[] will result in an exception. Bulk copying between views works for all kinds of buffers.
+            ByteBuffer src = buf.duplicate();
+            src.limit(offset + length);
+            src.position(offset);
+
+            ByteBuffer dest = buffer().duplicate();
+            dest.position(payloadOffset());
+            dest.put(src);
         }
     }
 
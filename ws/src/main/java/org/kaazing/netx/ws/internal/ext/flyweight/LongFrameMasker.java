@@ -0,0 +1,74 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.ext.flyweight;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Masks 64 bits at a time using only public Java APIs. Each step reads a long from the source, XORs it with the mask
+ * repeated twice and writes the long to the destination. Only a tail of less than eight bytes is masked a byte at a time.
+ * An array is masked in place four bytes per step instead, so that it is not wrapped in a buffer on every call.
+ */
+class LongFrameMasker extends FrameMasker {
+
+    @Override
+    public void mask(ByteBuffer src, int srcOffset, ByteBuffer dest, int destOffset, int length, int mask) {
+        // The mask is lined up with the byte order of the source. When the destination uses the other byte order, the masked
+        // value is swapped so that the bytes land in the same order as they were read.
+        boolean bigEndian = src.order() == ByteOrder.BIG_ENDIAN;
+        boolean swap = src.order() != dest.order();
+        long longMask = bigEndian ? wideMask(mask) : Long.reverseBytes(wideMask(mask));
+        int intMask = bigEndian ? mask : Integer.reverseBytes(mask);
+
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            long masked = src.getLong(srcOffset + i) ^ longMask;
+            dest.putLong(destOffset + i, swap ? Long.reverseBytes(masked) : masked);
+        }
+
+        if (i + 4 <= length) {
+            int masked = src.getInt(srcOffset + i) ^ intMask;
+            dest.putInt(destOffset + i, swap ? Integer.reverseBytes(masked) : masked);
+            i += 4;
+        }
+
+        for (; i < length; i++) {
+            dest.put(destOffset + i, (byte) (src.get(srcOffset + i) ^ maskByte(mask, i)));
+        }
+    }
+
+    @Override
+    public void mask(byte[] buf, int offset, int length, int mask) {
+        byte mask0 = (byte) (mask >> 24);
+        byte mask1 = (byte) (mask >> 16);
+        byte mask2 = (byte) (mask >> 8);
+        byte mask3 = (byte) mask;
+
+        int end = offset + length;
+        int i = offset;
+        for (; i + 4 <= end; i += 4) {
+            buf[i] ^= mask0;
+            buf[i + 1] ^= mask1;
+            buf[i + 2] ^= mask2;
+            buf[i + 3] ^= mask3;
+        }
+
+        for (; i < end; i++) {
+            buf[i] ^= maskByte(mask, i - offset);
+        }
+    }
+}
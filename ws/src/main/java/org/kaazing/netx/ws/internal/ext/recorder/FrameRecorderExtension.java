@@ -0,0 +1,144 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.ext.recorder;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kaazing.netx.ws.FrameRecorder;
+import org.kaazing.netx.ws.internal.ext.WebSocketContext;
+import org.kaazing.netx.ws.internal.ext.WebSocketExtensionSpi;
+import org.kaazing.netx.ws.internal.ext.flyweight.Frame;
+import org.kaazing.netx.ws.internal.ext.flyweight.Opcode;
+import org.kaazing.netx.ws.internal.ext.function.WebSocketFrameConsumer;
+
+/**
+ * {@link WebSocketExtensionSpi} that hands the header of every frame to a {@link FrameRecorder} and passes the frame on
+ * unchanged. It is not negotiated with the server. The connection installs it next to the sentinels when a recorder is set,
+ * so that it sees the frames as they are on the wire.
+ */
+public final class FrameRecorderExtension extends WebSocketExtensionSpi {
+    private static final AtomicInteger CONNECTION_IDS = new AtomicInteger();
+
+    private final FrameRecorder recorder;
+    private final int connectionId;
+
+    public FrameRecorderExtension(FrameRecorder recorder) {
+        this.recorder = recorder;
+        this.connectionId = CONNECTION_IDS.incrementAndGet();
+
+        super.onBinaryReceived = new WebSocketFrameConsumer() {
+            @Override
+            public void accept(WebSocketContext context, Frame frame) throws IOException {
+                record(false, frame);
+                context.onBinaryReceived(frame);
+            }
+        };
+
+        super.onBinarySent = new WebSocketFrameConsumer() {
+            @Override
+            public void accept(WebSocketContext context, Frame frame) throws IOException {
+                record(true, frame);
+                context.onBinarySent(frame);
+            }
+        };
+
+        super.onContinuationReceived = new WebSocketFrameConsumer() {
+            @Override
+            public void accept(WebSocketContext context, Frame frame) throws IOException {
+                record(false, frame);
+                context.onContinuationReceived(frame);
+            }
+        };
+
+        super.onContinuationSent = new WebSocketFrameConsumer() {
+            @Override
+            public void accept(WebSocketContext context, Frame frame) throws IOException {
+                record(true, frame);
+                context.onContinuationSent(frame);
+            }
+        };
+
+        super.onCloseReceived = new WebSocketFrameConsumer() {
+            @Override
+            public void accept(WebSocketContext context, Frame frame) throws IOException {
+                record(false, frame);
+                context.onCloseReceived(frame);
+            }
+        };
+
+        super.onCloseSent = new WebSocketFrameConsumer() {
+            @Override
+            public void accept(WebSocketContext context, Frame frame) throws IOException {
+                record(true, frame);
+                context.onCloseSent(frame);
+            }
+        };
+
+        super.onPingReceived = new WebSocketFrameConsumer() {
+            @Override
+            public void accept(WebSocketContext context, Frame frame) throws IOException {
+                record(false, frame);
+                context.onPingReceived(frame);
+            }
+        };
+
+        super.onPingSent = new WebSocketFrameConsumer() {
+            @Override
+            public void accept(WebSocketContext context, Frame frame) throws IOException {
+                record(true, frame);
+                context.onPingSent(frame);
+            }
+        };
+
+        super.onPongReceived = new WebSocketFrameConsumer() {
+            @Override
+            public void accept(WebSocketContext context, Frame frame) throws IOException {
+                record(false, frame);
+                context.onPongReceived(frame);
+            }
+        };
+
+        super.onPongSent = new WebSocketFrameConsumer() {
+            @Override
+            public void accept(WebSocketContext context, Frame frame) throws IOException {
+                record(true, frame);
+                context.onPongSent(frame);
+            }
+        };
+
+        super.onTextReceived = new WebSocketFrameConsumer() {
+            @Override
+            public void accept(WebSocketContext context, Frame frame) throws IOException {
+                record(false, frame);
+                context.onTextReceived(frame);
+            }
+        };
+
+        super.onTextSent = new WebSocketFrameConsumer() {
+            @Override
+            public void accept(WebSocketContext context, Frame frame) throws IOException {
+                record(true, frame);
+                context.onTextSent(frame);
+            }
+        };
+    }
+
+    private void record(boolean outgoing, Frame frame) {
+        int leadByte = (frame.fin() ? 0x80 : 0x00) | (frame.flags() << 4) | Opcode.toInt(frame.opcode());
+        recorder.record(connectionId, outgoing, leadByte, frame.payloadLength());
+    }
+}
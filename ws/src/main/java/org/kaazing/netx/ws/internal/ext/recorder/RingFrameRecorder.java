@@ -0,0 +1,187 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.ext.recorder;
+
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.kaazing.netx.ws.FrameRecorder;
+
+/**
+ * {@link FrameRecorder} that keeps the most recent frames in a direct buffer of fixed size records. A writer claims the next
+ * sequence, fills in the record of its slot and then publishes the sequence as the stamp of the slot. The dump only reports
+ * a record whose stamp holds its sequence both before and after the record is read, so a record that a writer is filling in
+ * or has lapped is skipped rather than reported torn.
+ */
+public final class RingFrameRecorder extends FrameRecorder {
+    private static final String MSG_INVALID_CAPACITY = "Capacity must be between %d and %d: %d";
+    private static final String MSG_HEADER = "%d of %d recorded frames, oldest first%n";
+    private static final String MSG_RECORD = "%12.3f ms %+10.3f ms  ws#%-5d %s %-12s %s rsv=%d%d%d len=%-8d %s%n";
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 24;
+
+    private static final int NANO_TIME_OFFSET = 0;
+    private static final int THREAD_ID_OFFSET = 8;
+    private static final int PAYLOAD_LENGTH_OFFSET = 16;
+    private static final int CONNECTION_ID_OFFSET = 20;
+    private static final int LEAD_BYTE_OFFSET = 24;
+    private static final int DIRECTION_OFFSET = 25;
+    private static final int RECORD_LENGTH = 32;
+
+    private static final long UNPUBLISHED = -1L;
+
+    private final ByteBuffer records;
+    private final AtomicLongArray stamps;
+    private final AtomicLong sequence;
+    private final int mask;
+
+    public RingFrameRecorder(int capacity) {
+        if ((capacity < MIN_CAPACITY) || (capacity > MAX_CAPACITY)) {
+            throw new IllegalArgumentException(format(MSG_INVALID_CAPACITY, MIN_CAPACITY, MAX_CAPACITY, capacity));
+        }
+
+        int slots = Integer.highestOneBit(capacity);
+        if (slots < capacity) {
+            slots <<= 1;
+        }
+
+        this.records = ByteBuffer.allocateDirect(slots * RECORD_LENGTH).order(ByteOrder.nativeOrder());
+        this.stamps = new AtomicLongArray(slots);
+        this.sequence = new AtomicLong();
+        this.mask = slots - 1;
+
+        for (int i = 0; i < slots; i++) {
+            stamps.set(i, UNPUBLISHED);
+        }
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public long getRecordCount() {
+        return sequence.get();
+    }
+
+    @Override
+    public void record(int connectionId, boolean outgoing, int leadByte, int payloadLength) {
+        long nanoTime = System.nanoTime();
+        long seq = sequence.getAndIncrement();
+        int slot = (int) seq & mask;
+        int offset = slot * RECORD_LENGTH;
+
+        // Absolute puts do not move the position of the buffer, so writers of different slots do not interfere.
+        stamps.set(slot, UNPUBLISHED);
+        records.putLong(offset + NANO_TIME_OFFSET, nanoTime);
+        records.putLong(offset + THREAD_ID_OFFSET, Thread.currentThread().getId());
+        records.putInt(offset + PAYLOAD_LENGTH_OFFSET, payloadLength);
+        records.putInt(offset + CONNECTION_ID_OFFSET, connectionId);
+        records.put(offset + LEAD_BYTE_OFFSET, (byte) leadByte);
+        records.put(offset + DIRECTION_OFFSET, (byte) (outgoing ? 1 : 0));
+        stamps.lazySet(slot, seq);
+    }
+
+    @Override
+    public void dump(Appendable out) throws IOException {
+        long end = sequence.get();
+        long start = Math.max(0, end - getCapacity());
+        Map<Long, String> threadNames = threadNames();
+
+        int count = 0;
+        long[] nanoTimes = new long[(int) (end - start)];
+        long[] threadIds = new long[nanoTimes.length];
+        int[] payloadLengths = new int[nanoTimes.length];
+        int[] connectionIds = new int[nanoTimes.length];
+        int[] leadBytes = new int[nanoTimes.length];
+        boolean[] outgoing = new boolean[nanoTimes.length];
+
+        for (long seq = start; seq < end; seq++) {
+            int slot = (int) seq & mask;
+            int offset = slot * RECORD_LENGTH;
+
+            if (stamps.get(slot) != seq) {
+                continue;
+            }
+
+            nanoTimes[count] = records.getLong(offset + NANO_TIME_OFFSET);
+            threadIds[count] = records.getLong(offset + THREAD_ID_OFFSET);
+            payloadLengths[count] = records.getInt(offset + PAYLOAD_LENGTH_OFFSET);
+            connectionIds[count] = records.getInt(offset + CONNECTION_ID_OFFSET);
+            leadBytes[count] = records.get(offset + LEAD_BYTE_OFFSET) & 0xFF;
+            outgoing[count] = records.get(offset + DIRECTION_OFFSET) != 0;
+
+            if (stamps.get(slot) == seq) {
+                count++;
+            }
+        }
+
+        out.append(format(MSG_HEADER, count, end));
+
+        for (int i = 0; i < count; i++) {
+            int leadByte = leadBytes[i];
+            String threadName = threadNames.get(threadIds[i]);
+
+            out.append(format(MSG_RECORD,
+                              (nanoTimes[i] - nanoTimes[0]) / 1e6,
+                              (i == 0) ? 0.0 : (nanoTimes[i] - nanoTimes[i - 1]) / 1e6,
+                              connectionIds[i],
+                              outgoing[i] ? "OUT" : "IN ",
+                              opcodeName(leadByte & 0x0F),
+                              ((leadByte & 0x80) != 0) ? "FIN" : "   ",
+                              (leadByte >> 6) & 0x01,
+                              (leadByte >> 5) & 0x01,
+                              (leadByte >> 4) & 0x01,
+                              payloadLengths[i],
+                              (threadName != null) ? threadName : "thread#" + threadIds[i]));
+        }
+    }
+
+    private static String opcodeName(int opcode) {
+        switch (opcode) {
+        case 0x00:
+            return "CONTINUATION";
+        case 0x01:
+            return "TEXT";
+        case 0x02:
+            return "BINARY";
+        case 0x08:
+            return "CLOSE";
+        case 0x09:
+            return "PING";
+        case 0x0A:
+            return "PONG";
+        default:
+            return format("0x%X", opcode);
+        }
+    }
+
+    // Threads are recorded by id so that recording does not allocate. Those that are still alive are named in the dump.
+    private static Map<Long, String> threadNames() {
+        Map<Long, String> names = new HashMap<Long, String>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            names.put(thread.getId(), thread.getName());
+        }
+        return names;
+    }
+}
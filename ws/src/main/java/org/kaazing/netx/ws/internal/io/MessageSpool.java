@@ -0,0 +1,165 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.io;
+
+import static java.lang.String.format;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.kaazing.netx.ws.MessageSpillPolicy;
+import org.kaazing.netx.ws.MessageType;
+import org.kaazing.netx.ws.ReceivedMessage;
+
+/**
+ * Collects the payload of the frames of a message for {@link WsMessageReader#readMessage()}. The payload is collected in a
+ * heap buffer that grows as needed. Once the message grows longer than the spill threshold, the collected bytes are written
+ * to a temporary file and the rest of the payload is appended to it as it arrives. Without a spill threshold, the message is
+ * collected on the heap only up to the maximum payload length of the connection.
+ */
+final class MessageSpool {
+    private static final String MSG_MESSAGE_TOO_LONG = "Message length %d is greater than the maximum allowed %d";
+    private static final String TEMP_FILE_PREFIX = "netx-ws-";
+    private static final String TEMP_FILE_SUFFIX = ".msg";
+
+    private static final int MAX_HEAP_LENGTH = Integer.MAX_VALUE - 8;
+    private static final int INITIAL_HEAP_LENGTH = 8192;
+
+    private final MessageType type;
+    private final long threshold;
+    private final long maxLength;
+    private final File directory;
+
+    private byte[] heap;
+    private long length;
+    private File file;
+    private FileChannel channel;
+
+    MessageSpool(MessageType type, MessageSpillPolicy policy, int maxPayloadLength) {
+        this.type = type;
+
+        if (policy.isEnabled()) {
+            this.threshold = Math.min(policy.getThreshold(), MAX_HEAP_LENGTH);
+            this.maxLength = Long.MAX_VALUE;
+        }
+        else {
+            this.threshold = Math.min(maxPayloadLength, MAX_HEAP_LENGTH);
+            this.maxLength = this.threshold;
+        }
+
+        this.directory = policy.getDirectory();
+        this.heap = new byte[0];
+    }
+
+    long length() {
+        return length;
+    }
+
+    boolean fits(int count) {
+        return length + count <= maxLength;
+    }
+
+    void append(ByteBuffer buffer, int offset, int count) throws IOException {
+        if (!fits(count)) {
+            throw new IOException(format(MSG_MESSAGE_TOO_LONG, length + count, maxLength));
+        }
+
+        ByteBuffer payload = buffer.duplicate();
+        payload.limit(offset + count);
+        payload.position(offset);
+
+        if ((channel == null) && (length + count > threshold)) {
+            spill();
+        }
+
+        if (channel != null) {
+            while (payload.hasRemaining()) {
+                channel.write(payload);
+            }
+        }
+        else {
+            ensureHeapCapacity((int) length + count);
+            payload.get(heap, (int) length, count);
+        }
+
+        length += count;
+    }
+
+    ReceivedMessage complete() {
+        if (channel != null) {
+            return new WsReceivedMessage(type, length, channel, file);
+        }
+
+        return new WsReceivedMessage(type, length, heap);
+    }
+
+    void discard() {
+        heap = null;
+
+        if (channel != null) {
+            WsReceivedMessage.release(channel, file);
+            channel = null;
+            file = null;
+        }
+    }
+
+    private void spill() throws IOException {
+        File spillFile = File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX, directory);
+        RandomAccessFile raf = null;
+
+        try {
+            raf = new RandomAccessFile(spillFile, "rw");
+            channel = raf.getChannel();
+
+            // Where the platform allows it, the file is unlinked right away so that its space is reclaimed once the channel is
+            // closed, even if the message is never closed. Otherwise, it is deleted when the message is closed.
+            file = spillFile.delete() ? null : spillFile;
+
+            ByteBuffer collected = ByteBuffer.wrap(heap, 0, (int) length);
+            while (collected.hasRemaining()) {
+                channel.write(collected);
+            }
+            heap = null;
+        }
+        catch (IOException ex) {
+            if (raf != null) {
+                raf.close();
+            }
+            spillFile.delete();
+            channel = null;
+            file = null;
+            throw ex;
+        }
+    }
+
+    private void ensureHeapCapacity(int capacity) {
+        if (capacity <= heap.length) {
+            return;
+        }
+
+        long newLength = Math.max(INITIAL_HEAP_LENGTH, (long) heap.length << 1);
+        while (newLength < capacity) {
+            newLength <<= 1;
+        }
+
+        byte[] newHeap = new byte[(int) Math.min(newLength, threshold)];
+        System.arraycopy(heap, 0, newHeap, 0, (int) length);
+        heap = newHeap;
+    }
+}
@@ -32,6 +32,7 @@ import static org.kaazing.netx.ws.WsURLConnection.WS_VIOLATE_POLICY;
 import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.BINARY;
 import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.CLOSE;
 import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.CONTINUATION;
+import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.PING;
 import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.PONG;
 import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.TEXT;
 import static org.kaazing.netx.ws.internal.util.Utf8Util.validBytesUTF8;
@@ -39,29 +40,57 @@ import static org.kaazing.netx.ws.internal.util.Utf8Util.validBytesUTF8;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
 
 import org.kaazing.netx.ws.internal.WsURLConnectionImpl;
 import org.kaazing.netx.ws.internal.ext.WebSocketContext;
 import org.kaazing.netx.ws.internal.ext.WebSocketExtensionSpi;
 import org.kaazing.netx.ws.internal.ext.flyweight.ClosePayloadRO;
 import org.kaazing.netx.ws.internal.ext.flyweight.Frame;
+import org.kaazing.netx.ws.internal.ext.flyweight.FrameMasker;
+import org.kaazing.netx.ws.internal.ext.flyweight.Opcode;
 import org.kaazing.netx.ws.internal.ext.function.WebSocketFrameConsumer;
+import org.kaazing.netx.ws.internal.util.BufferPool;
 
 public class OutgoingSentinelExtension extends WebSocketExtensionSpi {
     private static final String MSG_CLOSE_FRAME_VIOLATION = "Protocol Violation: CLOSE Frame - Code = %d; Reason Length = %d";
     private static final String MSG_INVALID_METADATA_LENGTH = "Invalid metadata length '%d'";
+    private static final String MSG_END_OF_FILE = "End of file reached at position %d, %d bytes short of the frame payload";
 
     // Even though CLOSE payload length must be <= 125, we are using 150 to accommodate negative tests.
     private static final int MAX_CLOSE_PAYLOAD_LENGTH_LIMIT = 150;
 
+    // Leading byte, 9 bytes of payload length and 4 bytes of mask.
+    private static final int MAX_HEADER_LENGTH = 14;
+
+    // Masked payload is written in chunks so large frames are not copied into a buffer as large as the frame. Every
+    // connection holds its own chunk, so it is kept small; a large frame then takes a few more, but still cheap, writes.
+    private static final int MAX_CHUNK_LENGTH = 8192;
+
+    // Frames encoded while corked are written once this many bytes are pending, even if the writer has not uncorked yet.
+    private static final int MAX_BATCH_LENGTH = 65536;
+
     private final ClosePayloadRO closePayloadRO;
     private final ByteBuffer closePayload;
-    private final ByteBuffer frameBuffer;
+    private final FrameMasker masker;
+    private final ByteBuffer header;
+    private final ByteBuffer chunk;
+    private final ByteBuffer[] headerAndChunk;
+    private final BufferPool bufferPool;
+
+    private ByteBuffer batch;
 
     public OutgoingSentinelExtension(final WsURLConnectionImpl connection) {
+        int chunkLength = Math.min(MAX_CHUNK_LENGTH, connection.getMaxFrameLength() + MAX_HEADER_LENGTH);
+
         this.closePayloadRO = new ClosePayloadRO();
         this.closePayload = ByteBuffer.allocate(MAX_CLOSE_PAYLOAD_LENGTH_LIMIT);
-        this.frameBuffer = ByteBuffer.allocate(connection.getMaxFrameLength() + 4);
+        this.masker = FrameMasker.getInstance();
+        this.header = ByteBuffer.allocate(MAX_HEADER_LENGTH);
+        this.chunk = ByteBuffer.allocate(Math.max(chunkLength, MAX_HEADER_LENGTH + 4));
+        this.headerAndChunk = new ByteBuffer[] { header, chunk };
+        this.bufferPool = BufferPool.shared();
 
         super.onBinarySent = new WebSocketFrameConsumer() {
             @Override
@@ -87,11 +116,25 @@ public class OutgoingSentinelExtension extends WebSocketExtensionSpi {
             }
         };
 
+        super.onPingSent = new WebSocketFrameConsumer() {
+            @Override
+            public void accept(WebSocketContext context, Frame frame) throws IOException {
+                assert frame.opcode() == PING;
+                encodeFrame(connection, frame);
+
+                // A PING is not held back by a cork either, as the round-trip time is measured from when it was sent.
+                writeBatch(connection);
+            }
+        };
+
         super.onPongSent = new WebSocketFrameConsumer() {
             @Override
             public void accept(WebSocketContext context, Frame frame) throws IOException {
                 assert frame.opcode() == PONG;
                 encodeFrame(connection, frame);
+
+                // A PONG is not held back by a cork. The frames batched ahead of it are written along with it.
+                writeBatch(connection);
             }
         };
 
@@ -104,8 +147,36 @@ public class OutgoingSentinelExtension extends WebSocketExtensionSpi {
         };
     }
 
+    // Must be invoked while holding the write lock of the connection.
+    public void writeBatch(WsURLConnectionImpl connection) throws IOException {
+        ByteBuffer pending = batch;
+        if (pending == null) {
+            return;
+        }
+
+        batch = null;
+
+        try {
+            pending.flip();
+
+            GatheringByteChannel channel = connection.getTcpChannel();
+            if (channel != null) {
+                while (pending.hasRemaining()) {
+                    channel.write(pending);
+                }
+            }
+            else {
+                OutputStream out = connection.getTcpOutputStream();
+                out.write(pending.array(), pending.arrayOffset(), pending.limit());
+                out.flush();
+            }
+        }
+        finally {
+            bufferPool.releaseBytes(pending.array());
+        }
+    }
+
     private void encodeFrame(WsURLConnectionImpl connection, Frame frame) throws IOException {
-        OutputStream out = connection.getTcpOutputStream();
         int offset = frame.offset();
         ByteBuffer buf = frame.buffer();
         int payloadLength = frame.payloadLength();
@@ -113,34 +184,100 @@ public class OutgoingSentinelExtension extends WebSocketExtensionSpi {
         int mask = 0;
 
         if (payloadLength > 0) {
-            mask = 1 + connection.getRandom().nextInt(Integer.MAX_VALUE);
+            mask = connection.nextMaskKey();
         }
 
         int metadataLength = payloadOffset - offset;
 
+        connection.getMetrics().frameSent(frame.opcode(), payloadLength, frame.fin());
+
+        header.clear();
         switch (metadataLength) {
         case 2:
-            frameBuffer.putShort(buf.getShort(offset));
+            header.putShort(buf.getShort(offset));
             break;
         case 4:
-            frameBuffer.putInt(buf.getInt(offset));
+            header.putInt(buf.getInt(offset));
             break;
         case 10:
-            frameBuffer.putShort(buf.getShort(offset));
-            frameBuffer.putLong(buf.getLong(offset + 2));
+            header.putShort(buf.getShort(offset));
+            header.putLong(buf.getLong(offset + 2));
             break;
         default:
             throw new IllegalStateException(format(MSG_INVALID_METADATA_LENGTH, metadataLength));
         }
 
         // Set the mask bit.
-        byte maskByte = frameBuffer.get(1);
-        frameBuffer.put(1, (byte) (maskByte | 0x80));
+        byte maskByte = header.get(1);
+        header.put(1, (byte) (maskByte | 0x80));
 
-        encodeMaskAndPayload(buf, payloadOffset, payloadLength, mask);
+        encodeMaskAndPayload(connection, buf, payloadOffset, payloadLength, mask);
+    }
 
-        out.write(frameBuffer.array(), 0, frameBuffer.position());
-        frameBuffer.rewind();
+    /**
+     * Writes a BINARY or CONTINUATION frame whose payload is read from the specified region of the file. The region is read
+     * into the chunk a slice at a time and masked in place, so that the payload is neither copied into a frame buffer first
+     * nor needs a buffer as large as the frame. Must be invoked while holding the write lock of the connection.
+     * <p>
+     * The header goes out ahead of the payload. So, if the file turns out to be shorter than the region, then the connection
+     * is aborted as the frame cannot be completed.
+     */
+    public void transferFrame(WsURLConnectionImpl connection, Opcode opcode, boolean fin, FileChannel file, long position,
+                              int length) throws IOException {
+        int mask = 0;
+
+        if (length > 0) {
+            mask = connection.nextMaskKey();
+        }
+
+        connection.getMetrics().frameSent(opcode, length, fin);
+
+        header.clear();
+        header.put((byte) ((fin ? 0x80 : 0x00) | Opcode.toInt(opcode)));
+        encodePayloadLength(length);
+
+        GatheringByteChannel channel = connection.getTcpChannel();
+        boolean corked = connection.isCorked();
+        startChunk(channel, corked, mask);
+
+        int i = 0;
+        long maskingNanos = 0;
+        while (i < length) {
+            if (!chunk.hasRemaining()) {
+                writeChunk(connection, channel, corked);
+            }
+
+            int chunkOffset = chunk.position();
+            int chunkLength = Math.min(length - i, chunk.remaining());
+
+            chunk.limit(chunkOffset + chunkLength);
+            try {
+                while (chunk.hasRemaining()) {
+                    long filePosition = position + i + chunk.position() - chunkOffset;
+                    if (file.read(chunk, filePosition) == -1) {
+                        connection.abort();
+                        throw new IOException(format(MSG_END_OF_FILE, filePosition, position + length - filePosition));
+                    }
+                }
+            }
+            finally {
+                chunk.limit(chunk.capacity());
+            }
+
+            // Line the mask up with the payload index at which this slice starts.
+            int chunkMask = Integer.rotateLeft(mask, 8 * (i & 0x03));
+            long maskingStart = System.nanoTime();
+            masker.mask(chunk.array(), chunk.arrayOffset() + chunkOffset, chunkLength, chunkMask);
+            maskingNanos += System.nanoTime() - maskingStart;
+
+            i += chunkLength;
+        }
+
+        if (maskingNanos != 0) {
+            connection.getMetrics().maskingTime(maskingNanos);
+        }
+
+        writeChunk(connection, channel, corked);
     }
 
     private void encodePayloadLength(int len) throws IOException {
@@ -152,22 +289,22 @@ public class OutgoingSentinelExtension extends WebSocketExtensionSpi {
         case 0x0008:
         case 0x0010:
         case 0x0020:
-            frameBuffer.put((byte) (0x80 | len));
+            header.put((byte) (0x80 | len));
             break;
         case 0x0040:
             switch (len) {
             case 126:
-                frameBuffer.put((byte) (0x80 | 126));
-                frameBuffer.put((byte) 0x00);
-                frameBuffer.put((byte) 126);
+                header.put((byte) (0x80 | 126));
+                header.put((byte) 0x00);
+                header.put((byte) 126);
                 break;
             case 127:
-                frameBuffer.put((byte) (0x80 | 126));
-                frameBuffer.put((byte) 0x00);
-                frameBuffer.put((byte) 127);
+                header.put((byte) (0x80 | 126));
+                header.put((byte) 0x00);
+                header.put((byte) 127);
                 break;
             default:
-                frameBuffer.put((byte) (0x80 | len));
+                header.put((byte) (0x80 | len));
                 break;
             }
             break;
@@ -180,23 +317,23 @@ public class OutgoingSentinelExtension extends WebSocketExtensionSpi {
         case 0x2000:
         case 0x4000:
         case 0x8000:
-            frameBuffer.put((byte) (0x80 | 126));
-            frameBuffer.put((byte) ((len >> 8) & 0xff));
-            frameBuffer.put((byte) ((len >> 0) & 0xff));
+            header.put((byte) (0x80 | 126));
+            header.put((byte) ((len >> 8) & 0xff));
+            header.put((byte) ((len >> 0) & 0xff));
             break;
         default:
             // 65536+
-            frameBuffer.put((byte) (0x80 | 127));
+            header.put((byte) (0x80 | 127));
 
             long length = len;
-            frameBuffer.put((byte) ((length >> 56) & 0xff));
-            frameBuffer.put((byte) ((length >> 48) & 0xff));
-            frameBuffer.put((byte) ((length >> 40) & 0xff));
-            frameBuffer.put((byte) ((length >> 32) & 0xff));
-            frameBuffer.put((byte) ((length >> 24) & 0xff));
-            frameBuffer.put((byte) ((length >> 16) & 0xff));
-            frameBuffer.put((byte) ((length >>  8) & 0xff));
-            frameBuffer.put((byte) ((length >>  0) & 0xff));
+            header.put((byte) ((length >> 56) & 0xff));
+            header.put((byte) ((length >> 48) & 0xff));
+            header.put((byte) ((length >> 40) & 0xff));
+            header.put((byte) ((length >> 32) & 0xff));
+            header.put((byte) ((length >> 24) & 0xff));
+            header.put((byte) ((length >> 16) & 0xff));
+            header.put((byte) ((length >>  8) & 0xff));
+            header.put((byte) ((length >>  0) & 0xff));
             break;
         }
     }
@@ -273,16 +410,19 @@ public class OutgoingSentinelExtension extends WebSocketExtensionSpi {
             }
         }
 
-        frameBuffer.put((byte) 0x88);
+        connection.getMetrics().frameSent(CLOSE, len, true);
+
+        header.clear();
+        header.put((byte) 0x88);
         encodePayloadLength(len);
 
         if (len == 0) {
-            frameBuffer.putInt(0);
+            encodeMaskAndPayload(connection, closePayload, 0, 0, 0);
         }
         else {
             assert len >= 2;
 
-            int mask = 1 + connection.getRandom().nextInt(Integer.MAX_VALUE);
+            int mask = connection.nextMaskKey();
             int reasonOffset = closePayloadRO.reasonOffset();
             int roffset = reasonOffset;
 
@@ -293,12 +433,10 @@ public class OutgoingSentinelExtension extends WebSocketExtensionSpi {
                 }
             }
 
-            encodeMaskAndPayload(closePayload, 0, len, mask);
+            encodeMaskAndPayload(connection, closePayload, 0, len, mask);
         }
 
-        out.write(frameBuffer.array(), 0, frameBuffer.position());
-        frameBuffer.rewind();
-
+        writeBatch(connection);
         out.flush();
         out.close();
 
@@ -307,22 +445,78 @@ public class OutgoingSentinelExtension extends WebSocketExtensionSpi {
         }
     }
 
-    private void encodeMaskAndPayload(ByteBuffer buffer, int offset, int length, int mask) throws IOException {
-        frameBuffer.putInt(mask);
+    private void encodeMaskAndPayload(WsURLConnectionImpl connection, ByteBuffer buffer, int offset, int length, int mask)
+            throws IOException {
+        GatheringByteChannel channel = connection.getTcpChannel();
+        boolean corked = connection.isCorked();
+        startChunk(channel, corked, mask);
+
+        int i = 0;
+        long maskingNanos = 0;
+        while (i < length) {
+            if (!chunk.hasRemaining()) {
+                writeChunk(connection, channel, corked);
+            }
+
+            // Line the mask up with the payload index at which this chunk starts.
+            int chunkLength = Math.min(length - i, chunk.remaining());
+            int chunkMask = Integer.rotateLeft(mask, 8 * (i & 0x03));
+            long maskingStart = System.nanoTime();
+            masker.mask(buffer, offset + i, chunk, chunk.position(), chunkLength, chunkMask);
+            maskingNanos += System.nanoTime() - maskingStart;
+
+            chunk.position(chunk.position() + chunkLength);
+            i += chunkLength;
+        }
+
+        if (maskingNanos != 0) {
+            connection.getMetrics().maskingTime(maskingNanos);
+        }
+
+        writeChunk(connection, channel, corked);
+    }
+
+    private void startChunk(GatheringByteChannel channel, boolean corked, int mask) {
+        header.putInt(mask);
+        header.flip();
 
-        // xor a 32bit word at a time as long as possible then do remaining 0, 1, 2 or 3 bytes.
-        int i;
-        for (i = 0; i + 4 < length; i += 4) {
-            int val = buffer.getInt(offset + i) ^ mask;
-            frameBuffer.putInt(val);
+        chunk.clear();
+        if (channel == null || corked) {
+            // Without a channel, the header leads the first chunk so that small frames still take a single write.
+            chunk.put(header);
         }
+    }
 
-        for (; i < length; i++) {
-            int shiftBytes = 3 - (i & 0x03);
-            byte maskByte = (byte) (mask >> (8 * shiftBytes) & 0xFF);
-            byte b = (byte) (buffer.get(offset + i) ^ maskByte);
+    private void writeChunk(WsURLConnectionImpl connection, GatheringByteChannel channel, boolean corked) throws IOException {
+        chunk.flip();
 
-            frameBuffer.put(b);
+        if (corked) {
+            batchChunk(connection);
+        }
+        else if (channel != null) {
+            // The header is only pending until the first chunk of the frame has been written.
+            while (header.hasRemaining() || chunk.hasRemaining()) {
+                channel.write(headerAndChunk);
+            }
         }
+        else {
+            OutputStream out = connection.getTcpOutputStream();
+            out.write(chunk.array(), chunk.arrayOffset(), chunk.limit());
+        }
+
+        chunk.clear();
+    }
+
+    private void batchChunk(WsURLConnectionImpl connection) throws IOException {
+        if (batch == null) {
+            batch = ByteBuffer.wrap(bufferPool.acquireBytes(MAX_BATCH_LENGTH));
+        }
+        else if (batch.remaining() < chunk.remaining()) {
+            writeBatch(connection);
+            batch = ByteBuffer.wrap(bufferPool.acquireBytes(MAX_BATCH_LENGTH));
+        }
+
+        // A chunk, header included, never exceeds MAX_CHUNK_LENGTH. So it always fits in an empty batch.
+        batch.put(chunk);
     }
 }
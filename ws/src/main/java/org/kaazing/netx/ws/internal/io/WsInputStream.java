@@ -36,6 +36,7 @@ import org.kaazing.netx.ws.internal.ext.flyweight.FrameRO;
 import org.kaazing.netx.ws.internal.ext.flyweight.FrameRW;
 import org.kaazing.netx.ws.internal.ext.flyweight.Opcode;
 import org.kaazing.netx.ws.internal.ext.function.WebSocketFrameConsumer;
+import org.kaazing.netx.ws.internal.util.BufferPool;
 import org.kaazing.netx.ws.internal.util.OptimisticReentrantLock;
 
 public final class WsInputStream extends InputStream {
@@ -51,12 +52,20 @@ public final class WsInputStream extends InputStream {
     private final InputStream in;
     private final FrameRW incomingFrame;
     private final FrameRO incomingFrameRO;
-    private final byte[] applicationBuffer;
-    private final byte[] networkBuffer;
-    private final ByteBuffer heapBuffer;
-    private final ByteBuffer heapBufferRO;
+    private final BufferPool bufferPool;
     private final Lock stateLock;
 
+    private byte[] applicationBuffer;
+    private byte[] networkBuffer;
+    private ByteBuffer heapBuffer;
+    private ByteBuffer heapBufferRO;
+
+    // Frames that fit in the smallest size class are read into these buffers, which are kept for the life of the stream
+    // instead of being borrowed from the pool for every frame. Only larger frames borrow from the pool.
+    private byte[] residentApplicationBuffer;
+    private byte[] residentNetworkBuffer;
+    private ByteBuffer residentHeapBuffer;
+    private ByteBuffer residentHeapBufferRO;
     private int networkBufferReadOffset;
     private int networkBufferWriteOffset;
     private int applicationBufferReadOffset;
@@ -83,13 +92,20 @@ public final class WsInputStream extends InputStream {
                     connection.doFail(WS_PROTOCOL_ERROR, format(MSG_FRAGMENTED_FRAME, leadByte));
                 }
 
-                int currentLength = applicationBuffer.length;
+                long requiredLength = applicationBufferWriteOffset + xformedPayloadLength;
 
-                if (applicationBufferWriteOffset + xformedPayloadLength > currentLength) {
+                if (requiredLength > connection.getMaxFrameLength()) {
                     int maxPayloadLength = connection.getMaxFramePayloadLength();
                     throw new IOException(format(MSG_MAX_MESSAGE_LENGTH, xformedPayloadLength, maxPayloadLength));
                 }
 
+                if ((applicationBuffer == null) || (applicationBuffer.length < requiredLength)) {
+                    // Data frames are processed only after the application buffer has been drained. So, there is nothing
+                    // to carry over to the buffer being borrowed.
+                    assert applicationBufferWriteOffset == 0;
+                    acquireApplicationBuffer((int) requiredLength);
+                }
+
                 // Using System.arraycopy() to copy the contents of transformed.buffer().array() to the applicationBuffer
                 // results in java.nio.ReadOnlyBufferException as we will be getting a RO flyweight in the terminal consumer.
                 for (int i = 0; i < xformedPayloadLength; i++) {
@@ -117,23 +133,18 @@ public final class WsInputStream extends InputStream {
             throw new NullPointerException(MSG_NULL_CONNECTION);
         }
 
-        int maxFrameLength = connection.getMaxFrameLength();
-
         this.connection = connection;
         this.in = connection.getTcpInputStream();
         this.incomingFrame = new FrameRW();
         this.incomingFrameRO = new FrameRO();
-        this.stateLock = new OptimisticReentrantLock();
+        this.stateLock = new OptimisticReentrantLock(connection.getLockWaitStrategy());
+        this.bufferPool = BufferPool.shared();
 
         this.applicationBufferReadOffset = 0;
         this.applicationBufferWriteOffset = 0;
-        this.applicationBuffer = new byte[maxFrameLength];
         this.networkBufferReadOffset = 0;
         this.networkBufferWriteOffset = 0;
         this.fragmented = false;
-        this.networkBuffer = new byte[maxFrameLength];
-        this.heapBuffer = ByteBuffer.wrap(networkBuffer);
-        this.heapBufferRO = heapBuffer.asReadOnlyBuffer();
     }
 
     @Override
@@ -214,7 +225,7 @@ public final class WsInputStream extends InputStream {
 
     private int readInternal() throws IOException {
         if (applicationBufferReadOffset < applicationBufferWriteOffset) {
-            return applicationBuffer[applicationBufferReadOffset++];
+            return readApplicationByte();
         }
 
         if (applicationBufferReadOffset == applicationBufferWriteOffset) {
@@ -233,16 +244,19 @@ public final class WsInputStream extends InputStream {
             if (networkBufferReadOffset == networkBufferWriteOffset) {
                 networkBufferReadOffset = 0;
                 networkBufferWriteOffset = 0;
+                acquireNetworkBuffer(BufferPool.MIN_SIZE_CLASS);
 
                 int remainingLength = networkBuffer.length - networkBufferWriteOffset;
                 int bytesRead = 0;
                 try {
                     bytesRead = in.read(networkBuffer, networkBufferWriteOffset, remainingLength);
                     if (bytesRead == -1) {
+                        releaseNetworkBuffer();
                         return -1;
                     }
                 }
                 catch (SocketException ex) {
+                    releaseNetworkBuffer();
                     return -1;
                 }
 
@@ -262,23 +276,25 @@ public final class WsInputStream extends InputStream {
             // we need to read to be frame-aligned.
             incomingFrame.wrap(heapBuffer, networkBufferReadOffset);
             int payloadLength = incomingFrame.payloadLength();
+            int frameLength = connection.getFrameLength(false, payloadLength);
 
-            if (incomingFrame.offset() + payloadLength > networkBufferWriteOffset) {
-                if (payloadLength > networkBuffer.length) {
+            if (networkBufferReadOffset + frameLength > networkBufferWriteOffset) {
+                if (frameLength > connection.getMaxFrameLength()) {
                     int maxPayloadLength = connection.getMaxFramePayloadLength();
                     throw new IOException(format(MSG_MAX_MESSAGE_LENGTH, payloadLength, maxPayloadLength));
                 }
-                else {
-                    // Enough space. But may need shifting the frame to the beginning to be able to fit the payload.
-                    if (incomingFrame.offset() + payloadLength > networkBuffer.length) {
-                        int len = networkBufferWriteOffset - networkBufferReadOffset;
-                        System.arraycopy(networkBuffer, networkBufferReadOffset, networkBuffer, 0, len);
-                        networkBufferReadOffset = 0;
-                        networkBufferWriteOffset = len;
-                    }
+                else if (frameLength > networkBuffer.length) {
+                    // Borrow a buffer that is large enough for this frame. It is returned once the frame has been consumed.
+                    acquireNetworkBuffer(frameLength);
+                }
+                else if (networkBufferReadOffset + frameLength > networkBuffer.length) {
+                    // Enough space. But need shifting the frame to the beginning to be able to fit the payload.
+                    int len = networkBufferWriteOffset - networkBufferReadOffset;
+                    System.arraycopy(networkBuffer, networkBufferReadOffset, networkBuffer, 0, len);
+                    networkBufferReadOffset = 0;
+                    networkBufferWriteOffset = len;
                 }
 
-                int frameLength = connection.getFrameLength(false, payloadLength);
                 int remainingBytes = networkBufferReadOffset + frameLength - networkBufferWriteOffset;
                 while (remainingBytes > 0) {
                     int bytesRead = in.read(networkBuffer, networkBufferWriteOffset, remainingBytes);
@@ -300,13 +316,100 @@ public final class WsInputStream extends InputStream {
             connection.processIncomingFrame(incomingFrameRO.wrap(heapBufferRO, networkBufferReadOffset));
             networkBufferReadOffset += incomingFrame.length();
 
-            if (!isControlFrame()) {
+            boolean controlFrame = isControlFrame();
+            if (networkBufferReadOffset == networkBufferWriteOffset) {
+                releaseNetworkBuffer();
+            }
+
+            if (!controlFrame) {
                 break;
             }
         }
 
         assert applicationBufferReadOffset < applicationBufferWriteOffset;
-        return applicationBuffer[applicationBufferReadOffset++] & 0xFF;
+        return readApplicationByte();
+    }
+
+    private int readApplicationByte() {
+        int b = applicationBuffer[applicationBufferReadOffset++] & 0xFF;
+
+        if (applicationBufferReadOffset == applicationBufferWriteOffset) {
+            // The payload of the frame has been consumed. A borrowed buffer is returned till the next large data frame.
+            releaseApplicationBuffer();
+            applicationBufferReadOffset = 0;
+            applicationBufferWriteOffset = 0;
+        }
+
+        return b;
+    }
+
+    private void acquireApplicationBuffer(int minLength) {
+        releaseApplicationBuffer();
+
+        if (minLength <= BufferPool.MIN_SIZE_CLASS) {
+            if (residentApplicationBuffer == null) {
+                residentApplicationBuffer = new byte[BufferPool.MIN_SIZE_CLASS];
+            }
+            applicationBuffer = residentApplicationBuffer;
+        }
+        else {
+            applicationBuffer = bufferPool.acquireBytes(minLength);
+        }
+    }
+
+    private void releaseApplicationBuffer() {
+        if (applicationBuffer != residentApplicationBuffer) {
+            bufferPool.releaseBytes(applicationBuffer);
+            applicationBuffer = null;
+        }
+    }
+
+    private void acquireNetworkBuffer(int minLength) {
+        if ((networkBuffer != null) && (networkBuffer.length >= minLength)) {
+            return;
+        }
+
+        if (minLength <= BufferPool.MIN_SIZE_CLASS) {
+            // There is no buffer yet, as any buffer is at least this large.
+            if (residentNetworkBuffer == null) {
+                residentNetworkBuffer = new byte[BufferPool.MIN_SIZE_CLASS];
+                residentHeapBuffer = ByteBuffer.wrap(residentNetworkBuffer);
+                residentHeapBufferRO = residentHeapBuffer.asReadOnlyBuffer();
+            }
+
+            networkBuffer = residentNetworkBuffer;
+            heapBuffer = residentHeapBuffer;
+            heapBufferRO = residentHeapBufferRO;
+            return;
+        }
+
+        byte[] buffer = bufferPool.acquireBytes(minLength);
+
+        if (networkBuffer != null) {
+            // Move the unread bytes to the beginning of the larger buffer.
+            int len = networkBufferWriteOffset - networkBufferReadOffset;
+            System.arraycopy(networkBuffer, networkBufferReadOffset, buffer, 0, len);
+            if (networkBuffer != residentNetworkBuffer) {
+                bufferPool.releaseBytes(networkBuffer);
+            }
+            networkBufferReadOffset = 0;
+            networkBufferWriteOffset = len;
+        }
+
+        networkBuffer = buffer;
+        heapBuffer = ByteBuffer.wrap(buffer);
+        heapBufferRO = heapBuffer.asReadOnlyBuffer();
+    }
+
+    private void releaseNetworkBuffer() {
+        if (networkBuffer != residentNetworkBuffer) {
+            bufferPool.releaseBytes(networkBuffer);
+        }
+        networkBuffer = null;
+        heapBuffer = null;
+        heapBufferRO = null;
+        networkBufferReadOffset = 0;
+        networkBufferWriteOffset = 0;
     }
 
     private boolean isControlFrame() {
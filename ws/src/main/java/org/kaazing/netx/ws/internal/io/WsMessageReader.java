@@ -19,15 +19,20 @@ import static java.lang.Character.charCount;
 import static java.lang.Character.toChars;
 import static java.lang.String.format;
 import static org.kaazing.netx.ws.MessageType.EOS;
+import static org.kaazing.netx.ws.WsURLConnection.WS_INCONSISTENT_DATA_MESSAGE_TYPE;
+import static org.kaazing.netx.ws.WsURLConnection.WS_MESSAGE_TOO_BIG;
 import static org.kaazing.netx.ws.WsURLConnection.WS_PROTOCOL_ERROR;
 import static org.kaazing.netx.ws.internal.ext.flyweight.Flyweight.uint8Get;
 import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.BINARY;
 import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.CLOSE;
 import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.CONTINUATION;
 import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.TEXT;
+import static org.kaazing.netx.ws.internal.util.Utf8Util.UTF8_ACCEPT;
+import static org.kaazing.netx.ws.internal.util.Utf8Util.UTF8_REJECT;
 import static org.kaazing.netx.ws.internal.util.Utf8Util.initialDecodeUTF8;
 import static org.kaazing.netx.ws.internal.util.Utf8Util.remainingBytesUTF8;
 import static org.kaazing.netx.ws.internal.util.Utf8Util.remainingDecodeUTF8;
+import static org.kaazing.netx.ws.internal.util.Utf8Util.validateUTF8;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -38,6 +43,7 @@ import java.util.concurrent.locks.Lock;
 
 import org.kaazing.netx.ws.MessageReader;
 import org.kaazing.netx.ws.MessageType;
+import org.kaazing.netx.ws.ReceivedMessage;
 import org.kaazing.netx.ws.internal.DefaultWebSocketContext;
 import org.kaazing.netx.ws.internal.WsURLConnectionImpl;
 import org.kaazing.netx.ws.internal.ext.WebSocketContext;
@@ -47,6 +53,7 @@ import org.kaazing.netx.ws.internal.ext.flyweight.FrameRO;
 import org.kaazing.netx.ws.internal.ext.flyweight.FrameRW;
 import org.kaazing.netx.ws.internal.ext.flyweight.Opcode;
 import org.kaazing.netx.ws.internal.ext.function.WebSocketFrameConsumer;
+import org.kaazing.netx.ws.internal.util.BufferPool;
 import org.kaazing.netx.ws.internal.util.OptimisticReentrantLock;
 
 public class WsMessageReader extends MessageReader {
@@ -62,6 +69,7 @@ public class WsMessageReader extends MessageReader {
     private static final String MSG_UNEXPECTED_OPCODE = "Protocol Violation: Opcode 0x%02X expected only in the initial frame";
     private static final String MSG_FRAGMENTED_CONTROL_FRAME = "Protocol Violation: Fragmented control frame 0x%02X";
     private static final String MSG_FRAGMENTED_FRAME = "Protocol Violation: Fragmented frame 0x%02X";
+    private static final String MSG_INVALID_UTF8 = "Protocol Violation: Invalid UTF-8 bytes in TEXT message";
     private static final String MSG_NEXT_NOT_INVOKED = "MessageReader.next() method must be called before reading a message";
     private static final String MSG_MAX_MESSAGE_LENGTH = "Message length %d is greater than the maximum allowed %d";
     private static final String MSG_NOT_CURRENT_OWNER = "Thread reading the currrent message must perform this operation";
@@ -79,20 +87,29 @@ public class WsMessageReader extends MessageReader {
     private final InputStream in;
     private final FrameRW incomingFrame;
     private final FrameRO incomingFrameRO;
-    private final ByteBuffer heapBuffer;
-    private final ByteBuffer heapBufferRO;
-    private final byte[] networkBuffer;
+    private final BufferPool bufferPool;
     private final AtomicReference<Thread> currentMessageOwner;
     private final Lock lock;
 
+    private byte[] networkBuffer;
+    private ByteBuffer heapBuffer;
+    private ByteBuffer heapBufferRO;
+
+    // Frames that fit in the smallest size class are read into this buffer, which is kept for the life of the reader instead
+    // of being borrowed from the pool for every frame. Only larger frames borrow from the pool.
+    private byte[] residentNetworkBuffer;
+    private ByteBuffer residentHeapBuffer;
+    private ByteBuffer residentHeapBufferRO;
     private int networkBufferReadOffset;
     private int networkBufferWriteOffset;
     private byte[] applicationByteBuffer;
+    private ByteBuffer applicationNioBuffer;
     private char[] applicationCharBuffer;
     private int applicationBufferWriteOffset;
     private int applicationBufferLength;
     private int codePoint;
     private int remainingBytes;
+    private int utf8State;
     private MessageType type;
     private State state;
     private boolean fragmented;
@@ -100,6 +117,7 @@ public class WsMessageReader extends MessageReader {
     private boolean finalFrame;
     private WsBinaryStream messageBinaryStream;
     private WsTextReader messageTextReader;
+    private MessageSpool messageSpool;
 
     final WebSocketFrameConsumer terminalBinaryFrameConsumer = new WebSocketFrameConsumer() {
         @Override
@@ -121,6 +139,23 @@ public class WsMessageReader extends MessageReader {
                     connection.doFail(WS_PROTOCOL_ERROR, format(MSG_FRAGMENTED_FRAME, leadByte));
                 }
 
+                if (applicationNioBuffer != null) {
+                    if (xformedPayloadLength > applicationNioBuffer.remaining()) {
+                        int available = applicationNioBuffer.remaining();
+                        throw new IOException(format(MSG_BUFFER_SIZE_SMALL, available, xformedPayloadLength));
+                    }
+
+                    // Bulk copy from a view of the payload so that heap and direct buffers are filled without an
+                    // intermediate byte[].
+                    ByteBuffer payload = frame.buffer().duplicate();
+                    payload.limit(xformedPayloadOffset + (int) xformedPayloadLength);
+                    payload.position(xformedPayloadOffset);
+                    applicationNioBuffer.put(payload);
+                    applicationBufferWriteOffset += (int) xformedPayloadLength;
+                    fragmented = !frame.fin();
+                    break;
+                }
+
                 if (applicationBufferWriteOffset + xformedPayloadLength > applicationByteBuffer.length) {
                     // MessageReader requires reading the entire message/frame. So, if there isn't enough space to read the
                     // frame, we should throw an exception.
@@ -162,6 +197,15 @@ public class WsMessageReader extends MessageReader {
                     connection.doFail(WS_PROTOCOL_ERROR, format(MSG_FRAGMENTED_FRAME, leadByte));
                 }
 
+                // Validate as each frame arrives, carrying the state of a character split across frames over to the next one.
+                long validationStart = System.nanoTime();
+                utf8State = validateUTF8(utf8State, frame.buffer(), xformedPayloadOffset, (int) xformedPayloadLength);
+                connection.getMetrics().utf8ValidationTime(System.nanoTime() - validationStart);
+                if ((utf8State == UTF8_REJECT) || (frame.fin() && (utf8State != UTF8_ACCEPT))) {
+                    utf8State = UTF8_ACCEPT;
+                    connection.doFail(WS_INCONSISTENT_DATA_MESSAGE_TYPE, MSG_INVALID_UTF8);
+                }
+
                 int charsConverted = utf8BytesToChars(frame.buffer(),
                                                       xformedPayloadOffset,
                                                       xformedPayloadLength,
@@ -179,6 +223,54 @@ public class WsMessageReader extends MessageReader {
         }
     };
 
+    private final WebSocketFrameConsumer terminalMessageFrameConsumer = new WebSocketFrameConsumer() {
+        @Override
+        public void accept(WebSocketContext context, Frame frame) throws IOException {
+            Opcode opcode = frame.opcode();
+            int xformedPayloadLength = frame.payloadLength();
+            int xformedPayloadOffset = frame.payloadOffset();
+
+            switch (opcode) {
+            case BINARY:
+            case TEXT:
+            case CONTINUATION:
+                if ((opcode != CONTINUATION) && fragmented) {
+                    byte leadByte = (byte) Flyweight.uint8Get(frame.buffer(), frame.offset());
+                    connection.doFail(WS_PROTOCOL_ERROR, format(MSG_FRAGMENTED_FRAME, leadByte));
+                }
+
+                if ((opcode == CONTINUATION) && !fragmented) {
+                    byte leadByte = (byte) Flyweight.uint8Get(frame.buffer(), frame.offset());
+                    connection.doFail(WS_PROTOCOL_ERROR, format(MSG_FRAGMENTED_FRAME, leadByte));
+                }
+
+                if (type == MessageType.TEXT) {
+                    // Text is collected as UTF-8 bytes, so it is only validated.
+                    long validationStart = System.nanoTime();
+                    utf8State = validateUTF8(utf8State, frame.buffer(), xformedPayloadOffset, xformedPayloadLength);
+                    connection.getMetrics().utf8ValidationTime(System.nanoTime() - validationStart);
+                    if ((utf8State == UTF8_REJECT) || (frame.fin() && (utf8State != UTF8_ACCEPT))) {
+                        utf8State = UTF8_ACCEPT;
+                        connection.doFail(WS_INCONSISTENT_DATA_MESSAGE_TYPE, MSG_INVALID_UTF8);
+                    }
+                }
+
+                if (!messageSpool.fits(xformedPayloadLength)) {
+                    long messageLength = messageSpool.length() + xformedPayloadLength;
+                    int maxPayloadLength = connection.getMaxFramePayloadLength();
+                    connection.doFail(WS_MESSAGE_TOO_BIG, format(MSG_MAX_MESSAGE_LENGTH, messageLength, maxPayloadLength));
+                }
+
+                messageSpool.append(frame.buffer(), xformedPayloadOffset, xformedPayloadLength);
+                fragmented = !frame.fin();
+                break;
+            default:
+                connection.doFail(WS_PROTOCOL_ERROR, format(MSG_NON_BINARY_FRAME, Opcode.toInt(opcode)));
+                break;
+            }
+        }
+    };
+
     private final WebSocketFrameConsumer terminalControlFrameConsumer = new WebSocketFrameConsumer() {
         @Override
         public void accept(WebSocketContext context, Frame frame) throws IOException {
@@ -208,13 +300,12 @@ public class WsMessageReader extends MessageReader {
 
         this.connection = connection;
         this.currentMessageOwner = new AtomicReference<Thread>(null);
-
-        int maxFrameLength = connection.getMaxFrameLength();
+        this.bufferPool = BufferPool.shared();
 
         this.in = connection.getTcpInputStream();
         this.incomingFrame = new FrameRW();
         this.incomingFrameRO = new FrameRO();
-        this.lock = new OptimisticReentrantLock();
+        this.lock = new OptimisticReentrantLock(connection.getLockWaitStrategy());
         this.state = State.INITIAL;
 
         this.fragmented = false;
@@ -223,9 +314,6 @@ public class WsMessageReader extends MessageReader {
         this.applicationBufferLength = 0;
         this.networkBufferReadOffset = 0;
         this.networkBufferWriteOffset = 0;
-        this.networkBuffer = new byte[maxFrameLength];
-        this.heapBuffer = ByteBuffer.wrap(networkBuffer);
-        this.heapBufferRO = heapBuffer.asReadOnlyBuffer();
     }
 
     @Override
@@ -345,6 +433,47 @@ public class WsMessageReader extends MessageReader {
         return bytesRead;
     }
 
+    @Override
+    public int readFully(ByteBuffer buffer) throws IOException {
+        if (buffer == null) {
+            throw new NullPointerException("Null buffer passed in");
+        }
+
+        if (currentMessageOwner.get() == null) {
+            throw new IOException(MSG_NEXT_NOT_INVOKED);
+        }
+
+        if (currentMessageOwner.get() != Thread.currentThread()) {
+            throw new IOException(MSG_NOT_CURRENT_OWNER);
+        }
+
+        switch (type) {
+        case EOS:
+            return -1;
+        case TEXT:
+            throw new IOException(MSG_NON_BINARY_FRAME);
+        default:
+            break;
+        }
+
+        if (streaming()) {
+            throw new IOException(MSG_CANNOT_BE_READ_FULLY);
+        }
+
+        if (messageLength > buffer.remaining()) {
+            throw new IOException(format(MSG_BUFFER_OVERFLOW, buffer.remaining(), messageLength));
+        }
+
+        assert finalFrame;
+
+        int bytesRead = readAndProcessBinaryFrame(buffer);
+
+        messageLength = -1;
+        resetCurrentOwner();
+
+        return bytesRead;
+    }
+
     @Override
     public int readFully(char[] buffer) throws IOException {
         if (buffer == null) {
@@ -382,6 +511,48 @@ public class WsMessageReader extends MessageReader {
         return charsRead;
     }
 
+    @Override
+    public ReceivedMessage readMessage() throws IOException {
+        if (currentMessageOwner.get() == null) {
+            throw new IOException(MSG_NEXT_NOT_INVOKED);
+        }
+
+        if (currentMessageOwner.get() != Thread.currentThread()) {
+            throw new IOException(MSG_NOT_CURRENT_OWNER);
+        }
+
+        if (type == EOS) {
+            return null;
+        }
+
+        MessageSpool spool = new MessageSpool(type, connection.getMessageSpillPolicy(), connection.getMaxFramePayloadLength());
+        boolean complete = false;
+
+        try {
+            messageSpool = spool;
+
+            do {
+                if (processDataFrame(terminalMessageFrameConsumer) == -1) {
+                    return null;
+                }
+            } while (!finalFrame);
+
+            complete = true;
+        }
+        finally {
+            messageSpool = null;
+
+            if (!complete) {
+                spool.discard();
+            }
+        }
+
+        messageLength = -1;
+        resetCurrentOwner();
+
+        return spool.complete();
+    }
+
     @Override
     public void skip() throws IOException {
         if (currentMessageOwner.get() == null) {
@@ -398,8 +569,7 @@ public class WsMessageReader extends MessageReader {
             networkBufferReadOffset += incomingFrame.length();
 
             if (networkBufferReadOffset == networkBufferWriteOffset) {
-                networkBufferReadOffset = 0;
-                networkBufferWriteOffset = 0;
+                releaseNetworkBuffer();
             }
         }
         else {
@@ -460,28 +630,34 @@ public class WsMessageReader extends MessageReader {
         }
 
         applicationByteBuffer = buffer;
+        applicationNioBuffer = null;
         applicationBufferWriteOffset = offset;
 
-        if (readDataFrameFully() == -1) {
-            return -1;
+        return processBinaryFrame(offset);
+    }
+
+    private int readAndProcessBinaryFrame(ByteBuffer buffer) throws IOException {
+        if (type != MessageType.BINARY) {
+            throw new IOException(format(MSG_INVALID_MESSAGE_TYPE, type));
         }
 
-        incomingFrame.wrap(heapBuffer, networkBufferReadOffset);
-        finalFrame = incomingFrame.fin();
+        applicationByteBuffer = null;
+        applicationNioBuffer = buffer;
+        applicationBufferWriteOffset = 0;
 
-        validateOpcode();
-        DefaultWebSocketContext context = connection.getIncomingContext();
-        IncomingSentinelExtension sentinel = (IncomingSentinelExtension) context.getSentinelExtension();
-        sentinel.setTerminalConsumer(terminalBinaryFrameConsumer, incomingFrame.opcode());
-        connection.processIncomingFrame(incomingFrameRO.wrap(heapBufferRO, networkBufferReadOffset));
-        networkBufferReadOffset += incomingFrame.length();
+        try {
+            return processBinaryFrame(0);
+        }
+        finally {
+            applicationNioBuffer = null;
+        }
+    }
 
-        if (networkBufferReadOffset == networkBufferWriteOffset) {
-            networkBufferReadOffset = 0;
-            networkBufferWriteOffset = 0;
+    private int processBinaryFrame(int offset) throws IOException {
+        if (processDataFrame(terminalBinaryFrameConsumer) == -1) {
+            return -1;
         }
 
-        state = finalFrame ? State.INITIAL : State.PROCESS_FRAME;
         return applicationBufferWriteOffset - offset;
     }
 
@@ -494,6 +670,15 @@ public class WsMessageReader extends MessageReader {
         applicationBufferWriteOffset = offset;
         applicationBufferLength = length;
 
+        if (processDataFrame(terminalTextFrameConsumer) == -1) {
+            return -1;
+        }
+
+        return applicationBufferWriteOffset - offset;
+    }
+
+    // Reads the next data frame of the current message and passes it through the extensions to the specified consumer.
+    private int processDataFrame(WebSocketFrameConsumer terminalConsumer) throws IOException {
         if (readDataFrameFully() == -1) {
             return -1;
         }
@@ -504,24 +689,26 @@ public class WsMessageReader extends MessageReader {
         validateOpcode();
         DefaultWebSocketContext context = connection.getIncomingContext();
         IncomingSentinelExtension sentinel = (IncomingSentinelExtension) context.getSentinelExtension();
-        sentinel.setTerminalConsumer(terminalTextFrameConsumer, incomingFrame.opcode());
+        sentinel.setTerminalConsumer(terminalConsumer, incomingFrame.opcode());
         connection.processIncomingFrame(incomingFrameRO.wrap(heapBufferRO, networkBufferReadOffset));
         networkBufferReadOffset += incomingFrame.length();
 
         if (networkBufferReadOffset == networkBufferWriteOffset) {
-            networkBufferReadOffset = 0;
-            networkBufferWriteOffset = 0;
+            releaseNetworkBuffer();
         }
 
         state = finalFrame ? State.INITIAL : State.PROCESS_FRAME;
-        return applicationBufferWriteOffset - offset;
+        return 0;
     }
 
     // Returns the leadByte of the next data frame. Otherwise -1.
     private int readDataFrameFully() throws IOException {
         if (networkBufferWriteOffset == 0) {
+            acquireNetworkBuffer(BufferPool.MIN_SIZE_CLASS);
+
             int bytesRead = in.read(networkBuffer, 0, networkBuffer.length);
             if (bytesRead == -1) {
+                releaseNetworkBuffer();
                 resetCurrentOwner();
                 type = EOS;
                 return -1;
@@ -540,23 +727,25 @@ public class WsMessageReader extends MessageReader {
 
         incomingFrame.wrap(heapBuffer, networkBufferReadOffset);
         int payloadLength = incomingFrame.payloadLength();
+        int frameLength = connection.getFrameLength(false, payloadLength);
 
-        if (incomingFrame.offset() + payloadLength > networkBufferWriteOffset) {
-            if (payloadLength > networkBuffer.length) {
+        if (networkBufferReadOffset + frameLength > networkBufferWriteOffset) {
+            if (frameLength > connection.getMaxFrameLength()) {
                 int maxPayloadLength = connection.getMaxFramePayloadLength();
                 throw new IOException(format(MSG_MAX_MESSAGE_LENGTH, payloadLength, maxPayloadLength));
             }
-            else {
-                // Enough space. But may need shifting the frame to the beginning to be able to fit the payload.
-                if (incomingFrame.offset() + payloadLength > networkBuffer.length) {
-                    int len = networkBufferWriteOffset - networkBufferReadOffset;
-                    System.arraycopy(networkBuffer, networkBufferReadOffset, networkBuffer, 0, len);
-                    networkBufferReadOffset = 0;
-                    networkBufferWriteOffset = len;
-                }
+            else if (frameLength > networkBuffer.length) {
+                // Borrow a buffer that is large enough for this frame. It is returned once the frame has been consumed.
+                acquireNetworkBuffer(frameLength);
+            }
+            else if (networkBufferReadOffset + frameLength > networkBuffer.length) {
+                // Enough space. But need shifting the frame to the beginning to be able to fit the payload.
+                int len = networkBufferWriteOffset - networkBufferReadOffset;
+                System.arraycopy(networkBuffer, networkBufferReadOffset, networkBuffer, 0, len);
+                networkBufferReadOffset = 0;
+                networkBufferWriteOffset = len;
             }
 
-            int frameLength = connection.getFrameLength(false, payloadLength);
             int remainingBytes = networkBufferReadOffset + frameLength - networkBufferWriteOffset;
             while (remainingBytes > 0) {
                 int bytesRead = in.read(networkBuffer, networkBufferWriteOffset, remainingBytes);
@@ -575,12 +764,8 @@ public class WsMessageReader extends MessageReader {
         int leadByte = Flyweight.uint8Get(incomingFrame.buffer(), incomingFrame.offset());
         int flags = incomingFrame.flags();
 
-        switch (flags) {
-        case 0:
-            break;
-        default:
+        if ((flags & ~connection.getReservedBits()) != 0) {
             connection.doFail(WS_PROTOCOL_ERROR, format(MSG_RESERVED_BITS_SET, flags));
-            break;
         }
 
         Opcode opcode = null;
@@ -637,8 +822,7 @@ public class WsMessageReader extends MessageReader {
             networkBufferReadOffset += incomingFrame.length();
 
             if (networkBufferReadOffset == networkBufferWriteOffset) {
-                networkBufferReadOffset = 0;
-                networkBufferWriteOffset = 0;
+                releaseNetworkBuffer();
             }
 
             if (opcode == CLOSE) {
@@ -721,6 +905,56 @@ public class WsMessageReader extends MessageReader {
         return destOffset - destMark;
     }
 
+    private void acquireNetworkBuffer(int minLength) {
+        if ((networkBuffer != null) && (networkBuffer.length >= minLength)) {
+            return;
+        }
+
+        if (minLength <= BufferPool.MIN_SIZE_CLASS) {
+            // There is no buffer yet, as any buffer is at least this large.
+            if (residentNetworkBuffer == null) {
+                residentNetworkBuffer = new byte[BufferPool.MIN_SIZE_CLASS];
+                residentHeapBuffer = ByteBuffer.wrap(residentNetworkBuffer);
+                residentHeapBufferRO = residentHeapBuffer.asReadOnlyBuffer();
+            }
+
+            networkBuffer = residentNetworkBuffer;
+            heapBuffer = residentHeapBuffer;
+            heapBufferRO = residentHeapBufferRO;
+            return;
+        }
+
+        byte[] buffer = bufferPool.acquireBytes(minLength);
+
+        if (networkBuffer != null) {
+            // Move the unread bytes to the beginning of the larger buffer.
+            int len = networkBufferWriteOffset - networkBufferReadOffset;
+            System.arraycopy(networkBuffer, networkBufferReadOffset, buffer, 0, len);
+            if (networkBuffer != residentNetworkBuffer) {
+                bufferPool.releaseBytes(networkBuffer);
+            }
+            networkBufferReadOffset = 0;
+            networkBufferWriteOffset = len;
+        }
+
+        networkBuffer = buffer;
+        heapBuffer = ByteBuffer.wrap(buffer);
+        heapBufferRO = heapBuffer.asReadOnlyBuffer();
+    }
+
+    private void releaseNetworkBuffer() {
+        // All the frames that were read have been consumed. So, a borrowed buffer can be lent to another connection till the
+        // next large frame arrives.
+        if (networkBuffer != residentNetworkBuffer) {
+            bufferPool.releaseBytes(networkBuffer);
+        }
+        networkBuffer = null;
+        heapBuffer = null;
+        heapBufferRO = null;
+        networkBufferReadOffset = 0;
+        networkBufferWriteOffset = 0;
+    }
+
     private int ensureFrameMetadata() throws IOException {
         int offsetDiff = networkBufferWriteOffset - networkBufferReadOffset;
         if (offsetDiff > 10) {
@@ -805,16 +1039,19 @@ public class WsMessageReader extends MessageReader {
     }
 
     private static class WsBinaryStream extends InputStream {
-        private final byte[] binaryBuffer;
+        private final BufferPool bufferPool;
+        private final int binaryBufferLength;
         private final WsMessageReader messageReader;
 
+        private byte[] binaryBuffer;
         private boolean fin;
         private int binaryBufferReadOffset;
         private int binaryBufferWriteOffset;
 
         public WsBinaryStream(WsURLConnectionImpl connection,
                               WsMessageReader messageReader) {
-            this.binaryBuffer = new byte[connection.getMaxFramePayloadLength()];
+            this.bufferPool = messageReader.bufferPool;
+            this.binaryBufferLength = connection.getMaxFramePayloadLength();
             this.messageReader = messageReader;
         }
 
@@ -927,7 +1164,8 @@ public class WsMessageReader extends MessageReader {
         void resetState() throws IOException {
             fin = false;
             binaryBufferReadOffset = 0;
-            binaryBufferReadOffset = 0;
+            binaryBufferWriteOffset = 0;
+            releaseBuffer();
         }
 
         private void populateBuffer() throws IOException {
@@ -937,15 +1175,21 @@ public class WsMessageReader extends MessageReader {
 
                 if (fin) {
                     // The final frame of this message has been read. Make sure that read() returns -1.
+                    releaseBuffer();
                     messageReader.resetCurrentOwner();
                     throw new RuntimeException(MSG_END_OF_MESSAGE_STREAM);
                 }
 
-                binaryBufferWriteOffset = messageReader.readAndProcessBinaryFrame(binaryBuffer, 0, binaryBuffer.length);
+                if (binaryBuffer == null) {
+                    binaryBuffer = bufferPool.acquireBytes(binaryBufferLength);
+                }
+
+                binaryBufferWriteOffset = messageReader.readAndProcessBinaryFrame(binaryBuffer, 0, binaryBufferLength);
                 fin = messageReader.isFinalFrame();
 
                 if (binaryBufferWriteOffset == -1) {
                     binaryBufferWriteOffset = 0;
+                    releaseBuffer();
                     throw new RuntimeException(MSG_END_OF_MESSAGE_STREAM);
                 }
                 else if (binaryBufferWriteOffset > 0) {
@@ -954,6 +1198,11 @@ public class WsMessageReader extends MessageReader {
             }
         }
 
+        private void releaseBuffer() {
+            bufferPool.releaseBytes(binaryBuffer);
+            binaryBuffer = null;
+        }
+
         private int readInternal() throws IOException {
             populateBuffer();
 
@@ -965,7 +1214,8 @@ public class WsMessageReader extends MessageReader {
                 binaryBufferWriteOffset = 0;
 
                 if (fin) {
-                    // The final frame of this message has been read.
+                    // The final frame of this message has been read. The buffer is kept for the frames that follow till then.
+                    releaseBuffer();
                     messageReader.resetCurrentOwner();
                 }
             }
@@ -975,15 +1225,18 @@ public class WsMessageReader extends MessageReader {
     }
 
     private static class WsTextReader extends Reader {
-        private final char[] textBuffer;
+        private final BufferPool bufferPool;
+        private final int textBufferLength;
         private final WsMessageReader messageReader;
 
+        private char[] textBuffer;
         private boolean fin;
         private int textBufferReadOffset;
         private int textBufferWriteOffset;
 
         public WsTextReader(WsURLConnectionImpl connection, WsMessageReader messageReader) {
-            this.textBuffer = new char[connection.getMaxFramePayloadLength()];
+            this.bufferPool = messageReader.bufferPool;
+            this.textBufferLength = connection.getMaxFramePayloadLength();
             this.messageReader = messageReader;
         }
 
@@ -1016,13 +1269,19 @@ public class WsMessageReader extends MessageReader {
 
                 if (fin) {
                     // The final frame of this message has been read.
+                    releaseBuffer();
                     messageReader.resetCurrentOwner();
                     return -1;
                 }
 
-                textBufferWriteOffset = messageReader.readAndProcessTextFrame(textBuffer, 0, textBuffer.length);
+                if (textBuffer == null) {
+                    textBuffer = bufferPool.acquireChars(textBufferLength);
+                }
+
+                textBufferWriteOffset = messageReader.readAndProcessTextFrame(textBuffer, 0, textBufferLength);
                 if (textBufferWriteOffset == -1) {
                     textBufferWriteOffset = 0;
+                    releaseBuffer();
                     messageReader.resetCurrentOwner();
                     return -1;
                 }
@@ -1040,7 +1299,8 @@ public class WsMessageReader extends MessageReader {
                 textBufferWriteOffset = 0;
 
                 if (fin) {
-                    // The final frame of this message has been read.
+                    // The final frame of this message has been read. The buffer is kept for the frames that follow till then.
+                    releaseBuffer();
                     messageReader.resetCurrentOwner();
                 }
             }
@@ -1071,7 +1331,13 @@ public class WsMessageReader extends MessageReader {
         void resetState() throws IOException {
             fin = false;
             textBufferReadOffset = 0;
-            textBufferReadOffset = 0;
+            textBufferWriteOffset = 0;
+            releaseBuffer();
+        }
+
+        private void releaseBuffer() {
+            bufferPool.releaseChars(textBuffer);
+            textBuffer = null;
         }
     }
 }
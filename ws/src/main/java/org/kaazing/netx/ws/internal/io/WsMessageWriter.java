@@ -16,21 +16,32 @@
 package org.kaazing.netx.ws.internal.io;
 
 import static java.lang.String.format;
+import static org.kaazing.netx.ws.internal.WebSocketState.CLOSED;
 import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.BINARY;
 import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.CONTINUATION;
 import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.TEXT;
+import static org.kaazing.netx.ws.internal.util.Utf8Util.UTF8_ACCEPT;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.concurrent.locks.Lock;
 
 import org.kaazing.netx.ws.MessageWriter;
 import org.kaazing.netx.ws.internal.WsURLConnectionImpl;
 import org.kaazing.netx.ws.internal.ext.flyweight.Opcode;
+import org.kaazing.netx.ws.internal.util.BufferPool;
 import org.kaazing.netx.ws.internal.util.OptimisticReentrantLock;
+import org.kaazing.netx.ws.internal.util.Utf8Util;
 
 public class WsMessageWriter extends MessageWriter {
+    private static final String MSG_INDEX_OUT_OF_BOUNDS = "offset = %d; (offset + length) = %d; buffer length = %d";
+    private static final String MSG_INVALID_UTF8 = "Invalid UTF-8 bytes in TEXT message";
+    private static final String MSG_INVALID_REGION = "position = %d; count = %d";
+    private static final String MSG_REGION_PAST_END_OF_FILE = "(position + count) = %d is past the end of the file of size %d";
+
     private final WsURLConnectionImpl connection;
     private final Lock lock;
 
@@ -39,7 +50,7 @@ public class WsMessageWriter extends MessageWriter {
 
     public WsMessageWriter(WsURLConnectionImpl connection) {
         this.connection = connection;
-        this.lock = new OptimisticReentrantLock();
+        this.lock = new OptimisticReentrantLock(connection.getLockWaitStrategy());
     }
 
     @Override
@@ -88,6 +99,12 @@ public class WsMessageWriter extends MessageWriter {
 
     @Override
     public void writeFully(byte[] buffer) throws IOException {
+        WsOutboundQueue outboundQueue = connection.getOutboundQueue();
+        if (outboundQueue != null) {
+            outboundQueue.putBinary(buffer, 0, buffer.length);
+            return;
+        }
+
         try {
             lock.lock();
 
@@ -98,8 +115,32 @@ public class WsMessageWriter extends MessageWriter {
         }
     }
 
+    @Override
+    public void writeFully(ByteBuffer buffer) throws IOException {
+        WsOutboundQueue outboundQueue = connection.getOutboundQueue();
+        if (outboundQueue != null) {
+            outboundQueue.putBinary(buffer);
+            return;
+        }
+
+        try {
+            lock.lock();
+
+            connection.getOutputStream().writeBinary(BINARY, buffer, true);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     public void writeFully(char[] buffer) throws IOException {
+        WsOutboundQueue outboundQueue = connection.getOutboundQueue();
+        if (outboundQueue != null) {
+            outboundQueue.putText(buffer, 0, buffer.length);
+            return;
+        }
+
         try {
             lock.lock();
 
@@ -110,6 +151,151 @@ public class WsMessageWriter extends MessageWriter {
         }
     }
 
+    @Override
+    public void writeFully(CharSequence text) throws IOException {
+        WsOutboundQueue outboundQueue = connection.getOutboundQueue();
+        if (outboundQueue != null) {
+            outboundQueue.putText(text, 0, text.length());
+            return;
+        }
+
+        try {
+            lock.lock();
+
+            connection.getWriter().writeText(TEXT, text, 0, text.length(), true);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void writeText(byte[] utf8, int offset, int length) throws IOException {
+        if (utf8 == null) {
+            throw new NullPointerException("Null buffer passed in");
+        }
+        else if ((offset < 0) || (length < 0) || (offset + length > utf8.length)) {
+            throw new IndexOutOfBoundsException(format(MSG_INDEX_OUT_OF_BOUNDS, offset, offset + length, utf8.length));
+        }
+
+        // Validating is far cheaper than encoding, and spares the peer from failing the connection over invalid UTF-8.
+        if (Utf8Util.validateUTF8(UTF8_ACCEPT, ByteBuffer.wrap(utf8), offset, length) != UTF8_ACCEPT) {
+            throw new IOException(MSG_INVALID_UTF8);
+        }
+
+        WsOutboundQueue outboundQueue = connection.getOutboundQueue();
+        if (outboundQueue != null) {
+            outboundQueue.putText(utf8, offset, length);
+            return;
+        }
+
+        try {
+            lock.lock();
+
+            connection.getWriter().writeText(TEXT, utf8, offset, length, true);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void transferFrom(FileChannel channel, long position, long count) throws IOException {
+        if (channel == null) {
+            throw new NullPointerException("Null channel passed in");
+        }
+        else if ((position < 0) || (count < 0)) {
+            throw new IllegalArgumentException(format(MSG_INVALID_REGION, position, count));
+        }
+
+        long size = channel.size();
+        if (position + count > size) {
+            throw new IOException(format(MSG_REGION_PAST_END_OF_FILE, position + count, size));
+        }
+
+        try {
+            lock.lock();
+
+            WsOutputStream outputStream = connection.getOutputStream();
+            int maxPayloadLength = connection.getMaxFramePayloadLength();
+            Opcode opcode = BINARY;
+            long remaining = count;
+
+            // An empty region is still sent as an empty binary message.
+            do {
+                int length = (int) Math.min(remaining, maxPayloadLength);
+                remaining -= length;
+
+                outputStream.writeBinary(opcode, channel, position, length, remaining == 0);
+
+                position += length;
+                opcode = CONTINUATION;
+            } while (remaining > 0);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(byte[] buffer) throws IOException {
+        WsOutboundQueue outboundQueue = connection.getOutboundQueue();
+        if (outboundQueue != null) {
+            return outboundQueue.offerBinary(buffer, 0, buffer.length);
+        }
+
+        if (!isTransportWritable()) {
+            return false;
+        }
+
+        writeFully(buffer);
+        return true;
+    }
+
+    @Override
+    public boolean offer(ByteBuffer buffer) throws IOException {
+        WsOutboundQueue outboundQueue = connection.getOutboundQueue();
+        if (outboundQueue != null) {
+            return outboundQueue.offerBinary(buffer);
+        }
+
+        if (!isTransportWritable()) {
+            return false;
+        }
+
+        writeFully(buffer);
+        return true;
+    }
+
+    @Override
+    public boolean offer(char[] buffer) throws IOException {
+        WsOutboundQueue outboundQueue = connection.getOutboundQueue();
+        if (outboundQueue != null) {
+            return outboundQueue.offerText(buffer, 0, buffer.length);
+        }
+
+        if (!isTransportWritable()) {
+            return false;
+        }
+
+        writeFully(buffer);
+        return true;
+    }
+
+    @Override
+    public void cork() throws IOException {
+        if (connection.getOutputState() == CLOSED) {
+            throw new IOException("Connection closed");
+        }
+
+        connection.cork();
+    }
+
+    @Override
+    public void uncork() throws IOException {
+        connection.uncork();
+    }
+
     public void close() throws IOException {
         if (messageBinaryStream != null) {
             messageBinaryStream.close();
@@ -120,20 +306,38 @@ public class WsMessageWriter extends MessageWriter {
         }
     }
 
+    // Once the owner of the transport refuses new messages, offer() reports it rather than failing like writeFully() does.
+    private boolean isTransportWritable() throws IOException {
+        if (connection.isTransportWritable()) {
+            return true;
+        }
+
+        if (connection.getOutputState() == CLOSED) {
+            throw new IOException("Connection closed");
+        }
+
+        return false;
+    }
+
     private static class WsBinaryOutputStream extends OutputStream {
         private static final String MSG_INDEX_OUT_OF_BOUNDS = "offset = %d; (offset + length) = %d; buffer length = %d";
 
+        private static final byte[] EMPTY_BINARY_BUFFER = new byte[0];
+
         private final WsURLConnectionImpl connection;
-        private final byte[] binaryBuffer;
+        private final BufferPool bufferPool;
+        private final int binaryBufferLength;
         private final Lock lock;
 
+        private byte[] binaryBuffer;
         private int binaryBufferOffset;
         private boolean initialFrame;
 
         public WsBinaryOutputStream(WsURLConnectionImpl connection) {
             this.connection = connection;
-            this.binaryBuffer = new byte[connection.getMaxFramePayloadLength()];
-            this.lock = new OptimisticReentrantLock();
+            this.bufferPool = BufferPool.shared();
+            this.binaryBufferLength = connection.getMaxFramePayloadLength();
+            this.lock = new OptimisticReentrantLock(connection.getLockWaitStrategy());
             this.initialFrame = true;
             this.binaryBufferOffset = 0;
         }
@@ -143,14 +347,18 @@ public class WsMessageWriter extends MessageWriter {
             try {
                 lock.lock();
 
-                if (binaryBufferOffset == binaryBuffer.length) {
+                if (binaryBuffer == null) {
+                    binaryBuffer = bufferPool.acquireBytes(binaryBufferLength);
+                }
+
+                if (binaryBufferOffset == binaryBufferLength) {
                     Opcode opcode = initialFrame ? BINARY : CONTINUATION;
-                    connection.getOutputStream().writeBinary(opcode, binaryBuffer, 0, binaryBuffer.length, false);
+                    connection.getOutputStream().writeBinary(opcode, binaryBuffer, 0, binaryBufferLength, false);
                     initialFrame = false;
                     binaryBufferOffset = 0;
                 }
 
-                assert binaryBufferOffset < binaryBuffer.length;
+                assert binaryBufferOffset < binaryBufferLength;
                 binaryBuffer[binaryBufferOffset++] = (byte) b;
 
             }
@@ -173,15 +381,19 @@ public class WsMessageWriter extends MessageWriter {
 
                 WsOutputStream outputStream = connection.getOutputStream();
 
+                if ((binaryBuffer == null) && (length > 0)) {
+                    binaryBuffer = bufferPool.acquireBytes(binaryBufferLength);
+                }
+
                 while (length > 0) {
-                    if (binaryBufferOffset == binaryBuffer.length) {
+                    if (binaryBufferOffset == binaryBufferLength) {
                         Opcode opcode = initialFrame ? BINARY : CONTINUATION;
-                        outputStream.writeBinary(opcode, binaryBuffer, 0, binaryBuffer.length, false);
+                        outputStream.writeBinary(opcode, binaryBuffer, 0, binaryBufferLength, false);
                         initialFrame = false;
                         binaryBufferOffset = 0;
                     }
 
-                    int len = Math.min(length, binaryBuffer.length - binaryBufferOffset);
+                    int len = Math.min(length, binaryBufferLength - binaryBufferOffset);
                     System.arraycopy(buf, offset, binaryBuffer, binaryBufferOffset, len);
                     binaryBufferOffset += len;
 
@@ -200,9 +412,10 @@ public class WsMessageWriter extends MessageWriter {
                 lock.lock();
 
                 Opcode opcode = initialFrame ? BINARY : CONTINUATION;
-                connection.getOutputStream().writeBinary(opcode, binaryBuffer, 0, binaryBufferOffset, false);
+                connection.getOutputStream().writeBinary(opcode, pendingBuffer(), 0, binaryBufferOffset, false);
                 binaryBufferOffset = 0;
                 initialFrame = false;
+                releaseBuffer();
             }
             finally {
                 lock.unlock();
@@ -216,35 +429,56 @@ public class WsMessageWriter extends MessageWriter {
 
                 if (initialFrame) {
                     // Only one frame in the message.
-                    connection.getOutputStream().write(binaryBuffer, 0, binaryBufferOffset);
+                    connection.getOutputStream().write(pendingBuffer(), 0, binaryBufferOffset);
                 }
                 else {
                     // Send the final frame.
-                    connection.getOutputStream().writeBinary(CONTINUATION, binaryBuffer, 0, binaryBufferOffset, true);
+                    connection.getOutputStream().writeBinary(CONTINUATION, pendingBuffer(), 0, binaryBufferOffset, true);
                 }
                 initialFrame = true;
                 binaryBufferOffset = 0;
+                releaseBuffer();
             }
             finally {
                 lock.unlock();
             }
         }
+
+        private byte[] pendingBuffer() {
+            return (binaryBuffer != null) ? binaryBuffer : EMPTY_BINARY_BUFFER;
+        }
+
+        private void releaseBuffer() {
+            // The buffer is borrowed again by the next write. So a connection that is not streaming a message holds none.
+            bufferPool.releaseBytes(binaryBuffer);
+            binaryBuffer = null;
+        }
     }
 
     private static class WsTextWriter extends Writer {
         private static final String MSG_INDEX_OUT_OF_BOUNDS = "offset = %d; (offset + length) = %d; buffer length = %d";
+        private static final String MSG_INVALID_CODEPOINT = "Invalid UTF-16 codepoint %d";
+        private static final String MSG_CHAR_TOO_LONG = "Character of %d bytes exceeds the maximum payload length %d";
+
+        private static final byte[] EMPTY_TEXT_BUFFER = new byte[0];
 
         private final WsURLConnectionImpl connection;
-        private final char[] textBuffer;
+        private final BufferPool bufferPool;
+        private final int textBufferLength;
         private final Lock lock;
 
+        // The chars are encoded into UTF-8 as they are written. So the buffer holds the payload of the next frame, and a
+        // character is never split across frames.
+        private byte[] textBuffer;
         private int textBufferOffset;
+        private char highSurrogate;
         private boolean initialFrame;
 
         public WsTextWriter(WsURLConnectionImpl connection) {
             this.connection = connection;
-            this.textBuffer = new char[connection.getMaxFramePayloadLength()];
-            this.lock = new OptimisticReentrantLock();
+            this.bufferPool = BufferPool.shared();
+            this.textBufferLength = connection.getMaxFramePayloadLength();
+            this.lock = new OptimisticReentrantLock(connection.getLockWaitStrategy());
             this.initialFrame = true;
             this.textBufferOffset = 0;
         }
@@ -261,27 +495,58 @@ public class WsMessageWriter extends MessageWriter {
             try {
                 lock.lock();
 
-                WsWriter writer = connection.getWriter();
-
-                while (length > 0) {
-                    if (textBufferOffset == textBuffer.length) {
-                        Opcode opcode = initialFrame ? TEXT : CONTINUATION;
-                        writer.writeText(opcode, textBuffer, 0, textBuffer.length, false);
-                        initialFrame = false;
-                        textBufferOffset = 0;
+                int limit = offset + length;
+                while (offset < limit) {
+                    char ch = cbuf[offset++];
+                    if ((ch < 0x80) && (textBufferOffset < textBufferLength) && (highSurrogate == 0)) {
+                        textBuffer()[textBufferOffset++] = (byte) ch;
                     }
+                    else {
+                        encode(ch);
+                    }
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
 
-                    int len = Math.min(length, textBuffer.length - textBufferOffset);
-                    System.arraycopy(cbuf, offset, textBuffer, textBufferOffset, len);
-                    textBufferOffset += len;
+        @Override
+        public void write(String str, int offset, int length) throws IOException {
+            append(str, offset, offset + length);
+        }
 
-                    offset += len;
-                    length -= len;
+        @Override
+        public Writer append(CharSequence csq) throws IOException {
+            CharSequence text = (csq != null) ? csq : "null";
+            return append(text, 0, text.length());
+        }
+
+        @Override
+        public Writer append(CharSequence csq, int start, int end) throws IOException {
+            CharSequence text = (csq != null) ? csq : "null";
+            if ((start < 0) || (start > end) || (end > text.length())) {
+                throw new IndexOutOfBoundsException(format(MSG_INDEX_OUT_OF_BOUNDS, start, end, text.length()));
+            }
+
+            try {
+                lock.lock();
+
+                while (start < end) {
+                    char ch = text.charAt(start++);
+                    if ((ch < 0x80) && (textBufferOffset < textBufferLength) && (highSurrogate == 0)) {
+                        textBuffer()[textBufferOffset++] = (byte) ch;
+                    }
+                    else {
+                        encode(ch);
+                    }
                 }
             }
             finally {
                 lock.unlock();
             }
+
+            return this;
         }
 
         @Override
@@ -289,10 +554,12 @@ public class WsMessageWriter extends MessageWriter {
             try {
                 lock.lock();
 
+                // A pending high surrogate is carried over to the next frame, along with the low surrogate that follows it.
                 Opcode opcode = initialFrame ? TEXT : CONTINUATION;
-                connection.getWriter().writeText(opcode, textBuffer, 0, textBufferOffset, false);
+                connection.getWriter().writeText(opcode, pendingBuffer(), 0, textBufferOffset, false);
                 textBufferOffset = 0;
                 initialFrame = false;
+                releaseBuffer();
             }
             finally {
                 lock.unlock();
@@ -304,21 +571,79 @@ public class WsMessageWriter extends MessageWriter {
             try {
                 lock.lock();
 
-                if (initialFrame) {
-                    // Only one frame in the message.
-                    connection.getWriter().write(textBuffer, 0, textBufferOffset);
-                }
-                else {
-                    // Send the final frame.
-                    connection.getWriter().writeText(CONTINUATION, textBuffer, 0, textBufferOffset, true);
+                if (highSurrogate != 0) {
+                    char ch = highSurrogate;
+                    highSurrogate = 0;
+                    throw new IOException(format(MSG_INVALID_CODEPOINT, (int) ch));
                 }
 
+                // Send the only frame of the message, or else the final one.
+                Opcode opcode = initialFrame ? TEXT : CONTINUATION;
+                connection.getWriter().writeText(opcode, pendingBuffer(), 0, textBufferOffset, true);
+
                 initialFrame = true;
                 textBufferOffset = 0;
+                releaseBuffer();
             }
             finally {
                 lock.unlock();
             }
         }
+
+        private void encode(char ch) throws IOException {
+            if (highSurrogate != 0) {
+                char high = highSurrogate;
+                highSurrogate = 0;
+
+                if (!Character.isLowSurrogate(ch)) {
+                    throw new IOException(format(MSG_INVALID_CODEPOINT, (int) high));
+                }
+
+                ensureRoom(4);
+                textBufferOffset += Utf8Util.codePointToUTF8Bytes(Character.toCodePoint(high, ch), textBuffer, textBufferOffset);
+            }
+            else if (Character.isHighSurrogate(ch)) {
+                // The low surrogate may only be passed in the next write.
+                highSurrogate = ch;
+            }
+            else if (Character.isLowSurrogate(ch)) {
+                throw new IOException(format(MSG_INVALID_CODEPOINT, (int) ch));
+            }
+            else {
+                ensureRoom((ch < 0x80) ? 1 : (ch < 0x800) ? 2 : 3);
+                textBufferOffset += Utf8Util.codePointToUTF8Bytes(ch, textBuffer, textBufferOffset);
+            }
+        }
+
+        private void ensureRoom(int length) throws IOException {
+            textBuffer();
+
+            if (textBufferOffset + length > textBufferLength) {
+                if (length > textBufferLength) {
+                    throw new IOException(format(MSG_CHAR_TOO_LONG, length, textBufferLength));
+                }
+
+                Opcode opcode = initialFrame ? TEXT : CONTINUATION;
+                connection.getWriter().writeText(opcode, textBuffer, 0, textBufferOffset, false);
+                initialFrame = false;
+                textBufferOffset = 0;
+            }
+        }
+
+        private byte[] textBuffer() {
+            if (textBuffer == null) {
+                textBuffer = bufferPool.acquireBytes(textBufferLength);
+            }
+            return textBuffer;
+        }
+
+        private byte[] pendingBuffer() {
+            return (textBuffer != null) ? textBuffer : EMPTY_TEXT_BUFFER;
+        }
+
+        private void releaseBuffer() {
+            bufferPool.releaseBytes(textBuffer);
+            textBuffer = null;
+        }
     }
 }
@@ -0,0 +1,433 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.io;
+
+import static java.lang.String.format;
+import static org.kaazing.netx.ws.internal.WebSocketState.CLOSED;
+import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.BINARY;
+import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.TEXT;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+
+import org.kaazing.netx.ws.OutboundQueuePolicy;
+import org.kaazing.netx.ws.internal.WsURLConnectionImpl;
+import org.kaazing.netx.ws.internal.ext.flyweight.FrameRO;
+import org.kaazing.netx.ws.internal.ext.flyweight.FrameRW;
+import org.kaazing.netx.ws.internal.ext.flyweight.Opcode;
+import org.kaazing.netx.ws.internal.util.BufferPool;
+import org.kaazing.netx.ws.internal.util.MpscArrayQueue;
+import org.kaazing.netx.ws.internal.util.Utf8Util;
+
+/**
+ * Outbound queue of a connection with an {@link OutboundQueuePolicy} that queues messages. The sending threads frame their
+ * messages into pooled buffers and publish them to a {@link MpscArrayQueue} without taking a lock. The frames are masked and
+ * passed through the negotiated extensions by a single drainer, as both the mask key generator of the connection and the
+ * extensions expect one frame at a time. The drainer writes all the frames it finds queued in one corked write.
+ */
+public final class WsOutboundQueue {
+    private static final String MSG_INDEX_OUT_OF_BOUNDS = "offset = %d; (offset + length) = %d; buffer length = %d";
+    private static final String MSG_MAX_MESSAGE_LENGTH = "Message length %d is greater than the maximum allowed %d";
+    private static final String MSG_QUEUE_FAILED = "Failed to write queued messages";
+    private static final String MSG_TRANSPORT_NOT_WRITABLE = "Message refused, as too many bytes are queued on the transport";
+
+    private static final ThreadLocal<FrameRW> OUTGOING_FRAME = new ThreadLocal<FrameRW>() {
+        @Override
+        protected FrameRW initialValue() {
+            return new FrameRW();
+        }
+    };
+
+    private final WsURLConnectionImpl connection;
+    private final MpscArrayQueue<byte[]> frames;
+    private final BufferPool bufferPool;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final Executor drainExecutor;
+    private final AtomicLong queuedBytes;
+    private final AtomicBoolean draining;
+    private final ConcurrentLinkedQueue<Thread> waiters;
+    private final FrameRO queuedFrame;
+    private final Runnable drainTask;
+
+    private volatile boolean writable;
+    private volatile IOException failure;
+
+    // Guarded by the write lock of the connection.
+    private boolean flushing;
+
+    public WsOutboundQueue(WsURLConnectionImpl connection, OutboundQueuePolicy policy) {
+        assert policy.isQueued();
+
+        this.connection = connection;
+        this.frames = new MpscArrayQueue<byte[]>(policy.getCapacity());
+        this.bufferPool = BufferPool.shared();
+        this.lowWatermark = policy.getLowWatermark();
+        this.highWatermark = policy.getHighWatermark();
+        this.drainExecutor = policy.getDrainExecutor();
+        this.queuedBytes = new AtomicLong();
+        this.draining = new AtomicBoolean();
+        this.waiters = new ConcurrentLinkedQueue<Thread>();
+        this.queuedFrame = new FrameRO();
+        this.writable = true;
+        this.drainTask = new Runnable() {
+            @Override
+            public void run() {
+                do {
+                    try {
+                        flush();
+                    }
+                    catch (IOException e) {
+                        // Already recorded as the failure of the queue, and reported to the senders from now on.
+                    }
+                    finally {
+                        draining.set(false);
+                    }
+                } while (!frames.isEmpty() && draining.compareAndSet(false, true));
+            }
+        };
+    }
+
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    public boolean offerBinary(byte[] buf, int offset, int length) throws IOException {
+        if (!writable) {
+            ensureOpen();
+            return false;
+        }
+
+        return enqueue(binaryFrame(buf, offset, length), false);
+    }
+
+    public boolean offerBinary(ByteBuffer buf) throws IOException {
+        if (!writable) {
+            ensureOpen();
+            return false;
+        }
+
+        boolean offered = enqueue(binaryFrame(buf), false);
+        if (offered) {
+            buf.position(buf.limit());
+        }
+
+        return offered;
+    }
+
+    public boolean offerText(char[] cbuf, int offset, int length) throws IOException {
+        if (!writable) {
+            ensureOpen();
+            return false;
+        }
+
+        return enqueue(textFrame(cbuf, offset, length), false);
+    }
+
+    public void putBinary(byte[] buf, int offset, int length) throws IOException {
+        enqueue(binaryFrame(buf, offset, length), true);
+    }
+
+    public void putBinary(ByteBuffer buf) throws IOException {
+        enqueue(binaryFrame(buf), true);
+        buf.position(buf.limit());
+    }
+
+    public void putText(char[] cbuf, int offset, int length) throws IOException {
+        enqueue(textFrame(cbuf, offset, length), true);
+    }
+
+    public void putText(CharSequence text, int offset, int length) throws IOException {
+        enqueue(textFrame(text, offset, length), true);
+    }
+
+    public void putText(byte[] utf8, int offset, int length) throws IOException {
+        ensurePayloadLength(length);
+
+        byte[] frame = bufferPool.acquireBytes(connection.getFrameLength(false, length));
+        wrapFrame(frame, TEXT).payloadPut(utf8, offset, length);
+        enqueue(frame, true);
+    }
+
+    /**
+     * Writes the queued frames unless invoked while they are being written. A thread that writes a frame without queueing it
+     * flushes first, so that the frame follows the messages the thread has queued before.
+     *
+     * @throws IOException if the queued frames could not be written
+     */
+    public void flush() throws IOException {
+        if (frames.isEmpty()) {
+            return;
+        }
+
+        IOException exception = null;
+        Lock writeLock = connection.getWriteLock();
+
+        try {
+            writeLock.lock();
+
+            if (flushing) {
+                // Re-entered from processOutgoingFrame() while writing a queued frame.
+                return;
+            }
+
+            flushing = true;
+            boolean corked = connection.isCorked();
+            connection.cork();
+
+            try {
+                byte[] frame;
+                while ((frame = frames.poll()) != null) {
+                    queuedFrame.wrap(ByteBuffer.wrap(frame).asReadOnlyBuffer(), 0);
+                    int frameLength = queuedFrame.length();
+
+                    try {
+                        if (failure == null) {
+                            if (connection.getOutputState() == CLOSED) {
+                                throw new IOException("Connection closed");
+                            }
+
+                            connection.processQueuedOutgoingFrame(queuedFrame);
+                        }
+                    }
+                    catch (IOException e) {
+                        // The frames queued behind a frame that failed are discarded.
+                        failure = e;
+                        exception = e;
+                    }
+                    finally {
+                        bufferPool.releaseBytes(frame);
+                        queuedBytes.addAndGet(-frameLength);
+                    }
+                }
+            }
+            finally {
+                flushing = false;
+
+                if (!corked) {
+                    try {
+                        connection.uncork();
+                    }
+                    catch (IOException e) {
+                        failure = e;
+                        exception = e;
+                    }
+                }
+            }
+        }
+        finally {
+            writeLock.unlock();
+
+            if (queuedBytes.get() <= lowWatermark) {
+                writable = true;
+            }
+
+            for (Thread waiter : waiters) {
+                LockSupport.unpark(waiter);
+            }
+        }
+
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private byte[] binaryFrame(byte[] buf, int offset, int length) throws IOException {
+        if (buf == null) {
+            throw new NullPointerException("Null buffer passed in");
+        }
+        else if ((offset < 0) || (length < 0) || (offset + length > buf.length)) {
+            throw new IndexOutOfBoundsException(format(MSG_INDEX_OUT_OF_BOUNDS, offset, offset + length, buf.length));
+        }
+
+        ensurePayloadLength(length);
+
+        byte[] frame = bufferPool.acquireBytes(connection.getFrameLength(false, length));
+        wrapFrame(frame, BINARY).payloadPut(buf, offset, length);
+        return frame;
+    }
+
+    private byte[] binaryFrame(ByteBuffer buf) throws IOException {
+        if (buf == null) {
+            throw new NullPointerException("Null buffer passed in");
+        }
+
+        int length = buf.remaining();
+        ensurePayloadLength(length);
+
+        byte[] frame = bufferPool.acquireBytes(connection.getFrameLength(false, length));
+        wrapFrame(frame, BINARY).payloadPut(buf, buf.position(), length);
+        return frame;
+    }
+
+    private byte[] textFrame(char[] cbuf, int offset, int length) throws IOException {
+        if (cbuf == null) {
+            throw new NullPointerException("Null buffer passed in");
+        }
+        else if ((offset < 0) || (length < 0) || (offset + length > cbuf.length)) {
+            throw new IndexOutOfBoundsException(format(MSG_INDEX_OUT_OF_BOUNDS, offset, offset + length, cbuf.length));
+        }
+
+        int payloadLength = Utf8Util.byteCountUTF8(cbuf, offset, length);
+        ensurePayloadLength(payloadLength);
+
+        byte[] frame = bufferPool.acquireBytes(connection.getFrameLength(false, payloadLength));
+        FrameRW outgoingFrame = wrapFrame(frame, TEXT);
+        outgoingFrame.payloadLength(payloadLength);
+        Utf8Util.charstoUTF8Bytes(cbuf, offset, length, frame, outgoingFrame.payloadOffset());
+        return frame;
+    }
+
+    private byte[] textFrame(CharSequence text, int offset, int length) throws IOException {
+        if (text == null) {
+            throw new NullPointerException("Null text passed in");
+        }
+        else if ((offset < 0) || (length < 0) || (offset + length > text.length())) {
+            throw new IndexOutOfBoundsException(format(MSG_INDEX_OUT_OF_BOUNDS, offset, offset + length, text.length()));
+        }
+
+        int payloadLength = Utf8Util.byteCountUTF8(text, offset, length);
+        ensurePayloadLength(payloadLength);
+
+        byte[] frame = bufferPool.acquireBytes(connection.getFrameLength(false, payloadLength));
+        FrameRW outgoingFrame = wrapFrame(frame, TEXT);
+        outgoingFrame.payloadLength(payloadLength);
+        Utf8Util.charstoUTF8Bytes(text, offset, length, frame, outgoingFrame.payloadOffset());
+        return frame;
+    }
+
+    private FrameRW wrapFrame(byte[] frame, Opcode opcode) {
+        return OUTGOING_FRAME.get().wrapNew(ByteBuffer.wrap(frame), 0, opcode, true);
+    }
+
+    private boolean enqueue(byte[] frame, boolean wait) throws IOException {
+        int frameLength = OUTGOING_FRAME.get().length();
+
+        try {
+            while (true) {
+                ensureOpen();
+
+                if (!connection.isTransportWritable()) {
+                    // The owner of the transport signals when it can be written again, so there is nothing to wait for.
+                    if (!wait) {
+                        return false;
+                    }
+
+                    throw new IOException(MSG_TRANSPORT_NOT_WRITABLE);
+                }
+
+                if (writable) {
+                    // The bytes are accounted for before the frame is published. So the drain that writes the frame is bound
+                    // to see them, and re-evaluates the watermarks afterwards.
+                    if (queuedBytes.addAndGet(frameLength) > highWatermark) {
+                        writable = false;
+                    }
+
+                    if (frames.offer(frame)) {
+                        frame = null;
+                        break;
+                    }
+
+                    // The ring is full, so a drain that restores the writability is bound to follow.
+                    queuedBytes.addAndGet(-frameLength);
+                }
+
+                if (!wait) {
+                    return false;
+                }
+
+                awaitWritable();
+            }
+        }
+        finally {
+            if (frame != null) {
+                bufferPool.releaseBytes(frame);
+            }
+        }
+
+        drain();
+        return true;
+    }
+
+    private void drain() throws IOException {
+        while (!frames.isEmpty() && draining.compareAndSet(false, true)) {
+            if (drainExecutor != null) {
+                try {
+                    drainExecutor.execute(drainTask);
+                }
+                catch (RuntimeException e) {
+                    draining.set(false);
+                    throw new IOException(MSG_QUEUE_FAILED, e);
+                }
+
+                return;
+            }
+
+            try {
+                flush();
+            }
+            finally {
+                draining.set(false);
+            }
+        }
+    }
+
+    private void awaitWritable() throws IOException {
+        Thread thread = Thread.currentThread();
+        waiters.add(thread);
+
+        try {
+            // The waiter is registered before checking, so a drain that completes meanwhile is bound to unpark it.
+            while (!writable || frames.size() == frames.capacity()) {
+                ensureOpen();
+                LockSupport.park(this);
+
+                if (Thread.interrupted()) {
+                    thread.interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+        finally {
+            waiters.remove(thread);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        IOException exception = failure;
+        if (exception != null) {
+            throw new IOException(MSG_QUEUE_FAILED, exception);
+        }
+
+        if (connection.getOutputState() == CLOSED) {
+            throw new IOException("Connection closed");
+        }
+    }
+
+    private void ensurePayloadLength(int length) throws IOException {
+        int maxPayloadLength = connection.getMaxFramePayloadLength();
+        if (length > maxPayloadLength) {
+            throw new IOException(format(MSG_MAX_MESSAGE_LENGTH, length, maxPayloadLength));
+        }
+    }
+}
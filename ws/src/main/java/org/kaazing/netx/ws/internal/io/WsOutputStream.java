@@ -20,22 +20,26 @@ import static org.kaazing.netx.ws.internal.WebSocketState.CLOSED;
 import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.BINARY;
 import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.CLOSE;
 import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.CONTINUATION;
+import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.PING;
 import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.PONG;
 
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.concurrent.locks.Lock;
 
 import org.kaazing.netx.ws.internal.WsURLConnectionImpl;
 import org.kaazing.netx.ws.internal.ext.flyweight.FrameRO;
 import org.kaazing.netx.ws.internal.ext.flyweight.FrameRW;
 import org.kaazing.netx.ws.internal.ext.flyweight.Opcode;
+import org.kaazing.netx.ws.internal.util.BufferPool;
 import org.kaazing.netx.ws.internal.util.OptimisticReentrantLock;
 
 public final class WsOutputStream extends FilterOutputStream {
     private static final String MSG_INDEX_OUT_OF_BOUNDS = "offset = %d; (offset + length) = %d; buffer length = %d";
     private static final String MSG_MAX_MESSAGE_LENGTH = "Message length %d is greater than the maximum allowed %d";
+    private static final String MSG_END_OF_FILE = "End of file reached at position %d, %d bytes short of the frame payload";
 
     private final WsURLConnectionImpl connection;
     private final byte[] controlFramePayload;
@@ -43,22 +47,20 @@ public final class WsOutputStream extends FilterOutputStream {
     private final FrameRW outgoingControlFrame;
     private final FrameRO outgoingFrameRO;
     private final ByteBuffer heapBufferControlFrameRO;
-    private final ByteBuffer heapBuffer;
-    private final ByteBuffer heapBufferRO;
+    private final BufferPool bufferPool;
     private final Lock stateLock;
 
     public WsOutputStream(WsURLConnectionImpl connection) throws IOException {
         super(connection.getTcpOutputStream());
         this.connection = connection;
-        this.heapBuffer = ByteBuffer.allocate(connection.getMaxFrameLength());
-        this.heapBufferRO = heapBuffer.asReadOnlyBuffer();
+        this.bufferPool = BufferPool.shared();
         this.outgoingDataFrame = new FrameRW();
         this.outgoingControlFrame = new FrameRW();
         this.controlFramePayload = new byte[150]; // To handle negative tests. Have some extra bytes.
         this.outgoingControlFrame.wrap(ByteBuffer.allocate(150), 0);
         this.heapBufferControlFrameRO = outgoingControlFrame.buffer().asReadOnlyBuffer();
         this.outgoingFrameRO = new FrameRO();
-        this.stateLock = new OptimisticReentrantLock();
+        this.stateLock = new OptimisticReentrantLock(connection.getLockWaitStrategy());
     }
 
     @Override
@@ -98,13 +100,17 @@ public final class WsOutputStream extends FilterOutputStream {
                 throw new IOException(format(MSG_MAX_MESSAGE_LENGTH, length, maxPayloadLength));
             }
 
-            outgoingDataFrame.wrap(heapBuffer,  0);
-            outgoingDataFrame.fin(true);
-            outgoingDataFrame.opcode(BINARY);
-            outgoingDataFrame.payloadPut(buf, offset, length);
+            byte[] frameBuffer = bufferPool.acquireBytes(connection.getFrameLength(false, length));
+            try {
+                ByteBuffer heapBuffer = wrapDataFrame(frameBuffer, BINARY, true);
+                outgoingDataFrame.payloadPut(buf, offset, length);
 
-            outgoingFrameRO.wrap(heapBufferRO, outgoingDataFrame.offset());
-            connection.processOutgoingFrame(outgoingFrameRO);
+                outgoingFrameRO.wrap(heapBuffer.asReadOnlyBuffer(), outgoingDataFrame.offset());
+                connection.processOutgoingFrame(outgoingFrameRO);
+            }
+            finally {
+                bufferPool.releaseBytes(frameBuffer);
+            }
         }
         finally {
             stateLock.unlock();
@@ -135,13 +141,110 @@ public final class WsOutputStream extends FilterOutputStream {
                 throw new IOException(format(MSG_MAX_MESSAGE_LENGTH, length, maxPayloadLength));
             }
 
-            outgoingDataFrame.wrap(heapBuffer,  0);
-            outgoingDataFrame.fin(fin);
-            outgoingDataFrame.opcode(opcode);
-            outgoingDataFrame.payloadPut(buf, offset, length);
+            byte[] frameBuffer = bufferPool.acquireBytes(connection.getFrameLength(false, length));
+            try {
+                ByteBuffer heapBuffer = wrapDataFrame(frameBuffer, opcode, fin);
+                outgoingDataFrame.payloadPut(buf, offset, length);
 
-            outgoingFrameRO.wrap(heapBufferRO, outgoingDataFrame.offset());
-            connection.processOutgoingFrame(outgoingFrameRO);
+                outgoingFrameRO.wrap(heapBuffer.asReadOnlyBuffer(), outgoingDataFrame.offset());
+                connection.processOutgoingFrame(outgoingFrameRO);
+            }
+            finally {
+                bufferPool.releaseBytes(frameBuffer);
+            }
+        }
+        finally {
+            stateLock.unlock();
+        }
+    }
+
+    public void writeBinary(Opcode opcode, ByteBuffer buf, boolean fin) throws IOException {
+        if (connection.getOutputState() == CLOSED) {
+            throw new IOException("Connection closed");
+        }
+
+        assert opcode == BINARY || opcode == CONTINUATION;
+
+        if (buf == null) {
+            throw new NullPointerException("Null buffer passed in");
+        }
+
+        try {
+            stateLock.lock();
+
+            int length = buf.remaining();
+            int maxPayloadLength = connection.getMaxFramePayloadLength();
+            if (length > maxPayloadLength) {
+                throw new IOException(format(MSG_MAX_MESSAGE_LENGTH, length, maxPayloadLength));
+            }
+
+            byte[] frameBuffer = bufferPool.acquireBytes(connection.getFrameLength(false, length));
+            try {
+                ByteBuffer heapBuffer = wrapDataFrame(frameBuffer, opcode, fin);
+                outgoingDataFrame.payloadPut(buf, buf.position(), length);
+
+                outgoingFrameRO.wrap(heapBuffer.asReadOnlyBuffer(), outgoingDataFrame.offset());
+                connection.processOutgoingFrame(outgoingFrameRO);
+            }
+            finally {
+                bufferPool.releaseBytes(frameBuffer);
+            }
+
+            buf.position(buf.limit());
+        }
+        finally {
+            stateLock.unlock();
+        }
+    }
+
+    public void writeBinary(Opcode opcode, FileChannel channel, long position, int length, boolean fin) throws IOException {
+        if (connection.getOutputState() == CLOSED) {
+            throw new IOException("Connection closed");
+        }
+
+        assert opcode == BINARY || opcode == CONTINUATION;
+
+        if (channel == null) {
+            throw new NullPointerException("Null channel passed in");
+        }
+
+        try {
+            stateLock.lock();
+
+            int maxPayloadLength = connection.getMaxFramePayloadLength();
+            if (length > maxPayloadLength) {
+                throw new IOException(format(MSG_MAX_MESSAGE_LENGTH, length, maxPayloadLength));
+            }
+
+            // Unless an extension has to see the frame, the outgoing sentinel reads the region slice by slice into the chunk it
+            // masks and writes from, so that the frame needs no buffer of its own.
+            if (connection.transferOutgoingFrame(opcode, fin, channel, position, length)) {
+                return;
+            }
+
+            byte[] frameBuffer = bufferPool.acquireBytes(connection.getFrameLength(false, length));
+            try {
+                ByteBuffer heapBuffer = wrapDataFrame(frameBuffer, opcode, fin);
+                outgoingDataFrame.payloadLength(length);
+
+                // Read the region of the file straight into the payload of the pooled frame. The outgoing sentinel then masks
+                // it on it's way to the network, so that the bytes are copied just once before being masked.
+                int payloadOffset = outgoingDataFrame.payloadOffset();
+                ByteBuffer payload = ByteBuffer.wrap(frameBuffer, payloadOffset, length);
+                while (payload.hasRemaining()) {
+                    int bytesRead = channel.read(payload, position + payload.position() - payloadOffset);
+                    if (bytesRead == -1) {
+                        throw new IOException(format(MSG_END_OF_FILE, position + payload.position() - payloadOffset,
+                                                     payload.remaining()));
+                    }
+                }
+
+                outgoingFrameRO.wrap(heapBuffer.asReadOnlyBuffer(), outgoingDataFrame.offset());
+                connection.processOutgoingFrame(outgoingFrameRO);
+            }
+            finally {
+                bufferPool.releaseBytes(frameBuffer);
+            }
         }
         finally {
             stateLock.unlock();
@@ -187,6 +290,30 @@ public final class WsOutputStream extends FilterOutputStream {
         }
     }
 
+    // Returns false, without sending the PING, if a frame is being written by another thread, either through this stream or
+    // while holding the write lock of the connection.
+    public boolean tryWritePing(byte[] buf, int offset, int length) throws IOException {
+        if (connection.getOutputState() == CLOSED) {
+            throw new IOException("Connection closed");
+        }
+
+        if (!stateLock.tryLock()) {
+            return false;
+        }
+
+        try {
+            outgoingControlFrame.fin(true);
+            outgoingControlFrame.opcode(PING);
+            outgoingControlFrame.payloadPut(buf, offset, length);
+
+            outgoingFrameRO.wrap(heapBufferControlFrameRO, outgoingControlFrame.offset());
+            return connection.tryProcessOutgoingFrame(outgoingFrameRO);
+        }
+        finally {
+            stateLock.unlock();
+        }
+    }
+
     public void writePong(byte[] buf, int offset, int length) throws IOException {
         if (connection.getOutputState() == CLOSED) {
             throw new IOException("Connection closed");
@@ -205,4 +332,10 @@ public final class WsOutputStream extends FilterOutputStream {
             stateLock.unlock();
         }
     }
+
+    private ByteBuffer wrapDataFrame(byte[] frameBuffer, Opcode opcode, boolean fin) {
+        ByteBuffer heapBuffer = ByteBuffer.wrap(frameBuffer);
+        outgoingDataFrame.wrapNew(heapBuffer, 0, opcode, fin);
+        return heapBuffer;
+    }
 }
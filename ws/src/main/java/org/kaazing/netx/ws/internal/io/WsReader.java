@@ -18,13 +18,17 @@ package org.kaazing.netx.ws.internal.io;
 import static java.lang.Character.charCount;
 import static java.lang.Character.toChars;
 import static java.lang.String.format;
+import static org.kaazing.netx.ws.WsURLConnection.WS_INCONSISTENT_DATA_MESSAGE_TYPE;
 import static org.kaazing.netx.ws.WsURLConnection.WS_PROTOCOL_ERROR;
 import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.BINARY;
 import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.CONTINUATION;
 import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.TEXT;
+import static org.kaazing.netx.ws.internal.util.Utf8Util.UTF8_ACCEPT;
+import static org.kaazing.netx.ws.internal.util.Utf8Util.UTF8_REJECT;
 import static org.kaazing.netx.ws.internal.util.Utf8Util.initialDecodeUTF8;
 import static org.kaazing.netx.ws.internal.util.Utf8Util.remainingBytesUTF8;
 import static org.kaazing.netx.ws.internal.util.Utf8Util.remainingDecodeUTF8;
+import static org.kaazing.netx.ws.internal.util.Utf8Util.validateUTF8;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -42,6 +46,7 @@ import org.kaazing.netx.ws.internal.ext.flyweight.FrameRO;
 import org.kaazing.netx.ws.internal.ext.flyweight.FrameRW;
 import org.kaazing.netx.ws.internal.ext.flyweight.Opcode;
 import org.kaazing.netx.ws.internal.ext.function.WebSocketFrameConsumer;
+import org.kaazing.netx.ws.internal.util.BufferPool;
 import org.kaazing.netx.ws.internal.util.OptimisticReentrantLock;
 
 public class WsReader extends Reader {
@@ -49,6 +54,7 @@ public class WsReader extends Reader {
     private static final String MSG_INDEX_OUT_OF_BOUNDS = "offset = %d; (offset + length) = %d; buffer length = %d";
     private static final String MSG_NON_TEXT_FRAME = "Non-text frame - opcode = 0x%02X";
     private static final String MSG_FRAGMENTED_FRAME = "Protocol Violation: Fragmented frame 0x%02X";
+    private static final String MSG_INVALID_UTF8 = "Protocol Violation: Invalid UTF-8 bytes in TEXT message";
     private static final String MSG_INVALID_OPCODE = "Protocol Violation: Invalid opcode = 0x%02X";
     private static final String MSG_UNSUPPORTED_OPERATION = "Unsupported Operation";
     private static final String MSG_MAX_MESSAGE_LENGTH = "Message length %d is greater than the maximum allowed %d";
@@ -57,18 +63,27 @@ public class WsReader extends Reader {
     private final InputStream in;
     private final FrameRW incomingFrame;
     private final FrameRO incomingFrameRO;
-    private final byte[] networkBuffer;
-    private final char[] applicationBuffer;
-    private final ByteBuffer heapBuffer;
-    private final ByteBuffer heapBufferRO;
+    private final BufferPool bufferPool;
     private final Lock stateLock;
 
+    private byte[] networkBuffer;
+    private char[] applicationBuffer;
+    private ByteBuffer heapBuffer;
+    private ByteBuffer heapBufferRO;
+
+    // Frames that fit in the smallest size class are read into these buffers, which are kept for the life of the reader
+    // instead of being borrowed from the pool for every frame. Only larger frames borrow from the pool.
+    private char[] residentApplicationBuffer;
+    private byte[] residentNetworkBuffer;
+    private ByteBuffer residentHeapBuffer;
+    private ByteBuffer residentHeapBufferRO;
     private int networkBufferReadOffset;
     private int networkBufferWriteOffset;
     private int applicationBufferReadOffset;
     private int applicationBufferWriteOffset;
     private int codePoint;
     private int remainingBytes;
+    private int utf8State;
     private boolean fragmented;
 
     private final WebSocketFrameConsumer terminalFrameConsumer = new WebSocketFrameConsumer() {
@@ -91,6 +106,25 @@ public class WsReader extends Reader {
                     connection.doFail(WS_PROTOCOL_ERROR, format(MSG_FRAGMENTED_FRAME, leadByte));
                 }
 
+                // A code point that was split across frames may add a surrogate pair to the characters of this payload.
+                long requiredLength = applicationBufferWriteOffset + xformedPayloadLength + 2;
+
+                if ((applicationBuffer == null) || (applicationBuffer.length < requiredLength)) {
+                    // Data frames are processed only after the application buffer has been drained. So, there is nothing
+                    // to carry over to the buffer being borrowed.
+                    assert applicationBufferWriteOffset == 0;
+                    acquireApplicationBuffer((int) requiredLength);
+                }
+
+                // Validate as each frame arrives, carrying the state of a character split across frames over to the next one.
+                long validationStart = System.nanoTime();
+                utf8State = validateUTF8(utf8State, frame.buffer(), xformedPayloadOffset, xformedPayloadLength);
+                connection.getMetrics().utf8ValidationTime(System.nanoTime() - validationStart);
+                if ((utf8State == UTF8_REJECT) || (frame.fin() && (utf8State != UTF8_ACCEPT))) {
+                    utf8State = UTF8_ACCEPT;
+                    connection.doFail(WS_INCONSISTENT_DATA_MESSAGE_TYPE, MSG_INVALID_UTF8);
+                }
+
                 int charsConverted = utf8BytesToChars(frame.buffer(),
                                                       xformedPayloadOffset,
                                                       xformedPayloadLength,
@@ -120,26 +154,22 @@ public class WsReader extends Reader {
             throw new NullPointerException(MSG_NULL_CONNECTION);
         }
 
-        int maxFrameLength = connection.getMaxFrameLength();
-
         this.connection = connection;
         this.in = connection.getTcpInputStream();
         this.incomingFrame = new FrameRW();
         this.incomingFrameRO = new FrameRO();
-        this.stateLock = new OptimisticReentrantLock();
+        this.stateLock = new OptimisticReentrantLock(connection.getLockWaitStrategy());
+        this.bufferPool = BufferPool.shared();
 
         this.codePoint = 0;
         this.remainingBytes = 0;
+        this.utf8State = UTF8_ACCEPT;
 
         this.fragmented = false;
         this.applicationBufferReadOffset = 0;
         this.applicationBufferWriteOffset = 0;
-        this.applicationBuffer = new char[maxFrameLength];
         this.networkBufferReadOffset = 0;
         this.networkBufferWriteOffset = 0;
-        this.networkBuffer = new byte[maxFrameLength];
-        this.heapBuffer = ByteBuffer.wrap(networkBuffer);
-        this.heapBufferRO = heapBuffer.asReadOnlyBuffer();
     }
 
     @Override
@@ -171,16 +201,19 @@ public class WsReader extends Reader {
                     if (networkBufferReadOffset == networkBufferWriteOffset) {
                         networkBufferReadOffset = 0;
                         networkBufferWriteOffset = 0;
+                        acquireNetworkBuffer(BufferPool.MIN_SIZE_CLASS);
 
                         int remainingLength = networkBuffer.length - networkBufferWriteOffset;
                         int bytesRead = 0;
                         try {
                             bytesRead = in.read(networkBuffer, networkBufferWriteOffset, remainingLength);
                             if (bytesRead == -1) {
+                                releaseNetworkBuffer();
                                 return -1;
                             }
                         }
                         catch (SocketException ex) {
+                            releaseNetworkBuffer();
                             return -1;
                         }
 
@@ -200,23 +233,26 @@ public class WsReader extends Reader {
                     // time. Figure out the payload length and see how much more we need to read to be frame-aligned.
                     incomingFrame.wrap(heapBuffer, networkBufferReadOffset);
                     int payloadLength = incomingFrame.payloadLength();
+                    int frameLength = connection.getFrameLength(false, payloadLength);
 
-                    if (incomingFrame.offset() + payloadLength > networkBufferWriteOffset) {
-                        if (payloadLength > networkBuffer.length) {
+                    if (networkBufferReadOffset + frameLength > networkBufferWriteOffset) {
+                        if (frameLength > connection.getMaxFrameLength()) {
                             int maxPayloadLength = connection.getMaxFramePayloadLength();
                             throw new IOException(format(MSG_MAX_MESSAGE_LENGTH, payloadLength, maxPayloadLength));
                         }
-                        else {
-                            // Enough space. But may need shifting the frame to the beginning to be able to fit the payload.
-                            if (incomingFrame.offset() + payloadLength > networkBuffer.length) {
-                                int len = networkBufferWriteOffset - networkBufferReadOffset;
-                                System.arraycopy(networkBuffer, networkBufferReadOffset, networkBuffer, 0, len);
-                                networkBufferReadOffset = 0;
-                                networkBufferWriteOffset = len;
-                            }
+                        else if (frameLength > networkBuffer.length) {
+                            // Borrow a buffer that is large enough for this frame. It is returned once the frame has been
+                            // consumed.
+                            acquireNetworkBuffer(frameLength);
+                        }
+                        else if (networkBufferReadOffset + frameLength > networkBuffer.length) {
+                            // Enough space. But need shifting the frame to the beginning to be able to fit the payload.
+                            int len = networkBufferWriteOffset - networkBufferReadOffset;
+                            System.arraycopy(networkBuffer, networkBufferReadOffset, networkBuffer, 0, len);
+                            networkBufferReadOffset = 0;
+                            networkBufferWriteOffset = len;
                         }
 
-                        int frameLength = connection.getFrameLength(false, payloadLength);
                         int remainingBytes = networkBufferReadOffset + frameLength - networkBufferWriteOffset;
                         while (remainingBytes > 0) {
                             int bytesRead = in.read(networkBuffer, networkBufferWriteOffset, remainingBytes);
@@ -238,7 +274,12 @@ public class WsReader extends Reader {
                     connection.processIncomingFrame(incomingFrameRO.wrap(heapBufferRO, networkBufferReadOffset));
                     networkBufferReadOffset += incomingFrame.length();
 
-                    if (!isControlFrame()) {
+                    boolean controlFrame = isControlFrame();
+                    if (networkBufferReadOffset == networkBufferWriteOffset) {
+                        releaseNetworkBuffer();
+                    }
+
+                    if (!controlFrame) {
                         break;
                     }
                 }
@@ -369,6 +410,8 @@ public class WsReader extends Reader {
         applicationBufferReadOffset += charsRead;
 
         if (applicationBufferReadOffset == applicationBufferWriteOffset) {
+            // The characters of the frame have been consumed. A borrowed buffer is returned till the next large data frame.
+            releaseApplicationBuffer();
             applicationBufferReadOffset = 0;
             applicationBufferWriteOffset = 0;
         }
@@ -376,6 +419,75 @@ public class WsReader extends Reader {
         return charsRead;
     }
 
+    private void acquireApplicationBuffer(int minLength) {
+        releaseApplicationBuffer();
+
+        if (minLength <= BufferPool.MIN_SIZE_CLASS) {
+            if (residentApplicationBuffer == null) {
+                residentApplicationBuffer = new char[BufferPool.MIN_SIZE_CLASS];
+            }
+            applicationBuffer = residentApplicationBuffer;
+        }
+        else {
+            applicationBuffer = bufferPool.acquireChars(minLength);
+        }
+    }
+
+    private void releaseApplicationBuffer() {
+        if (applicationBuffer != residentApplicationBuffer) {
+            bufferPool.releaseChars(applicationBuffer);
+            applicationBuffer = null;
+        }
+    }
+
+    private void acquireNetworkBuffer(int minLength) {
+        if ((networkBuffer != null) && (networkBuffer.length >= minLength)) {
+            return;
+        }
+
+        if (minLength <= BufferPool.MIN_SIZE_CLASS) {
+            // There is no buffer yet, as any buffer is at least this large.
+            if (residentNetworkBuffer == null) {
+                residentNetworkBuffer = new byte[BufferPool.MIN_SIZE_CLASS];
+                residentHeapBuffer = ByteBuffer.wrap(residentNetworkBuffer);
+                residentHeapBufferRO = residentHeapBuffer.asReadOnlyBuffer();
+            }
+
+            networkBuffer = residentNetworkBuffer;
+            heapBuffer = residentHeapBuffer;
+            heapBufferRO = residentHeapBufferRO;
+            return;
+        }
+
+        byte[] buffer = bufferPool.acquireBytes(minLength);
+
+        if (networkBuffer != null) {
+            // Move the unread bytes to the beginning of the larger buffer.
+            int len = networkBufferWriteOffset - networkBufferReadOffset;
+            System.arraycopy(networkBuffer, networkBufferReadOffset, buffer, 0, len);
+            if (networkBuffer != residentNetworkBuffer) {
+                bufferPool.releaseBytes(networkBuffer);
+            }
+            networkBufferReadOffset = 0;
+            networkBufferWriteOffset = len;
+        }
+
+        networkBuffer = buffer;
+        heapBuffer = ByteBuffer.wrap(buffer);
+        heapBufferRO = heapBuffer.asReadOnlyBuffer();
+    }
+
+    private void releaseNetworkBuffer() {
+        if (networkBuffer != residentNetworkBuffer) {
+            bufferPool.releaseBytes(networkBuffer);
+        }
+        networkBuffer = null;
+        heapBuffer = null;
+        heapBufferRO = null;
+        networkBufferReadOffset = 0;
+        networkBufferWriteOffset = 0;
+    }
+
     private int ensureFrameMetadata() throws IOException {
         int offsetDiff = networkBufferWriteOffset - networkBufferReadOffset;
         if (offsetDiff > 10) {
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.io;
+
+import static java.lang.String.format;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.kaazing.netx.ws.MessageType;
+import org.kaazing.netx.ws.ReceivedMessage;
+
+final class WsReceivedMessage extends ReceivedMessage {
+    private static final String MSG_MESSAGE_CLOSED = "Message closed";
+    private static final String MSG_MESSAGE_TOO_LONG_TO_MAP = "Message of %d bytes is too long to be mapped; use getChannel()";
+
+    private final MessageType type;
+    private final long length;
+
+    private byte[] heap;
+    private FileChannel channel;
+    private File file;
+    private ByteBuffer buffer;
+    private boolean closed;
+
+    WsReceivedMessage(MessageType type, long length, byte[] heap) {
+        this.type = type;
+        this.length = length;
+        this.heap = heap;
+    }
+
+    WsReceivedMessage(MessageType type, long length, FileChannel channel, File file) {
+        this.type = type;
+        this.length = length;
+        this.channel = channel;
+        this.file = file;
+    }
+
+    @Override
+    public MessageType getType() {
+        return type;
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public boolean isSpilled() {
+        return channel != null;
+    }
+
+    @Override
+    public synchronized ByteBuffer getBuffer() throws IOException {
+        ensureOpen();
+
+        if (buffer == null) {
+            if (channel != null) {
+                if (length > Integer.MAX_VALUE) {
+                    throw new IOException(format(MSG_MESSAGE_TOO_LONG_TO_MAP, length));
+                }
+
+                buffer = channel.map(MapMode.READ_ONLY, 0, length);
+            }
+            else {
+                buffer = ByteBuffer.wrap(heap, 0, (int) length).slice().asReadOnlyBuffer();
+            }
+        }
+
+        return buffer.duplicate();
+    }
+
+    @Override
+    public synchronized FileChannel getChannel() throws IOException {
+        ensureOpen();
+        return channel;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        heap = null;
+        buffer = null;
+
+        if (channel != null) {
+            release(channel, file);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return format("ReceivedMessage[type=%s, length=%d, spilled=%b]", type, length, channel != null);
+    }
+
+    static void release(FileChannel channel, File file) {
+        try {
+            channel.close();
+        }
+        catch (IOException ex) {
+            // The file is deleted regardless.
+        }
+
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException(MSG_MESSAGE_CLOSED);
+        }
+    }
+}
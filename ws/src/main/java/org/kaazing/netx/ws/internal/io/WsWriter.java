@@ -29,30 +29,31 @@ import org.kaazing.netx.ws.internal.WsURLConnectionImpl;
 import org.kaazing.netx.ws.internal.ext.flyweight.FrameRO;
 import org.kaazing.netx.ws.internal.ext.flyweight.FrameRW;
 import org.kaazing.netx.ws.internal.ext.flyweight.Opcode;
+import org.kaazing.netx.ws.internal.util.BufferPool;
 import org.kaazing.netx.ws.internal.util.OptimisticReentrantLock;
 import org.kaazing.netx.ws.internal.util.Utf8Util;
 
 public class WsWriter extends Writer {
     private static final String MSG_INDEX_OUT_OF_BOUNDS = "offset = %d; (offset + length) = %d; buffer length = %d";
+    private static final String MSG_MAX_MESSAGE_LENGTH = "Message length %d is greater than the maximum allowed %d";
 
     private final WsURLConnectionImpl connection;
     private final FrameRW outgoingFrame;
     private final FrameRO outgoingFrameRO;
-    private final ByteBuffer payload;
-    private final ByteBuffer heapBuffer;
-    private final ByteBuffer heapBufferRO;
+    private final BufferPool bufferPool;
     private final Lock stateLock;
 
+    // Wrappers of the frame buffer that was last borrowed. The pool tends to lend the same buffer to the same thread again, in
+    // which case the wrappers are reused rather than allocated for every message.
+    private ByteBuffer heapBuffer;
+    private ByteBuffer heapBufferRO;
+
     public WsWriter(WsURLConnectionImpl connection) throws IOException {
         this.connection = connection;
         this.outgoingFrame = new FrameRW();
         this.outgoingFrameRO = new FrameRO();
-        this.stateLock = new OptimisticReentrantLock();
-
-        this.payload = ByteBuffer.allocate(connection.getMaxFramePayloadLength());
-        this.heapBuffer = ByteBuffer.allocate(connection.getMaxFrameLength());
-        this.heapBufferRO = heapBuffer.asReadOnlyBuffer();
-
+        this.stateLock = new OptimisticReentrantLock(connection.getLockWaitStrategy());
+        this.bufferPool = BufferPool.shared();
     }
 
     @Override
@@ -70,25 +71,35 @@ public class WsWriter extends Writer {
 
         try {
             stateLock.lock();
-
-            int payloadLength = Utf8Util.byteCountUTF8(cbuf, offset, length);
-            int byteCount = Utf8Util.charstoUTF8Bytes(cbuf, offset, length, payload, 0);
-
-            assert payloadLength == byteCount;
-
-            outgoingFrame.wrap(heapBuffer,  0);
-            outgoingFrame.fin(true);
-            outgoingFrame.opcode(TEXT);
-            outgoingFrame.payloadPut(payload, 0, byteCount);
-
-            outgoingFrameRO.wrap(heapBufferRO, outgoingFrame.offset());
-            connection.processOutgoingFrame(outgoingFrameRO);
+            writeTextFrame(TEXT, cbuf, offset, length, true);
         }
         finally {
             stateLock.unlock();
         }
     }
 
+    @Override
+    public void write(String str, int offset, int length) throws IOException {
+        writeText(TEXT, str, offset, length, true);
+    }
+
+    @Override
+    public Writer append(CharSequence csq) throws IOException {
+        CharSequence text = (csq != null) ? csq : "null";
+        writeText(TEXT, text, 0, text.length(), true);
+        return this;
+    }
+
+    @Override
+    public Writer append(CharSequence csq, int start, int end) throws IOException {
+        CharSequence text = (csq != null) ? csq : "null";
+        if ((start < 0) || (start > end) || (end > text.length())) {
+            throw new IndexOutOfBoundsException(format(MSG_INDEX_OUT_OF_BOUNDS, start, end, text.length()));
+        }
+        writeText(TEXT, text, start, end - start, true);
+        return this;
+    }
+
     @Override
     public void flush() throws IOException {
     }
@@ -116,22 +127,121 @@ public class WsWriter extends Writer {
 
         try {
             stateLock.lock();
+            writeTextFrame(opcode, cbuf, offset, length, fin);
+        }
+        finally {
+            stateLock.unlock();
+        }
+    }
 
-            int payloadLength = Utf8Util.byteCountUTF8(cbuf, offset, length);
-            int byteCount = Utf8Util.charstoUTF8Bytes(cbuf, offset, length, payload, 0);
+    public void writeText(Opcode opcode, CharSequence text, int offset, int length, boolean fin) throws IOException {
+        if (connection.getOutputState() == CLOSED) {
+            throw new IOException("Connection closed");
+        }
 
-            assert payloadLength == byteCount;
+        assert opcode == TEXT || opcode == CONTINUATION;
+
+        if (text == null) {
+            throw new NullPointerException("Null text passed in");
+        }
+        else if ((offset < 0) || (length < 0) || (offset + length > text.length())) {
+            throw new IndexOutOfBoundsException(format(MSG_INDEX_OUT_OF_BOUNDS, offset, offset + length, text.length()));
+        }
+
+        try {
+            stateLock.lock();
+
+            int payloadLength = Utf8Util.byteCountUTF8(text, offset, length);
+            byte[] frameBuffer = acquireFrameBuffer(payloadLength);
+            try {
+                wrapTextFrame(frameBuffer, opcode, fin, payloadLength);
+                int byteCount = Utf8Util.charstoUTF8Bytes(text, offset, length, frameBuffer, outgoingFrame.payloadOffset());
+
+                assert payloadLength == byteCount;
+
+                processTextFrame();
+            }
+            finally {
+                bufferPool.releaseBytes(frameBuffer);
+            }
+        }
+        finally {
+            stateLock.unlock();
+        }
+    }
 
-            outgoingFrame.wrap(heapBuffer,  0);
-            outgoingFrame.fin(fin);
-            outgoingFrame.opcode(opcode);
-            outgoingFrame.payloadPut(payload, 0, byteCount);
+    public void writeText(Opcode opcode, byte[] utf8, int offset, int length, boolean fin) throws IOException {
+        if (connection.getOutputState() == CLOSED) {
+            throw new IOException("Connection closed");
+        }
+
+        assert opcode == TEXT || opcode == CONTINUATION;
 
-            outgoingFrameRO.wrap(heapBufferRO, outgoingFrame.offset());
-            connection.processOutgoingFrame(outgoingFrameRO);
+        if (utf8 == null) {
+            throw new NullPointerException("Null buffer passed in");
+        }
+        else if ((offset < 0) || (length < 0) || (offset + length > utf8.length)) {
+            throw new IndexOutOfBoundsException(format(MSG_INDEX_OUT_OF_BOUNDS, offset, offset + length, utf8.length));
+        }
+
+        try {
+            stateLock.lock();
+
+            byte[] frameBuffer = acquireFrameBuffer(length);
+            try {
+                wrapTextFrame(frameBuffer, opcode, fin, length);
+                // The payload is already encoded, so it is copied as is.
+                System.arraycopy(utf8, offset, frameBuffer, outgoingFrame.payloadOffset(), length);
+                processTextFrame();
+            }
+            finally {
+                bufferPool.releaseBytes(frameBuffer);
+            }
         }
         finally {
             stateLock.unlock();
         }
     }
+
+    private void writeTextFrame(Opcode opcode, char[] cbuf, int offset, int length, boolean fin) throws IOException {
+        int payloadLength = Utf8Util.byteCountUTF8(cbuf, offset, length);
+        byte[] frameBuffer = acquireFrameBuffer(payloadLength);
+
+        try {
+            // The chars are encoded straight into the payload of the frame, without an intermediate byte[].
+            wrapTextFrame(frameBuffer, opcode, fin, payloadLength);
+            int byteCount = Utf8Util.charstoUTF8Bytes(cbuf, offset, length, frameBuffer, outgoingFrame.payloadOffset());
+
+            assert payloadLength == byteCount;
+
+            processTextFrame();
+        }
+        finally {
+            bufferPool.releaseBytes(frameBuffer);
+        }
+    }
+
+    private byte[] acquireFrameBuffer(int payloadLength) throws IOException {
+        int maxPayloadLength = connection.getMaxFramePayloadLength();
+        if (payloadLength > maxPayloadLength) {
+            throw new IOException(format(MSG_MAX_MESSAGE_LENGTH, payloadLength, maxPayloadLength));
+        }
+
+        return bufferPool.acquireBytes(connection.getFrameLength(false, payloadLength));
+    }
+
+    private void wrapTextFrame(byte[] frameBuffer, Opcode opcode, boolean fin, int payloadLength) {
+        if ((heapBuffer == null) || (heapBuffer.array() != frameBuffer)) {
+            heapBuffer = ByteBuffer.wrap(frameBuffer);
+            heapBufferRO = heapBuffer.asReadOnlyBuffer();
+        }
+
+        outgoingFrame.wrapNew(heapBuffer, 0, opcode, fin);
+        outgoingFrame.payloadLength(payloadLength);
+    }
+
+    private void processTextFrame() throws IOException {
+        outgoingFrameRO.wrap(heapBufferRO, outgoingFrame.offset());
+        connection.processOutgoingFrame(outgoingFrameRO);
+    }
 }
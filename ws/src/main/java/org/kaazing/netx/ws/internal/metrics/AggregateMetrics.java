@@ -0,0 +1,39 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.metrics;
+
+import org.kaazing.netx.ws.internal.util.StripedCounters;
+
+/**
+ * Metrics of all the connections created using a factory. The connections add to the striped counters from their own
+ * threads, so they do not contend with each other for the counters.
+ */
+public final class AggregateMetrics extends MetricsCounters {
+    private final StripedCounters counters;
+
+    public AggregateMetrics() {
+        this.counters = new StripedCounters(COUNTER_COUNT);
+    }
+
+    void add(int counter, long delta) {
+        counters.add(counter, delta);
+    }
+
+    @Override
+    long get(int counter) {
+        return counters.sum(counter);
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.kaazing.netx.ws.internal.ext.flyweight.Opcode;
+
+/**
+ * Metrics of a connection. The incoming frames are counted while holding the read lock of the connection, and the outgoing
+ * frames while holding its write lock. So each of those counters has a single writer at a time, and is updated with an
+ * ordered store instead of an atomic add. Only the write lock waits, that are counted before the lock is taken, are added
+ * atomically. Every update is also added to the metrics of the factory that created the connection, if any.
+ */
+public final class ConnectionMetrics extends MetricsCounters {
+    private final AtomicLongArray counters;
+    private final AggregateMetrics parent;
+
+    public ConnectionMetrics(AggregateMetrics parent) {
+        this.counters = new AtomicLongArray(COUNTER_COUNT);
+        this.parent = parent;
+    }
+
+    // Must be invoked while holding the read lock of the connection.
+    public void frameReceived(Opcode opcode, int payloadLength, boolean fin) {
+        frame(FRAMES_RECEIVED, PAYLOAD_BYTES_RECEIVED, MESSAGES_RECEIVED, FRAGMENTED_MESSAGES_RECEIVED,
+              opcode, payloadLength, fin);
+    }
+
+    // Must be invoked while holding the write lock of the connection.
+    public void frameSent(Opcode opcode, int payloadLength, boolean fin) {
+        frame(FRAMES_SENT, PAYLOAD_BYTES_SENT, MESSAGES_SENT, FRAGMENTED_MESSAGES_SENT, opcode, payloadLength, fin);
+    }
+
+    // Must be invoked while holding the write lock of the connection.
+    public void maskingTime(long nanos) {
+        add(MASKING_NANOS, nanos);
+    }
+
+    // Must be invoked while holding the read lock of the connection.
+    public void utf8ValidationTime(long nanos) {
+        add(UTF8_VALIDATION_NANOS, nanos);
+    }
+
+    public void writeLockWaited(long nanos) {
+        counters.incrementAndGet(WRITE_LOCK_WAITS);
+        counters.addAndGet(WRITE_LOCK_WAIT_NANOS, nanos);
+
+        if (parent != null) {
+            parent.add(WRITE_LOCK_WAITS, 1);
+            parent.add(WRITE_LOCK_WAIT_NANOS, nanos);
+        }
+    }
+
+    @Override
+    long get(int counter) {
+        return counters.get(counter);
+    }
+
+    private void frame(int frames, int bytes, int messages, int fragmentedMessages, Opcode opcode, int length, boolean fin) {
+        int type = opcode.ordinal();
+        add(frames + type, 1);
+        add(bytes + type, length);
+
+        switch (opcode) {
+        case BINARY:
+        case TEXT:
+            if (fin) {
+                add(messages, 1);
+            }
+            else {
+                add(fragmentedMessages, 1);
+            }
+            break;
+        case CONTINUATION:
+            if (fin) {
+                add(messages, 1);
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    private void add(int counter, long delta) {
+        counters.lazySet(counter, counters.get(counter) + delta);
+
+        if (parent != null) {
+            parent.add(counter, delta);
+        }
+    }
+}
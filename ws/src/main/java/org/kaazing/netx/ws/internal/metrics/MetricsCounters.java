@@ -0,0 +1,127 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.metrics;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.concurrent.TimeUnit;
+
+import org.kaazing.netx.ws.WebSocketMetrics;
+import org.kaazing.netx.ws.WebSocketMetricsMXBean;
+
+/**
+ * Implements {@link WebSocketMetrics} on top of a fixed set of counters, however they are stored. The counters by frame type
+ * are indexed by the ordinal of the type, which follows the order of the opcodes in
+ * {@link org.kaazing.netx.ws.internal.ext.flyweight.Opcode}.
+ */
+public abstract class MetricsCounters extends WebSocketMetrics {
+    static final int FRAME_TYPE_COUNT = FrameType.values().length;
+
+    static final int FRAMES_RECEIVED = 0;
+    static final int PAYLOAD_BYTES_RECEIVED = FRAMES_RECEIVED + FRAME_TYPE_COUNT;
+    static final int FRAMES_SENT = PAYLOAD_BYTES_RECEIVED + FRAME_TYPE_COUNT;
+    static final int PAYLOAD_BYTES_SENT = FRAMES_SENT + FRAME_TYPE_COUNT;
+    static final int MESSAGES_RECEIVED = PAYLOAD_BYTES_SENT + FRAME_TYPE_COUNT;
+    static final int MESSAGES_SENT = MESSAGES_RECEIVED + 1;
+    static final int FRAGMENTED_MESSAGES_RECEIVED = MESSAGES_SENT + 1;
+    static final int FRAGMENTED_MESSAGES_SENT = FRAGMENTED_MESSAGES_RECEIVED + 1;
+    static final int MASKING_NANOS = FRAGMENTED_MESSAGES_SENT + 1;
+    static final int UTF8_VALIDATION_NANOS = MASKING_NANOS + 1;
+    static final int WRITE_LOCK_WAITS = UTF8_VALIDATION_NANOS + 1;
+    static final int WRITE_LOCK_WAIT_NANOS = WRITE_LOCK_WAITS + 1;
+    static final int COUNTER_COUNT = WRITE_LOCK_WAIT_NANOS + 1;
+
+    abstract long get(int counter);
+
+    @Override
+    public long getFramesReceived(FrameType type) {
+        return get(FRAMES_RECEIVED + type.ordinal());
+    }
+
+    @Override
+    public long getFramesSent(FrameType type) {
+        return get(FRAMES_SENT + type.ordinal());
+    }
+
+    @Override
+    public long getPayloadBytesReceived(FrameType type) {
+        return get(PAYLOAD_BYTES_RECEIVED + type.ordinal());
+    }
+
+    @Override
+    public long getPayloadBytesSent(FrameType type) {
+        return get(PAYLOAD_BYTES_SENT + type.ordinal());
+    }
+
+    @Override
+    public long getMessagesReceived() {
+        return get(MESSAGES_RECEIVED);
+    }
+
+    @Override
+    public long getMessagesSent() {
+        return get(MESSAGES_SENT);
+    }
+
+    @Override
+    public long getFragmentedMessagesReceived() {
+        return get(FRAGMENTED_MESSAGES_RECEIVED);
+    }
+
+    @Override
+    public long getFragmentedMessagesSent() {
+        return get(FRAGMENTED_MESSAGES_SENT);
+    }
+
+    @Override
+    public long getMaskingTime(TimeUnit unit) {
+        return unit.convert(get(MASKING_NANOS), NANOSECONDS);
+    }
+
+    @Override
+    public long getUtf8ValidationTime(TimeUnit unit) {
+        return unit.convert(get(UTF8_VALIDATION_NANOS), NANOSECONDS);
+    }
+
+    @Override
+    public long getWriteLockWaitCount() {
+        return get(WRITE_LOCK_WAITS);
+    }
+
+    @Override
+    public long getWriteLockWaitTime(TimeUnit unit) {
+        return unit.convert(get(WRITE_LOCK_WAIT_NANOS), NANOSECONDS);
+    }
+
+    @Override
+    public long getNanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public WebSocketMetrics snapshot() {
+        long[] values = new long[COUNTER_COUNT];
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            values[i] = get(i);
+        }
+        return new MetricsSnapshot(values, System.nanoTime());
+    }
+
+    @Override
+    public WebSocketMetricsMXBean asMXBean() {
+        return new MetricsMXBean(this);
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.metrics;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static org.kaazing.netx.ws.WebSocketMetrics.FrameType.BINARY;
+import static org.kaazing.netx.ws.WebSocketMetrics.FrameType.CLOSE;
+import static org.kaazing.netx.ws.WebSocketMetrics.FrameType.CONTINUATION;
+import static org.kaazing.netx.ws.WebSocketMetrics.FrameType.PING;
+import static org.kaazing.netx.ws.WebSocketMetrics.FrameType.PONG;
+import static org.kaazing.netx.ws.WebSocketMetrics.FrameType.TEXT;
+
+import org.kaazing.netx.ws.BufferPoolStatistics;
+import org.kaazing.netx.ws.WebSocketMetrics;
+import org.kaazing.netx.ws.WebSocketMetricsMXBean;
+import org.kaazing.netx.ws.internal.util.BufferPool;
+
+final class MetricsMXBean implements WebSocketMetricsMXBean {
+    private final WebSocketMetrics metrics;
+    private final BufferPoolStatistics bufferPool;
+
+    private WebSocketMetrics lastReceivedRate;
+    private WebSocketMetrics lastSentRate;
+
+    MetricsMXBean(WebSocketMetrics metrics) {
+        this.metrics = metrics;
+        this.bufferPool = BufferPool.shared().statistics();
+        this.lastReceivedRate = metrics.snapshot();
+        this.lastSentRate = lastReceivedRate;
+    }
+
+    @Override
+    public long getFramesReceived() {
+        return metrics.getFramesReceived();
+    }
+
+    @Override
+    public long getFramesSent() {
+        return metrics.getFramesSent();
+    }
+
+    @Override
+    public long getPayloadBytesReceived() {
+        return metrics.getPayloadBytesReceived();
+    }
+
+    @Override
+    public long getPayloadBytesSent() {
+        return metrics.getPayloadBytesSent();
+    }
+
+    @Override
+    public long getBinaryFramesReceived() {
+        return metrics.getFramesReceived(BINARY);
+    }
+
+    @Override
+    public long getBinaryFramesSent() {
+        return metrics.getFramesSent(BINARY);
+    }
+
+    @Override
+    public long getTextFramesReceived() {
+        return metrics.getFramesReceived(TEXT);
+    }
+
+    @Override
+    public long getTextFramesSent() {
+        return metrics.getFramesSent(TEXT);
+    }
+
+    @Override
+    public long getContinuationFramesReceived() {
+        return metrics.getFramesReceived(CONTINUATION);
+    }
+
+    @Override
+    public long getContinuationFramesSent() {
+        return metrics.getFramesSent(CONTINUATION);
+    }
+
+    @Override
+    public long getControlFramesReceived() {
+        return metrics.getFramesReceived(CLOSE) + metrics.getFramesReceived(PING) + metrics.getFramesReceived(PONG);
+    }
+
+    @Override
+    public long getControlFramesSent() {
+        return metrics.getFramesSent(CLOSE) + metrics.getFramesSent(PING) + metrics.getFramesSent(PONG);
+    }
+
+    @Override
+    public long getMessagesReceived() {
+        return metrics.getMessagesReceived();
+    }
+
+    @Override
+    public long getMessagesSent() {
+        return metrics.getMessagesSent();
+    }
+
+    @Override
+    public synchronized double getMessagesReceivedPerSecond() {
+        WebSocketMetrics now = metrics.snapshot();
+        double rate = now.getMessagesReceivedPerSecond(lastReceivedRate);
+        lastReceivedRate = now;
+        return rate;
+    }
+
+    @Override
+    public synchronized double getMessagesSentPerSecond() {
+        WebSocketMetrics now = metrics.snapshot();
+        double rate = now.getMessagesSentPerSecond(lastSentRate);
+        lastSentRate = now;
+        return rate;
+    }
+
+    @Override
+    public long getFragmentedMessagesReceived() {
+        return metrics.getFragmentedMessagesReceived();
+    }
+
+    @Override
+    public long getFragmentedMessagesSent() {
+        return metrics.getFragmentedMessagesSent();
+    }
+
+    @Override
+    public long getMaskingTimeMicros() {
+        return metrics.getMaskingTime(MICROSECONDS);
+    }
+
+    @Override
+    public long getUtf8ValidationTimeMicros() {
+        return metrics.getUtf8ValidationTime(MICROSECONDS);
+    }
+
+    @Override
+    public long getWriteLockWaitCount() {
+        return metrics.getWriteLockWaitCount();
+    }
+
+    @Override
+    public long getWriteLockWaitTimeMicros() {
+        return metrics.getWriteLockWaitTime(MICROSECONDS);
+    }
+
+    @Override
+    public long getBufferPoolLentBytes() {
+        return bufferPool.getLentBytes();
+    }
+
+    @Override
+    public long getBufferPoolIdleBytes() {
+        return bufferPool.getIdleBytes();
+    }
+
+    @Override
+    public long getBufferPoolAllocationCount() {
+        return bufferPool.getAllocationCount();
+    }
+
+    @Override
+    public long getBufferPoolDiscardCount() {
+        return bufferPool.getDiscardCount();
+    }
+}
@@ -0,0 +1,378 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kaazing.netx.ws.BufferPoolStatistics;
+
+/**
+ * Size-classed pool of byte[] and char[] buffers. The size classes are the powers of two from {@link #MIN_SIZE_CLASS} to
+ * {@link #MAX_SIZE_CLASS}, and a request is served from the smallest class that can hold it. So the buffer that is lent may be
+ * larger than the requested length, and the borrower must keep track of the length it needs instead of relying on the length
+ * of the array. Lent buffers are not cleared.
+ * <p>
+ * Each size class retains up to {@link #MAX_IDLE_BYTES_PER_SIZE_CLASS} worth of idle buffers, and at least one. Buffers that
+ * are returned to a full size class, and buffers larger than {@link #MAX_SIZE_CLASS}, are left to the garbage collector.
+ * <p>
+ * The idle buffers are spread over a number of stripes, and a thread borrows from and returns to the stripe picked by its id
+ * before trying the others. So the threads of different connections seldom wait for each other. The statistics are striped
+ * the same way.
+ * <p>
+ * A buffer must be returned at most once, and must not be accessed after it has been returned.
+ */
+public final class BufferPool {
+    public static final int MIN_SIZE_CLASS = 1 << 12;
+    public static final int MAX_SIZE_CLASS = 1 << 24;
+    public static final int MAX_IDLE_BYTES_PER_SIZE_CLASS = 1 << 22;
+
+    private static final int MIN_SIZE_CLASS_SHIFT = Integer.numberOfTrailingZeros(MIN_SIZE_CLASS);
+    private static final int SIZE_CLASS_COUNT = Integer.numberOfTrailingZeros(MAX_SIZE_CLASS) - MIN_SIZE_CLASS_SHIFT + 1;
+    private static final int MAX_STRIPES = 16;
+
+    private static final int ACQUIRES = 0;
+    private static final int ALLOCATIONS = 1;
+    private static final int RELEASES = 2;
+    private static final int DISCARDS = 3;
+    private static final int LENT_BYTES = 4;
+    private static final int IDLE_BYTES = 5;
+    private static final int COUNTER_COUNT = 6;
+
+    private static final BufferPool SHARED = new BufferPool(MAX_IDLE_BYTES_PER_SIZE_CLASS);
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final StripedCounters counters;
+    private final BufferPoolStatistics statistics;
+
+    public BufferPool(int maxIdleBytesPerSizeClass) {
+        this(maxIdleBytesPerSizeClass, Runtime.getRuntime().availableProcessors());
+    }
+
+    BufferPool(int maxIdleBytesPerSizeClass, int stripes) {
+        int stripeCount = Integer.highestOneBit(Math.max(1, Math.min(stripes, MAX_STRIPES)));
+        if (stripeCount < Math.min(stripes, MAX_STRIPES)) {
+            stripeCount <<= 1;
+        }
+
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe(maxIdleBytesPerSizeClass, i, stripeCount);
+        }
+
+        this.stripeMask = stripeCount - 1;
+        this.counters = new StripedCounters(COUNTER_COUNT, stripeCount);
+        this.statistics = new Statistics();
+    }
+
+    /**
+     * Returns the pool that is shared by all the connections.
+     *
+     * @return shared BufferPool
+     */
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Lends a byte[] that can hold at least the specified number of bytes.
+     *
+     * @param minLength  minimum length of the buffer
+     * @return byte[] whose length is the size class serving minLength, or exactly minLength if it exceeds MAX_SIZE_CLASS
+     */
+    public byte[] acquireBytes(int minLength) {
+        int index = sizeClassIndex(minLength);
+        byte[] array = null;
+
+        if (index != -1) {
+            int home = StripedCounters.threadStripe(stripeMask);
+            for (int i = 0; (array == null) && (i < stripes.length); i++) {
+                array = stripes[(home + i) & stripeMask].byteArrays.get(index).poll();
+            }
+        }
+
+        if (array == null) {
+            array = new byte[(index == -1) ? minLength : sizeClass(index)];
+            counters.increment(ALLOCATIONS);
+        }
+        else {
+            counters.add(IDLE_BYTES, -array.length);
+        }
+
+        counters.increment(ACQUIRES);
+        counters.add(LENT_BYTES, array.length);
+        return array;
+    }
+
+    /**
+     * Returns a byte[] that was lent by {@link #acquireBytes(int)}. Passing null is a no-op.
+     *
+     * @param array  buffer to be returned
+     */
+    public void releaseBytes(byte[] array) {
+        if (array == null) {
+            return;
+        }
+
+        int index = exactSizeClassIndex(array.length);
+        boolean retained = false;
+
+        if (index != -1) {
+            int home = StripedCounters.threadStripe(stripeMask);
+            for (int i = 0; !retained && (i < stripes.length); i++) {
+                retained = stripes[(home + i) & stripeMask].byteArrays.get(index).offer(array);
+            }
+        }
+
+        released(array.length, retained);
+    }
+
+    /**
+     * Lends a char[] that can hold at least the specified number of characters.
+     *
+     * @param minLength  minimum length of the buffer
+     * @return char[] whose length is the size class serving minLength, or exactly minLength if it exceeds MAX_SIZE_CLASS
+     */
+    public char[] acquireChars(int minLength) {
+        int index = sizeClassIndex(minLength);
+        char[] array = null;
+
+        if (index != -1) {
+            int home = StripedCounters.threadStripe(stripeMask);
+            for (int i = 0; (array == null) && (i < stripes.length); i++) {
+                array = stripes[(home + i) & stripeMask].charArrays.get(index).poll();
+            }
+        }
+
+        if (array == null) {
+            array = new char[(index == -1) ? minLength : sizeClass(index)];
+            counters.increment(ALLOCATIONS);
+        }
+        else {
+            counters.add(IDLE_BYTES, -(array.length << 1));
+        }
+
+        counters.increment(ACQUIRES);
+        counters.add(LENT_BYTES, array.length << 1);
+        return array;
+    }
+
+    /**
+     * Returns a char[] that was lent by {@link #acquireChars(int)}. Passing null is a no-op.
+     *
+     * @param array  buffer to be returned
+     */
+    public void releaseChars(char[] array) {
+        if (array == null) {
+            return;
+        }
+
+        int index = exactSizeClassIndex(array.length);
+        boolean retained = false;
+
+        if (index != -1) {
+            int home = StripedCounters.threadStripe(stripeMask);
+            for (int i = 0; !retained && (i < stripes.length); i++) {
+                retained = stripes[(home + i) & stripeMask].charArrays.get(index).offer(array);
+            }
+        }
+
+        released(array.length << 1, retained);
+    }
+
+    public BufferPoolStatistics statistics() {
+        return statistics;
+    }
+
+    private void released(long bytes, boolean retained) {
+        counters.increment(RELEASES);
+        counters.add(LENT_BYTES, -bytes);
+
+        if (retained) {
+            counters.add(IDLE_BYTES, bytes);
+        }
+        else {
+            counters.increment(DISCARDS);
+        }
+    }
+
+    private static int sizeClass(int index) {
+        return MIN_SIZE_CLASS << index;
+    }
+
+    private static int sizeClassIndex(int length) {
+        if (length <= MIN_SIZE_CLASS) {
+            return 0;
+        }
+
+        if (length > MAX_SIZE_CLASS) {
+            return -1;
+        }
+
+        return 32 - Integer.numberOfLeadingZeros(length - 1) - MIN_SIZE_CLASS_SHIFT;
+    }
+
+    private static int exactSizeClassIndex(int length) {
+        int index = sizeClassIndex(length);
+        return ((index != -1) && (sizeClass(index) == length)) ? index : -1;
+    }
+
+    private static final class Stripe {
+        private final List<FreeList<byte[]>> byteArrays;
+        private final List<FreeList<char[]>> charArrays;
+
+        Stripe(int maxIdleBytesPerSizeClass, int stripe, int stripeCount) {
+            this.byteArrays = new ArrayList<FreeList<byte[]>>(SIZE_CLASS_COUNT);
+            this.charArrays = new ArrayList<FreeList<char[]>>(SIZE_CLASS_COUNT);
+
+            for (int i = 0; i < SIZE_CLASS_COUNT; i++) {
+                // The capacity of a size class is divided among the stripes, so the pool retains as much as it would if it
+                // were not striped.
+                int capacity = Math.max(1, maxIdleBytesPerSizeClass / sizeClass(i));
+                int charCapacity = Math.max(1, capacity >> 1);
+                byteArrays.add(new FreeList<byte[]>(share(capacity, stripe, stripeCount)));
+                charArrays.add(new FreeList<char[]>(share(charCapacity, stripe, stripeCount)));
+            }
+        }
+
+        private static int share(int capacity, int stripe, int stripeCount) {
+            return capacity / stripeCount + ((stripe < capacity % stripeCount) ? 1 : 0);
+        }
+    }
+
+    private static final class FreeList<T> {
+        private final Object[] elements;
+
+        // Written under the lock, and read without it so that an empty or full list is skipped without contending.
+        private volatile int size;
+
+        FreeList(int capacity) {
+            this.elements = new Object[capacity];
+        }
+
+        @SuppressWarnings("unchecked")
+        T poll() {
+            if (size == 0) {
+                return null;
+            }
+
+            synchronized (this) {
+                int last = size - 1;
+                if (last < 0) {
+                    return null;
+                }
+
+                T element = (T) elements[last];
+                elements[last] = null;
+                size = last;
+                return element;
+            }
+        }
+
+        boolean offer(T element) {
+            if (size == elements.length) {
+                return false;
+            }
+
+            synchronized (this) {
+                int last = size;
+                if (last == elements.length) {
+                    return false;
+                }
+
+                elements[last] = element;
+                size = last + 1;
+                return true;
+            }
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    private final class Statistics extends BufferPoolStatistics {
+
+        @Override
+        public long getAcquireCount() {
+            return counters.sum(ACQUIRES);
+        }
+
+        @Override
+        public long getAllocationCount() {
+            return counters.sum(ALLOCATIONS);
+        }
+
+        @Override
+        public long getReleaseCount() {
+            return counters.sum(RELEASES);
+        }
+
+        @Override
+        public long getDiscardCount() {
+            return counters.sum(DISCARDS);
+        }
+
+        @Override
+        public long getLentBytes() {
+            return counters.sum(LENT_BYTES);
+        }
+
+        @Override
+        public long getIdleBytes() {
+            return counters.sum(IDLE_BYTES);
+        }
+
+        @Override
+        public int getMinSizeClass() {
+            return MIN_SIZE_CLASS;
+        }
+
+        @Override
+        public int getMaxSizeClass() {
+            return MAX_SIZE_CLASS;
+        }
+
+        @Override
+        public int getIdleByteArrayCount(int length) {
+            int index = sizeClassIndex(length);
+            int count = 0;
+
+            if (index != -1) {
+                for (Stripe stripe : stripes) {
+                    count += stripe.byteArrays.get(index).size();
+                }
+            }
+
+            return count;
+        }
+
+        @Override
+        public int getIdleCharArrayCount(int length) {
+            int index = sizeClassIndex(length);
+            int count = 0;
+
+            if (index != -1) {
+                for (Stripe stripe : stripes) {
+                    count += stripe.charArrays.get(index).size();
+                }
+            }
+
+            return count;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.util;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Timer that runs the scheduled tasks on a single thread, however many are pending. The wheel has a fixed number of buckets,
+ * each covering one tick. A task is hashed to the bucket of the tick in which it expires, and counts down the rounds of the
+ * wheel that remain before that tick. So scheduling and cancelling take constant time, at the cost of running the tasks up to
+ * a tick late. This suits timeouts that are much longer than a tick and are mostly cancelled or rescheduled before they
+ * expire, such as keep-alive.
+ * <p>
+ * Newly scheduled tasks are handed to the timer thread using a lock-free queue, and only the timer thread touches the
+ * buckets. Cancelled tasks are removed from their bucket when the wheel next passes it. The tasks must not block, as they
+ * delay all the other tasks.
+ */
+public final class HashedWheelTimer {
+    private static final String MSG_INVALID_TICK = "Tick duration must be positive: %d %s";
+    private static final String MSG_INVALID_TICKS_PER_WHEEL = "Ticks per wheel must be positive integer value: %d";
+    private static final String MSG_TIMER_STOPPED = "Timer is stopped";
+
+    private static final int STATE_INIT = 0;
+    private static final int STATE_STARTED = 1;
+    private static final int STATE_STOPPED = 2;
+
+    private static final HashedWheelTimer SHARED = new HashedWheelTimer(100, MILLISECONDS, 512, "netx-ws-timer");
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> scheduled;
+    private final AtomicInteger state;
+    private final Thread worker;
+
+    private volatile long startNanos;
+
+    public HashedWheelTimer(long tickDuration, TimeUnit unit, int ticksPerWheel, String threadName) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException(format(MSG_INVALID_TICK, tickDuration, unit));
+        }
+
+        if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+            throw new IllegalArgumentException(format(MSG_INVALID_TICKS_PER_WHEEL, ticksPerWheel));
+        }
+
+        int wheelLength = Integer.highestOneBit(ticksPerWheel);
+        if (wheelLength < ticksPerWheel) {
+            wheelLength <<= 1;
+        }
+
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheel = new Bucket[wheelLength];
+        for (int i = 0; i < wheelLength; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = wheelLength - 1;
+        this.scheduled = new ConcurrentLinkedQueue<Timeout>();
+        this.state = new AtomicInteger(STATE_INIT);
+        this.worker = new Thread(new Worker(), threadName);
+        this.worker.setDaemon(true);
+    }
+
+    /**
+     * Returns the timer that is shared by all the connections. Its thread is started when the first task is scheduled.
+     *
+     * @return shared HashedWheelTimer
+     */
+    public static HashedWheelTimer shared() {
+        return SHARED;
+    }
+
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (task == null) {
+            throw new NullPointerException("Null task passed in");
+        }
+
+        start();
+
+        long deadline = System.nanoTime() + Math.max(0, unit.toNanos(delay)) - startNanos;
+        Timeout timeout = new Timeout(task, deadline);
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    public void stop() {
+        if (state.getAndSet(STATE_STOPPED) == STATE_STARTED) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    private void start() {
+        switch (state.get()) {
+        case STATE_INIT:
+            if (state.compareAndSet(STATE_INIT, STATE_STARTED)) {
+                startNanos = System.nanoTime();
+                worker.start();
+            }
+            else if (state.get() == STATE_STOPPED) {
+                throw new IllegalStateException(MSG_TIMER_STOPPED);
+            }
+            break;
+        case STATE_STARTED:
+            break;
+        default:
+            throw new IllegalStateException(MSG_TIMER_STOPPED);
+        }
+
+        while (startNanos == 0) {
+            // The thread that started the worker is about to publish the start time.
+            Thread.yield();
+        }
+    }
+
+    public static final class Timeout {
+        private static final int ST_PENDING = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state;
+
+        // Owned by the timer thread.
+        private long remainingRounds;
+        private Timeout next;
+        private Timeout prev;
+
+        Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+            this.state = new AtomicInteger(ST_PENDING);
+        }
+
+        /**
+         * Cancels the task unless it has already run.
+         *
+         * @return true if the task will not run, false if it has run or is running
+         */
+        public boolean cancel() {
+            return state.compareAndSet(ST_PENDING, ST_CANCELLED) || state.get() == ST_CANCELLED;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        void expire() {
+            if (!state.compareAndSet(ST_PENDING, ST_EXPIRED)) {
+                return;
+            }
+
+            try {
+                task.run();
+            }
+            catch (Throwable t) {
+                // A failing task must not stop the timer.
+            }
+        }
+    }
+
+    // Doubly-linked list of the timeouts that expire in the tick of the bucket, in some round of the wheel.
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            if (head == null) {
+                head = tail = timeout;
+            }
+            else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.isCancelled()) {
+                    remove(timeout);
+                }
+                else if (timeout.remainingRounds > 0) {
+                    timeout.remainingRounds--;
+                }
+                else if (timeout.deadline < deadline) {
+                    remove(timeout);
+                    timeout.expire();
+                }
+                timeout = next;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private long tick;
+
+        @Override
+        public void run() {
+            while (state.get() == STATE_STARTED) {
+                long deadline = awaitNextTick();
+                if (deadline < 0) {
+                    break;
+                }
+
+                transferScheduled();
+                wheel[(int) (tick & mask)].expire(deadline);
+                tick++;
+            }
+        }
+
+        private void transferScheduled() {
+            Timeout timeout;
+            while ((timeout = scheduled.poll()) != null) {
+                if (timeout.isCancelled()) {
+                    continue;
+                }
+
+                // A timeout whose deadline has already passed is run in the current tick.
+                long expiryTick = Math.max(timeout.deadline / tickNanos, tick);
+                timeout.remainingRounds = (expiryTick - tick) / wheel.length;
+                wheel[(int) (expiryTick & mask)].add(timeout);
+            }
+        }
+
+        // Returns the time, relative to the start of the timer, at the end of the current tick, or -1 if stopped.
+        private long awaitNextTick() {
+            long deadline = tickNanos * (tick + 1);
+
+            for (;;) {
+                long remaining = deadline - (System.nanoTime() - startNanos);
+                if (remaining <= 0) {
+                    return deadline;
+                }
+
+                LockSupport.parkNanos(HashedWheelTimer.this, remaining);
+                if (state.get() != STATE_STARTED) {
+                    return -1;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.util;
+
+import static java.lang.String.format;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded ring buffer that any number of threads may offer to without locking, and that a single thread at a time polls
+ * from. A producer claims a slot by advancing the producer index with a CAS and then publishes its element into the slot. The
+ * consumer takes the element once it has been published, so an element claimed but not yet published holds back the ones
+ * behind it for the few instructions it takes to publish it.
+ * <p>
+ * The capacity is rounded up to a power of two. Null elements are not permitted.
+ */
+public final class MpscArrayQueue<E> {
+    private static final String MSG_INVALID_CAPACITY = "Capacity must be positive integer value: %d";
+
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final AtomicLong producerIndex;
+    private final AtomicLong consumerIndex;
+
+    // Producers only re-read the contended consumer index once the ring looks full from this cached copy.
+    private volatile long consumerIndexCache;
+
+    public MpscArrayQueue(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException(format(MSG_INVALID_CAPACITY, capacity));
+        }
+
+        int ringCapacity = Integer.highestOneBit(capacity);
+        if (ringCapacity < capacity) {
+            ringCapacity <<= 1;
+        }
+
+        this.slots = new AtomicReferenceArray<E>(ringCapacity);
+        this.mask = ringCapacity - 1;
+        this.producerIndex = new AtomicLong();
+        this.consumerIndex = new AtomicLong();
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Adds the element to the tail of the queue unless the queue is full.
+     *
+     * @param element  element to add
+     * @return true if the element was added, false if the queue is full
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException("Null element passed in");
+        }
+
+        int capacity = mask + 1;
+        long consumerLimit = consumerIndexCache + capacity;
+        long index;
+
+        do {
+            index = producerIndex.get();
+            if (index >= consumerLimit) {
+                consumerLimit = consumerIndex.get() + capacity;
+                if (index >= consumerLimit) {
+                    return false;
+                }
+
+                consumerIndexCache = consumerLimit - capacity;
+            }
+        } while (!producerIndex.compareAndSet(index, index + 1));
+
+        slots.lazySet((int) index & mask, element);
+        return true;
+    }
+
+    /**
+     * Removes the element at the head of the queue. Must only be invoked by one thread at a time.
+     *
+     * @return the element at the head of the queue, or null if the queue is empty
+     */
+    public E poll() {
+        long index = consumerIndex.get();
+        int offset = (int) index & mask;
+
+        E element = slots.get(offset);
+        if (element == null) {
+            if (index == producerIndex.get()) {
+                return null;
+            }
+
+            // The slot has been claimed, but the producer has yet to publish into it.
+            do {
+                element = slots.get(offset);
+            } while (element == null);
+        }
+
+        slots.lazySet(offset, null);
+        consumerIndex.lazySet(index + 1);
+        return element;
+    }
+
+    public boolean isEmpty() {
+        return consumerIndex.get() == producerIndex.get();
+    }
+
+    public int size() {
+        long consumed = consumerIndex.get();
+
+        while (true) {
+            long produced = producerIndex.get();
+            long consumedAfter = consumerIndex.get();
+            if (consumed == consumedAfter) {
+                return (int) (produced - consumed);
+            }
+
+            consumed = consumedAfter;
+        }
+    }
+}
@@ -15,24 +15,46 @@
  */
 package org.kaazing.netx.ws.internal.util;
 
+import static org.kaazing.netx.ws.LockWaitStrategy.SPIN;
+import static org.kaazing.netx.ws.LockWaitStrategy.SPIN_YIELD_PARK;
+
+import java.util.Date;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+
+import org.kaazing.netx.ws.LockWaitStrategy;
 
-// ### TODO: 1. happens-before relationship should be established between the thread that releases the lock and the next thread
-//              that acquires the lock.
-//           2. Evaluate with Martin's sun.misc.Unsafe based AtomicSequence implementation.
-//           3. Implement fairness? It's expensive. We don't want to create garbage for fairness. Also, it's not clear whether
-//              it is needed.
+// ### TODO: 1. Evaluate with Martin's sun.misc.Unsafe based AtomicSequence implementation.
+//           2. Implement fairness? It's expensive. We don't want to create garbage for fairness. Also, it's not clear whether
+//              it is needed. Parked threads are woken up in FIFO order, but a thread that is spinning may still barge in.
 public class OptimisticReentrantLock implements Lock {
+    private static final String MSG_NOT_OWNER = "Current thread does not own the lock";
+
+    // Number of failed attempts after which a waiting thread starts yielding, and then parking, with SPIN_YIELD_PARK.
+    static final int MAX_SPINS = 128;
+    static final int MAX_YIELDS = MAX_SPINS + 16;
+
     private final AtomicReference<Thread> owner;
     private final AtomicInteger stamp;
+    private final Queue<Thread> waiters;
+
+    private volatile LockWaitStrategy waitStrategy;
 
     public OptimisticReentrantLock() {
+        this(SPIN_YIELD_PARK);
+    }
+
+    public OptimisticReentrantLock(LockWaitStrategy waitStrategy) {
         this.owner = new AtomicReference<Thread>(null);
         this.stamp = new AtomicInteger(0);
+        this.waiters = new ConcurrentLinkedQueue<Thread>();
+        this.waitStrategy = waitStrategy;
     }
 
     @Override
@@ -43,10 +65,10 @@ public class OptimisticReentrantLock implements Lock {
              stamp.incrementAndGet();
         }
         else {
-          while (!owner.compareAndSet(null, currentThread)) {
-              // Keep spinning till the lock is acquired.
-          }
-          stamp.set(1);
+            if (!owner.compareAndSet(null, currentThread)) {
+                acquireUninterruptibly(currentThread);
+            }
+            stamp.set(1);
         }
     }
 
@@ -57,13 +79,29 @@ public class OptimisticReentrantLock implements Lock {
             // Order in which atomics are updated is important.
             // stamp MUST be zero before nulling the owner.
             // Defeat unlock / lock race by setting owner to null only if not already updated.
-            owner.compareAndSet(currentThread, null);
+            if (owner.compareAndSet(currentThread, null)) {
+                unparkWaiter();
+            }
         }
     }
 
     @Override
     public void lockInterruptibly() throws InterruptedException {
-        throw new UnsupportedOperationException("Unsupported operation");
+        Thread currentThread = Thread.currentThread();
+
+        if (currentThread == owner.get()) {
+            stamp.incrementAndGet();
+        }
+        else {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            if (!owner.compareAndSet(null, currentThread)) {
+                acquire(currentThread, true, false, 0L);
+            }
+            stamp.set(1);
+        }
     }
 
     @Override
@@ -85,12 +123,29 @@ public class OptimisticReentrantLock implements Lock {
 
     @Override
     public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
-        throw new UnsupportedOperationException("Unsupported operation");
+        Thread currentThread = Thread.currentThread();
+
+        if (currentThread == owner.get()) {
+            stamp.incrementAndGet();
+            return true;
+        }
+
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(time);
+        if (owner.compareAndSet(null, currentThread) || acquire(currentThread, true, true, deadline)) {
+            stamp.set(1);
+            return true;
+        }
+
+        return false;
     }
 
     @Override
     public Condition newCondition() {
-        throw new UnsupportedOperationException("Unsupported operation");
+        return new ConditionObject();
     }
 
     public Thread getOwner() {
@@ -100,4 +155,243 @@ public class OptimisticReentrantLock implements Lock {
     public int getStamp() {
         return stamp.get();
     }
+
+    public LockWaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public void setWaitStrategy(LockWaitStrategy waitStrategy) {
+        if (waitStrategy == null) {
+            throw new NullPointerException("Null waitStrategy passed in");
+        }
+
+        this.waitStrategy = waitStrategy;
+    }
+
+    private void acquireUninterruptibly(Thread currentThread) {
+        try {
+            acquire(currentThread, false, false, 0L);
+        }
+        catch (InterruptedException ex) {
+            // Not thrown when acquiring uninterruptibly. The interrupt status is restored once the lock is acquired.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // Acquires the lock after the initial compareAndSet has failed. Returns false only if the deadline passes.
+    private boolean acquire(Thread currentThread, boolean interruptible, boolean timed, long deadline)
+            throws InterruptedException {
+        int attempts = 0;
+
+        while (!owner.compareAndSet(null, currentThread)) {
+            if (timed && deadline - System.nanoTime() <= 0L) {
+                return false;
+            }
+
+            if (waitStrategy == SPIN || attempts < MAX_SPINS) {
+                attempts++;
+            }
+            else if (attempts < MAX_YIELDS) {
+                attempts++;
+                Thread.yield();
+            }
+            else {
+                return park(currentThread, interruptible, timed, deadline);
+            }
+
+            if (interruptible && Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
+        return true;
+    }
+
+    private boolean park(Thread currentThread, boolean interruptible, boolean timed, long deadline)
+            throws InterruptedException {
+        boolean acquired = false;
+        boolean interrupted = false;
+
+        // The waiter is enqueued before the owner is checked again. So, either the compareAndSet below observes the lock
+        // being released or the releasing thread observes this waiter and unparks it.
+        waiters.add(currentThread);
+        try {
+            while (!(acquired = owner.compareAndSet(null, currentThread))) {
+                if (!timed) {
+                    LockSupport.park(this);
+                }
+                else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0L) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+
+                if (Thread.interrupted()) {
+                    interrupted = true;
+                    if (interruptible) {
+                        break;
+                    }
+                }
+            }
+        }
+        finally {
+            waiters.remove(currentThread);
+
+            if (!acquired && owner.get() == null) {
+                // This waiter may have consumed the wake-up that was meant for the next one.
+                unparkWaiter();
+            }
+        }
+
+        if (interrupted) {
+            if (interruptible && !acquired) {
+                throw new InterruptedException();
+            }
+            currentThread.interrupt();
+        }
+
+        return acquired;
+    }
+
+    private void unparkWaiter() {
+        Thread waiter = waiters.peek();
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    private final class ConditionObject implements Condition {
+        private final Queue<ConditionWaiter> conditionWaiters;
+
+        ConditionObject() {
+            this.conditionWaiters = new ConcurrentLinkedQueue<ConditionWaiter>();
+        }
+
+        @Override
+        public void await() throws InterruptedException {
+            await(true, false, 0L);
+        }
+
+        @Override
+        public void awaitUninterruptibly() {
+            try {
+                await(false, false, 0L);
+            }
+            catch (InterruptedException ex) {
+                // Not thrown when waiting uninterruptibly.
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public long awaitNanos(long nanosTimeout) throws InterruptedException {
+            long deadline = System.nanoTime() + nanosTimeout;
+            await(true, true, deadline);
+            return deadline - System.nanoTime();
+        }
+
+        @Override
+        public boolean await(long time, TimeUnit unit) throws InterruptedException {
+            return awaitNanos(unit.toNanos(time)) > 0L;
+        }
+
+        @Override
+        public boolean awaitUntil(Date deadline) throws InterruptedException {
+            return awaitNanos(TimeUnit.MILLISECONDS.toNanos(deadline.getTime() - System.currentTimeMillis())) > 0L;
+        }
+
+        @Override
+        public void signal() {
+            ensureOwner();
+
+            ConditionWaiter waiter = conditionWaiters.poll();
+            if (waiter != null) {
+                waiter.signal();
+            }
+        }
+
+        @Override
+        public void signalAll() {
+            ensureOwner();
+
+            ConditionWaiter waiter;
+            while ((waiter = conditionWaiters.poll()) != null) {
+                waiter.signal();
+            }
+        }
+
+        private void await(boolean interruptible, boolean timed, long deadline) throws InterruptedException {
+            ensureOwner();
+
+            if (interruptible && Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            Thread currentThread = Thread.currentThread();
+            ConditionWaiter waiter = new ConditionWaiter(currentThread);
+            conditionWaiters.add(waiter);
+
+            // Release the lock fully, regardless of the hold count, and restore the hold count once it is re-acquired.
+            int holds = stamp.getAndSet(0);
+            owner.set(null);
+            unparkWaiter();
+
+            boolean interrupted = false;
+            while (!waiter.signalled) {
+                if (!timed) {
+                    LockSupport.park(this);
+                }
+                else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0L) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+
+                if (Thread.interrupted()) {
+                    interrupted = true;
+                    if (interruptible) {
+                        break;
+                    }
+                }
+            }
+
+            conditionWaiters.remove(waiter);
+
+            if (!owner.compareAndSet(null, currentThread)) {
+                acquireUninterruptibly(currentThread);
+            }
+            stamp.set(holds);
+
+            if (interrupted) {
+                if (interruptible && !waiter.signalled) {
+                    throw new InterruptedException();
+                }
+                currentThread.interrupt();
+            }
+        }
+
+        private void ensureOwner() {
+            if (owner.get() != Thread.currentThread()) {
+                throw new IllegalMonitorStateException(MSG_NOT_OWNER);
+            }
+        }
+    }
+
+    private static final class ConditionWaiter {
+        private final Thread thread;
+        private volatile boolean signalled;
+
+        ConditionWaiter(Thread thread) {
+            this.thread = thread;
+        }
+
+        void signal() {
+            signalled = true;
+            LockSupport.unpark(thread);
+        }
+    }
 }
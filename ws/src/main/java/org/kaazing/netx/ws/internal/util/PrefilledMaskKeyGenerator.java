@@ -0,0 +1,87 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.util;
+
+import java.security.SecureRandom;
+import java.util.Random;
+
+import org.kaazing.netx.ws.MaskKeyGenerator;
+
+/**
+ * Hands out masking keys from a batch of random bytes that is filled by a single {@link Random#nextBytes(byte[])} call.
+ * The generator returned by {@link #forConnection()} shares the SecureRandom but owns its batch. The generator created by
+ * the public constructor may be shared, so it draws keys from a batch owned by the calling thread instead.
+ */
+public final class PrefilledMaskKeyGenerator extends MaskKeyGenerator {
+    private static final Random SHARED_RANDOM = new SecureRandom();
+
+    private final Random random;
+    private final int batchSize;
+    private final byte[] batch;
+    private final ThreadLocal<PrefilledMaskKeyGenerator> threadGenerators;
+
+    private int batchOffset;
+
+    public PrefilledMaskKeyGenerator(final int batchSize) {
+        this.random = SHARED_RANDOM;
+        this.batchSize = batchSize;
+        this.batch = null;
+        this.threadGenerators = new ThreadLocal<PrefilledMaskKeyGenerator>() {
+            @Override
+            protected PrefilledMaskKeyGenerator initialValue() {
+                return new PrefilledMaskKeyGenerator(SHARED_RANDOM, batchSize);
+            }
+        };
+    }
+
+    // confined to a single connection or thread
+    PrefilledMaskKeyGenerator(Random random, int batchSize) {
+        this.random = random;
+        this.batchSize = batchSize;
+        this.batch = new byte[batchSize << 2];
+        this.batchOffset = batch.length;
+        this.threadGenerators = null;
+    }
+
+    @Override
+    public int nextMaskKey() {
+        if (threadGenerators != null) {
+            return threadGenerators.get().nextMaskKey();
+        }
+
+        int maskKey;
+
+        do {
+            if (batchOffset == batch.length) {
+                random.nextBytes(batch);
+                batchOffset = 0;
+            }
+
+            maskKey = (batch[batchOffset] & 0xFF) << 24 |
+                      (batch[batchOffset + 1] & 0xFF) << 16 |
+                      (batch[batchOffset + 2] & 0xFF) << 8 |
+                      (batch[batchOffset + 3] & 0xFF);
+            batchOffset += 4;
+        } while (maskKey == 0);
+
+        return maskKey;
+    }
+
+    @Override
+    public MaskKeyGenerator forConnection() {
+        return new PrefilledMaskKeyGenerator(random, batchSize);
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.util;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.kaazing.netx.ws.RoundTripTimeHistogram;
+
+/**
+ * Records round-trip times in buckets whose bounds are powers of two microseconds. Bucket 0 counts the times below one
+ * microsecond, and bucket i counts the times from 2^(i-1) up to 2^i - 1 microseconds. The last bucket also counts all the
+ * longer times. Recording does not allocate and does not take a lock.
+ */
+public final class RoundTripTimeRecorder extends RoundTripTimeHistogram {
+    public static final int BUCKET_COUNT = 40;
+
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong totalNanos;
+    private final AtomicLong minNanos;
+    private final AtomicLong maxNanos;
+    private volatile long lastNanos;
+
+    public RoundTripTimeRecorder() {
+        this.buckets = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new AtomicLong();
+        this.totalNanos = new AtomicLong();
+        this.minNanos = new AtomicLong(Long.MAX_VALUE);
+        this.maxNanos = new AtomicLong();
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+
+        buckets.incrementAndGet(bucket(NANOSECONDS.toMicros(nanos)));
+        totalNanos.addAndGet(nanos);
+        lastNanos = nanos;
+
+        long min = minNanos.get();
+        while (nanos < min && !minNanos.compareAndSet(min, nanos)) {
+            min = minNanos.get();
+        }
+
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+
+        // Counted last so that a reader that sees the count also sees the time in the other counters.
+        count.incrementAndGet();
+    }
+
+    public long getBucketCount(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    @Override
+    public long getLast(TimeUnit unit) {
+        return unit.convert(lastNanos, NANOSECONDS);
+    }
+
+    @Override
+    public long getMin(TimeUnit unit) {
+        long min = minNanos.get();
+        return (min == Long.MAX_VALUE) ? 0 : unit.convert(min, NANOSECONDS);
+    }
+
+    @Override
+    public long getMax(TimeUnit unit) {
+        return unit.convert(maxNanos.get(), NANOSECONDS);
+    }
+
+    @Override
+    public long getMean(TimeUnit unit) {
+        long n = count.get();
+        return (n == 0) ? 0 : unit.convert(totalNanos.get() / n, NANOSECONDS);
+    }
+
+    @Override
+    public long getPercentile(double percentile, TimeUnit unit) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += buckets.get(i);
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        int bucket = 0;
+        for (; bucket < BUCKET_COUNT - 1; bucket++) {
+            seen += buckets.get(bucket);
+            if (seen >= rank) {
+                break;
+            }
+        }
+
+        long maxMicros = NANOSECONDS.toMicros(maxNanos.get());
+        long upperMicros = (bucket == BUCKET_COUNT - 1) ? maxMicros : Math.min((1L << bucket) - 1, maxMicros);
+        return unit.convert(upperMicros, TimeUnit.MICROSECONDS);
+    }
+
+    static int bucket(long micros) {
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+}
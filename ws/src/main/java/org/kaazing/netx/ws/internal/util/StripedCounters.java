@@ -0,0 +1,89 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed set of counters that many threads add to without contending. Each counter is spread over a number of stripes, and a
+ * thread adds to the stripe picked by its id. The stripes of different threads are kept on separate cache lines, so the
+ * threads neither wait for each other nor bounce a line between their cores. Reading a counter sums its stripes, so it is
+ * more expensive than adding to it, and is not atomic with respect to concurrent additions.
+ */
+public final class StripedCounters {
+    // Longs per 128 bytes, which keeps the adjacent stripes off the cache line, and the line prefetched along with it.
+    private static final int PADDING = 16;
+    private static final int MAX_STRIPES = 64;
+
+    private final int counterCount;
+    private final int stripeLength;
+    private final int stripeMask;
+    private final AtomicLongArray cells;
+
+    public StripedCounters(int counterCount) {
+        this(counterCount, Runtime.getRuntime().availableProcessors());
+    }
+
+    public StripedCounters(int counterCount, int stripes) {
+        if (counterCount <= 0) {
+            throw new IllegalArgumentException("Counter count must be positive integer value: " + counterCount);
+        }
+
+        int stripeCount = Integer.highestOneBit(Math.max(1, Math.min(stripes, MAX_STRIPES)));
+        if (stripeCount < Math.min(stripes, MAX_STRIPES)) {
+            stripeCount <<= 1;
+        }
+
+        this.counterCount = counterCount;
+        this.stripeLength = ((counterCount + PADDING - 1) / PADDING) * PADDING;
+        this.stripeMask = stripeCount - 1;
+
+        // The leading padding keeps the first stripe off the line of the array header.
+        this.cells = new AtomicLongArray(PADDING + stripeCount * stripeLength);
+    }
+
+    public int counterCount() {
+        return counterCount;
+    }
+
+    public void add(int counter, long delta) {
+        cells.getAndAdd(PADDING + stripe() * stripeLength + counter, delta);
+    }
+
+    public void increment(int counter) {
+        add(counter, 1);
+    }
+
+    public long sum(int counter) {
+        long sum = 0;
+        for (int i = PADDING + counter; i < cells.length(); i += stripeLength) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+    private int stripe() {
+        return threadStripe(stripeMask);
+    }
+
+    static int threadStripe(int stripeMask) {
+        long id = Thread.currentThread().getId();
+
+        // Thread ids are sequential, so spread them before masking.
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & stripeMask;
+    }
+}
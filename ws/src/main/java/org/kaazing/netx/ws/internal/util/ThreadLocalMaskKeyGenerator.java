@@ -0,0 +1,42 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.util;
+
+import java.security.SecureRandom;
+
+import org.kaazing.netx.ws.MaskKeyGenerator;
+
+/**
+ * Hands out masking keys from a batch owned by the calling thread. Each thread fills its batch from its own SecureRandom,
+ * so threads never contend with one another. Shared by all connections.
+ */
+public final class ThreadLocalMaskKeyGenerator extends MaskKeyGenerator {
+    private final ThreadLocal<PrefilledMaskKeyGenerator> generators;
+
+    public ThreadLocalMaskKeyGenerator(final int batchSize) {
+        this.generators = new ThreadLocal<PrefilledMaskKeyGenerator>() {
+            @Override
+            protected PrefilledMaskKeyGenerator initialValue() {
+                return new PrefilledMaskKeyGenerator(new SecureRandom(), batchSize);
+            }
+        };
+    }
+
+    @Override
+    public int nextMaskKey() {
+        return generators.get().nextMaskKey();
+    }
+}
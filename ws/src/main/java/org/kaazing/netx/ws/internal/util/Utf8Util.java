@@ -18,6 +18,7 @@ package org.kaazing.netx.ws.internal.util;
 import static java.lang.Character.charCount;
 import static java.lang.Character.codePointAt;
 import static java.lang.String.format;
+import static java.util.Arrays.fill;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -25,21 +26,105 @@ import java.nio.ByteBuffer;
 public final class Utf8Util {
     public static final int INVALID_UTF8 = -1;
 
+    /**
+     * Validation state of {@link #validateUTF8(int, ByteBuffer, int, int)} when the bytes seen so far end on a character
+     * boundary. It is also the state to start validating a new message with.
+     */
+    public static final int UTF8_ACCEPT = 0;
+
+    /**
+     * Validation state of {@link #validateUTF8(int, ByteBuffer, int, int)} once an invalid byte sequence has been seen.
+     */
+    public static final int UTF8_REJECT = 12;
+
     private static final String MSG_INVALID_CODEPOINT = "Invalid UTF-16 codepoint %d";
 
+    private static final long ASCII_MASK = 0x8080808080808080L;
+
+    // Character class of each byte value. The classes distinguish the continuation byte ranges that are only allowed after
+    // 0xE0, 0xED, 0xF0 and 0xF4 so that overlong encodings, surrogates and code points above 0x10FFFF are rejected.
+    private static final byte[] UTF8_CLASSES = new byte[256];
+
+    // Next state indexed by state + character class. States are multiples of 12 so that no multiplication is needed.
+    private static final byte[] UTF8_TRANSITIONS = {
+         0, 12, 24, 36, 60, 96, 84, 12, 12, 12, 48, 72, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12,
+        12,  0, 12, 12, 12, 12, 12,  0, 12,  0, 12, 12, 12, 24, 12, 12, 12, 12, 12, 24, 12, 24, 12, 12,
+        12, 12, 12, 12, 12, 12, 12, 24, 12, 12, 12, 12, 12, 24, 12, 12, 12, 12, 12, 12, 12, 24, 12, 12,
+        12, 12, 12, 12, 12, 12, 12, 36, 12, 36, 12, 12, 12, 36, 12, 12, 12, 12, 12, 36, 12, 36, 12, 12,
+        12, 36, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12
+    };
+
+    static {
+        fill(UTF8_CLASSES, 0x80, 0x90, (byte) 1);
+        fill(UTF8_CLASSES, 0x90, 0xa0, (byte) 9);
+        fill(UTF8_CLASSES, 0xa0, 0xc0, (byte) 7);
+        fill(UTF8_CLASSES, 0xc0, 0xc2, (byte) 8);
+        fill(UTF8_CLASSES, 0xc2, 0xe0, (byte) 2);
+        fill(UTF8_CLASSES, 0xe0, 0xe1, (byte) 10);
+        fill(UTF8_CLASSES, 0xe1, 0xf0, (byte) 3);
+        fill(UTF8_CLASSES, 0xed, 0xee, (byte) 4);
+        fill(UTF8_CLASSES, 0xf0, 0xf1, (byte) 11);
+        fill(UTF8_CLASSES, 0xf1, 0xf4, (byte) 6);
+        fill(UTF8_CLASSES, 0xf4, 0xf5, (byte) 5);
+        fill(UTF8_CLASSES, 0xf5, 0x100, (byte) 8);
+    }
+
     private Utf8Util() {
     }
 
     public static int byteCountUTF8(char[] cbuf, int offset, int length) throws IOException {
+        int limit = offset + length;
         int count = 0;
-        while (offset < length) {
-            int codePoint = codePointAt(cbuf, offset);
+        while (offset < limit) {
+            char ch = cbuf[offset];
+            if (ch < 0x80) {
+                count++;
+                offset++;
+                continue;
+            }
+
+            int codePoint = codePointAt(cbuf, offset, limit);
             count += byteCountUTF8(codePoint);
             offset += charCount(codePoint);
         }
         return count;
     }
 
+    /**
+     * Counts the bytes of the UTF-8 encoding of the specified chars without encoding them. Unlike the char[] variant, an
+     * unpaired surrogate is reported here rather than by the encoding that follows.
+     *
+     * @param text      the text to be measured
+     * @param offset    index of the first char to be measured
+     * @param length    the number of chars to be measured
+     * @return the number of bytes in the UTF-8 encoding of the chars
+     * @throws IOException if the chars contain an unpaired surrogate
+     */
+    public static int byteCountUTF8(CharSequence text, int offset, int length) throws IOException {
+        int limit = offset + length;
+        int count = 0;
+        while (offset < limit) {
+            char ch = text.charAt(offset++);
+            if (ch < 0x80) {
+                count++;
+            }
+            else if (ch < 0x800) {
+                count += 2;
+            }
+            else if (!isSurrogate(ch)) {
+                count += 3;
+            }
+            else if (Character.isHighSurrogate(ch) && (offset < limit) && Character.isLowSurrogate(text.charAt(offset))) {
+                count += 4;
+                offset++;
+            }
+            else {
+                throw new IOException(format(MSG_INVALID_CODEPOINT, (int) ch));
+            }
+        }
+        return count;
+    }
+
     public static int byteCountUTF8(int codePoint) throws IOException {
         if ((codePoint | 0x7f) == 0x7f) {
             return 1;
@@ -112,29 +197,54 @@ public final class Utf8Util {
     }
 
     public static boolean validBytesUTF8(byte[] input) {
-        for (int index = 0; index < input.length;) {
-            byte leadingByte = input[index++];
-            if ((leadingByte & 0xc0) == 0x80) {
-                return false;
+        return validateUTF8(UTF8_ACCEPT, ByteBuffer.wrap(input), 0, input.length) == UTF8_ACCEPT;
+    }
+
+    /**
+     * Incrementally validates UTF-8 bytes. The validation state returned for one chunk of a message is passed in when
+     * validating the next chunk, so a character split across WebSocket frames is validated without scanning any byte twice.
+     * Runs of ASCII bytes are skipped eight bytes at a time.
+     *
+     * @param state     {@link #UTF8_ACCEPT} for the first chunk of a message, otherwise the state returned for the
+     *                  previous chunk
+     * @param buffer    the buffer containing the bytes to be validated
+     * @param offset    index of the first byte to be validated
+     * @param length    the number of bytes to be validated
+     * @return {@link #UTF8_ACCEPT} if the bytes end on a character boundary, {@link #UTF8_REJECT} if the bytes are not valid
+     *         UTF-8, or else a state indicating that the last character continues in the next chunk
+     */
+    public static int validateUTF8(int state, ByteBuffer buffer, int offset, int length) {
+        int index = offset;
+        int limit = offset + length;
+
+        while (index < limit) {
+            if (state == UTF8_ACCEPT) {
+                while ((index + 8 <= limit) && ((buffer.getLong(index) & ASCII_MASK) == 0)) {
+                    index += 8;
+                }
             }
-            int remaining = remainingBytesUTF8(leadingByte);
-            switch (remaining) {
-            case 0:
-                break;
-            default:
-                while (remaining-- > 0) {
-                    if ((input[index++] & 0xc0) != 0x80) {
-                        return false;
-                    }
+
+            int wordLimit = Math.min(index + 8, limit);
+            while (index < wordLimit) {
+                state = UTF8_TRANSITIONS[state + UTF8_CLASSES[buffer.get(index++) & 0xff]];
+                if (state == UTF8_REJECT) {
+                    return UTF8_REJECT;
                 }
             }
         }
 
-        return true;
+        return state;
     }
 
     public static int validateUTF8(ByteBuffer buffer, int offset, int length, ErrorHandler errorHandler) {
         for (int index = 0; index < length; index++) {
+            while ((index + 8 <= length) && ((buffer.getLong(offset + index) & ASCII_MASK) == 0)) {
+                index += 8;
+            }
+            if (index == length) {
+                break;
+            }
+
             byte leadingByte = buffer.get(offset + index);
             final int expectedLen;
             int codePoint;
@@ -195,25 +305,10 @@ public final class Utf8Util {
     }
 
     public static boolean validBytesUTF8(ByteBuffer buf, int offset, int limit) {
-        for (int index = offset; index < limit;) {
-            byte leadingByte = buf.get(index++);
-            if ((leadingByte & 0xc0) == 0x80) {
-                return false;
-            }
-            int remaining = remainingBytesUTF8(leadingByte);
-            switch (remaining) {
-            case 0:
-                break;
-            default:
-                while (remaining-- > 0) {
-                    if ((buf.get(index++) & 0xc0) != 0x80) {
-                        return false;
-                    }
-                }
-            }
+        if (limit <= offset) {
+            return true;
         }
-
-        return true;
+        return validateUTF8(UTF8_ACCEPT, buf, offset, limit - offset) == UTF8_ACCEPT;
     }
 
     /**
@@ -229,8 +324,9 @@ public final class Utf8Util {
      */
     public static int charstoUTF8Bytes(char[] srcBuf, int srcOffset, int srcLength, ByteBuffer dest, int destOffset) {
         int destMark = destOffset;
+        int srcLimit = srcOffset + srcLength;
 
-        for (int i = srcOffset; i < srcLength;) {
+        for (int i = srcOffset; i < srcLimit;) {
             char ch = srcBuf[i];
 
             if (ch < 0x0080) {
@@ -247,8 +343,8 @@ public final class Utf8Util {
                 dest.put(destOffset++, (byte) (0x80 | ((ch >> 0) & 0x3F)));
             }
             else if ((ch >= Character.MIN_SURROGATE) && (ch <= Character.MAX_SURROGATE)) {  // Surrogate pair
-                if (i == srcBuf.length) {
-                    throw new IllegalStateException(format(MSG_INVALID_CODEPOINT, ch));
+                if (i + 1 == srcLimit) {
+                    throw new IllegalStateException(format(MSG_INVALID_CODEPOINT, (int) ch));
                 }
 
                 char ch1 = ch;
@@ -275,4 +371,120 @@ public final class Utf8Util {
 
         return destOffset - destMark;
     }
+
+    /**
+     * Encodes the specified chars as UTF-8 straight into the specified byte[], such as the payload of an outgoing frame. Runs
+     * of ASCII chars are copied by a tight loop. The byte[] must have room for {@link #byteCountUTF8(char[], int, int)} bytes.
+     *
+     * @param srcBuf         the source char[] to be encoded as UTF-8 byte sequence
+     * @param srcOffset      offset in the char[] from where the conversion to UTF-8 should begin
+     * @param srcLength      the number of chars to be encoded as UTF-8 bytes
+     * @param dest           the destination byte[]
+     * @param destOffset     offset in the byte[] starting where the encoded UTF-8 bytes should be copied
+     * @return the number of bytes encoded
+     */
+    public static int charstoUTF8Bytes(char[] srcBuf, int srcOffset, int srcLength, byte[] dest, int destOffset) {
+        int destMark = destOffset;
+        int srcLimit = srcOffset + srcLength;
+        int i = srcOffset;
+
+        while (i < srcLimit) {
+            char ch = srcBuf[i++];
+
+            if (ch < 0x80) {
+                dest[destOffset++] = (byte) ch;
+                continue;
+            }
+
+            if (Character.isHighSurrogate(ch) && (i < srcLimit) && Character.isLowSurrogate(srcBuf[i])) {
+                destOffset += codePointToUTF8Bytes(Character.toCodePoint(ch, srcBuf[i++]), dest, destOffset);
+            }
+            else {
+                destOffset += charToUTF8Bytes(ch, dest, destOffset);
+            }
+        }
+
+        return destOffset - destMark;
+    }
+
+    /**
+     * Encodes the specified chars as UTF-8 straight into the specified byte[], such as the payload of an outgoing frame. Runs
+     * of ASCII chars are copied by a tight loop. The byte[] must have room for {@link #byteCountUTF8(CharSequence, int, int)}
+     * bytes.
+     *
+     * @param src            the source text to be encoded as UTF-8 byte sequence
+     * @param srcOffset      offset in the text from where the conversion to UTF-8 should begin
+     * @param srcLength      the number of chars to be encoded as UTF-8 bytes
+     * @param dest           the destination byte[]
+     * @param destOffset     offset in the byte[] starting where the encoded UTF-8 bytes should be copied
+     * @return the number of bytes encoded
+     */
+    public static int charstoUTF8Bytes(CharSequence src, int srcOffset, int srcLength, byte[] dest, int destOffset) {
+        int destMark = destOffset;
+        int srcLimit = srcOffset + srcLength;
+        int i = srcOffset;
+
+        while (i < srcLimit) {
+            char ch = src.charAt(i++);
+
+            if (ch < 0x80) {
+                dest[destOffset++] = (byte) ch;
+                continue;
+            }
+
+            if (Character.isHighSurrogate(ch) && (i < srcLimit) && Character.isLowSurrogate(src.charAt(i))) {
+                destOffset += codePointToUTF8Bytes(Character.toCodePoint(ch, src.charAt(i++)), dest, destOffset);
+            }
+            else {
+                destOffset += charToUTF8Bytes(ch, dest, destOffset);
+            }
+        }
+
+        return destOffset - destMark;
+    }
+
+    /**
+     * Encodes the specified code point as UTF-8 into the specified byte[].
+     *
+     * @param codePoint      the code point to be encoded
+     * @param dest           the destination byte[]
+     * @param destOffset     offset in the byte[] where the encoded UTF-8 bytes should be copied
+     * @return the number of bytes encoded
+     */
+    public static int codePointToUTF8Bytes(int codePoint, byte[] dest, int destOffset) {
+        if (codePoint < 0x10000) {
+            return charToUTF8Bytes((char) codePoint, dest, destOffset);
+        }
+
+        dest[destOffset] = (byte) (0xf0 | (codePoint >> 18));
+        dest[destOffset + 1] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        dest[destOffset + 2] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        dest[destOffset + 3] = (byte) (0x80 | (codePoint & 0x3f));
+        return 4;
+    }
+
+    private static int charToUTF8Bytes(char ch, byte[] dest, int destOffset) {
+        if (ch < 0x80) {
+            dest[destOffset] = (byte) ch;
+            return 1;
+        }
+        else if (ch < 0x800) {
+            dest[destOffset] = (byte) (0xc0 | (ch >> 6));
+            dest[destOffset + 1] = (byte) (0x80 | (ch & 0x3f));
+            return 2;
+        }
+        else if (isSurrogate(ch)) {
+            throw new IllegalStateException(format(MSG_INVALID_CODEPOINT, (int) ch));
+        }
+
+        dest[destOffset] = (byte) (0xe0 | (ch >> 12));
+        dest[destOffset + 1] = (byte) (0x80 | ((ch >> 6) & 0x3f));
+        dest[destOffset + 2] = (byte) (0x80 | (ch & 0x3f));
+        return 3;
+    }
+
+    // Character.isSurrogate() is not available till Java 7.
+    private static boolean isSurrogate(char ch) {
+        return (ch >= Character.MIN_SURROGATE) && (ch <= Character.MAX_SURROGATE);
+    }
 }
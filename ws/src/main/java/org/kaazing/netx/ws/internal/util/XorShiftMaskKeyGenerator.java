@@ -0,0 +1,75 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.util;
+
+import java.security.SecureRandom;
+import java.util.Random;
+
+import org.kaazing.netx.ws.MaskKeyGenerator;
+
+/**
+ * Generates masking keys with a xorshift64* stream. The generator returned by {@link #forConnection()} runs its own stream
+ * seeded from a SecureRandom, so keys are never drawn under a lock. The generator created by the public constructor may be
+ * shared, so it draws keys from a stream owned by the calling thread instead.
+ */
+public final class XorShiftMaskKeyGenerator extends MaskKeyGenerator {
+    private static final Random SEED_RANDOM = new SecureRandom();
+
+    private final ThreadLocal<XorShiftMaskKeyGenerator> threadGenerators;
+
+    private long state;
+
+    public XorShiftMaskKeyGenerator() {
+        this.threadGenerators = new ThreadLocal<XorShiftMaskKeyGenerator>() {
+            @Override
+            protected XorShiftMaskKeyGenerator initialValue() {
+                return new XorShiftMaskKeyGenerator(SEED_RANDOM.nextLong());
+            }
+        };
+    }
+
+    // confined to a single connection or thread
+    XorShiftMaskKeyGenerator(long seed) {
+        // xorshift state must never be zero
+        this.state = (seed != 0L) ? seed : 0x9E3779B97F4A7C15L;
+        this.threadGenerators = null;
+    }
+
+    @Override
+    public int nextMaskKey() {
+        if (threadGenerators != null) {
+            return threadGenerators.get().nextMaskKey();
+        }
+
+        int maskKey;
+
+        do {
+            long x = state;
+            x ^= x >>> 12;
+            x ^= x << 25;
+            x ^= x >>> 27;
+            state = x;
+            maskKey = (int) ((x * 0x2545F4914F6CDD1DL) >>> 32);
+        } while (maskKey == 0);
+
+        return maskKey;
+    }
+
+    @Override
+    public MaskKeyGenerator forConnection() {
+        return new XorShiftMaskKeyGenerator(SEED_RANDOM.nextLong());
+    }
+}
@@ -0,0 +1,1064 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.nio;
+
+import static java.lang.String.format;
+import static java.nio.channels.SelectionKey.OP_CONNECT;
+import static java.nio.channels.SelectionKey.OP_READ;
+import static java.nio.channels.SelectionKey.OP_WRITE;
+import static org.kaazing.netx.ws.WsURLConnection.WS_ABNORMAL_CLOSE;
+import static org.kaazing.netx.ws.WsURLConnection.WS_INCONSISTENT_DATA_MESSAGE_TYPE;
+import static org.kaazing.netx.ws.WsURLConnection.WS_MESSAGE_TOO_BIG;
+import static org.kaazing.netx.ws.WsURLConnection.WS_MISSING_STATUS_CODE;
+import static org.kaazing.netx.ws.WsURLConnection.WS_PROTOCOL_ERROR;
+import static org.kaazing.netx.ws.internal.WebSocketState.CLOSED;
+import static org.kaazing.netx.ws.internal.ext.flyweight.Flyweight.int64Get;
+import static org.kaazing.netx.ws.internal.ext.flyweight.Flyweight.uint16Get;
+import static org.kaazing.netx.ws.internal.ext.flyweight.Flyweight.uint8Get;
+import static org.kaazing.netx.ws.internal.util.Utf8Util.UTF8_ACCEPT;
+import static org.kaazing.netx.ws.internal.util.Utf8Util.UTF8_REJECT;
+import static org.kaazing.netx.ws.internal.util.Utf8Util.validateUTF8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Lock;
+
+import org.kaazing.netx.ws.MessageType;
+import org.kaazing.netx.ws.internal.WsURLConnectionImpl;
+import org.kaazing.netx.ws.internal.ext.WebSocketContext;
+import org.kaazing.netx.ws.internal.ext.flyweight.Frame;
+import org.kaazing.netx.ws.internal.ext.flyweight.FrameRO;
+import org.kaazing.netx.ws.internal.ext.flyweight.Opcode;
+import org.kaazing.netx.ws.internal.ext.function.WebSocketFrameConsumer;
+import org.kaazing.netx.ws.internal.io.IncomingSentinelExtension;
+import org.kaazing.netx.ws.internal.util.OptimisticReentrantLock;
+
+/**
+ * Drives a single {@link WsURLConnectionImpl} from a {@link SelectorLoop}. Incoming bytes are framed in place and handed to the
+ * connection's incoming pipeline. The connection's outgoing pipeline writes to this class as its transport, which writes to
+ * the socket directly when nothing is queued and queues the rest until the socket becomes writable.
+ * <p>
+ * Once more than the high watermark is queued, the connection refuses new messages until the queued bytes have fallen to the
+ * low watermark, at which point the handler is told that it can send again. So a handler that keeps sending to a peer that
+ * does not read is held to the high watermark plus the message in progress, rather than queueing without bound.
+ * <p>
+ * When the host has several addresses, they are raced like {@link org.kaazing.netx.http.internal.HttpSocketConnector} races
+ * them. A new attempt starts every attempt delay while the earlier ones are still pending, or as soon as one fails, and the
+ * first attempt to complete carries the connection.
+ * <p>
+ * When the handler is dispatched from an {@link Executor}, reading is suspended until the handler returns from
+ * onMessage(), so that the payload view over the read buffer stays valid and the messages are handled in order.
+ */
+final class ReactorConnection extends OutputStream implements GatheringByteChannel {
+    private static final String MSG_HANDSHAKE_TOO_LARGE = "Opening handshake response exceeds %d bytes";
+    private static final String MSG_INVALID_STATUS_LINE = "Invalid HTTP status line: %s";
+    private static final String MSG_MASKED_FRAME_FROM_SERVER = "Protocol Violation: Masked server-to-client frame";
+    private static final String MSG_MAX_MESSAGE_LENGTH = "Message length %d is greater than the maximum allowed %d";
+    private static final String MSG_UNRECOGNIZED_OPCODE = "Protocol Violation: Unrecognized opcode %d";
+    private static final String MSG_FRAGMENTED_FRAME = "Protocol Violation: Fragmented frame 0x%02X";
+    private static final String MSG_INVALID_UTF8 = "Protocol Violation: Invalid UTF-8 bytes in TEXT message";
+    private static final String MSG_DELIVERED_TO_HANDLER = "Incoming messages are delivered to the handler of the connection";
+    private static final String MSG_CLOSED_BEFORE_OPEN = "Connection closed before the opening handshake completed";
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_LENGTH = 4096;
+    private static final int MAX_HANDSHAKE_LENGTH = 8192;
+
+    private enum State {
+        CONNECTING, HANDSHAKING, OPEN, CLOSED;
+    };
+
+    private final SelectorLoop loop;
+    private final WsURLConnectionImpl connection;
+    private final WebSocketHandler handler;
+    private final Executor executor;
+    private final InetSocketAddress[] remoteAddresses;
+    private final long attemptDelayMillis;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final String websocketKey;
+    private final FrameRO incomingFrameRO;
+    private final Lock writeLock;
+    private final Runnable registerTask;
+    private final Runnable enableWriteTask;
+    private final Runnable closeTask;
+    private final Runnable abortTask;
+    private final Runnable dispatchTask;
+    private final Runnable resumeTask;
+
+    // Written by the selector thread once an attempt has connected.
+    private volatile SocketChannel channel;
+
+    // Accessed by the selector thread only.
+    private List<SocketChannel> attempts;
+    private int nextAttempt;
+    private IOException attemptFailure;
+    private State state;
+    private SelectionKey key;
+    private ByteBuffer readBuffer;
+    private ByteBuffer readBufferRO;
+    private ByteBuffer messageBuffer;
+    private MessageType messageType;
+    private int utf8State;
+    private boolean closeReceived;
+    private boolean suspended;
+    private int closeCode;
+    private String closeReason;
+
+    // Handed over to the executor along with dispatchTask.
+    private MessageType dispatchType;
+    private ByteBuffer dispatchPayload;
+
+    // Guarded by writeLock.
+    private ByteBuffer pending;
+    private boolean writeInterest;
+    private boolean writable;
+    private boolean closeRequested;
+
+    private final WebSocketFrameConsumer terminalDataFrameConsumer = new WebSocketFrameConsumer() {
+        @Override
+        public void accept(WebSocketContext context, Frame frame) throws IOException {
+            Opcode opcode = frame.opcode();
+
+            switch (opcode) {
+            case BINARY:
+            case TEXT:
+                if (messageType != null) {
+                    int leadByte = uint8Get(frame.buffer(), frame.offset());
+                    connection.doFail(WS_PROTOCOL_ERROR, format(MSG_FRAGMENTED_FRAME, leadByte));
+                }
+                messageType = (opcode == Opcode.TEXT) ? MessageType.TEXT : MessageType.BINARY;
+                break;
+            case CONTINUATION:
+                if (messageType == null) {
+                    int leadByte = uint8Get(frame.buffer(), frame.offset());
+                    connection.doFail(WS_PROTOCOL_ERROR, format(MSG_FRAGMENTED_FRAME, leadByte));
+                }
+                break;
+            default:
+                connection.doFail(WS_PROTOCOL_ERROR, format(MSG_UNRECOGNIZED_OPCODE, Opcode.toInt(opcode)));
+                break;
+            }
+
+            ByteBuffer buffer = frame.buffer();
+            int payloadOffset = frame.payloadOffset();
+            int payloadLength = frame.payloadLength();
+
+            if (messageType == MessageType.TEXT) {
+                // Validated frame by frame so that the assembled message is not scanned again.
+                long validationStart = System.nanoTime();
+                utf8State = validateUTF8(utf8State, buffer, payloadOffset, payloadLength);
+                connection.getMetrics().utf8ValidationTime(System.nanoTime() - validationStart);
+                if ((utf8State == UTF8_REJECT) || (frame.fin() && (utf8State != UTF8_ACCEPT))) {
+                    utf8State = UTF8_ACCEPT;
+                    connection.doFail(WS_INCONSISTENT_DATA_MESSAGE_TYPE, MSG_INVALID_UTF8);
+                }
+            }
+
+            if (frame.fin() && (opcode != Opcode.CONTINUATION)) {
+                // The message fits in a single frame, so it is delivered without copying.
+                deliverMessage(buffer, payloadOffset, payloadLength);
+            }
+            else {
+                appendToMessage(buffer, payloadOffset, payloadLength);
+
+                if (frame.fin()) {
+                    deliverMessage(messageBuffer, 0, messageBuffer.position());
+                    messageBuffer = (messageBuffer.capacity() > BUFFER_LENGTH) ? null : messageBuffer;
+                    if (messageBuffer != null) {
+                        messageBuffer.clear();
+                    }
+                }
+            }
+
+            if (frame.fin()) {
+                messageType = null;
+            }
+        }
+    };
+
+    private final WebSocketFrameConsumer terminalControlFrameConsumer = new WebSocketFrameConsumer() {
+        @Override
+        public void accept(WebSocketContext context, Frame frame) throws IOException {
+            Opcode opcode = frame.opcode();
+
+            switch (opcode) {
+            case CLOSE:
+                int payloadOffset = frame.payloadOffset();
+                int payloadLength = frame.payloadLength();
+
+                closeReceived = true;
+                closeCode = (payloadLength >= 2) ? uint16Get(frame.buffer(), payloadOffset) : WS_MISSING_STATUS_CODE;
+
+                if (payloadLength > 2) {
+                    byte[] reason = new byte[payloadLength - 2];
+                    for (int i = 0; i < reason.length; i++) {
+                        reason[i] = frame.buffer().get(payloadOffset + 2 + i);
+                    }
+                    closeReason = new String(reason, UTF_8);
+                }
+
+                connection.sendCloseIfNecessary(frame);
+                loop.execute(closeTask);
+                break;
+            case PING:
+                connection.sendPong(frame);
+                break;
+            case PONG:
+                break;
+            default:
+                connection.doFail(WS_PROTOCOL_ERROR, format(MSG_UNRECOGNIZED_OPCODE, Opcode.toInt(opcode)));
+                break;
+            }
+        }
+    };
+
+    ReactorConnection(
+            SelectorLoop loop,
+            WsURLConnectionImpl connection,
+            WebSocketHandler handler,
+            Executor executor,
+            InetSocketAddress[] remoteAddresses,
+            long attemptDelayMillis,
+            int lowWatermark,
+            int highWatermark) {
+        this.loop = loop;
+        this.connection = connection;
+        this.handler = handler;
+        this.executor = executor;
+        this.remoteAddresses = remoteAddresses;
+        this.attemptDelayMillis = attemptDelayMillis;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.websocketKey = connection.newWebSocketKey();
+        this.incomingFrameRO = new FrameRO();
+        this.writeLock = new OptimisticReentrantLock(connection.getLockWaitStrategy());
+        this.state = State.CONNECTING;
+        this.closeCode = WS_ABNORMAL_CLOSE;
+        this.writable = true;
+
+        this.registerTask = new Runnable() {
+            @Override
+            public void run() {
+                register();
+            }
+        };
+
+        this.enableWriteTask = new Runnable() {
+            @Override
+            public void run() {
+                if (key != null && key.isValid()) {
+                    key.interestOps(key.interestOps() | OP_WRITE);
+                }
+            }
+        };
+
+        this.closeTask = new Runnable() {
+            @Override
+            public void run() {
+                onOutputClosed();
+            }
+        };
+
+        this.abortTask = new Runnable() {
+            @Override
+            public void run() {
+                closeChannel();
+            }
+        };
+
+        this.dispatchTask = new Runnable() {
+            @Override
+            public void run() {
+                dispatchMessage();
+            }
+        };
+
+        this.resumeTask = new Runnable() {
+            @Override
+            public void run() {
+                resume();
+            }
+        };
+
+        connection.setTransport(new ReactorInputStream(), this);
+    }
+
+    void connect() {
+        loop.execute(registerTask);
+    }
+
+    void handle(SelectionKey readyKey) {
+        int readyOps = readyKey.readyOps();
+
+        try {
+            if ((readyOps & OP_CONNECT) != 0) {
+                try {
+                    ((SocketChannel) readyKey.channel()).finishConnect();
+                }
+                catch (IOException e) {
+                    onAttemptFailed(readyKey, e);
+                    return;
+                }
+
+                onConnected(readyKey);
+            }
+
+            if ((state != State.CLOSED) && ((readyOps & OP_WRITE) != 0)) {
+                flushPending();
+            }
+
+            if ((state != State.CLOSED) && ((readyOps & OP_READ) != 0)) {
+                read();
+            }
+        }
+        catch (IOException e) {
+            fail(e);
+        }
+        catch (RuntimeException e) {
+            fail(new IOException(e));
+        }
+    }
+
+    void abort(IOException cause) {
+        if (cause != null) {
+            fail(cause);
+        }
+        else {
+            closeChannel();
+        }
+    }
+
+    // ----------------------- GatheringByteChannel Methods ---------------------
+
+    @Override
+    public boolean isOpen() {
+        try {
+            writeLock.lock();
+            return !closeRequested;
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return (int) write(new ByteBuffer[] { src }, 0, 1);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        try {
+            writeLock.lock();
+
+            if (closeRequested) {
+                throw new ClosedChannelException();
+            }
+
+            long bytesWritten = 0;
+            for (int i = offset; i < offset + length; i++) {
+                bytesWritten += srcs[i].remaining();
+            }
+
+            if (pending == null || pending.position() == 0) {
+                // Nothing is queued, so the bytes can go straight to the socket without breaking the order.
+                channel.write(srcs, offset, length);
+            }
+
+            for (int i = offset; i < offset + length; i++) {
+                if (srcs[i].hasRemaining()) {
+                    enqueue(srcs[i]);
+                }
+            }
+
+            if (writable && (pending != null) && (pending.position() > highWatermark)) {
+                writable = false;
+                connection.setTransportWritable(false);
+            }
+
+            return bytesWritten;
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    // ----------------------- OutputStream Methods ----------------------------
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] buf, int offset, int length) throws IOException {
+        write(ByteBuffer.wrap(buf, offset, length));
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // The queued bytes are written by the selector thread as soon as the socket becomes writable.
+    }
+
+    @Override
+    public void close() {
+        if ((connection.getInputState() == CLOSED) && !closeReceived) {
+            // The connection was abandoned without the CLOSE handshake, such as when the server stopped responding to PING
+            // frames. The queued bytes may never be written, so they are dropped.
+            loop.execute(abortTask);
+            return;
+        }
+
+        try {
+            writeLock.lock();
+
+            if (closeRequested) {
+                return;
+            }
+
+            closeRequested = true;
+
+            if (pending != null && pending.position() > 0) {
+                // The socket is closed once the queued bytes have been written.
+                return;
+            }
+        }
+        finally {
+            writeLock.unlock();
+        }
+
+        // Closing from a task lets the selector thread finish processing the current frame first.
+        loop.execute(closeTask);
+    }
+
+    // ----------------------- Private Methods --------------------------------
+
+    private void register() {
+        attempts = new ArrayList<SocketChannel>(remoteAddresses.length);
+        startAttempt();
+    }
+
+    private void startAttempt() {
+        while ((state == State.CONNECTING) && (nextAttempt < remoteAddresses.length)) {
+            SocketChannel attempt = null;
+            SelectionKey attemptKey;
+            boolean connected;
+
+            try {
+                attempt = SocketChannel.open();
+                attempt.configureBlocking(false);
+                attempt.socket().setTcpNoDelay(true);
+
+                attemptKey = attempt.register(loop.selector(), 0, this);
+                attempts.add(attempt);
+
+                connected = attempt.connect(remoteAddresses[nextAttempt++]);
+            }
+            catch (IOException e) {
+                if (attempt != null) {
+                    attempts.remove(attempt);
+                    closeQuietly(attempt);
+                }
+
+                attemptFailure = (attemptFailure != null) ? attemptFailure : e;
+                continue;
+            }
+
+            if (connected) {
+                try {
+                    onConnected(attemptKey);
+                }
+                catch (IOException e) {
+                    fail(e);
+                }
+                return;
+            }
+
+            attemptKey.interestOps(OP_CONNECT);
+            scheduleNextAttempt();
+            return;
+        }
+
+        if ((state == State.CONNECTING) && attempts.isEmpty()) {
+            fail(attemptFailure);
+        }
+    }
+
+    private void scheduleNextAttempt() {
+        if (nextAttempt == remoteAddresses.length) {
+            return;
+        }
+
+        final int attempt = nextAttempt;
+        loop.schedule(new Runnable() {
+            @Override
+            public void run() {
+                // Skipped if a failed attempt has already moved on to the next address.
+                if (nextAttempt == attempt) {
+                    startAttempt();
+                }
+            }
+        }, attemptDelayMillis);
+    }
+
+    private void onAttemptFailed(SelectionKey attemptKey, IOException cause) {
+        SocketChannel attempt = (SocketChannel) attemptKey.channel();
+        attemptKey.cancel();
+        attempts.remove(attempt);
+        closeQuietly(attempt);
+
+        attemptFailure = (attemptFailure != null) ? attemptFailure : cause;
+
+        // Do not wait for the attempt delay to try the next address.
+        startAttempt();
+    }
+
+    private void onConnected(SelectionKey connectedKey) throws IOException {
+        key = connectedKey;
+        channel = (SocketChannel) connectedKey.channel();
+
+        for (SocketChannel attempt : attempts) {
+            if (attempt != channel) {
+                closeQuietly(attempt);
+            }
+        }
+        attempts = null;
+
+        state = State.HANDSHAKING;
+        readBuffer = ByteBuffer.allocate(BUFFER_LENGTH);
+        readBufferRO = readBuffer.asReadOnlyBuffer();
+        key.interestOps(OP_READ);
+
+        write(ByteBuffer.wrap(connection.encodeHandshakeRequest(websocketKey)));
+    }
+
+    private void read() throws IOException {
+        int bytesRead = channel.read(readBuffer);
+        if (bytesRead == -1) {
+            closeChannel();
+            return;
+        }
+
+        switch (state) {
+        case HANDSHAKING:
+            if (!readHandshakeResponse()) {
+                break;
+            }
+
+            // Frames may have arrived along with the handshake response.
+            readFrames();
+            break;
+        case OPEN:
+            readFrames();
+            break;
+        default:
+            break;
+        }
+    }
+
+    private boolean readHandshakeResponse() throws IOException {
+        byte[] bytes = readBuffer.array();
+        int headLength = -1;
+
+        for (int i = 3; i < readBuffer.position(); i++) {
+            if (bytes[i] == '\n' && bytes[i - 1] == '\r' && bytes[i - 2] == '\n' && bytes[i - 3] == '\r') {
+                headLength = i + 1;
+                break;
+            }
+        }
+
+        if (headLength == -1) {
+            if (!readBuffer.hasRemaining()) {
+                if (readBuffer.capacity() >= MAX_HANDSHAKE_LENGTH) {
+                    throw new IOException(format(MSG_HANDSHAKE_TOO_LARGE, MAX_HANDSHAKE_LENGTH));
+                }
+
+                growReadBuffer(MAX_HANDSHAKE_LENGTH);
+            }
+            return false;
+        }
+
+        String[] lines = new String(bytes, 0, headLength, US_ASCII).split("\r\n");
+        String[] statusLine = lines[0].split(" ", 3);
+        int responseCode;
+
+        try {
+            responseCode = Integer.parseInt(statusLine[1]);
+        }
+        catch (RuntimeException e) {
+            throw new IOException(format(MSG_INVALID_STATUS_LINE, lines[0]));
+        }
+
+        Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) {
+                String name = lines[i].substring(0, colon).trim();
+                String value = lines[i].substring(colon + 1).trim();
+                String previous = headers.get(name);
+                headers.put(name, (previous == null) ? value : previous + ", " + value);
+            }
+        }
+
+        connection.upgrade(websocketKey, responseCode, headers);
+
+        readBuffer.flip();
+        readBuffer.position(headLength);
+        readBuffer.compact();
+
+        state = State.OPEN;
+        handler.onOpen(connection);
+        return true;
+    }
+
+    private void readFrames() throws IOException {
+        readBuffer.flip();
+        processFrames();
+    }
+
+    private void processFrames() throws IOException {
+        int requiredLength = 0;
+
+        try {
+            while ((state == State.OPEN) && !closeReceived && !suspended) {
+                int offset = readBuffer.position();
+                int available = readBuffer.remaining();
+
+                if (available < 2) {
+                    break;
+                }
+
+                int lengthByte = uint8Get(readBufferRO, offset + 1);
+                if ((lengthByte & 0x80) != 0) {
+                    connection.doFail(WS_PROTOCOL_ERROR, MSG_MASKED_FRAME_FROM_SERVER);
+                }
+
+                int headerLength;
+                long payloadLength;
+                switch (lengthByte) {
+                case 126:
+                    headerLength = 4;
+                    payloadLength = (available < headerLength) ? 0 : uint16Get(readBufferRO, offset + 2);
+                    break;
+                case 127:
+                    headerLength = 10;
+                    payloadLength = (available < headerLength) ? 0 : int64Get(readBufferRO, offset + 2);
+                    break;
+                default:
+                    headerLength = 2;
+                    payloadLength = lengthByte;
+                    break;
+                }
+
+                if (available < headerLength) {
+                    break;
+                }
+
+                int maxPayloadLength = connection.getMaxFramePayloadLength();
+                if ((payloadLength < 0) || (payloadLength > maxPayloadLength)) {
+                    connection.doFail(WS_MESSAGE_TOO_BIG, format(MSG_MAX_MESSAGE_LENGTH, payloadLength, maxPayloadLength));
+                }
+
+                int frameLength = headerLength + (int) payloadLength;
+                if (available < frameLength) {
+                    requiredLength = frameLength;
+                    break;
+                }
+
+                processFrame(offset);
+                readBuffer.position(offset + frameLength);
+            }
+        }
+        finally {
+            if (!suspended) {
+                readBuffer.compact();
+            }
+        }
+
+        if (suspended) {
+            // The read buffer is left untouched until the handler has returned.
+            return;
+        }
+
+        if (requiredLength > readBuffer.capacity()) {
+            growReadBuffer(requiredLength);
+        }
+        else if ((readBuffer.position() == 0) && (readBuffer.capacity() > BUFFER_LENGTH)) {
+            // Release the space taken by a large frame once it has been processed.
+            readBuffer = ByteBuffer.allocate(BUFFER_LENGTH);
+            readBufferRO = readBuffer.asReadOnlyBuffer();
+        }
+    }
+
+    private void processFrame(int offset) throws IOException {
+        Frame frame = incomingFrameRO.wrap(readBufferRO, offset);
+        Opcode opcode = null;
+
+        try {
+            opcode = frame.opcode();
+        }
+        catch (Exception ex) {
+            int leadByte = uint8Get(readBufferRO, offset);
+            connection.doFail(WS_PROTOCOL_ERROR, format(MSG_UNRECOGNIZED_OPCODE, leadByte & 0x0F));
+        }
+
+        IncomingSentinelExtension sentinel = (IncomingSentinelExtension) connection.getIncomingContext().getSentinelExtension();
+        switch (opcode) {
+        case CLOSE:
+        case PING:
+        case PONG:
+            sentinel.setTerminalConsumer(terminalControlFrameConsumer, opcode);
+            break;
+        default:
+            sentinel.setTerminalConsumer(terminalDataFrameConsumer, opcode);
+            break;
+        }
+
+        connection.processIncomingFrame(frame);
+    }
+
+    private void deliverMessage(ByteBuffer buffer, int offset, int length) throws IOException {
+        ByteBuffer payload = buffer.asReadOnlyBuffer();
+        payload.limit(offset + length);
+        payload.position(offset);
+        payload = payload.slice();
+
+        if (executor == null) {
+            handler.onMessage(connection, messageType, payload);
+            return;
+        }
+
+        suspended = true;
+        key.interestOps(key.interestOps() & ~OP_READ);
+
+        dispatchType = messageType;
+        dispatchPayload = payload;
+        executor.execute(dispatchTask);
+    }
+
+    private void dispatchMessage() {
+        ByteBuffer payload = dispatchPayload;
+        dispatchPayload = null;
+
+        try {
+            handler.onMessage(connection, dispatchType, payload);
+        }
+        catch (final IOException e) {
+            loop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    fail(e);
+                }
+            });
+        }
+        catch (final RuntimeException e) {
+            loop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    fail(new IOException(e));
+                }
+            });
+        }
+        finally {
+            loop.execute(resumeTask);
+        }
+    }
+
+    private void resume() {
+        if (state != State.OPEN) {
+            return;
+        }
+
+        suspended = false;
+
+        try {
+            processFrames();
+
+            if (!suspended && (state == State.OPEN)) {
+                key.interestOps(key.interestOps() | OP_READ);
+            }
+        }
+        catch (IOException e) {
+            fail(e);
+        }
+        catch (RuntimeException e) {
+            fail(new IOException(e));
+        }
+    }
+
+    private void appendToMessage(ByteBuffer buffer, int offset, int length) {
+        if (messageBuffer == null) {
+            messageBuffer = ByteBuffer.allocate(Math.max(BUFFER_LENGTH, length));
+        }
+        else if (messageBuffer.remaining() < length) {
+            int capacity = Math.max(messageBuffer.capacity() << 1, messageBuffer.position() + length);
+            ByteBuffer newMessageBuffer = ByteBuffer.allocate(capacity);
+            messageBuffer.flip();
+            newMessageBuffer.put(messageBuffer);
+            messageBuffer = newMessageBuffer;
+        }
+
+        ByteBuffer payload = buffer.duplicate();
+        payload.limit(offset + length);
+        payload.position(offset);
+        messageBuffer.put(payload);
+    }
+
+    private void growReadBuffer(int capacity) {
+        ByteBuffer newReadBuffer = ByteBuffer.allocate(capacity);
+        readBuffer.flip();
+        newReadBuffer.put(readBuffer);
+        readBuffer = newReadBuffer;
+        readBufferRO = newReadBuffer.asReadOnlyBuffer();
+    }
+
+    private void enqueue(ByteBuffer src) {
+        if (pending == null) {
+            pending = ByteBuffer.allocate(Math.max(BUFFER_LENGTH, src.remaining()));
+        }
+        else if (pending.remaining() < src.remaining()) {
+            int capacity = Math.max(pending.capacity() << 1, pending.position() + src.remaining());
+            ByteBuffer newPending = ByteBuffer.allocate(capacity);
+            pending.flip();
+            newPending.put(pending);
+            pending = newPending;
+        }
+
+        pending.put(src);
+
+        if (!writeInterest) {
+            writeInterest = true;
+            if (loop.inLoop()) {
+                enableWriteTask.run();
+            }
+            else {
+                loop.execute(enableWriteTask);
+            }
+        }
+    }
+
+    private void flushPending() throws IOException {
+        boolean closeNow = false;
+        boolean notifyWritable = false;
+
+        try {
+            writeLock.lock();
+
+            if (pending != null) {
+                pending.flip();
+                channel.write(pending);
+                pending.compact();
+
+                if (!writable && (pending.position() <= lowWatermark)) {
+                    writable = true;
+                    connection.setTransportWritable(true);
+                    notifyWritable = true;
+                }
+
+                if ((pending.position() == 0) && (pending.capacity() > BUFFER_LENGTH)) {
+                    pending = null;
+                }
+            }
+
+            if (pending == null || pending.position() == 0) {
+                writeInterest = false;
+                key.interestOps(key.interestOps() & ~OP_WRITE);
+                closeNow = closeRequested;
+            }
+        }
+        finally {
+            writeLock.unlock();
+        }
+
+        if (closeNow) {
+            onOutputClosed();
+        }
+        else if (notifyWritable) {
+            notifyWritable();
+        }
+    }
+
+    private void onOutputClosed() {
+        if (closeReceived || (state != State.OPEN)) {
+            closeChannel();
+            return;
+        }
+
+        try {
+            // Keep reading until the server answers the CLOSE frame or closes the connection.
+            channel.socket().shutdownOutput();
+        }
+        catch (IOException e) {
+            closeChannel();
+        }
+    }
+
+    private void fail(IOException exception) {
+        if (state == State.CLOSED) {
+            return;
+        }
+
+        if (channel != null) {
+            try {
+                // Give a CLOSE frame that was queued while failing a chance to reach the server.
+                flushPending();
+            }
+            catch (IOException e) {
+                // ignore
+            }
+            catch (RuntimeException e) {
+                // ignore
+            }
+        }
+
+        closeChannel(exception);
+    }
+
+    private void closeChannel() {
+        closeChannel(null);
+    }
+
+    private void closeChannel(IOException cause) {
+        if (state == State.CLOSED) {
+            return;
+        }
+
+        // The handler learns why the opening handshake did not complete before it is told that the connection closed.
+        if ((cause == null) && (state != State.OPEN)) {
+            cause = new IOException(MSG_CLOSED_BEFORE_OPEN);
+        }
+
+        state = State.CLOSED;
+
+        if (key != null) {
+            key.cancel();
+        }
+
+        if (attempts != null) {
+            for (SocketChannel attempt : attempts) {
+                closeQuietly(attempt);
+            }
+            attempts = null;
+        }
+
+        if (channel != null) {
+            closeQuietly(channel);
+        }
+
+        try {
+            writeLock.lock();
+            closeRequested = true;
+            pending = null;
+        }
+        finally {
+            writeLock.unlock();
+        }
+
+        // Closed before notifying, so that the connection can be reset once the handler learns that the handshake failed.
+        connection.setInputState(CLOSED);
+        connection.setOutputState(CLOSED);
+        connection.releaseExtensions();
+
+        if (cause != null) {
+            notifyError(cause);
+        }
+        notifyClose(closeCode, closeReason);
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private void notifyError(final IOException exception) {
+        notify(new Runnable() {
+            @Override
+            public void run() {
+                handler.onError(connection, exception);
+            }
+        });
+    }
+
+    private void notifyWritable() {
+        notify(new Runnable() {
+            @Override
+            public void run() {
+                handler.onWritable(connection);
+            }
+        });
+    }
+
+    private void notifyClose(final int code, final String reason) {
+        notify(new Runnable() {
+            @Override
+            public void run() {
+                handler.onClose(connection, code, reason);
+            }
+        });
+    }
+
+    private void notify(Runnable notification) {
+        if (executor != null) {
+            try {
+                executor.execute(notification);
+                return;
+            }
+            catch (RejectedExecutionException e) {
+                // The executor has been shut down, so notify from the selector thread instead.
+            }
+        }
+
+        try {
+            notification.run();
+        }
+        catch (RuntimeException e) {
+            // ignore, the connection is being closed anyway
+        }
+    }
+
+    private static final class ReactorInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            throw new IOException(MSG_DELIVERED_TO_HANDLER);
+        }
+    }
+}
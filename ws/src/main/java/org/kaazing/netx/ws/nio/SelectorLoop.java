@@ -0,0 +1,177 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.nio;
+
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+final class SelectorLoop implements Runnable {
+    private static final String CLASS_NAME = SelectorLoop.class.getName();
+    private static final Logger LOG = Logger.getLogger(CLASS_NAME);
+
+    private static final String MSG_SELECTOR_FAILED = "Selector of %s failed, aborting %d connection(s)";
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks;
+    private final Thread thread;
+
+    // Accessed by the selector thread only.
+    private final PriorityQueue<ScheduledTask> scheduledTasks;
+
+    private volatile boolean closed;
+
+    SelectorLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<Runnable>();
+        this.scheduledTasks = new PriorityQueue<ScheduledTask>();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    void join() throws InterruptedException {
+        if (Thread.currentThread() != thread) {
+            thread.join();
+        }
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    void execute(Runnable task) {
+        tasks.add(task);
+
+        if (!inLoop()) {
+            selector.wakeup();
+        }
+    }
+
+    // Must be invoked by the selector thread.
+    void schedule(Runnable task, long delayMillis) {
+        assert inLoop();
+        scheduledTasks.add(new ScheduledTask(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis)));
+    }
+
+    @Override
+    public void run() {
+        IOException failure = null;
+
+        try {
+            while (!closed) {
+                runScheduledTasks();
+                runTasks();
+
+                // A wakeup() issued after runTasks() makes this select() return immediately.
+                selector.select(scheduledTimeout());
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    ReactorConnection connection = (ReactorConnection) key.attachment();
+                    if (key.isValid()) {
+                        connection.handle(key);
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            // the selector itself failed, so its connections are failed with the cause
+            LOG.log(Level.WARNING, format(MSG_SELECTOR_FAILED, thread.getName(), selector.keys().size()), e);
+            failure = e;
+        }
+        finally {
+            runTasks();
+
+            for (SelectionKey key : selector.keys()) {
+                ReactorConnection connection = (ReactorConnection) key.attachment();
+                connection.abort(failure);
+            }
+
+            try {
+                selector.close();
+            }
+            catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void runScheduledTasks() {
+        ScheduledTask scheduledTask;
+        while ((scheduledTask = scheduledTasks.peek()) != null && scheduledTask.deadline - System.nanoTime() <= 0) {
+            scheduledTasks.poll();
+            scheduledTask.task.run();
+        }
+    }
+
+    // Returns the milliseconds until the next scheduled task is due, or zero if none is scheduled.
+    private long scheduledTimeout() {
+        ScheduledTask scheduledTask = scheduledTasks.peek();
+        if (scheduledTask == null) {
+            return 0L;
+        }
+
+        return Math.max(1L, TimeUnit.NANOSECONDS.toMillis(scheduledTask.deadline - System.nanoTime()));
+    }
+
+    private static final class ScheduledTask implements Comparable<ScheduledTask> {
+        private final Runnable task;
+        private final long deadline;
+
+        ScheduledTask(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int compareTo(ScheduledTask that) {
+            long difference = this.deadline - that.deadline;
+            return (difference < 0) ? -1 : ((difference > 0) ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.kaazing.netx.ws.MessageType;
+import org.kaazing.netx.ws.WsURLConnection;
+
+/**
+ * {@link WebSocketHandler} receives the events of a {@link WsURLConnection} that is driven by a {@link WebSocketReactor}.
+ * All the methods are invoked on the selector thread that owns the connection, so they must not block. The default
+ * implementations do nothing.
+ * <p>
+ * Messages are sent by invoking {@link WsURLConnection#getMessageWriter()}, {@link WsURLConnection#getOutputStream()} or
+ * {@link WsURLConnection#getWriter()} once {@link #onOpen(WsURLConnection)} has been invoked. The frames are queued on the
+ * connection and written to the network by the selector thread, so sending never blocks on the network. Once more than
+ * the high watermark of the reactor is queued, new messages are refused: {@link org.kaazing.netx.ws.MessageWriter#offer(byte[])}
+ * returns false and the other ways of sending throw an IOException, until {@link #onWritable(WsURLConnection)} is invoked.
+ * The connection is closed by invoking {@link WsURLConnection#close()}. Incoming messages are only delivered to the handler,
+ * so the connection's InputStream, Reader and MessageReader cannot be used.
+ */
+public abstract class WebSocketHandler {
+
+    /**
+     * Invoked once the opening handshake has completed successfully.
+     *
+     * @param connection  the connection that is now open
+     */
+    public void onOpen(WsURLConnection connection) {
+    }
+
+    /**
+     * Invoked for every message received on the connection. The payload of a {@link MessageType#TEXT} message holds valid
+     * UTF-8 bytes. The payload is a read-only view that is only valid until this method returns, so it must be copied if
+     * it is needed afterwards.
+     *
+     * @param connection  the connection on which the message was received
+     * @param type        {@link MessageType#BINARY} or {@link MessageType#TEXT}
+     * @param payload     the payload of the message
+     * @throws IOException if the message cannot be processed, in which case the connection is closed
+     */
+    public void onMessage(WsURLConnection connection, MessageType type, ByteBuffer payload) throws IOException {
+    }
+
+    /**
+     * Invoked once the bytes queued on the connection have fallen to the low watermark of the reactor, after new messages were
+     * refused for exceeding the high watermark. Sending may resume.
+     *
+     * @param connection  the connection that accepts new messages again
+     */
+    public void onWritable(WsURLConnection connection) {
+    }
+
+    /**
+     * Invoked once the underlying network connection has been closed.
+     *
+     * @param connection  the connection that was closed
+     * @param code        the code received in the CLOSE frame, {@link WsURLConnection#WS_MISSING_STATUS_CODE} if it did
+     *                    not carry one or {@link WsURLConnection#WS_ABNORMAL_CLOSE} if no CLOSE frame was received
+     * @param reason      the reason received in the CLOSE frame, or null
+     */
+    public void onClose(WsURLConnection connection, int code, String reason) {
+    }
+
+    /**
+     * Invoked when the connection fails, including when it is closed before the opening handshake completes.
+     * {@link #onClose(WsURLConnection, int, String)} is invoked afterwards.
+     *
+     * @param connection  the connection that failed
+     * @param exception   the cause of the failure
+     */
+    public void onError(WsURLConnection connection, IOException exception) {
+    }
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.nio;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kaazing.netx.URLConnectionHelper;
+import org.kaazing.netx.http.internal.HttpSocketConnector;
+import org.kaazing.netx.ws.MessageType;
+import org.kaazing.netx.ws.WsURLConnection;
+import org.kaazing.netx.ws.internal.WsURLConnectionImpl;
+
+/**
+ * {@link WebSocketReactor} drives many {@link WsURLConnection}s from a small, fixed number of selector threads instead of a
+ * reader thread per connection. Each connection is assigned to one of the selector threads, which performs the opening
+ * handshake and then reads, decodes and dispatches the incoming frames to the connection's {@link WebSocketHandler}. The
+ * frames go through the same extensions and state machines as the frames of a blocking {@link WsURLConnection}.
+ * <p>
+ * Here is sample code that opens a connection using the reactor:
+ *
+ * {@code}
+ * WebSocketReactor reactor = WebSocketReactor.newInstance(4);
+ * WsURLConnection connection = (WsURLConnection) helper.openConnection(URI.create("ws://localhost:8080/echo"));
+ * connection.setMaxFramePayloadLength(16384);
+ *
+ * reactor.connect(connection, new WebSocketHandler() {
+ *     public void onOpen(WsURLConnection connection) {
+ *         ...
+ *     }
+ *
+ *     public void onMessage(WsURLConnection connection, MessageType type, ByteBuffer payload) throws IOException {
+ *         ...
+ *     }
+ * });
+ * {@code}
+ *
+ * Only the ws scheme is supported. HTTP redirects and authentication challenges are not followed during the opening handshake.
+ * <p>
+ * The host of the location is resolved by the thread that invokes connect(), so that the selector threads never wait on the
+ * name service. So connect() may block while the host name is looked up, unless the location holds an address literal or the
+ * name is cached. The host is resolved and its addresses are raced like the HTTP connections do, with the shared resolver
+ * and attempt delay of {@link HttpSocketConnector#shared()}.
+ * <p>
+ * The bytes that cannot be written to the network right away are queued on the connection. Once more than the high watermark
+ * is queued, the connection refuses new messages until the queued bytes have fallen to the low watermark, at which point
+ * {@link WebSocketHandler#onWritable(WsURLConnection)} is invoked.
+ */
+public final class WebSocketReactor implements Closeable {
+    public static final int DEFAULT_LOW_WATERMARK = 32768;
+    public static final int DEFAULT_HIGH_WATERMARK = 65536;
+
+    private static final String MSG_INVALID_SELECTOR_COUNT = "Selector count must be positive integer value: %d";
+    private static final String MSG_UNSUPPORTED_CONNECTION = "Connection not created by netx: %s";
+    private static final String MSG_UNSUPPORTED_SCHEME = "Scheme not supported by the reactor: %s";
+    private static final String MSG_REACTOR_CLOSED = "Reactor closed";
+    private static final String MSG_INVALID_WATERMARKS = "Invalid watermarks: low = %d; high = %d";
+
+    private static final int DEFAULT_HTTP_PORT = 80;
+
+    private final URLConnectionHelper helper;
+    private final HttpSocketConnector connector;
+    private final SelectorLoop[] loops;
+    private final AtomicInteger nextLoop;
+    private final int lowWatermark;
+    private final int highWatermark;
+
+    private volatile boolean closed;
+
+    private WebSocketReactor(int selectorCount, int lowWatermark, int highWatermark) throws IOException {
+        this.helper = URLConnectionHelper.newInstance();
+        this.connector = HttpSocketConnector.shared();
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.loops = new SelectorLoop[selectorCount];
+        this.nextLoop = new AtomicInteger();
+
+        for (int i = 0; i < selectorCount; i++) {
+            loops[i] = new SelectorLoop(format("netx-ws-reactor-%d", i));
+        }
+
+        for (SelectorLoop loop : loops) {
+            loop.start();
+        }
+    }
+
+    /**
+     * Creates and returns a new {@link WebSocketReactor} with a selector thread per available processor.
+     *
+     * @return WebSocketReactor
+     * @throws IOException if a selector cannot be opened
+     */
+    public static WebSocketReactor newInstance() throws IOException {
+        return newInstance(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates and returns a new {@link WebSocketReactor} with the specified number of selector threads, and the default
+     * watermarks of {@link #DEFAULT_LOW_WATERMARK} and {@link #DEFAULT_HIGH_WATERMARK} bytes.
+     *
+     * @param selectorCount  the number of selector threads
+     * @return WebSocketReactor
+     * @throws IOException if a selector cannot be opened
+     */
+    public static WebSocketReactor newInstance(int selectorCount) throws IOException {
+        return newInstance(selectorCount, DEFAULT_LOW_WATERMARK, DEFAULT_HIGH_WATERMARK);
+    }
+
+    /**
+     * Creates and returns a new {@link WebSocketReactor} with the specified number of selector threads and watermarks.
+     *
+     * @param selectorCount   the number of selector threads
+     * @param lowWatermark    number of queued bytes at or below which a connection accepts new messages again
+     * @param highWatermark   number of queued bytes above which a connection refuses new messages
+     * @return WebSocketReactor
+     * @throws IOException if a selector cannot be opened
+     */
+    public static WebSocketReactor newInstance(int selectorCount, int lowWatermark, int highWatermark) throws IOException {
+        if (selectorCount <= 0) {
+            throw new IllegalArgumentException(format(MSG_INVALID_SELECTOR_COUNT, selectorCount));
+        }
+
+        if (lowWatermark < 0 || lowWatermark > highWatermark || highWatermark == 0) {
+            throw new IllegalArgumentException(format(MSG_INVALID_WATERMARKS, lowWatermark, highWatermark));
+        }
+
+        return new WebSocketReactor(selectorCount, lowWatermark, highWatermark);
+    }
+
+    /**
+     * Creates a {@link WsURLConnection} to the specified location and connects it using this reactor.
+     *
+     * @param location  ws URI
+     * @param handler   the handler that receives the events of the connection
+     * @return WsURLConnection that is being connected
+     * @throws IOException if the connection cannot be created
+     */
+    public WsURLConnection connect(URI location, WebSocketHandler handler) throws IOException {
+        WsURLConnection connection = (WsURLConnection) helper.openConnection(location);
+        connect(connection, handler);
+        return connection;
+    }
+
+    /**
+     * Connects the specified {@link WsURLConnection} using this reactor. The connection must not have been connected yet, and
+     * it must not be reconfigured once this method has been invoked. The method returns as soon as the connection has been
+     * handed over to a selector thread. {@link WebSocketHandler#onOpen(WsURLConnection)} is invoked once the opening handshake
+     * has completed, and {@link WebSocketHandler#onError(WsURLConnection, IOException)} is invoked if it fails. The host of the
+     * location is resolved before the method returns, which may block the calling thread.
+     *
+     * @param connection  the connection that is not connected yet
+     * @param handler     the handler that receives the events of the connection
+     * @throws IOException if the reactor is closed or the host cannot be resolved
+     */
+    public void connect(WsURLConnection connection, WebSocketHandler handler) throws IOException {
+        connect(connection, handler, null);
+    }
+
+    /**
+     * Connects the specified {@link WsURLConnection} using this reactor, like {@link #connect(WsURLConnection, WebSocketHandler)}
+     * does, except that {@link WebSocketHandler#onMessage(WsURLConnection, MessageType, ByteBuffer)},
+     * {@link WebSocketHandler#onClose(WsURLConnection, int, String)} and
+     * {@link WebSocketHandler#onError(WsURLConnection, IOException)} are invoked using the specified {@link Executor}, so they
+     * may block. No more data is read from the connection until onMessage() returns, so the payload remains valid and the
+     * messages of a connection are handled one at a time.
+     *
+     * @param connection  the connection that is not connected yet
+     * @param handler     the handler that receives the events of the connection
+     * @param executor    the executor used to invoke the handler, or null to invoke it from the selector thread
+     * @throws IOException if the reactor is closed or the host cannot be resolved
+     */
+    public void connect(WsURLConnection connection, WebSocketHandler handler, Executor executor) throws IOException {
+        if (connection == null) {
+            throw new NullPointerException("Null connection passed in");
+        }
+
+        if (handler == null) {
+            throw new NullPointerException("Null handler passed in");
+        }
+
+        if (!(connection instanceof WsURLConnectionImpl)) {
+            throw new IllegalArgumentException(format(MSG_UNSUPPORTED_CONNECTION, connection.getClass().getName()));
+        }
+
+        if (closed) {
+            throw new IOException(MSG_REACTOR_CLOSED);
+        }
+
+        WsURLConnectionImpl connectionImpl = (WsURLConnectionImpl) connection;
+        URI httpLocation = connectionImpl.getHttpLocation();
+
+        if (!"http".equalsIgnoreCase(httpLocation.getScheme())) {
+            throw new IOException(format(MSG_UNSUPPORTED_SCHEME, httpLocation.getScheme()));
+        }
+
+        // Resolved on the calling thread, as a lookup must not stall the connections of a selector thread.
+        InetAddress[] addresses = connector.getResolver().resolve(httpLocation.getHost());
+        connect(connectionImpl, handler, executor, HttpSocketConnector.interleave(addresses));
+    }
+
+    // unit tests
+    void connect(WsURLConnectionImpl connection, WebSocketHandler handler, Executor executor, InetAddress[] addresses)
+            throws IOException {
+        URI httpLocation = connection.getHttpLocation();
+        int port = (httpLocation.getPort() == -1) ? DEFAULT_HTTP_PORT : httpLocation.getPort();
+        InetSocketAddress[] remoteAddresses = new InetSocketAddress[addresses.length];
+        for (int i = 0; i < addresses.length; i++) {
+            remoteAddresses[i] = new InetSocketAddress(addresses[i], port);
+        }
+
+        SelectorLoop loop = loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+        ReactorConnection reactorConnection = new ReactorConnection(loop, connection, handler, executor, remoteAddresses,
+                connector.getAttemptDelay(MILLISECONDS), lowWatermark, highWatermark);
+        reactorConnection.connect();
+    }
+
+    /**
+     * Stops the selector threads. The connections that are still open are closed without a CLOSE frame, and their handlers
+     * are notified with {@link WsURLConnection#WS_ABNORMAL_CLOSE}.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        for (SelectorLoop loop : loops) {
+            loop.close();
+        }
+
+        try {
+            for (SelectorLoop loop : loops) {
+                loop.join();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.rules.RuleChain.outerRule;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+import org.kaazing.k3po.junit.annotation.Specification;
+import org.kaazing.k3po.junit.rules.K3poRule;
+import org.kaazing.netx.http.HttpRedirectPolicy;
+
+public class MessageListenerIT {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final K3poRule k3po = new K3poRule().setScriptRoot("org/kaazing/netx/ws/listener");
+
+    private final TestRule timeout = new DisableOnDebug(new Timeout(5, SECONDS));
+
+    @Rule
+    public final TestRule chain = outerRule(k3po).around(timeout);
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    @Specification({
+    "echo.binary.and.text.messages/handshake.response.and.frames" })
+    public void shouldEchoMessagesFromListenerOnSelectorThread() throws Exception {
+        EchoListener listener = new EchoListener();
+        WebSocketFactory factory = WebSocketFactory.newInstance();
+        factory.setDefaultMessageListener(listener);
+        factory.setDefaultRedirectPolicy(HttpRedirectPolicy.NEVER);
+
+        WebSocket ws = factory.createWebSocket(URI.create("ws://localhost:8080/echo"));
+        ws.connect();
+
+        k3po.finish();
+
+        assertTrue(listener.closed.await(5, SECONDS));
+        assertEquals(2, listener.messageCount);
+        assertEquals(WsURLConnection.WS_NORMAL_CLOSE, listener.closeCode);
+        assertEquals(null, listener.exception);
+    }
+
+    @Test
+    @Specification({
+    "echo.binary.and.text.messages/handshake.response.and.frames" })
+    public void shouldEchoMessagesFromListenerOnExecutor() throws Exception {
+        EchoListener listener = new EchoListener();
+        WebSocketFactory factory = WebSocketFactory.newInstance();
+
+        factory.setDefaultRedirectPolicy(HttpRedirectPolicy.NEVER);
+
+        WebSocket ws = factory.createWebSocket(URI.create("ws://localhost:8080/echo"));
+        ws.setMessageListener(listener);
+        ws.setMessageListenerExecutor(executor);
+        ws.connect();
+
+        k3po.finish();
+
+        assertTrue(listener.closed.await(5, SECONDS));
+        assertEquals(2, listener.messageCount);
+        assertEquals(WsURLConnection.WS_NORMAL_CLOSE, listener.closeCode);
+        assertEquals(null, listener.exception);
+    }
+
+    @Test
+    @Specification({
+    "echo.binary.and.text.messages/handshake.response.and.frames" })
+    public void shouldEchoMessagesFromListenerOnDispatchThreadWhenFollowingRedirects() throws Exception {
+        EchoListener listener = new EchoListener();
+        WebSocketFactory factory = WebSocketFactory.newInstance();
+
+        WebSocket ws = factory.createWebSocket(URI.create("ws://localhost:8080/echo"));
+        ws.setMessageListener(listener);
+        ws.setMessageListenerExecutor(executor);
+        ws.connect();
+
+        k3po.finish();
+
+        assertTrue(listener.closed.await(5, SECONDS));
+        assertEquals(2, listener.messageCount);
+        assertEquals(WsURLConnection.WS_NORMAL_CLOSE, listener.closeCode);
+        assertEquals(null, listener.exception);
+    }
+
+    private static final class EchoListener extends MessageListener {
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        private volatile int messageCount;
+        private volatile int closeCode;
+        private volatile IOException exception;
+
+        @Override
+        public void onBinary(WebSocket webSocket, ByteBuffer payload) throws IOException {
+            assertTrue(payload.isReadOnly());
+
+            byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            messageCount++;
+            webSocket.getMessageWriter().writeFully(bytes);
+        }
+
+        @Override
+        public void onText(WebSocket webSocket, ByteBuffer payload) throws IOException {
+            byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            messageCount++;
+            webSocket.getMessageWriter().writeFully(new String(bytes, UTF_8).toCharArray());
+        }
+
+        @Override
+        public void onClose(WebSocket webSocket, int code, String reason) {
+            closeCode = code;
+            closed.countDown();
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, IOException exception) {
+            this.exception = exception;
+        }
+    }
+}
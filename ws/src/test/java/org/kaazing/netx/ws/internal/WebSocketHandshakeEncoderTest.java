@@ -0,0 +1,116 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.kaazing.netx.ws.internal.util.Base64Util;
+
+public class WebSocketHandshakeEncoderTest {
+
+    @Test
+    public void shouldEncodeRequestWithKeyLast() throws Exception {
+        URI location = URI.create("http://localhost:8080/echo?x=1");
+        List<String> protocols = asList("chat", "superchat");
+        List<String> extensions = asList("permessage-deflate");
+
+        byte[] request = WebSocketHandshakeEncoder.encodeRequest(location, protocols, extensions, "dGhlIHNhbXBsZSBub25jZQ==");
+
+        assertEquals("GET /echo?x=1 HTTP/1.1\r\n" +
+                     "Host: localhost:8080\r\n" +
+                     "Upgrade: websocket\r\n" +
+                     "Connection: Upgrade\r\n" +
+                     "Sec-WebSocket-Version: 13\r\n" +
+                     "Sec-WebSocket-Extensions: permessage-deflate\r\n" +
+                     "Sec-WebSocket-Protocol: chat, superchat\r\n" +
+                     "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n" +
+                     "\r\n", ascii(request));
+    }
+
+    @Test
+    public void shouldEncodeRequestWithoutPathOrOptionalHeaders() throws Exception {
+        List<String> none = Collections.emptyList();
+
+        byte[] request = WebSocketHandshakeEncoder.encodeRequest(URI.create("http://example.com"), none, none, "a2V5");
+
+        assertEquals("GET / HTTP/1.1\r\n" +
+                     "Host: example.com\r\n" +
+                     "Upgrade: websocket\r\n" +
+                     "Connection: Upgrade\r\n" +
+                     "Sec-WebSocket-Version: 13\r\n" +
+                     "Sec-WebSocket-Key: a2V5\r\n" +
+                     "\r\n", ascii(request));
+    }
+
+    @Test
+    public void shouldReuseTemplateWithDifferentKeys() throws Exception {
+        URI location = URI.create("http://localhost:8080/echo");
+        List<String> protocols = asList("chat");
+        List<String> none = Collections.emptyList();
+
+        String request1 = ascii(WebSocketHandshakeEncoder.encodeRequest(location, protocols, none, "AAAA"));
+        String request2 = ascii(WebSocketHandshakeEncoder.encodeRequest(location, protocols, none, "BBBBBBBB"));
+        String request3 = ascii(WebSocketHandshakeEncoder.encodeRequest(location, asList("other"), none, "AAAA"));
+
+        assertTrue(request1.endsWith("Sec-WebSocket-Key: AAAA\r\n\r\n"));
+        assertTrue(request2.endsWith("Sec-WebSocket-Key: BBBBBBBB\r\n\r\n"));
+        assertEquals(request1.replace("AAAA", "BBBBBBBB"), request2);
+        assertTrue(request3.contains("Sec-WebSocket-Protocol: other\r\n"));
+    }
+
+    @Test
+    public void shouldValidateAccept() throws Exception {
+        // Sample handshake from RFC 6455, section 1.3.
+        assertTrue(WebSocketHandshakeEncoder.validateAccept("dGhlIHNhbXBsZSBub25jZQ==", "s3pPLMBiTxaQ9kYGzzhZRbK+xOo="));
+        assertTrue(WebSocketHandshakeEncoder.validateAccept("dGhlIHNhbXBsZSBub25jZQ==", "s3pPLMBiTxaQ9kYGzzhZRbK+xOo="));
+    }
+
+    @Test
+    public void shouldRejectInvalidAccept() throws Exception {
+        String key = "dGhlIHNhbXBsZSBub25jZQ==";
+
+        assertFalse(WebSocketHandshakeEncoder.validateAccept(key, null));
+        assertFalse(WebSocketHandshakeEncoder.validateAccept(key, ""));
+        assertFalse(WebSocketHandshakeEncoder.validateAccept(key, "s3pPLMBiTxaQ9kYGzzhZRbK+xOo"));
+        assertFalse(WebSocketHandshakeEncoder.validateAccept(key, "s3pPLMBiTxaQ9kYGzzhZRbK+xOa="));
+        assertFalse(WebSocketHandshakeEncoder.validateAccept(key, "t3pPLMBiTxaQ9kYGzzhZRbK+xOo="));
+        assertFalse(WebSocketHandshakeEncoder.validateAccept("x3JJHMbDL1EzLkh9GBhXDw==", "s3pPLMBiTxaQ9kYGzzhZRbK+xOo="));
+    }
+
+    @Test
+    public void shouldValidateAcceptForLongKey() throws Exception {
+        String key = "dGhlIHNhbXBsZSBub25jZQ==dGhlIHNhbXBsZSBub25jZQ==";
+        String input = key + "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+        byte[] hash = MessageDigest.getInstance("SHA-1").digest(input.getBytes("US-ASCII"));
+        String accept = Base64Util.encode(ByteBuffer.wrap(hash));
+
+        assertTrue(WebSocketHandshakeEncoder.validateAccept(key, accept));
+    }
+
+    private static String ascii(byte[] bytes) throws Exception {
+        return new String(bytes, "US-ASCII");
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kaazing.netx.http.HttpRedirectPolicy;
+import org.kaazing.netx.ws.MessageListener;
+import org.kaazing.netx.ws.WebSocket;
+import org.kaazing.netx.ws.WebSocketFactory;
+import org.kaazing.netx.ws.internal.io.FrameCaptureServer;
+
+public class WebSocketImplTest {
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldDeliverMessagesFromDispatchThreadWhenFollowingRedirects() throws Exception {
+        FrameCaptureServer server = new FrameCaptureServer(true);
+        try {
+            RecordingListener listener = new RecordingListener();
+            WebSocket ws = WebSocketFactory.newInstance().createWebSocket(server.location());
+            ws.setMessageListener(listener);
+            ws.setMessageListenerExecutor(executor);
+            ws.connect();
+
+            byte[] payload = new byte[] { 0x01, 0x02, 0x03 };
+            ws.getMessageWriter().writeFully(payload);
+            assertArrayEquals(payload, listener.messages.poll(5, SECONDS));
+
+            ws.close();
+
+            assertTrue(listener.closed.await(5, SECONDS));
+            assertNull(listener.exception);
+        }
+        finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void shouldRejectMessageReaderWhenListening() throws Exception {
+        FrameCaptureServer server = new FrameCaptureServer(false);
+        try {
+            WebSocket ws = WebSocketFactory.newInstance().createWebSocket(server.location());
+            ws.setMessageListener(new RecordingListener());
+            ws.connect();
+
+            try {
+                ws.getMessageReader();
+                fail("IOException expected");
+            }
+            catch (IOException e) {
+                // expected
+            }
+            finally {
+                ws.close();
+            }
+        }
+        finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void shouldReportCauseAndAllowRetryWhenReactorConnectFails() throws Exception {
+        URI location = unusedLocation();
+
+        WebSocketFactory factory = WebSocketFactory.newInstance();
+        factory.setDefaultRedirectPolicy(HttpRedirectPolicy.NEVER);
+        factory.setDefaultMessageListener(new RecordingListener());
+
+        WebSocket ws = factory.createWebSocket(location);
+        ws.setMessageListenerExecutor(executor);
+
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                ws.connect();
+                fail("ConnectException expected");
+            }
+            catch (ConnectException e) {
+                // expected, rather than a generic failure or "Already connected"
+            }
+        }
+    }
+
+    private static URI unusedLocation() throws IOException {
+        ServerSocket socket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        int port = socket.getLocalPort();
+        socket.close();
+        return URI.create("ws://127.0.0.1:" + port + "/echo");
+    }
+
+    private static final class RecordingListener extends MessageListener {
+        private final BlockingQueue<byte[]> messages = new LinkedBlockingQueue<byte[]>();
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        private volatile IOException exception;
+
+        @Override
+        public void onBinary(WebSocket webSocket, ByteBuffer payload) throws IOException {
+            assertTrue(payload.isReadOnly());
+
+            byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            messages.add(bytes);
+        }
+
+        @Override
+        public void onClose(WebSocket webSocket, int code, String reason) {
+            closed.countDown();
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, IOException exception) {
+            this.exception = exception;
+        }
+    }
+}
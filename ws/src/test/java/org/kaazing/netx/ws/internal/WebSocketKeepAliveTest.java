@@ -0,0 +1,142 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kaazing.netx.URLConnectionHelper;
+import org.kaazing.netx.ws.KeepAlivePolicy;
+import org.kaazing.netx.ws.internal.io.FrameCaptureServer;
+
+public class WebSocketKeepAliveTest {
+    private static final byte[] PING_PAYLOAD = new byte[8];
+
+    private FrameCaptureServer server;
+    private WsURLConnectionImpl connection;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FrameCaptureServer(false);
+        connection = (WsURLConnectionImpl) URLConnectionHelper.newInstance().openConnection(server.location());
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            executor.shutdownNow();
+            connection.abort();
+        }
+        finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void shouldSkipPingWhileWriteLockIsHeld() throws Exception {
+        connection.connect();
+
+        CountDownLatch release = holdWriteLock();
+        try {
+            // The writer holding the lock may be stuck, so the PING must not wait for it.
+            assertFalse(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return connection.trySendPing(PING_PAYLOAD, 0, PING_PAYLOAD.length);
+                }
+            }).get(5, SECONDS));
+        }
+        finally {
+            release.countDown();
+        }
+
+        assertTrue(trySendPingOnceReleased());
+        assertEquals(0x09, server.nextFrame().opcode);
+    }
+
+    @Test
+    public void shouldAbortWhileWriteLockIsHeld() throws Exception {
+        connection.setKeepAlivePolicy(KeepAlivePolicy.ping(100, 200, MILLISECONDS));
+        connection.connect();
+
+        CountDownLatch release = holdWriteLock();
+        try {
+            long deadline = System.currentTimeMillis() + SECONDS.toMillis(5);
+            while (connection.getInputState() != WebSocketState.CLOSED && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+
+            assertSame(WebSocketState.CLOSED, connection.getInputState());
+            assertSame(WebSocketState.CLOSED, connection.getOutputState());
+        }
+        finally {
+            release.countDown();
+        }
+    }
+
+    // Holds the write lock of the connection from another thread, as a writer blocked on a full send buffer does.
+    private CountDownLatch holdWriteLock() throws Exception {
+        final Lock writeLock = connection.getWriteLock();
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeLock.lock();
+                try {
+                    locked.countDown();
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    // released by the tear down
+                }
+                finally {
+                    writeLock.unlock();
+                }
+            }
+        });
+
+        assertTrue(locked.await(5, SECONDS));
+        return release;
+    }
+
+    private boolean trySendPingOnceReleased() throws Exception {
+        long deadline = System.currentTimeMillis() + SECONDS.toMillis(5);
+        while (!connection.trySendPing(PING_PAYLOAD, 0, PING_PAYLOAD.length)) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,281 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.ext.deflate;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.BINARY;
+import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.CONTINUATION;
+import static org.kaazing.netx.ws.internal.ext.flyweight.Opcode.TEXT;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.kaazing.netx.ws.internal.ext.WebSocketContext;
+import org.kaazing.netx.ws.internal.ext.WebSocketExtensionSpi;
+import org.kaazing.netx.ws.internal.ext.flyweight.Frame;
+import org.kaazing.netx.ws.internal.ext.flyweight.FrameRW;
+import org.kaazing.netx.ws.internal.ext.flyweight.Opcode;
+import org.kaazing.netx.ws.internal.ext.function.WebSocketFrameConsumer;
+
+public class PerMessageDeflateExtensionTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int RSV1 = 0x04;
+
+    private final PerMessageDeflateExtensionFactory factory = new PerMessageDeflateExtensionFactory();
+
+    @Test
+    public void shouldValidateOfferWithAllParameters() throws Exception {
+        factory.validateExtension("permessage-deflate; client_max_window_bits; server_max_window_bits=10; " +
+                                  "client_no_context_takeover; server_no_context_takeover");
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectUnknownParameter() throws Exception {
+        factory.validateExtension("permessage-deflate; max_window_bits=10");
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectDuplicateParameter() throws Exception {
+        factory.validateExtension("permessage-deflate; server_no_context_takeover; server_no_context_takeover");
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectInvalidWindowBits() throws Exception {
+        factory.validateExtension("permessage-deflate; server_max_window_bits=16");
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRequireClientMaxWindowBitsValueInResponse() throws Exception {
+        factory.createExtension("permessage-deflate; client_max_window_bits");
+    }
+
+    @Test
+    public void shouldAcceptResponseAllowedByOffer() throws Exception {
+        factory.validateResponse("permessage-deflate; client_max_window_bits; server_max_window_bits=10",
+                                 "permessage-deflate; client_max_window_bits=9; server_max_window_bits=9; " +
+                                 "client_no_context_takeover; server_no_context_takeover");
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectClientMaxWindowBitsNotOffered() throws Exception {
+        factory.validateResponse("permessage-deflate", "permessage-deflate; client_max_window_bits=10");
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectClientMaxWindowBitsLargerThanOffer() throws Exception {
+        factory.validateResponse("permessage-deflate; client_max_window_bits=10",
+                                 "permessage-deflate; client_max_window_bits=12");
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectResponseWithoutOfferedServerMaxWindowBits() throws Exception {
+        factory.validateResponse("permessage-deflate; server_max_window_bits=10", "permessage-deflate");
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectServerMaxWindowBitsLargerThanOffer() throws Exception {
+        factory.validateResponse("permessage-deflate; server_max_window_bits=10",
+                                 "permessage-deflate; server_max_window_bits=11");
+    }
+
+    @Test
+    public void shouldUseReservedBit1() throws Exception {
+        assertEquals(RSV1, factory.createExtension("permessage-deflate").getReservedBits());
+    }
+
+    @Test
+    public void shouldCompressAndDecompressTextMessages() throws Exception {
+        WebSocketExtensionSpi client = factory.createExtension("permessage-deflate");
+        WebSocketExtensionSpi server = factory.createExtension("permessage-deflate");
+
+        for (int i = 0; i < 3; i++) {
+            byte[] payload = json(i);
+
+            Frame compressed = apply(client.onTextSent, frame(TEXT, true, 0, payload));
+            assertEquals(RSV1, compressed.flags());
+            assertTrue(compressed.payloadLength() < payload.length / 4);
+
+            Frame decompressed = apply(server.onTextReceived, compressed);
+            assertEquals(0, decompressed.flags());
+            assertTrue(decompressed.fin());
+            assertArrayEquals(payload, payloadOf(decompressed));
+        }
+    }
+
+    @Test
+    public void shouldCompressAndDecompressFragmentedMessage() throws Exception {
+        WebSocketExtensionSpi client = factory.createExtension("permessage-deflate; client_no_context_takeover");
+        WebSocketExtensionSpi server = factory.createExtension("permessage-deflate; server_no_context_takeover");
+        byte[] payload = json(1);
+        byte[] first = Arrays.copyOf(payload, 100);
+        byte[] rest = Arrays.copyOfRange(payload, 100, payload.length);
+
+        Frame compressed = apply(client.onBinarySent, frame(BINARY, false, 0, first));
+        assertEquals(RSV1, compressed.flags());
+        Frame decompressed = apply(server.onBinaryReceived, compressed);
+        assertFalse(decompressed.fin());
+        assertArrayEquals(first, payloadOf(decompressed));
+
+        compressed = apply(client.onContinuationSent, frame(CONTINUATION, true, 0, rest));
+        assertEquals(0, compressed.flags());
+        decompressed = apply(server.onContinuationReceived, compressed);
+        assertTrue(decompressed.fin());
+        assertArrayEquals(rest, payloadOf(decompressed));
+    }
+
+    @Test
+    public void shouldPassThroughUncompressedMessage() throws Exception {
+        WebSocketExtensionSpi server = factory.createExtension("permessage-deflate");
+        byte[] payload = "Hello".getBytes(UTF_8);
+
+        Frame received = apply(server.onTextReceived, frame(TEXT, true, 0, payload));
+        assertArrayEquals(payload, payloadOf(received));
+    }
+
+    @Test
+    public void shouldNotCompressMessageLargerThanClientWindow() throws Exception {
+        WebSocketExtensionSpi client = factory.createExtension("permessage-deflate; client_max_window_bits=9");
+
+        Frame small = apply(client.onTextSent, frame(TEXT, true, 0, Arrays.copyOf(json(1), 512)));
+        assertEquals(RSV1, small.flags());
+
+        Frame large = apply(client.onTextSent, frame(TEXT, true, 0, json(1)));
+        assertEquals(0, large.flags());
+        assertArrayEquals(json(1), payloadOf(large));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectReservedBit1OnContinuationFrame() throws Exception {
+        WebSocketExtensionSpi server = factory.createExtension("permessage-deflate");
+        apply(server.onContinuationReceived, frame(CONTINUATION, true, RSV1, new byte[] { 0x00 }));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectDecompressedPayloadLargerThanMaximum() throws Exception {
+        WebSocketExtensionSpi client = factory.createExtension("permessage-deflate");
+        WebSocketExtensionSpi server = factory.createExtension("permessage-deflate");
+
+        Frame compressed = apply(client.onBinarySent, frame(BINARY, true, 0, new byte[CapturingContext.MAX_PAYLOAD_LENGTH + 1]));
+        apply(server.onBinaryReceived, compressed);
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldEndCompressionStateWhenDisconnected() throws Exception {
+        WebSocketExtensionSpi client = factory.createExtension("permessage-deflate");
+        apply(client.onTextSent, frame(TEXT, true, 0, json(1)));
+
+        client.onDisconnected();
+        client.onDisconnected();
+
+        apply(client.onTextSent, frame(TEXT, true, 0, json(2)));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailWithIOExceptionWhenDisconnectedWhileDecompressing() throws Exception {
+        WebSocketExtensionSpi client = factory.createExtension("permessage-deflate");
+        final WebSocketExtensionSpi server = factory.createExtension("permessage-deflate");
+        Frame compressed = apply(client.onTextSent, frame(TEXT, true, 0, json(1)));
+
+        // Disconnected by another thread once the inflater has been acquired, so it is ended before it inflates the frame.
+        CapturingContext context = new CapturingContext() {
+            @Override
+            public int getMaxFramePayloadLength() {
+                server.onDisconnected();
+                return super.getMaxFramePayloadLength();
+            }
+        };
+
+        server.onTextReceived.accept(context, compressed);
+    }
+
+    private static Frame apply(WebSocketFrameConsumer hook, Frame frame) throws IOException {
+        CapturingContext context = new CapturingContext();
+        hook.accept(context, frame);
+        return context.copy();
+    }
+
+    private static Frame frame(Opcode opcode, boolean fin, int flags, byte[] payload) {
+        FrameRW frame = new FrameRW().wrap(ByteBuffer.allocate(payload.length + 10), 0);
+        frame.fin(fin);
+        frame.flags(flags);
+        frame.opcode(opcode);
+        frame.payloadPut(payload, 0, payload.length);
+        return frame;
+    }
+
+    private static byte[] payloadOf(Frame frame) {
+        byte[] payload = new byte[frame.payloadLength()];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = frame.buffer().get(frame.payloadOffset() + i);
+        }
+        return payload;
+    }
+
+    private static byte[] json(int id) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            sb.append("{\"id\":").append(id).append(",\"symbol\":\"KZNG\",\"price\":").append(100 + i).append("},");
+        }
+        return sb.toString().getBytes(UTF_8);
+    }
+
+    private static class CapturingContext extends WebSocketContext {
+        private static final int MAX_PAYLOAD_LENGTH = 8192;
+
+        private final WebSocketExtensionSpi terminal;
+        private Frame captured;
+
+        CapturingContext() {
+            super(null);
+
+            WebSocketFrameConsumer capture = new WebSocketFrameConsumer() {
+                @Override
+                public void accept(WebSocketContext context, Frame frame) {
+                    captured = frame;
+                }
+            };
+
+            this.terminal = new WebSocketExtensionSpi() { };
+            terminal.onBinaryReceived = capture;
+            terminal.onBinarySent = capture;
+            terminal.onContinuationReceived = capture;
+            terminal.onContinuationSent = capture;
+            terminal.onTextReceived = capture;
+            terminal.onTextSent = capture;
+        }
+
+        @Override
+        public WebSocketExtensionSpi nextExtension() {
+            return terminal;
+        }
+
+        @Override
+        public int getMaxFramePayloadLength() {
+            return MAX_PAYLOAD_LENGTH;
+        }
+
+        // The extension reuses its frame buffer. So, the captured frame is copied before the next one is produced.
+        Frame copy() {
+            return frame(captured.opcode(), captured.fin(), captured.flags(), payloadOf(captured));
+        }
+    }
+}
@@ -39,6 +39,20 @@ public class DataTest extends FrameTest {
     @DataPoint
     public static final Fin FIN_UNSET = Fin.UNSET;
 
+    @Theory
+    public void shouldClearFlagsWhenWrappingNewFrame(int offset, Fin fin) throws Exception {
+        FrameRW frame = new FrameRW().wrap(buffer, offset);
+        frame.fin(true);
+        frame.flags(0x07);
+        frame.opcode(TEXT);
+
+        frame.wrapNew(buffer, offset, BINARY, fin == Fin.SET);
+
+        assertEquals(Opcode.BINARY, frame.opcode());
+        assertEquals(0, frame.flags());
+        assertEquals(fin == Fin.SET, frame.fin());
+    }
+
     @Theory
     public void shouldDecodeTextWithEmptyPayload(int offset, Fin fin) throws Exception {
         FrameRW textFrame = new FrameRW().wrap(buffer, offset);
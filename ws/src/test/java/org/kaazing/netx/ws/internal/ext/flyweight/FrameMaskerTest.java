@@ -0,0 +1,134 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.ext.flyweight;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FrameMaskerTest {
+    private static final int MASK = 0x1A2B3C4D;
+
+    @Test
+    public void shouldMaskInPlaceWithLongMasker() {
+        assertMaskInPlace(new LongFrameMasker());
+    }
+
+    @Test
+    public void shouldMaskBufferWithLongMasker() {
+        assertMaskBuffer(new LongFrameMasker());
+    }
+
+    @Test
+    public void shouldMaskLittleEndianBufferWithLongMasker() {
+        byte[] payload = payload(37);
+        ByteBuffer src = ByteBuffer.wrap(payload.clone()).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer dest = ByteBuffer.allocate(37).order(ByteOrder.LITTLE_ENDIAN);
+
+        new LongFrameMasker().mask(src, 0, dest, 0, 37, MASK);
+
+        assertArrayEquals(expected(payload, 0, 37, MASK), dest.array());
+    }
+
+    @Test
+    public void shouldMaskBetweenByteOrdersWithLongMasker() {
+        byte[] payload = payload(37);
+        ByteBuffer src = ByteBuffer.wrap(payload.clone()).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer dest = ByteBuffer.allocate(37).order(ByteOrder.BIG_ENDIAN);
+
+        new LongFrameMasker().mask(src, 0, dest, 0, 37, MASK);
+
+        assertArrayEquals(expected(payload, 0, 37, MASK), dest.array());
+    }
+
+    @Test
+    public void shouldMaskReadOnlyBufferWithSelectedMasker() {
+        FrameMasker masker = FrameMasker.getInstance();
+        byte[] payload = payload(100);
+        ByteBuffer src = ByteBuffer.wrap(payload).asReadOnlyBuffer();
+        ByteBuffer dest = ByteBuffer.allocate(100);
+
+        masker.mask(src, 3, dest, 7, 90, MASK);
+
+        byte[] masked = new byte[90];
+        System.arraycopy(dest.array(), 7, masked, 0, 90);
+        assertArrayEquals(expected(payload, 3, 90, MASK), masked);
+        assertEquals(0, src.position());
+    }
+
+    @Test
+    public void shouldUnmaskWhenMaskedTwice() {
+        FrameMasker masker = FrameMasker.getInstance();
+        byte[] payload = payload(1029);
+        byte[] buf = payload.clone();
+
+        masker.mask(buf, 0, buf.length, MASK);
+        masker.mask(buf, 0, buf.length, MASK);
+
+        assertArrayEquals(payload, buf);
+    }
+
+    private static void assertMaskInPlace(FrameMasker masker) {
+        for (int offset = 0; offset < 9; offset++) {
+            for (int length = 0; length < 67; length++) {
+                byte[] payload = payload(offset + length + 5);
+                byte[] buf = payload.clone();
+
+                masker.mask(buf, offset, length, MASK);
+
+                byte[] expected = payload.clone();
+                System.arraycopy(expected(payload, offset, length, MASK), 0, expected, offset, length);
+                assertArrayEquals(expected, buf);
+            }
+        }
+    }
+
+    private static void assertMaskBuffer(FrameMasker masker) {
+        for (int offset = 0; offset < 9; offset++) {
+            for (int length = 0; length < 67; length++) {
+                byte[] payload = payload(offset + length);
+                ByteBuffer src = ByteBuffer.wrap(payload.clone());
+                ByteBuffer dest = ByteBuffer.allocate(length + 3);
+
+                masker.mask(src, offset, dest, 3, length, MASK);
+
+                byte[] masked = new byte[length];
+                System.arraycopy(dest.array(), 3, masked, 0, length);
+                assertArrayEquals(expected(payload, offset, length, MASK), masked);
+                assertArrayEquals(payload, src.array());
+            }
+        }
+    }
+
+    private static byte[] expected(byte[] payload, int offset, int length, int mask) {
+        byte[] masked = new byte[length];
+        for (int i = 0; i < length; i++) {
+            masked[i] = (byte) (payload[offset + i] ^ (mask >> (8 * (3 - (i % 4)))));
+        }
+        return masked;
+    }
+
+    private static byte[] payload(int length) {
+        byte[] payload = new byte[length];
+        new Random(length).nextBytes(payload);
+        return payload;
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.ext.recorder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RingFrameRecorderTest {
+
+    @Test
+    public void shouldRoundCapacityUpToPowerOfTwo() throws Exception {
+        assertEquals(16, new RingFrameRecorder(16).getCapacity());
+        assertEquals(128, new RingFrameRecorder(100).getCapacity());
+    }
+
+    @Test
+    public void shouldDumpRecordedFramesOldestFirst() throws Exception {
+        RingFrameRecorder recorder = new RingFrameRecorder(16);
+
+        recorder.record(7, true, 0x81, 5);
+        recorder.record(7, false, 0x42, 1000);
+        recorder.record(7, false, 0x89, 8);
+
+        String[] lines = recorder.toString().split("\n");
+
+        assertEquals(3, recorder.getRecordCount());
+        assertEquals(4, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("3 of 3 recorded frames"));
+        assertTrue(lines[1], lines[1].matches(".*ws#7 +OUT TEXT +FIN rsv=000 len=5 .*"));
+        assertTrue(lines[2], lines[2].matches(".*ws#7 +IN  BINARY +rsv=100 len=1000 .*"));
+        assertTrue(lines[3], lines[3].matches(".*ws#7 +IN  PING +FIN rsv=000 len=8 .*"));
+        assertTrue(lines[3], lines[3].endsWith(Thread.currentThread().getName()));
+    }
+
+    @Test
+    public void shouldKeepMostRecentFramesOnly() throws Exception {
+        RingFrameRecorder recorder = new RingFrameRecorder(16);
+
+        for (int i = 0; i < 40; i++) {
+            recorder.record(1, true, 0x82, i);
+        }
+
+        String trace = recorder.toString();
+
+        assertTrue(trace, trace.startsWith("16 of 40 recorded frames"));
+        assertFalse(trace, trace.contains("len=23 "));
+        assertTrue(trace, trace.contains("len=24 "));
+        assertTrue(trace, trace.contains("len=39 "));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTooSmallCapacity() throws Exception {
+        new RingFrameRecorder(8);
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.io;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.kaazing.netx.ws.internal.util.Base64Util;
+
+/**
+ * Accepts a single WebSocket connection on the loopback interface and records the frames sent by the client, with their
+ * payload unmasked. Data frames are optionally echoed back unmasked, and a CLOSE frame is always echoed back, after which
+ * the connection is closed.
+ */
+public final class FrameCaptureServer {
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final Pattern PATTERN_KEY = Pattern.compile("(?i)Sec-WebSocket-Key:\\s*(\\S+)");
+
+    public static final class CapturedFrame {
+        public final int opcode;
+        public final boolean fin;
+        public final boolean masked;
+        public final byte[] payload;
+
+        CapturedFrame(int opcode, boolean fin, boolean masked, byte[] payload) {
+            this.opcode = opcode;
+            this.fin = fin;
+            this.masked = masked;
+            this.payload = payload;
+        }
+    }
+
+    private final ServerSocket server;
+    private final boolean echo;
+    private final BlockingQueue<CapturedFrame> frames;
+    private final Thread thread;
+
+    private volatile Exception failure;
+    private volatile CountDownLatch stall;
+
+    public FrameCaptureServer(boolean echo) throws IOException {
+        this.server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        this.echo = echo;
+        this.frames = new LinkedBlockingQueue<CapturedFrame>();
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    serve();
+                }
+                catch (Exception e) {
+                    failure = e;
+                }
+            }
+        }, "FrameCaptureServer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public URI location() {
+        return URI.create("ws://127.0.0.1:" + server.getLocalPort() + "/echo");
+    }
+
+    public CapturedFrame nextFrame() throws Exception {
+        CapturedFrame frame = frames.poll(5, TimeUnit.SECONDS);
+        if (frame == null) {
+            if (failure != null) {
+                throw failure;
+            }
+            throw new IllegalStateException("No frame received");
+        }
+        return frame;
+    }
+
+    // Stops reading frames until the returned latch is counted down, so that the frames sent by the client back up.
+    public CountDownLatch stall() {
+        CountDownLatch resume = new CountDownLatch(1);
+        stall = resume;
+        return resume;
+    }
+
+    public void close() throws Exception {
+        server.close();
+        thread.join(5000);
+    }
+
+    private void serve() throws Exception {
+        Socket socket = server.accept();
+        try {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+
+            String key = readHandshakeKey(in);
+            String response = "HTTP/1.1 101 Switching Protocols\r\n" +
+                              "Upgrade: websocket\r\n" +
+                              "Connection: Upgrade\r\n" +
+                              "Sec-WebSocket-Accept: " + accept(key) + "\r\n" +
+                              "\r\n";
+            out.write(response.getBytes(US_ASCII));
+            out.flush();
+
+            while (true) {
+                CountDownLatch resume = stall;
+                if (resume != null) {
+                    resume.await();
+                    stall = null;
+                }
+
+                int b0 = in.readUnsignedByte();
+                int b1 = in.readUnsignedByte();
+                boolean fin = (b0 & 0x80) != 0;
+                int opcode = b0 & 0x0f;
+                boolean masked = (b1 & 0x80) != 0;
+                long length = b1 & 0x7f;
+                if (length == 126) {
+                    length = in.readUnsignedShort();
+                }
+                else if (length == 127) {
+                    length = in.readLong();
+                }
+
+                byte[] mask = new byte[4];
+                if (masked) {
+                    in.readFully(mask);
+                }
+
+                byte[] payload = new byte[(int) length];
+                in.readFully(payload);
+                for (int i = 0; i < payload.length; i++) {
+                    payload[i] ^= mask[i & 0x03];
+                }
+
+                frames.add(new CapturedFrame(opcode, fin, masked, payload));
+
+                if (opcode == 0x08 || echo) {
+                    out.write(encodeHeader(b0, payload.length));
+                    out.write(payload);
+                    out.flush();
+                }
+
+                if (opcode == 0x08) {
+                    break;
+                }
+            }
+        }
+        catch (EOFException e) {
+            // client went away
+        }
+        finally {
+            socket.close();
+        }
+    }
+
+    private static String readHandshakeKey(DataInputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+        while (head.length() < 4 || !"\r\n\r\n".equals(head.substring(head.length() - 4))) {
+            head.append((char) in.readUnsignedByte());
+        }
+
+        Matcher matcher = PATTERN_KEY.matcher(head);
+        if (!matcher.find()) {
+            throw new IOException("Missing Sec-WebSocket-Key");
+        }
+        return matcher.group(1);
+    }
+
+    private static String accept(String key) throws Exception {
+        MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+        byte[] digest = sha1.digest((key + WEBSOCKET_GUID).getBytes(US_ASCII));
+        return Base64Util.encode(ByteBuffer.wrap(digest));
+    }
+
+    private static byte[] encodeHeader(int b0, int length) {
+        if (length < 126) {
+            return new byte[] { (byte) b0, (byte) length };
+        }
+        else if (length < 65536) {
+            return new byte[] { (byte) b0, (byte) 126, (byte) (length >> 8), (byte) length };
+        }
+        else {
+            ByteBuffer header = ByteBuffer.allocate(10);
+            header.put((byte) b0).put((byte) 127).putLong(length);
+            return header.array();
+        }
+    }
+}
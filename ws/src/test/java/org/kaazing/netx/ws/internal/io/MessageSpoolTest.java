@@ -0,0 +1,181 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kaazing.netx.ws.MessageSpillPolicy;
+import org.kaazing.netx.ws.MessageType;
+import org.kaazing.netx.ws.ReceivedMessage;
+
+public class MessageSpoolTest {
+    private static final int MAX_PAYLOAD_LENGTH = 1 << 20;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("netx-ws-spool", "");
+        directory.delete();
+        directory.mkdir();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void shouldCollectShortMessageOnHeap() throws Exception {
+        byte[] payload = randomBytes(1000);
+        MessageSpool spool = new MessageSpool(MessageType.BINARY, MessageSpillPolicy.spillAbove(1000, directory),
+                                              MAX_PAYLOAD_LENGTH);
+
+        append(spool, payload, 300);
+        ReceivedMessage message = spool.complete();
+
+        assertEquals(MessageType.BINARY, message.getType());
+        assertEquals(1000, message.getLength());
+        assertFalse(message.isSpilled());
+        assertNull(message.getChannel());
+        assertArrayEquals(payload, toArray(message.getBuffer()));
+        assertTrue(message.getBuffer().isReadOnly());
+
+        message.close();
+    }
+
+    @Test
+    public void shouldSpillLongMessageToFile() throws Exception {
+        byte[] payload = randomBytes(100000);
+        MessageSpool spool = new MessageSpool(MessageType.TEXT, MessageSpillPolicy.spillAbove(4096, directory),
+                                              MAX_PAYLOAD_LENGTH);
+
+        append(spool, payload, 1500);
+        ReceivedMessage message = spool.complete();
+
+        assertEquals(MessageType.TEXT, message.getType());
+        assertEquals(100000, message.getLength());
+        assertTrue(message.isSpilled());
+        assertEquals(100000, message.getChannel().size());
+        assertArrayEquals(payload, toArray(message.getBuffer()));
+
+        message.close();
+
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void shouldNotSpillWithoutPolicy() throws Exception {
+        byte[] payload = randomBytes(100000);
+        MessageSpool spool = new MessageSpool(MessageType.BINARY, MessageSpillPolicy.none(), MAX_PAYLOAD_LENGTH);
+
+        append(spool, payload, 8000);
+        ReceivedMessage message = spool.complete();
+
+        assertFalse(message.isSpilled());
+        assertArrayEquals(payload, toArray(message.getBuffer()));
+    }
+
+    @Test
+    public void shouldRejectMessageLongerThanMaxPayloadLengthWithoutPolicy() throws Exception {
+        MessageSpool spool = new MessageSpool(MessageType.BINARY, MessageSpillPolicy.none(), 1000);
+        append(spool, randomBytes(1000), 300);
+
+        assertFalse(spool.fits(1));
+
+        try {
+            spool.append(ByteBuffer.wrap(new byte[1]), 0, 1);
+            fail("IOException expected");
+        }
+        catch (IOException e) {
+            // expected
+        }
+        assertEquals(1000, spool.length());
+    }
+
+    @Test
+    public void shouldSpillMessageLongerThanMaxPayloadLength() throws Exception {
+        byte[] payload = randomBytes(5000);
+        MessageSpool spool = new MessageSpool(MessageType.BINARY, MessageSpillPolicy.spillAbove(1000, directory), 1000);
+
+        append(spool, payload, 1000);
+        ReceivedMessage message = spool.complete();
+        try {
+            assertTrue(message.isSpilled());
+            assertArrayEquals(payload, toArray(message.getBuffer()));
+        }
+        finally {
+            message.close();
+        }
+    }
+
+    @Test
+    public void shouldDeleteFileWhenDiscarded() throws Exception {
+        MessageSpool spool = new MessageSpool(MessageType.BINARY, MessageSpillPolicy.spillAbove(0, directory),
+                                              MAX_PAYLOAD_LENGTH);
+
+        append(spool, randomBytes(100), 10);
+        spool.discard();
+
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectBufferOfClosedMessage() throws Exception {
+        MessageSpool spool = new MessageSpool(MessageType.BINARY, MessageSpillPolicy.none(), MAX_PAYLOAD_LENGTH);
+        append(spool, randomBytes(10), 10);
+
+        ReceivedMessage message = spool.complete();
+        message.close();
+        message.getBuffer();
+    }
+
+    private static void append(MessageSpool spool, byte[] payload, int frameLength) throws IOException {
+        // Frames are handed over as read-only views, like the flyweights of the incoming frames.
+        ByteBuffer buffer = ByteBuffer.wrap(payload).asReadOnlyBuffer();
+        for (int offset = 0; offset < payload.length; offset += frameLength) {
+            spool.append(buffer, offset, Math.min(frameLength, payload.length - offset));
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kaazing.netx.URLConnectionHelper;
+import org.kaazing.netx.ws.MessageReader;
+import org.kaazing.netx.ws.MessageType;
+import org.kaazing.netx.ws.MessageWriter;
+import org.kaazing.netx.ws.WsURLConnection;
+import org.kaazing.netx.ws.internal.io.FrameCaptureServer.CapturedFrame;
+
+public class OutgoingSentinelExtensionTest {
+    private static final int CHUNK_LENGTH = 8192;
+
+    private FrameCaptureServer server;
+    private WsURLConnection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FrameCaptureServer(true);
+
+        URLConnectionHelper helper = URLConnectionHelper.newInstance();
+        connection = (WsURLConnection) helper.openConnection(server.location());
+        connection.setMaxFramePayloadLength(4 * CHUNK_LENGTH);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            connection.close();
+        }
+        finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void shouldRoundTripFrameLargerThanChunk() throws Exception {
+        byte[] payload = randomBytes(2 * CHUNK_LENGTH + 7);
+
+        MessageWriter messageWriter = connection.getMessageWriter();
+        messageWriter.writeFully(payload);
+
+        assertFrame(payload, server.nextFrame());
+        assertEchoed(payload, connection.getMessageReader());
+    }
+
+    @Test
+    public void shouldRoundTripCorkedFrameLargerThanChunk() throws Exception {
+        // While corked, the header leads the first chunk, so later chunks start at payload indexes that are not a multiple
+        // of four and are masked with a rotated key.
+        byte[] small = randomBytes(5);
+        byte[] large = randomBytes(3 * CHUNK_LENGTH + 3);
+
+        MessageWriter messageWriter = connection.getMessageWriter();
+        messageWriter.cork();
+        try {
+            messageWriter.writeFully(small);
+            messageWriter.writeFully(large);
+        }
+        finally {
+            messageWriter.uncork();
+        }
+
+        assertFrame(small, server.nextFrame());
+        assertFrame(large, server.nextFrame());
+
+        MessageReader messageReader = connection.getMessageReader();
+        assertEchoed(small, messageReader);
+        assertEchoed(large, messageReader);
+    }
+
+    private static void assertFrame(byte[] expected, CapturedFrame frame) {
+        assertEquals(0x02, frame.opcode);
+        assertTrue(frame.fin);
+        assertTrue(frame.masked);
+        assertArrayEquals(expected, frame.payload);
+    }
+
+    private static void assertEchoed(byte[] expected, MessageReader messageReader) throws Exception {
+        assertSame(MessageType.BINARY, messageReader.next());
+
+        byte[] echoed = new byte[expected.length];
+        int length = messageReader.readFully(echoed);
+
+        assertEquals(expected.length, length);
+        assertArrayEquals(expected, echoed);
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
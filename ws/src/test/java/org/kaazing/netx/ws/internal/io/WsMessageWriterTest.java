@@ -0,0 +1,158 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kaazing.netx.URLConnectionHelper;
+import org.kaazing.netx.ws.FrameRecorder;
+import org.kaazing.netx.ws.MessageWriter;
+import org.kaazing.netx.ws.WsURLConnection;
+import org.kaazing.netx.ws.internal.io.FrameCaptureServer.CapturedFrame;
+
+public class WsMessageWriterTest {
+    private static final int MAX_PAYLOAD_LENGTH = 1000;
+
+    private FrameCaptureServer server;
+    private WsURLConnection connection;
+    private File file;
+    private RandomAccessFile raf;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FrameCaptureServer(false);
+
+        URLConnectionHelper helper = URLConnectionHelper.newInstance();
+        connection = (WsURLConnection) helper.openConnection(server.location());
+        connection.setMaxFramePayloadLength(MAX_PAYLOAD_LENGTH);
+
+        content = new byte[2 * MAX_PAYLOAD_LENGTH + 345];
+        new Random(content.length).nextBytes(content);
+
+        file = File.createTempFile("netx-ws-transfer", ".bin");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        }
+        finally {
+            out.close();
+        }
+
+        raf = new RandomAccessFile(file, "r");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            raf.close();
+            file.delete();
+            connection.close();
+        }
+        finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void shouldSplitRegionIntoBinaryAndContinuationFrames() throws Exception {
+        assertTransferredInFrames();
+    }
+
+    @Test
+    public void shouldSplitRegionIntoFramesWhenRecorded() throws Exception {
+        // The frame recorder has to see every outgoing frame, so the payload is read into a frame buffer instead.
+        connection.setFrameRecorder(FrameRecorder.ringBuffer(16));
+
+        assertTransferredInFrames();
+    }
+
+    @Test
+    public void shouldSendEmptyRegionAsEmptyBinaryMessage() throws Exception {
+        FileChannel channel = raf.getChannel();
+
+        connection.getMessageWriter().transferFrom(channel, 10, 0);
+
+        CapturedFrame frame = server.nextFrame();
+        assertEquals(0x02, frame.opcode);
+        assertTrue(frame.fin);
+        assertEquals(0, frame.payload.length);
+    }
+
+    @Test
+    public void shouldRejectRegionPastEndOfFile() throws Exception {
+        FileChannel channel = raf.getChannel();
+        MessageWriter messageWriter = connection.getMessageWriter();
+
+        try {
+            messageWriter.transferFrom(channel, 100, content.length);
+            fail("IOException expected");
+        }
+        catch (IOException e) {
+            // expected
+        }
+
+        // Nothing was sent, so the connection is still usable.
+        messageWriter.transferFrom(channel, 100, 10);
+
+        CapturedFrame frame = server.nextFrame();
+        assertEquals(0x02, frame.opcode);
+        assertArrayEquals(Arrays.copyOfRange(content, 100, 110), frame.payload);
+    }
+
+    private void assertTransferredInFrames() throws Exception {
+        FileChannel channel = raf.getChannel();
+        channel.position(7);
+
+        int position = 3;
+        int count = content.length - 5;
+        connection.getMessageWriter().transferFrom(channel, position, count);
+
+        assertEquals(7, channel.position());
+
+        CapturedFrame first = server.nextFrame();
+        CapturedFrame second = server.nextFrame();
+        CapturedFrame third = server.nextFrame();
+
+        assertEquals(0x02, first.opcode);
+        assertFalse(first.fin);
+        assertTrue(first.masked);
+        assertEquals(0x00, second.opcode);
+        assertFalse(second.fin);
+        assertEquals(0x00, third.opcode);
+        assertTrue(third.fin);
+
+        assertArrayEquals(Arrays.copyOfRange(content, position, position + MAX_PAYLOAD_LENGTH), first.payload);
+        assertArrayEquals(Arrays.copyOfRange(content, position + MAX_PAYLOAD_LENGTH, position + 2 * MAX_PAYLOAD_LENGTH),
+                          second.payload);
+        assertArrayEquals(Arrays.copyOfRange(content, position + 2 * MAX_PAYLOAD_LENGTH, position + count), third.payload);
+    }
+}
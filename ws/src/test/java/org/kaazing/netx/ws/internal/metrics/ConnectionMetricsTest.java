@@ -0,0 +1,116 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.metrics;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.kaazing.netx.ws.WebSocketMetrics.FrameType.BINARY;
+import static org.kaazing.netx.ws.WebSocketMetrics.FrameType.CONTINUATION;
+import static org.kaazing.netx.ws.WebSocketMetrics.FrameType.PING;
+import static org.kaazing.netx.ws.WebSocketMetrics.FrameType.TEXT;
+
+import org.junit.Test;
+import org.kaazing.netx.ws.WebSocketMetrics;
+import org.kaazing.netx.ws.WebSocketMetricsMXBean;
+import org.kaazing.netx.ws.internal.ext.flyweight.Opcode;
+
+public class ConnectionMetricsTest {
+
+    @Test
+    public void shouldMatchFrameTypesToOpcodes() throws Exception {
+        for (WebSocketMetrics.FrameType type : WebSocketMetrics.FrameType.values()) {
+            assertEquals(type.name(), Opcode.values()[type.ordinal()].name());
+        }
+    }
+
+    @Test
+    public void shouldCountFramesAndMessages() throws Exception {
+        ConnectionMetrics metrics = new ConnectionMetrics(null);
+
+        metrics.frameReceived(Opcode.TEXT, 10, true);
+        metrics.frameReceived(Opcode.BINARY, 100, false);
+        metrics.frameReceived(Opcode.CONTINUATION, 100, false);
+        metrics.frameReceived(Opcode.CONTINUATION, 50, true);
+        metrics.frameReceived(Opcode.PING, 8, true);
+        metrics.frameSent(Opcode.BINARY, 20, true);
+
+        assertEquals(1, metrics.getFramesReceived(TEXT));
+        assertEquals(1, metrics.getFramesReceived(BINARY));
+        assertEquals(2, metrics.getFramesReceived(CONTINUATION));
+        assertEquals(1, metrics.getFramesReceived(PING));
+        assertEquals(5, metrics.getFramesReceived());
+        assertEquals(150, metrics.getPayloadBytesReceived(CONTINUATION));
+        assertEquals(268, metrics.getPayloadBytesReceived());
+        assertEquals(2, metrics.getMessagesReceived());
+        assertEquals(1, metrics.getFragmentedMessagesReceived());
+
+        assertEquals(1, metrics.getFramesSent());
+        assertEquals(20, metrics.getPayloadBytesSent(BINARY));
+        assertEquals(1, metrics.getMessagesSent());
+        assertEquals(0, metrics.getFragmentedMessagesSent());
+    }
+
+    @Test
+    public void shouldAddUpConnectionsInParent() throws Exception {
+        AggregateMetrics parent = new AggregateMetrics();
+        ConnectionMetrics first = new ConnectionMetrics(parent);
+        ConnectionMetrics second = new ConnectionMetrics(parent);
+
+        first.frameSent(Opcode.TEXT, 5, true);
+        second.frameSent(Opcode.TEXT, 7, true);
+        first.maskingTime(MICROSECONDS.toNanos(3));
+        second.writeLockWaited(MICROSECONDS.toNanos(4));
+
+        assertEquals(1, first.getFramesSent(TEXT));
+        assertEquals(2, parent.getFramesSent(TEXT));
+        assertEquals(12, parent.getPayloadBytesSent(TEXT));
+        assertEquals(2, parent.getMessagesSent());
+        assertEquals(3, parent.getMaskingTime(MICROSECONDS));
+        assertEquals(1, parent.getWriteLockWaitCount());
+        assertEquals(4, parent.getWriteLockWaitTime(MICROSECONDS));
+        assertEquals(0, first.getWriteLockWaitCount());
+    }
+
+    @Test
+    public void shouldNotChangeSnapshot() throws Exception {
+        ConnectionMetrics metrics = new ConnectionMetrics(null);
+        metrics.frameReceived(Opcode.TEXT, 10, true);
+
+        WebSocketMetrics snapshot = metrics.snapshot();
+        metrics.frameReceived(Opcode.TEXT, 10, true);
+
+        assertEquals(1, snapshot.getMessagesReceived());
+        assertEquals(2, metrics.getMessagesReceived());
+        assertTrue(metrics.getMessagesReceivedPerSecond(snapshot) >= 0.0);
+    }
+
+    @Test
+    public void shouldExposeCountsThroughMXBean() throws Exception {
+        ConnectionMetrics metrics = new ConnectionMetrics(null);
+        WebSocketMetricsMXBean bean = metrics.asMXBean();
+
+        metrics.frameReceived(Opcode.BINARY, 10, true);
+        metrics.frameReceived(Opcode.PONG, 8, true);
+        metrics.utf8ValidationTime(MICROSECONDS.toNanos(9));
+
+        assertEquals(2, bean.getFramesReceived());
+        assertEquals(1, bean.getBinaryFramesReceived());
+        assertEquals(1, bean.getControlFramesReceived());
+        assertEquals(1, bean.getMessagesReceived());
+        assertEquals(9, bean.getUtf8ValidationTimeMicros());
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.kaazing.netx.ws.BufferPoolStatistics;
+
+public class BufferPoolTest {
+
+    @Test
+    public void shouldRoundUpToSizeClass() throws Exception {
+        BufferPool pool = new BufferPool(BufferPool.MAX_IDLE_BYTES_PER_SIZE_CLASS);
+
+        assertEquals(BufferPool.MIN_SIZE_CLASS, pool.acquireBytes(0).length);
+        assertEquals(BufferPool.MIN_SIZE_CLASS, pool.acquireBytes(BufferPool.MIN_SIZE_CLASS).length);
+        assertEquals(BufferPool.MIN_SIZE_CLASS << 1, pool.acquireBytes(BufferPool.MIN_SIZE_CLASS + 1).length);
+        assertEquals(16384, pool.acquireBytes(8206).length);
+        assertEquals(BufferPool.MIN_SIZE_CLASS << 2, pool.acquireChars(BufferPool.MIN_SIZE_CLASS * 3).length);
+        assertEquals(BufferPool.MAX_SIZE_CLASS + 1, pool.acquireBytes(BufferPool.MAX_SIZE_CLASS + 1).length);
+    }
+
+    @Test
+    public void shouldReuseReleasedBuffers() throws Exception {
+        BufferPool pool = new BufferPool(BufferPool.MAX_IDLE_BYTES_PER_SIZE_CLASS);
+        BufferPoolStatistics statistics = pool.statistics();
+
+        byte[] bytes = pool.acquireBytes(5000);
+        pool.releaseBytes(bytes);
+        assertSame(bytes, pool.acquireBytes(6000));
+
+        char[] chars = pool.acquireChars(100);
+        pool.releaseChars(chars);
+        assertSame(chars, pool.acquireChars(200));
+        assertNotSame(chars, pool.acquireChars(200));
+
+        assertEquals(5, statistics.getAcquireCount());
+        assertEquals(3, statistics.getAllocationCount());
+        assertEquals(2, statistics.getReleaseCount());
+        assertEquals(0, statistics.getDiscardCount());
+        assertEquals(8192 + 2 * 2 * 4096, statistics.getLentBytes());
+        assertEquals(0, statistics.getIdleBytes());
+    }
+
+    @Test
+    public void shouldDiscardWhenSizeClassIsFull() throws Exception {
+        BufferPool pool = new BufferPool(8192);
+        BufferPoolStatistics statistics = pool.statistics();
+
+        byte[] first = pool.acquireBytes(4096);
+        byte[] second = pool.acquireBytes(4096);
+        byte[] third = pool.acquireBytes(4096);
+        pool.releaseBytes(first);
+        pool.releaseBytes(second);
+        pool.releaseBytes(third);
+
+        assertEquals(2, statistics.getIdleByteArrayCount(4096));
+        assertEquals(8192, statistics.getIdleBytes());
+        assertEquals(1, statistics.getDiscardCount());
+        assertEquals(0, statistics.getLentBytes());
+    }
+
+    @Test
+    public void shouldDivideSizeClassAmongStripes() throws Exception {
+        final BufferPool pool = new BufferPool(3 * 4096, 4);
+        BufferPoolStatistics statistics = pool.statistics();
+
+        final byte[][] arrays = new byte[4][];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = pool.acquireBytes(4096);
+        }
+
+        // Buffers returned by another thread are still reused, and the stripes together retain no more than the size class.
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                for (byte[] array : arrays) {
+                    pool.releaseBytes(array);
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+
+        assertEquals(3, statistics.getIdleByteArrayCount(4096));
+        assertEquals(1, statistics.getDiscardCount());
+
+        for (int i = 0; i < 3; i++) {
+            pool.acquireBytes(4096);
+        }
+
+        assertEquals(0, statistics.getIdleByteArrayCount(4096));
+        assertEquals(4, statistics.getAllocationCount());
+        assertEquals(0, statistics.getIdleBytes());
+    }
+
+    @Test
+    public void shouldCountIdleByteAndCharArraysSeparately() throws Exception {
+        BufferPool pool = new BufferPool(BufferPool.MAX_IDLE_BYTES_PER_SIZE_CLASS);
+        BufferPoolStatistics statistics = pool.statistics();
+
+        pool.releaseBytes(pool.acquireBytes(4096));
+        pool.releaseChars(pool.acquireChars(4096));
+        pool.releaseChars(pool.acquireChars(8192));
+
+        assertEquals(1, statistics.getIdleByteArrayCount(4096));
+        assertEquals(1, statistics.getIdleCharArrayCount(4096));
+        assertEquals(0, statistics.getIdleByteArrayCount(8192));
+        assertEquals(1, statistics.getIdleCharArrayCount(8192));
+        assertEquals(0, statistics.getIdleCharArrayCount(BufferPool.MAX_SIZE_CLASS + 1));
+        assertEquals(4096 + 2 * 4096 + 2 * 8192, statistics.getIdleBytes());
+    }
+
+    @Test
+    public void shouldNotRetainBuffersLargerThanMaxSizeClass() throws Exception {
+        BufferPool pool = new BufferPool(BufferPool.MAX_IDLE_BYTES_PER_SIZE_CLASS);
+        BufferPoolStatistics statistics = pool.statistics();
+
+        byte[] huge = pool.acquireBytes(BufferPool.MAX_SIZE_CLASS + 1);
+        pool.releaseBytes(huge);
+        pool.releaseBytes(new byte[1000]);
+        pool.releaseBytes(null);
+
+        assertEquals(0, statistics.getIdleBytes());
+        assertEquals(2, statistics.getDiscardCount());
+        assertNotSame(huge, pool.acquireBytes(BufferPool.MAX_SIZE_CLASS + 1));
+    }
+}
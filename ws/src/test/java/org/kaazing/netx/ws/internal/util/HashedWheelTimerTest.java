@@ -0,0 +1,163 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.util;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kaazing.netx.ws.internal.util.HashedWheelTimer.Timeout;
+
+public class HashedWheelTimerTest {
+    private HashedWheelTimer timer;
+
+    @Before
+    public void setUp() {
+        timer = new HashedWheelTimer(10, MILLISECONDS, 8, "test-timer");
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void shouldRunTaskNoEarlierThanDelay() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(1);
+        final AtomicLong ranAt = new AtomicLong();
+        long scheduledAt = System.nanoTime();
+
+        Timeout timeout = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                ranAt.set(System.nanoTime());
+                ran.countDown();
+            }
+        }, 50, MILLISECONDS);
+
+        assertTrue(ran.await(5, SECONDS));
+        assertTrue(NANOSECONDS.toMillis(ranAt.get() - scheduledAt) >= 50);
+        assertTrue(timeout.isExpired());
+    }
+
+    @Test
+    public void shouldRunTaskSpanningSeveralRounds() throws Exception {
+        // With 8 ticks of 10 milliseconds, a 250 milliseconds delay goes around the wheel three times.
+        final CountDownLatch ran = new CountDownLatch(1);
+        long scheduledAt = System.nanoTime();
+
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        }, 250, MILLISECONDS);
+
+        assertTrue(ran.await(5, SECONDS));
+        assertTrue(NANOSECONDS.toMillis(System.nanoTime() - scheduledAt) >= 250);
+    }
+
+    @Test
+    public void shouldNotRunCancelledTask() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch later = new CountDownLatch(1);
+
+        Timeout timeout = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        }, 30, MILLISECONDS);
+
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                later.countDown();
+            }
+        }, 100, MILLISECONDS);
+
+        assertTrue(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        assertTrue(later.await(5, SECONDS));
+        assertEquals(0, runs.get());
+        assertFalse(timeout.isExpired());
+    }
+
+    @Test
+    public void shouldRunManyTasksOnOneThread() throws Exception {
+        final int count = 10000;
+        final CountDownLatch ran = new CountDownLatch(count);
+        final AtomicInteger threads = new AtomicInteger();
+        final Thread[] timerThread = new Thread[1];
+
+        for (int i = 0; i < count; i++) {
+            timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (timerThread[0] != Thread.currentThread()) {
+                        timerThread[0] = Thread.currentThread();
+                        threads.incrementAndGet();
+                    }
+                    ran.countDown();
+                }
+            }, i % 200, MILLISECONDS);
+        }
+
+        assertTrue(ran.await(5, SECONDS));
+        assertEquals(1, threads.get());
+    }
+
+    @Test
+    public void shouldKeepRunningAfterTaskFails() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(1);
+
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException();
+            }
+        }, 0, MILLISECONDS);
+
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        }, 20, MILLISECONDS);
+
+        assertTrue(ran.await(5, SECONDS));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectTaskOnceStopped() throws Exception {
+        timer.stop();
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, 0, MILLISECONDS);
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kaazing.netx.ws.internal.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.kaazing.netx.ws.MaskKeyGenerator;
+
+public class MaskKeyGeneratorTest {
+
+    @Test
+    public void shouldSkipZeroMaskKeysWhenPrefilled() throws Exception {
+        Random random = new Random() {
+            private static final long serialVersionUID = 1L;
+            private boolean first = true;
+
+            @Override
+            public void nextBytes(byte[] bytes) {
+                for (int i = 0; i < bytes.length; i++) {
+                    bytes[i] = first ? 0 : (byte) 0x5a;
+                }
+                first = false;
+            }
+        };
+        MaskKeyGenerator generator = new PrefilledMaskKeyGenerator(random, 4);
+
+        assertEquals(0x5a5a5a5a, generator.nextMaskKey());
+    }
+
+    @Test
+    public void shouldRefillPrefilledBatch() throws Exception {
+        final int[] fills = new int[1];
+        Random random = new Random() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void nextBytes(byte[] bytes) {
+                fills[0]++;
+                for (int i = 0; i < bytes.length; i++) {
+                    bytes[i] = (byte) (i + 1);
+                }
+            }
+        };
+        MaskKeyGenerator generator = new PrefilledMaskKeyGenerator(random, 2);
+
+        assertEquals(0x01020304, generator.nextMaskKey());
+        assertEquals(0x05060708, generator.nextMaskKey());
+        assertEquals(1, fills[0]);
+        assertEquals(0x01020304, generator.nextMaskKey());
+        assertEquals(2, fills[0]);
+    }
+
+    @Test
+    public void shouldGenerateNonZeroMaskKeys() throws Exception {
+        MaskKeyGenerator[] generators = new MaskKeyGenerator[] {
+            MaskKeyGenerator.prefilled(),
+            MaskKeyGenerator.prefilled(1),
+            MaskKeyGenerator.threadLocal(),
+            MaskKeyGenerator.xorShift()
+        };
+
+        for (MaskKeyGenerator generator : generators) {
+            MaskKeyGenerator connectionGenerator = generator.forConnection();
+            for (int i = 0; i < 10000; i++) {
+                assertTrue(connectionGenerator.nextMaskKey() != 0);
+            }
+        }
+    }
+
+    @Test
+    public void shouldCreateGeneratorPerConnection() throws Exception {
+        MaskKeyGenerator prefilled = MaskKeyGenerator.prefilled();
+        MaskKeyGenerator xorShift = MaskKeyGenerator.xorShift();
+
+        assertNotSame(prefilled.forConnection(), prefilled.forConnection());
+        assertNotSame(xorShift.forConnection(), xorShift.forConnection());
+        assertTrue(xorShift.forConnection().nextMaskKey() != xorShift.forConnection().nextMaskKey());
+    }
+
+    @Test
+    public void shouldDrawKeysConcurrentlyFromSharedGenerators() throws Exception {
+        final MaskKeyGenerator[] generators = new MaskKeyGenerator[] {
+            MaskKeyGenerator.prefilled(),
+            MaskKeyGenerator.prefilled(1),
+            MaskKeyGenerator.threadLocal(),
+            MaskKeyGenerator.xorShift()
+        };
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < 100000; i++) {
+                            for (MaskKeyGenerator generator : generators) {
+                                if (generator.nextMaskKey() == 0) {
+                                    throw new AssertionError("Zero mask key");
+                                }
+                            }
+                        }
+                    }
+                    catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(null, failure.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveBatchSize() throws Exception {
+        MaskKeyGenerator.prefilled(0);
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class MpscArrayQueueTest {
+
+    @Test
+    public void shouldRoundUpCapacityToPowerOfTwo() throws Exception {
+        assertEquals(1, new MpscArrayQueue<Object>(1).capacity());
+        assertEquals(8, new MpscArrayQueue<Object>(5).capacity());
+        assertEquals(1024, new MpscArrayQueue<Object>(1024).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveCapacity() throws Exception {
+        new MpscArrayQueue<Object>(0);
+    }
+
+    @Test
+    public void shouldRefuseOfferWhenFull() throws Exception {
+        MpscArrayQueue<Integer> queue = new MpscArrayQueue<Integer>(4);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+
+        assertFalse(queue.offer(4));
+        assertEquals(4, queue.size());
+
+        assertEquals(Integer.valueOf(0), queue.poll());
+        assertTrue(queue.offer(4));
+
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void shouldPreserveOrderOfEachProducer() throws Exception {
+        final int producerCount = 4;
+        final int count = 100000;
+        final MpscArrayQueue<long[]> queue = new MpscArrayQueue<long[]>(64);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] producers = new Thread[producerCount];
+        for (int p = 0; p < producerCount; p++) {
+            final int producer = p;
+            producers[p] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+
+                    for (int i = 0; i < count; i++) {
+                        long[] element = new long[] { producer, i };
+                        while (!queue.offer(element)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            };
+            producers[p].start();
+        }
+
+        start.countDown();
+
+        long[] next = new long[producerCount];
+        for (int received = 0; received < producerCount * count;) {
+            long[] element = queue.poll();
+            if (element == null) {
+                Thread.yield();
+                continue;
+            }
+
+            int producer = (int) element[0];
+            assertEquals(next[producer]++, element[1]);
+            received++;
+        }
+
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -16,10 +16,17 @@
 package org.kaazing.netx.ws.internal.util;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
 
 import org.junit.Test;
+import org.kaazing.netx.ws.LockWaitStrategy;
 
 public class OptimisticReentrantLockTest {
     @Test
@@ -208,4 +215,167 @@ public class OptimisticReentrantLockTest {
         assertEquals(0, sl.getStamp());
 
     }
+
+    @Test
+    public void shouldParkWaiterUntilUnlocked() throws Exception {
+        final OptimisticReentrantLock sl = new OptimisticReentrantLock(LockWaitStrategy.SPIN_YIELD_PARK);
+        final CountDownLatch acquired = new CountDownLatch(1);
+
+        sl.lock();
+
+        Thread t1 = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                sl.lock();
+                acquired.countDown();
+                sl.unlock();
+            }
+        });
+
+        t1.start();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (t1.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Thread.State.WAITING, t1.getState());
+
+        sl.unlock();
+
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        t1.join();
+        assertEquals(null, sl.getOwner());
+        assertEquals(0, sl.getStamp());
+    }
+
+    @Test
+    public void shouldTimeoutTryLock() throws Exception {
+        for (LockWaitStrategy strategy : LockWaitStrategy.values()) {
+            final OptimisticReentrantLock sl = new OptimisticReentrantLock(strategy);
+            final AtomicBoolean locked = new AtomicBoolean(true);
+
+            sl.lock();
+
+            Thread t1 = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        locked.set(sl.tryLock(50, TimeUnit.MILLISECONDS));
+                    }
+                    catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+
+            t1.start();
+            t1.join();
+
+            assertFalse(locked.get());
+            assertEquals(Thread.currentThread(), sl.getOwner());
+
+            assertTrue(sl.tryLock(0, TimeUnit.MILLISECONDS));
+            assertEquals(2, sl.getStamp());
+            sl.unlock();
+            sl.unlock();
+        }
+    }
+
+    @Test
+    public void shouldInterruptLockInterruptibly() throws Exception {
+        final OptimisticReentrantLock sl = new OptimisticReentrantLock();
+        final AtomicBoolean interrupted = new AtomicBoolean(false);
+
+        sl.lock();
+
+        Thread t1 = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    sl.lockInterruptibly();
+                    sl.unlock();
+                }
+                catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+            }
+        });
+
+        t1.start();
+        Thread.sleep(50);
+        t1.interrupt();
+        t1.join(5000);
+
+        assertTrue(interrupted.get());
+        assertEquals(Thread.currentThread(), sl.getOwner());
+        sl.unlock();
+    }
+
+    @Test
+    public void shouldSignalCondition() throws Exception {
+        final OptimisticReentrantLock sl = new OptimisticReentrantLock();
+        final Condition condition = sl.newCondition();
+        final AtomicBoolean ready = new AtomicBoolean(false);
+        final CountDownLatch awoken = new CountDownLatch(1);
+
+        Thread t1 = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                sl.lock();
+                sl.lock();
+                try {
+                    while (!ready.get()) {
+                        condition.awaitUninterruptibly();
+                    }
+
+                    // The hold count is restored once the lock is re-acquired.
+                    assertEquals(2, sl.getStamp());
+                    awoken.countDown();
+                }
+                finally {
+                    sl.unlock();
+                    sl.unlock();
+                }
+            }
+        });
+
+        t1.start();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (t1.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        sl.lock();
+        ready.set(true);
+        condition.signal();
+        sl.unlock();
+
+        assertTrue(awoken.await(5, TimeUnit.SECONDS));
+        t1.join();
+        assertEquals(null, sl.getOwner());
+        assertEquals(0, sl.getStamp());
+    }
+
+    @Test
+    public void shouldTimeoutAwait() throws Exception {
+        OptimisticReentrantLock sl = new OptimisticReentrantLock();
+        Condition condition = sl.newCondition();
+
+        sl.lock();
+        assertFalse(condition.await(20, TimeUnit.MILLISECONDS));
+        assertEquals(Thread.currentThread(), sl.getOwner());
+        assertEquals(1, sl.getStamp());
+        sl.unlock();
+    }
+
+    @Test(expected = IllegalMonitorStateException.class)
+    public void shouldRejectSignalWithoutOwningLock() throws Exception {
+        OptimisticReentrantLock sl = new OptimisticReentrantLock();
+        sl.newCondition().signal();
+    }
 }
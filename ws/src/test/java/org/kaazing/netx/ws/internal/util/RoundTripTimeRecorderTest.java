@@ -0,0 +1,86 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.util;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class RoundTripTimeRecorderTest {
+
+    @Test
+    public void shouldReportZeroWhenEmpty() throws Exception {
+        RoundTripTimeRecorder recorder = new RoundTripTimeRecorder();
+
+        assertEquals(0, recorder.getCount());
+        assertEquals(0, recorder.getMin(MICROSECONDS));
+        assertEquals(0, recorder.getMax(MICROSECONDS));
+        assertEquals(0, recorder.getMean(MICROSECONDS));
+        assertEquals(0, recorder.getPercentile(99, MICROSECONDS));
+    }
+
+    @Test
+    public void shouldCountInPowerOfTwoBuckets() throws Exception {
+        assertEquals(0, RoundTripTimeRecorder.bucket(0));
+        assertEquals(1, RoundTripTimeRecorder.bucket(1));
+        assertEquals(2, RoundTripTimeRecorder.bucket(2));
+        assertEquals(2, RoundTripTimeRecorder.bucket(3));
+        assertEquals(11, RoundTripTimeRecorder.bucket(1024));
+        assertEquals(RoundTripTimeRecorder.BUCKET_COUNT - 1, RoundTripTimeRecorder.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void shouldRecordRoundTripTimes() throws Exception {
+        RoundTripTimeRecorder recorder = new RoundTripTimeRecorder();
+
+        for (int i = 1; i <= 100; i++) {
+            recorder.record(MICROSECONDS.toNanos(i * 100));
+        }
+
+        assertEquals(100, recorder.getCount());
+        assertEquals(100, recorder.getMin(MICROSECONDS));
+        assertEquals(10000, recorder.getMax(MICROSECONDS));
+        assertEquals(5050, recorder.getMean(MICROSECONDS));
+        assertEquals(10000, recorder.getLast(MICROSECONDS));
+        assertEquals(100, recorder.getBucketCount(7) + recorder.getBucketCount(8) + recorder.getBucketCount(9) +
+                          recorder.getBucketCount(10) + recorder.getBucketCount(11) + recorder.getBucketCount(12) +
+                          recorder.getBucketCount(13) + recorder.getBucketCount(14));
+    }
+
+    @Test
+    public void shouldReportPercentileAsUpperBoundOfBucket() throws Exception {
+        RoundTripTimeRecorder recorder = new RoundTripTimeRecorder();
+
+        for (int i = 0; i < 99; i++) {
+            recorder.record(MICROSECONDS.toNanos(300));
+        }
+        recorder.record(MILLISECONDS.toNanos(50));
+
+        // 300us falls in the bucket of 256us to 511us.
+        assertEquals(511, recorder.getPercentile(50, MICROSECONDS));
+        assertEquals(511, recorder.getPercentile(99, MICROSECONDS));
+
+        // The upper bound of the bucket of 50ms is capped at the maximum.
+        assertEquals(50000, recorder.getPercentile(100, MICROSECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidPercentile() throws Exception {
+        new RoundTripTimeRecorder().getPercentile(101, MICROSECONDS);
+    }
+}
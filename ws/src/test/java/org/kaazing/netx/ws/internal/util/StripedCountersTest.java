@@ -0,0 +1,82 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.internal.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class StripedCountersTest {
+
+    @Test
+    public void shouldAddToCountersIndependently() throws Exception {
+        StripedCounters counters = new StripedCounters(3, 4);
+
+        counters.increment(0);
+        counters.add(1, 10);
+        counters.add(1, 5);
+
+        assertEquals(3, counters.counterCount());
+        assertEquals(1, counters.sum(0));
+        assertEquals(15, counters.sum(1));
+        assertEquals(0, counters.sum(2));
+    }
+
+    @Test
+    public void shouldSumAcrossThreads() throws Exception {
+        final StripedCounters counters = new StripedCounters(20, 3);
+        final int threadCount = 8;
+        final int additions = 100000;
+        final CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+
+                    for (int j = 0; j < additions; j++) {
+                        counters.increment(0);
+                        counters.add(19, 2);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(threadCount * additions, counters.sum(0));
+        assertEquals(2L * threadCount * additions, counters.sum(19));
+        assertEquals(0, counters.sum(18));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveCounterCount() throws Exception {
+        new StripedCounters(0);
+    }
+}
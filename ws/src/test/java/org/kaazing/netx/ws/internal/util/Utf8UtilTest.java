@@ -15,10 +15,28 @@
  */
 package org.kaazing.netx.ws.internal.util;
 
+import static java.util.Arrays.copyOfRange;
+import static java.util.Arrays.fill;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.kaazing.netx.ws.internal.util.Utf8Util.UTF8_ACCEPT;
+import static org.kaazing.netx.ws.internal.util.Utf8Util.UTF8_REJECT;
+import static org.kaazing.netx.ws.internal.util.Utf8Util.byteCountUTF8;
+import static org.kaazing.netx.ws.internal.util.Utf8Util.charstoUTF8Bytes;
 import static org.kaazing.netx.ws.internal.util.Utf8Util.initialDecodeUTF8;
 import static org.kaazing.netx.ws.internal.util.Utf8Util.remainingBytesUTF8;
 import static org.kaazing.netx.ws.internal.util.Utf8Util.remainingDecodeUTF8;
+import static org.kaazing.netx.ws.internal.util.Utf8Util.validBytesUTF8;
+import static org.kaazing.netx.ws.internal.util.Utf8Util.validateUTF8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -68,4 +86,151 @@ public class Utf8UtilTest {
             }
         }
     }
+
+    @Test
+    public void shouldValidateAsciiAtEveryAlignment() throws Exception {
+        byte[] bytes = "{\"symbol\":\"KZNG\",\"price\":42.17,\"volume\":1200}".getBytes("UTF-8");
+
+        for (int offset = 0; offset < 8; offset++) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            assertEquals(UTF8_ACCEPT, validateUTF8(UTF8_ACCEPT, buffer, offset, bytes.length - offset));
+            assertEquals(UTF8_ACCEPT, validateUTF8(UTF8_ACCEPT, buffer.asReadOnlyBuffer(), offset, bytes.length - offset));
+        }
+    }
+
+    @Test
+    public void shouldRejectInvalidByteAfterAsciiRun() throws Exception {
+        for (int position = 0; position < 24; position++) {
+            byte[] bytes = new byte[24];
+            fill(bytes, (byte) 'a');
+            bytes[position] = (byte) 0xff;
+
+            assertEquals(UTF8_REJECT, validateUTF8(UTF8_ACCEPT, ByteBuffer.wrap(bytes), 0, bytes.length));
+            assertFalse(validBytesUTF8(bytes));
+        }
+    }
+
+    @Test
+    public void shouldValidateCharacterSplitAcrossFrames() throws Exception {
+        byte[] bytes = "JSON \u00e9t\u00e9 \u20ac \u4e2d\u6587 \ud83d\ude00 payload".getBytes("UTF-8");
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        for (int split = 0; split <= bytes.length; split++) {
+            int state = validateUTF8(UTF8_ACCEPT, buffer, 0, split);
+            assertTrue(state != UTF8_REJECT);
+            assertEquals(UTF8_ACCEPT, validateUTF8(state, buffer, split, bytes.length - split));
+        }
+    }
+
+    @Test
+    public void shouldReportIncompleteCharacter() throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[] { 'a', (byte) 0xf0, (byte) 0x9f, (byte) 0x98 });
+
+        int state = validateUTF8(UTF8_ACCEPT, buffer, 0, buffer.capacity());
+        assertTrue(state != UTF8_ACCEPT);
+        assertTrue(state != UTF8_REJECT);
+        assertFalse(validBytesUTF8(buffer, 0, buffer.capacity()));
+    }
+
+    @Test
+    public void shouldRejectOverlongEncodings() throws Exception {
+        assertFalse(validBytesUTF8(new byte[] { (byte) 0xc0, (byte) 0xaf }));
+        assertFalse(validBytesUTF8(new byte[] { (byte) 0xc1, (byte) 0xbf }));
+        assertFalse(validBytesUTF8(new byte[] { (byte) 0xe0, (byte) 0x80, (byte) 0xaf }));
+        assertFalse(validBytesUTF8(new byte[] { (byte) 0xf0, (byte) 0x80, (byte) 0x80, (byte) 0xaf }));
+    }
+
+    @Test
+    public void shouldRejectSurrogates() throws Exception {
+        assertFalse(validBytesUTF8(new byte[] { (byte) 0xed, (byte) 0xa0, (byte) 0x80 }));
+        assertFalse(validBytesUTF8(new byte[] { (byte) 0xed, (byte) 0xbf, (byte) 0xbf }));
+        assertTrue(validBytesUTF8(new byte[] { (byte) 0xed, (byte) 0x9f, (byte) 0xbf }));
+    }
+
+    @Test
+    public void shouldRejectCodePointsAboveMaximum() throws Exception {
+        assertTrue(validBytesUTF8(new byte[] { (byte) 0xf4, (byte) 0x8f, (byte) 0xbf, (byte) 0xbf }));
+        assertFalse(validBytesUTF8(new byte[] { (byte) 0xf4, (byte) 0x90, (byte) 0x80, (byte) 0x80 }));
+        assertFalse(validBytesUTF8(new byte[] { (byte) 0xf5, (byte) 0x80, (byte) 0x80, (byte) 0x80 }));
+    }
+
+    @Test
+    public void shouldAgreeWithCharsetDecoder() throws Exception {
+        Random random = new Random(42);
+        byte[] bytes = new byte[12];
+
+        for (int i = 0; i < 100000; i++) {
+            for (int j = 0; j < bytes.length; j++) {
+                // Draw ASCII, continuation and lead bytes alike so that both valid and invalid sequences are common.
+                switch (random.nextInt(3)) {
+                case 0:
+                    bytes[j] = (byte) random.nextInt(0x80);
+                    break;
+                case 1:
+                    bytes[j] = (byte) (0x80 + random.nextInt(0x40));
+                    break;
+                default:
+                    bytes[j] = (byte) (0xc0 + random.nextInt(0x40));
+                    break;
+                }
+            }
+
+            assertEquals(decodes(bytes), validBytesUTF8(bytes));
+        }
+    }
+
+    @Test
+    public void shouldEncodeCharSequenceIntoByteArray() throws Exception {
+        String text = "{\"name\":\"caf\u00e9\",\"price\":\"\u20ac5\",\"emoji\":\"\ud83d\ude00\",\"city\":\"\u4e2d\"}";
+        byte[] expected = text.substring(3, text.length() - 2).getBytes("UTF-8");
+
+        int length = text.length() - 5;
+        assertEquals(expected.length, byteCountUTF8(text, 3, length));
+        assertEquals(expected.length, byteCountUTF8(text.toCharArray(), 3, length));
+
+        byte[] dest = new byte[expected.length + 4];
+        assertEquals(expected.length, charstoUTF8Bytes(new StringBuilder(text), 3, length, dest, 4));
+        assertArrayEquals(expected, copyOfRange(dest, 4, dest.length));
+
+        dest = new byte[expected.length + 4];
+        assertEquals(expected.length, charstoUTF8Bytes(text.toCharArray(), 3, length, dest, 4));
+        assertArrayEquals(expected, copyOfRange(dest, 4, dest.length));
+    }
+
+    @Test
+    public void shouldEncodeCharArrayRangeIntoByteBuffer() throws Exception {
+        char[] chars = "ab\u00e9\ud83d\ude00cd".toCharArray();
+        byte[] expected = "\u00e9\ud83d\ude00c".getBytes("UTF-8");
+
+        ByteBuffer dest = ByteBuffer.allocate(expected.length);
+        assertEquals(expected.length, byteCountUTF8(chars, 2, 4));
+        assertEquals(expected.length, charstoUTF8Bytes(chars, 2, 4, dest, 0));
+        assertArrayEquals(expected, dest.array());
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectUnpairedHighSurrogate() throws Exception {
+        byteCountUTF8("ab\ud83d", 0, 3);
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectHighSurrogateCutShortByLength() throws Exception {
+        byteCountUTF8("ab\ud83d\ude00", 0, 3);
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectUnpairedLowSurrogate() throws Exception {
+        byteCountUTF8("\ude00ab", 0, 3);
+    }
+
+    private static boolean decodes(byte[] bytes) {
+        CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder();
+        try {
+            decoder.decode(ByteBuffer.wrap(bytes));
+            return true;
+        }
+        catch (CharacterCodingException e) {
+            return false;
+        }
+    }
 }
@@ -22,6 +22,7 @@ import static org.junit.rules.RuleChain.outerRule;
 import static org.kaazing.netx.ws.MessageType.BINARY;
 
 import java.net.URI;
+import java.nio.ByteBuffer;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -232,4 +233,57 @@ public class MessageReaderIT {
             k3po.finish();
         }
     }
+
+    @Test
+    @Specification({
+    "binary.frame.length.bytes.split.across.chunks/handshake.response.and.frame" })
+    public void shouldReadAndWriteBinaryFramesUsingDirectByteBuffers() throws Exception {
+        URLConnectionHelper helper = URLConnectionHelper.newInstance();
+        URI location = URI.create("ws://localhost:8080/path");
+
+        WsURLConnection connection = (WsURLConnection) helper.openConnection(location);
+        connection.setMaxFramePayloadLength(8188);
+
+        MessageReader messageReader = ((WsURLConnectionImpl) connection).getMessageReader();
+        MessageWriter messageWriter = ((WsURLConnectionImpl) connection).getMessageWriter();
+
+        ByteBuffer readBuffer1 = ByteBuffer.allocateDirect(8188);
+        ByteBuffer readBuffer2 = ByteBuffer.allocateDirect(150);
+        MessageType type = null;
+        int iter = 1;
+        int bytesRead = 0;
+
+        try {
+            while ((iter <= 2) && (type = messageReader.next()) != MessageType.EOS) {
+                switch (type) {
+                case BINARY:
+                    if (iter == 1) {
+                        bytesRead = messageReader.readFully(readBuffer1);
+                        assertEquals(8185, bytesRead);
+                        assertEquals(8185, readBuffer1.position());
+                    }
+                    else {
+                        bytesRead = messageReader.readFully(readBuffer2);
+                        assertEquals(150, bytesRead);
+                        assertEquals(150, readBuffer2.position());
+                    }
+                    iter++;
+                    break;
+                default:
+                    assertSame(BINARY, type);
+                    break;
+                }
+            }
+
+            readBuffer1.flip();
+            readBuffer2.flip();
+            messageWriter.writeFully(readBuffer1);
+            messageWriter.writeFully(readBuffer2);
+            assertEquals(0, readBuffer1.remaining());
+            assertEquals(0, readBuffer2.remaining());
+        }
+        finally {
+            k3po.finish();
+        }
+    }
 }
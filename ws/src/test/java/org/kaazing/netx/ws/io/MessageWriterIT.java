@@ -0,0 +1,74 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.io;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertSame;
+import static org.junit.rules.RuleChain.outerRule;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+import org.kaazing.k3po.junit.annotation.Specification;
+import org.kaazing.k3po.junit.rules.K3poRule;
+import org.kaazing.netx.URLConnectionHelper;
+import org.kaazing.netx.ws.MessageReader;
+import org.kaazing.netx.ws.MessageType;
+import org.kaazing.netx.ws.MessageWriter;
+import org.kaazing.netx.ws.WsURLConnection;
+
+public class MessageWriterIT {
+    private final K3poRule k3po = new K3poRule().setScriptRoot("org/kaazing/netx/ws/io");
+
+    private final TestRule timeout = new DisableOnDebug(new Timeout(5, SECONDS));
+
+    @Rule
+    public final TestRule chain = outerRule(k3po).around(timeout);
+
+    @Test
+    @Specification({
+    "corked.binary.and.text.messages/handshake.response.and.frames" })
+    public void shouldSendCorkedMessagesWhenUncorked() throws Exception {
+        URLConnectionHelper helper = URLConnectionHelper.newInstance();
+        URI location = URI.create("ws://localhost:8080/echo");
+
+        WsURLConnection connection = (WsURLConnection) helper.openConnection(location);
+        MessageReader messageReader = connection.getMessageReader();
+        MessageWriter messageWriter = connection.getMessageWriter();
+
+        try {
+            messageWriter.cork();
+            try {
+                messageWriter.writeFully(new byte[] { 0x01, 0x02, 0x03 });
+                messageWriter.writeFully("Hello".toCharArray());
+                messageWriter.writeFully(ByteBuffer.wrap(new byte[] { 0x04, 0x05, 0x06, 0x07 }));
+            }
+            finally {
+                messageWriter.uncork();
+            }
+
+            assertSame(MessageType.EOS, messageReader.next());
+        }
+        finally {
+            k3po.finish();
+        }
+    }
+}
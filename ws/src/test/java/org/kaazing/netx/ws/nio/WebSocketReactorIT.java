@@ -0,0 +1,147 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.nio;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.rules.RuleChain.outerRule;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+import org.kaazing.k3po.junit.annotation.Specification;
+import org.kaazing.k3po.junit.rules.K3poRule;
+import org.kaazing.netx.ws.MessageType;
+import org.kaazing.netx.ws.WsURLConnection;
+
+public class WebSocketReactorIT {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final K3poRule k3po = new K3poRule().setScriptRoot("org/kaazing/netx/ws/nio");
+
+    private final TestRule timeout = new DisableOnDebug(new Timeout(5, SECONDS));
+
+    @Rule
+    public final TestRule chain = outerRule(k3po).around(timeout);
+
+    private WebSocketReactor reactor;
+
+    @Before
+    public void setUp() throws Exception {
+        reactor = WebSocketReactor.newInstance(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        reactor.close();
+    }
+
+    @Test
+    @Specification({
+    "echo.binary.and.text.messages/handshake.response.and.frames" })
+    public void shouldEchoBinaryAndTextMessages() throws Exception {
+        EchoHandler handler = new EchoHandler();
+        WsURLConnection connection = reactor.connect(URI.create("ws://localhost:8080/echo"), handler);
+
+        k3po.finish();
+
+        assertTrue(handler.closed.await(5, SECONDS));
+        assertEquals(2, handler.messageCount);
+        assertEquals(WsURLConnection.WS_NORMAL_CLOSE, handler.closeCode);
+        assertEquals(null, handler.exception);
+        assertTrue(connection.getNegotiatedExtensions().isEmpty());
+    }
+
+    @Test
+    @Specification({
+    "echo.fragmented.binary.message/handshake.response.and.frames" })
+    public void shouldEchoFragmentedBinaryMessage() throws Exception {
+        EchoHandler handler = new EchoHandler();
+        reactor.connect(URI.create("ws://localhost:8080/echo"), handler);
+
+        k3po.finish();
+
+        assertTrue(handler.closed.await(5, SECONDS));
+        assertEquals(1, handler.messageCount);
+        assertEquals(null, handler.exception);
+    }
+
+    @Test
+    @Specification({
+    "server.close/handshake.response.and.close" })
+    public void shouldReplyToCloseFromServer() throws Exception {
+        EchoHandler handler = new EchoHandler();
+        reactor.connect(URI.create("ws://localhost:8080/echo"), handler);
+
+        k3po.finish();
+
+        assertTrue(handler.opened.await(5, SECONDS));
+        assertTrue(handler.closed.await(5, SECONDS));
+        assertEquals(WsURLConnection.WS_NORMAL_CLOSE, handler.closeCode);
+    }
+
+    private static final class EchoHandler extends WebSocketHandler {
+        private final CountDownLatch opened = new CountDownLatch(1);
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        private volatile int messageCount;
+        private volatile int closeCode;
+        private volatile IOException exception;
+
+        @Override
+        public void onOpen(WsURLConnection connection) {
+            opened.countDown();
+        }
+
+        @Override
+        public void onMessage(WsURLConnection connection, MessageType type, ByteBuffer payload) throws IOException {
+            byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            messageCount++;
+
+            switch (type) {
+            case TEXT:
+                connection.getMessageWriter().writeFully(new String(bytes, UTF_8).toCharArray());
+                break;
+            default:
+                connection.getMessageWriter().writeFully(bytes);
+                break;
+            }
+        }
+
+        @Override
+        public void onClose(WsURLConnection connection, int code, String reason) {
+            closeCode = code;
+            closed.countDown();
+        }
+
+        @Override
+        public void onError(WsURLConnection connection, IOException exception) {
+            this.exception = exception;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright 2007-2015, Kaazing Corporation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kaazing.netx.ws.nio;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kaazing.netx.URLConnectionHelper;
+import org.kaazing.netx.ws.WsURLConnection;
+import org.kaazing.netx.ws.internal.WsURLConnectionImpl;
+import org.kaazing.netx.ws.internal.io.FrameCaptureServer;
+
+public class WebSocketReactorTest {
+    private static final int LOW_WATERMARK = 8192;
+    private static final int HIGH_WATERMARK = 16384;
+    private static final int MAX_OFFERS = 10000;
+
+    private FrameCaptureServer server;
+    private WebSocketReactor reactor;
+    private InetAddress live;
+    private InetAddress refused;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FrameCaptureServer(false);
+        reactor = WebSocketReactor.newInstance(1, LOW_WATERMARK, HIGH_WATERMARK);
+        live = InetAddress.getByName("127.0.0.1");
+        refused = InetAddress.getByName("127.0.0.2");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try {
+            reactor.close();
+        }
+        finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void shouldConnectToLiveAddressAfterRefusedAddress() throws Exception {
+        WsURLConnectionImpl connection = openConnection(server.location());
+        RecordingHandler handler = new RecordingHandler();
+
+        reactor.connect(connection, handler, null, new InetAddress[] { refused, live });
+
+        assertTrue(handler.opened.await(5, SECONDS));
+        assertEquals(null, handler.error.get());
+    }
+
+    @Test
+    public void shouldFailWhenAllAddressesRefuse() throws Exception {
+        ServerSocket closed = new ServerSocket(0, 1, live);
+        int port = closed.getLocalPort();
+        closed.close();
+
+        WsURLConnectionImpl connection = openConnection(URI.create("ws://127.0.0.1:" + port + "/echo"));
+        RecordingHandler handler = new RecordingHandler();
+
+        reactor.connect(connection, handler, null, new InetAddress[] { live, refused });
+
+        assertTrue(handler.closed.await(5, SECONDS));
+        assertEquals(1, handler.opened.getCount());
+        assertNotNull(handler.error.get());
+    }
+
+    @Test
+    public void shouldRefuseMessagesPastHighWatermarkUntilWritable() throws Exception {
+        CountDownLatch resume = server.stall();
+        final byte[] payload = new byte[4096];
+        final AtomicInteger offered = new AtomicInteger();
+        final AtomicReference<IOException> refusal = new AtomicReference<IOException>();
+
+        try {
+            RecordingHandler handler = new RecordingHandler() {
+                @Override
+                public void onOpen(WsURLConnection connection) {
+                    try {
+                        // The server does not read, so the socket buffers fill up and the messages are queued.
+                        while (offered.get() < MAX_OFFERS && connection.getMessageWriter().offer(payload)) {
+                            offered.incrementAndGet();
+                        }
+
+                        try {
+                            connection.getMessageWriter().writeFully(payload);
+                        }
+                        catch (IOException e) {
+                            refusal.set(e);
+                        }
+                    }
+                    catch (IOException e) {
+                        error.set(e);
+                    }
+                    super.onOpen(connection);
+                }
+            };
+
+            WsURLConnectionImpl connection = openConnection(server.location());
+            reactor.connect(connection, handler, null, new InetAddress[] { live });
+
+            assertTrue(handler.opened.await(5, SECONDS));
+            assertEquals(null, handler.error.get());
+            assertTrue(offered.get() < MAX_OFFERS);
+            assertNotNull(refusal.get());
+            assertFalse(connection.getMessageWriter().offer(payload));
+            assertEquals(1, handler.writable.getCount());
+
+            resume.countDown();
+
+            assertTrue(handler.writable.await(5, SECONDS));
+            assertTrue(connection.getMessageWriter().offer(payload));
+        }
+        finally {
+            resume.countDown();
+        }
+
+        for (int i = 0; i <= offered.get(); i++) {
+            assertEquals(0x02, server.nextFrame().opcode);
+        }
+    }
+
+    private static WsURLConnectionImpl openConnection(URI location) throws IOException {
+        return (WsURLConnectionImpl) URLConnectionHelper.newInstance().openConnection(location);
+    }
+
+    private static class RecordingHandler extends WebSocketHandler {
+        final CountDownLatch opened = new CountDownLatch(1);
+        final CountDownLatch writable = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        final AtomicReference<IOException> error = new AtomicReference<IOException>();
+
+        @Override
+        public void onOpen(WsURLConnection connection) {
+            opened.countDown();
+        }
+
+        @Override
+        public void onWritable(WsURLConnection connection) {
+            writable.countDown();
+        }
+
+        @Override
+        public void onClose(WsURLConnection connection, int code, String reason) {
+            closed.countDown();
+        }
+
+        @Override
+        public void onError(WsURLConnection connection, IOException exception) {
+            error.set(exception);
+        }
+    }
+}